@@ -0,0 +1,204 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the JSON results of a JMH run against a stored baseline, and fails if any benchmark has become slower, or
+ * allocates more per operation, than its baseline by more than a threshold.
+ * <p>
+ * Usage: {@code BaselineComparator <results> <baseline> <threshold percent> [update]}. If {@code update} is true, or
+ * there is no baseline yet, the results are stored as the baseline instead. Benchmarks that are only in the results or
+ * only in the baseline are reported, but don't fail the comparison.
+ */
+public class BaselineComparator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BaselineComparator.class);
+
+    // The GC profiler's measure of the bytes allocated per operation
+    private static final String ALLOCATION_METRIC_SUFFIX = "gc.alloc.rate.norm";
+
+    // The mode in which a higher score is better. In every other mode, the score is a time per operation
+    private static final String THROUGHPUT_MODE = "thrpt";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final double thresholdPercent;
+
+    /**
+     * Constructor.
+     *
+     * @param thresholdPercent  How much worse, in percent, a benchmark may be than its baseline
+     */
+    public BaselineComparator(double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    /**
+     * Compare the results of a run against the baseline, or store them as the baseline, exiting with a non zero status
+     * if any benchmark has regressed.
+     *
+     * @param args  The results file, the baseline file, the threshold in percent, and whether to update the baseline
+     *
+     * @throws IOException if the results or baseline can't be read, or the baseline can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException(
+                    "Usage: BaselineComparator <results> <baseline> <threshold percent> [update]"
+            );
+        }
+        File results = new File(args[0]);
+        File baseline = new File(args[1]);
+        boolean update = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        if (update || !baseline.exists()) {
+            if (baseline.getParentFile() != null) {
+                Files.createDirectories(baseline.getParentFile().toPath());
+            }
+            Files.copy(results.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LOG.info("Stored the benchmark results {} as the baseline {}", results, baseline);
+            return;
+        }
+
+        List<String> regressions = new BaselineComparator(Double.parseDouble(args[2])).compare(results, baseline);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(LOG::error);
+            LOG.error("{} benchmark measures regressed against the baseline {}", regressions.size(), baseline);
+            System.exit(1);
+        }
+        LOG.info("No benchmark regressed against the baseline {}", baseline);
+    }
+
+    /**
+     * Compare the results of a run against the baseline.
+     *
+     * @param results  The JSON results of the run
+     * @param baseline  The JSON results of the baseline run
+     *
+     * @return a description of each measure that is worse than its baseline by more than the threshold
+     *
+     * @throws IOException if the results or baseline can't be read
+     */
+    public List<String> compare(File results, File baseline) throws IOException {
+        Map<String, JsonNode> current = readRuns(results);
+        Map<String, JsonNode> previous = readRuns(baseline);
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            String benchmark = entry.getKey();
+            JsonNode run = entry.getValue();
+            JsonNode baselineRun = previous.get(benchmark);
+            if (baselineRun == null) {
+                LOG.warn("{} has no baseline", benchmark);
+                continue;
+            }
+
+            JsonNode score = run.get("primaryMetric");
+            boolean higherIsBetter = THROUGHPUT_MODE.equals(run.path("mode").asText());
+            compareScore(benchmark, score, baselineRun.get("primaryMetric"), higherIsBetter, regressions);
+
+            JsonNode allocation = findAllocationMetric(run);
+            JsonNode baselineAllocation = findAllocationMetric(baselineRun);
+            if (allocation != null && baselineAllocation != null) {
+                compareScore(benchmark, allocation, baselineAllocation, false, regressions);
+            }
+        }
+        previous.keySet().stream()
+                .filter(benchmark -> !current.containsKey(benchmark))
+                .forEach(benchmark -> LOG.warn("{} is in the baseline, but was not run", benchmark));
+        return regressions;
+    }
+
+    /**
+     * Compare a measure of a benchmark against its baseline, noting it if it is worse by more than the threshold.
+     *
+     * @param benchmark  The name and parameters of the benchmark
+     * @param metric  The measure from this run
+     * @param baselineMetric  The measure from the baseline run
+     * @param higherIsBetter  Whether a higher score is an improvement
+     * @param regressions  The descriptions of the regressions found so far
+     */
+    private void compareScore(
+            String benchmark,
+            JsonNode metric,
+            JsonNode baselineMetric,
+            boolean higherIsBetter,
+            List<String> regressions
+    ) {
+        double score = metric.path("score").asDouble();
+        double baselineScore = baselineMetric.path("score").asDouble();
+        if (baselineScore <= 0) {
+            // Nothing to compare a change against, such as a benchmark that didn't allocate
+            return;
+        }
+        double changePercent = (score - baselineScore) / baselineScore * 100;
+        String description = String.format(
+                "%s: %.3f %s against a baseline of %.3f (%+.1f%%)",
+                benchmark,
+                score,
+                metric.path("scoreUnit").asText(),
+                baselineScore,
+                changePercent
+        );
+        boolean regressed = higherIsBetter ? -changePercent > thresholdPercent : changePercent > thresholdPercent;
+        if (regressed) {
+            regressions.add(description);
+        } else {
+            LOG.info(description);
+        }
+    }
+
+    /**
+     * Find the measure of the bytes allocated per operation of a run, if it was run with the GC profiler.
+     *
+     * @param run  The results of a benchmark
+     *
+     * @return the allocation measure, or null if there is none
+     */
+    private static JsonNode findAllocationMetric(JsonNode run) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = run.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().endsWith(ALLOCATION_METRIC_SUFFIX)) {
+                return metric.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the runs of a JMH results file, keyed by the benchmark and its parameters.
+     *
+     * @param file  The JSON results of a JMH run
+     *
+     * @return each run, keyed by a name made of its benchmark, mode and parameters
+     *
+     * @throws IOException if the file can't be read
+     */
+    private Map<String, JsonNode> readRuns(File file) throws IOException {
+        Map<String, JsonNode> runs = new LinkedHashMap<>();
+        for (JsonNode run : objectMapper.readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            run.path("params").fields()
+                    .forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            runs.put(run.path("benchmark").asText() + " " + run.path("mode").asText() + " " + params, run);
+        }
+        return runs;
+    }
+}
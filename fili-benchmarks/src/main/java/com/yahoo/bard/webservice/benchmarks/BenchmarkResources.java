@@ -0,0 +1,330 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkDimensionConfig;
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkDimensionField;
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkMetricLoader;
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkMetricName;
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkSearchProvider;
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkTableLoader;
+import com.yahoo.bard.webservice.data.DruidQueryBuilder;
+import com.yahoo.bard.webservice.data.PartialDataHandler;
+import com.yahoo.bard.webservice.data.config.ConfigurationLoader;
+import com.yahoo.bard.webservice.data.config.ResourceDictionaries;
+import com.yahoo.bard.webservice.data.config.dimension.KeyValueStoreDimensionLoader;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowNotFoundException;
+import com.yahoo.bard.webservice.data.dimension.LogicalDimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.MapStoreManager;
+import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension;
+import com.yahoo.bard.webservice.data.filterbuilders.DefaultDruidFilterBuilder;
+import com.yahoo.bard.webservice.data.filterbuilders.DruidFilterBuilder;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.data.metric.TemplateDruidQueryMerger;
+import com.yahoo.bard.webservice.data.time.GranularityParser;
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser;
+import com.yahoo.bard.webservice.data.volatility.DefaultingVolatileIntervalsService;
+import com.yahoo.bard.webservice.druid.model.aggregation.Aggregation;
+import com.yahoo.bard.webservice.druid.model.postaggregation.PostAggregation;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.table.ZonedSchema;
+import com.yahoo.bard.webservice.table.resolver.DefaultPhysicalTableResolver;
+import com.yahoo.bard.webservice.table.resolver.NoMatchFoundException;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.util.BardConfigResources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.glassfish.jersey.uri.UriComponent;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.joda.time.chrono.ISOChronology;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The configuration, dictionaries and canned Druid responses shared by the benchmarks.
+ * <p>
+ * A single logical table is configured with a number of synthetic dimensions, each backed by a MapStore and a scan or
+ * lucene search provider and filled with rows {@code value0} to {@code valueN}, and a number of long sum metrics. Data
+ * requests group by every dimension, ask for every metric, and filter the first dimension on some of its values, over
+ * a month by day.
+ */
+public class BenchmarkResources implements BardConfigResources, Closeable {
+
+    public static final String TABLE_NAME = "benchmark";
+    public static final String GRANULARITY = "day";
+    public static final String INTERVALS = "2016-01-01/2016-02-01";
+
+    // The number of values of the first dimension the requests filter on
+    private static final int FILTER_VALUES = 10;
+
+    // Seed for the values of the canned responses, so every run reads the same response
+    private static final long RESPONSE_SEED = 20160101L;
+
+    // Numbers the instances, so that the stores and search providers of each instance are its own
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final BenchmarkSearchProvider searchProvider;
+    private final List<String> dimensionNames;
+    private final List<String> storeNames;
+    private final List<BenchmarkMetricName> metricNames;
+    private final int dimensionCardinality;
+
+    private final ResourceDictionaries dictionaries;
+    private final GranularityParser granularityParser = new StandardGranularityParser();
+    private final DruidFilterBuilder filterBuilder = new DefaultDruidFilterBuilder();
+    private final DruidQueryBuilder druidQueryBuilder;
+    private final TemplateDruidQueryMerger templateDruidQueryMerger = new TemplateDruidQueryMerger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param dimensionCount  The number of dimensions of the table
+     * @param dimensionCardinality  The number of rows of each dimension
+     * @param metricCount  The number of metrics of the table
+     * @param searchProvider  The kind of search provider the dimensions are searched with
+     */
+    public BenchmarkResources(
+            int dimensionCount,
+            int dimensionCardinality,
+            int metricCount,
+            BenchmarkSearchProvider searchProvider
+    ) {
+        this.searchProvider = searchProvider;
+        this.dimensionCardinality = dimensionCardinality;
+        this.dimensionNames = IntStream.range(0, dimensionCount)
+                .mapToObj(i -> "dimension" + i)
+                .collect(Collectors.toList());
+        this.metricNames = IntStream.range(0, metricCount)
+                .mapToObj(i -> new BenchmarkMetricName("metric" + i))
+                .collect(Collectors.toList());
+
+        int instance = INSTANCES.incrementAndGet();
+        this.storeNames = dimensionNames.stream()
+                .map(name -> name + "_" + instance)
+                .collect(Collectors.toList());
+
+        List<BenchmarkDimensionConfig> dimensionConfigs = IntStream.range(0, dimensionCount)
+                .mapToObj(i -> new BenchmarkDimensionConfig(
+                        dimensionNames.get(i),
+                        MapStoreManager.getInstance(storeNames.get(i)),
+                        searchProvider.getInstance(storeNames.get(i))
+                ))
+                .collect(Collectors.toList());
+
+        ConfigurationLoader loader = new ConfigurationLoader(
+                new KeyValueStoreDimensionLoader(new ArrayList<>(dimensionConfigs)),
+                new BenchmarkMetricLoader(metricNames),
+                new BenchmarkTableLoader(TABLE_NAME, dimensionConfigs, metricNames)
+        );
+        loader.load();
+        this.dictionaries = loader.getDictionaries();
+
+        for (String name : dimensionNames) {
+            KeyValueStoreDimension dimension = (KeyValueStoreDimension) getDimensionDictionary().findByApiName(name);
+            dimension.addAllDimensionRows(buildDimensionRows(dimension));
+        }
+
+        this.druidQueryBuilder = new DruidQueryBuilder(
+                getLogicalTableDictionary(),
+                new DefaultPhysicalTableResolver(new PartialDataHandler(), new DefaultingVolatileIntervalsService())
+        );
+    }
+
+    @Override
+    public ResourceDictionaries getResourceDictionaries() {
+        return dictionaries;
+    }
+
+    @Override
+    public GranularityParser getGranularityParser() {
+        return granularityParser;
+    }
+
+    @Override
+    public DruidFilterBuilder getFilterBuilder() {
+        return filterBuilder;
+    }
+
+    @Override
+    public DateTimeZone getSystemTimeZone() {
+        return DateTimeZone.UTC;
+    }
+
+    /**
+     * Parse a data request grouping by every dimension, for every metric, filtered on some values of the first
+     * dimension, as the data servlet does.
+     *
+     * @param format  The format of the response, or null for the default
+     *
+     * @return the parsed request
+     */
+    public DataApiRequest buildDataApiRequest(String format) {
+        return new DataApiRequest(
+                TABLE_NAME,
+                GRANULARITY,
+                UriComponent.decodePath(String.join("/", dimensionNames), true),
+                metricNames.stream().map(BenchmarkMetricName::asName).collect(Collectors.joining(",")),
+                INTERVALS,
+                getFilters(),
+                null,
+                null,
+                null,
+                null,
+                format,
+                null,
+                "never",
+                "",
+                "",
+                null,
+                this
+        );
+    }
+
+    /**
+     * Build the Druid query for a data request, as the data servlet does.
+     *
+     * @param apiRequest  The data request
+     *
+     * @return the Druid query
+     *
+     * @throws DimensionRowNotFoundException if the filters filter out all dimension rows
+     * @throws NoMatchFoundException if no physical table satisfies the request
+     */
+    public DruidAggregationQuery<?> buildQuery(DataApiRequest apiRequest)
+            throws DimensionRowNotFoundException, NoMatchFoundException {
+        return druidQueryBuilder.buildQuery(apiRequest, templateDruidQueryMerger.merge(apiRequest));
+    }
+
+    /**
+     * Build the schema of the result set of a Druid query, as the result set response processor does.
+     *
+     * @param apiRequest  The data request the query was built for
+     * @param druidQuery  The Druid query
+     *
+     * @return the schema with a column for each aggregation, post aggregation and dimension of the query
+     */
+    public ZonedSchema buildResultSetSchema(DataApiRequest apiRequest, DruidAggregationQuery<?> druidQuery) {
+        ZonedSchema schema = new ZonedSchema(apiRequest.getGranularity(), apiRequest.getTimeZone());
+        for (Aggregation aggregation : druidQuery.getAggregations()) {
+            MetricColumn.addNewMetricColumn(schema, aggregation.getName());
+        }
+        for (PostAggregation postAggregation : druidQuery.getPostAggregations()) {
+            MetricColumn.addNewMetricColumn(schema, postAggregation.getName());
+        }
+        for (Dimension dimension : druidQuery.getDimensions()) {
+            schema.addColumn(new LogicalDimensionColumn(dimension));
+        }
+        return schema;
+    }
+
+    /**
+     * Build a canned response to a groupBy query, with rows spread over the days of the request, random values of
+     * each dimension, and random values of each aggregation and post aggregation.
+     *
+     * @param druidQuery  The Druid query to build a response to
+     * @param rowCount  The number of rows in the response
+     *
+     * @return the JSON response
+     *
+     * @throws IOException if the response could not be written
+     */
+    public byte[] buildGroupByResponse(DruidAggregationQuery<?> druidQuery, int rowCount) throws IOException {
+        List<String> metrics = new ArrayList<>();
+        druidQuery.getAggregations().forEach(aggregation -> metrics.add(aggregation.getName()));
+        druidQuery.getPostAggregations().forEach(postAggregation -> metrics.add(postAggregation.getName()));
+        List<String> dimensions = druidQuery.getDimensions().stream()
+                .map(Dimension::getApiName)
+                .collect(Collectors.toList());
+
+        Interval interval = new Interval(INTERVALS, ISOChronology.getInstanceUTC());
+        int days = (int) interval.toDuration().getStandardDays();
+        Random random = new Random(RESPONSE_SEED);
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response)) {
+            generator.writeStartArray();
+            for (int row = 0; row < rowCount; row++) {
+                generator.writeStartObject();
+                generator.writeStringField("version", "v1");
+                generator.writeStringField("timestamp", interval.getStart().plusDays(row % days).toString());
+                generator.writeObjectFieldStart("event");
+                for (String dimension : dimensions) {
+                    generator.writeStringField(dimension, "value" + random.nextInt(dimensionCardinality));
+                }
+                for (String metric : metrics) {
+                    generator.writeNumberField(metric, random.nextInt(1_000_000));
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        return response.toByteArray();
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Drop the dimension stores and search providers, along with any index the search providers keep on disk.
+     */
+    @Override
+    public void close() {
+        for (String storeName : storeNames) {
+            MapStoreManager.removeInstance(storeName);
+            searchProvider.removeInstance(storeName);
+        }
+    }
+
+    /**
+     * Get the filters the data requests are made with.
+     *
+     * @return an in filter on the first few values of the first dimension, or null if there are no dimensions
+     */
+    private String getFilters() {
+        if (dimensionNames.isEmpty()) {
+            return null;
+        }
+        String values = IntStream.range(0, Math.min(FILTER_VALUES, dimensionCardinality))
+                .mapToObj(i -> "value" + i)
+                .collect(Collectors.joining(","));
+        return String.format("%s|id-in[%s]", dimensionNames.get(0), values);
+    }
+
+    /**
+     * Build the rows of a dimension.
+     *
+     * @param dimension  The dimension to build rows for
+     *
+     * @return rows with the ids {@code value0} to {@code valueN}
+     */
+    private Set<DimensionRow> buildDimensionRows(KeyValueStoreDimension dimension) {
+        Set<DimensionRow> rows = new LinkedHashSet<>(dimensionCardinality);
+        for (int i = 0; i < dimensionCardinality; i++) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put(BenchmarkDimensionField.ID.getName(), "value" + i);
+            fields.put(BenchmarkDimensionField.DESC.getName(), "Value " + i + " of " + dimension.getApiName());
+            rows.add(dimension.parseDimensionRow(fields));
+        }
+        return rows;
+    }
+}
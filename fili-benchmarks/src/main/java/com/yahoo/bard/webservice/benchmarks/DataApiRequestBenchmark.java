@@ -0,0 +1,33 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.web.DataApiRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and validating the parameters of a data request into a DataApiRequest, which includes searching the
+ * filtered dimension for the rows to build the Druid filter from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DataApiRequestBenchmark {
+
+    /**
+     * Parse a request grouping by every dimension, for every metric, filtered on the first dimension.
+     *
+     * @param state  The configuration to parse the request against
+     *
+     * @return the parsed request
+     */
+    @Benchmark
+    public DataApiRequest parseDataApiRequest(RequestState state) {
+        return state.resources.buildDataApiRequest(null);
+    }
+}
@@ -0,0 +1,39 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionRowNotFoundException;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.table.resolver.NoMatchFoundException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the Druid query for a parsed data request, which merges the template queries of the metrics and
+ * resolves the physical table to query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DruidQueryBuilderBenchmark {
+
+    /**
+     * Build the query for a request grouping by every dimension, for every metric, filtered on the first dimension.
+     *
+     * @param state  The configuration and the parsed request
+     *
+     * @return the Druid query
+     *
+     * @throws DimensionRowNotFoundException if the filters filter out all dimension rows
+     * @throws NoMatchFoundException if no physical table satisfies the request
+     */
+    @Benchmark
+    public DruidAggregationQuery<?> buildQuery(RequestState state)
+            throws DimensionRowNotFoundException, NoMatchFoundException {
+        return state.resources.buildQuery(state.apiRequest);
+    }
+}
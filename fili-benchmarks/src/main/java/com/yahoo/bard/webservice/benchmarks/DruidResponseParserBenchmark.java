@@ -0,0 +1,58 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.data.ResultSet;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a canned Druid groupBy response into a result set, both by reading the whole response into a tree
+ * first, and by reading the result set straight from the stream of tokens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DruidResponseParserBenchmark {
+
+    /**
+     * Read the response into a tree, then parse the tree.
+     *
+     * @param state  The canned response and the schema to parse it with
+     *
+     * @return the result set
+     *
+     * @throws IOException if the response can't be read
+     */
+    @Benchmark
+    public ResultSet parseTree(ResponseState state) throws IOException {
+        return state.druidResponseParser.parse(
+                state.resources.getObjectMapper().readTree(state.druidResponse),
+                state.schema,
+                state.druidQuery.getQueryType()
+        );
+    }
+
+    /**
+     * Parse the response from its stream of tokens.
+     *
+     * @param state  The canned response and the schema to parse it with
+     *
+     * @return the result set
+     *
+     * @throws IOException if the response can't be read
+     */
+    @Benchmark
+    public ResultSet parseStream(ResponseState state) throws IOException {
+        try (JsonParser jsonParser = state.resources.getObjectMapper().getFactory().createParser(state.druidResponse)) {
+            return state.druidResponseParser.parse(jsonParser, state.schema, state.druidQuery.getQueryType());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkSearchProvider;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The configuration and a parsed data request, shared by the request benchmarks.
+ * <p>
+ * The search provider matters to parsing the request, which looks up the dimension rows the request filters on to
+ * build the Druid filter.
+ */
+@State(Scope.Benchmark)
+public class RequestState {
+
+    @Param({"SCAN", "LUCENE"})
+    public BenchmarkSearchProvider searchProvider;
+
+    @Param("4")
+    public int dimensionCount;
+
+    @Param("1000")
+    public int dimensionCardinality;
+
+    @Param("8")
+    public int metricCount;
+
+    BenchmarkResources resources;
+    DataApiRequest apiRequest;
+
+    /**
+     * Load the configuration and parse the request.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        resources = new BenchmarkResources(dimensionCount, dimensionCardinality, metricCount, searchProvider);
+        apiRequest = resources.buildDataApiRequest(null);
+    }
+
+    /**
+     * Drop the dimensions.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        resources.close();
+    }
+}
@@ -0,0 +1,114 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.benchmarks.config.BenchmarkSearchProvider;
+import com.yahoo.bard.webservice.data.DruidResponseParser;
+import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.metric.LogicalMetric;
+import com.yahoo.bard.webservice.data.metric.mappers.PartialDataResultSetMapper;
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.table.ZonedSchema;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+
+import org.joda.time.Interval;
+import org.joda.time.chrono.ISOChronology;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A canned Druid response to the data request, and the result set parsed from it, shared by the response benchmarks.
+ * <p>
+ * The dimensions are searched by scanning, since searching plays no part in handling the response.
+ */
+@State(Scope.Benchmark)
+public class ResponseState {
+
+    // The first week of the request is missing, so the partial data mapper removes about a quarter of the rows
+    private static final String MISSING_INTERVAL = "2016-01-01/2016-01-08";
+
+    @Param({"100", "10000"})
+    public int rowCount;
+
+    @Param("4")
+    public int dimensionCount;
+
+    @Param("1000")
+    public int dimensionCardinality;
+
+    @Param("8")
+    public int metricCount;
+
+    BenchmarkResources resources;
+    DataApiRequest apiRequest;
+    DruidAggregationQuery<?> druidQuery;
+    DruidResponseParser druidResponseParser;
+    ZonedSchema schema;
+    byte[] druidResponse;
+    ResultSet resultSet;
+    List<ResultSetMapper> mappers;
+    Set<String> metricNames;
+
+    /**
+     * Load the configuration, build the query and its canned response, parse the response and build the mappers the
+     * response is handled with.
+     *
+     * @throws Exception if the query can't be built, or the response can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        resources = new BenchmarkResources(
+                dimensionCount,
+                dimensionCardinality,
+                metricCount,
+                BenchmarkSearchProvider.SCAN
+        );
+        apiRequest = resources.buildDataApiRequest(null);
+        druidQuery = resources.buildQuery(apiRequest);
+        druidResponseParser = new DruidResponseParser();
+        schema = resources.buildResultSetSchema(apiRequest, druidQuery);
+        druidResponse = resources.buildGroupByResponse(druidQuery, rowCount);
+        resultSet = druidResponseParser.parse(
+                resources.getObjectMapper().readTree(druidResponse),
+                schema,
+                druidQuery.getQueryType()
+        );
+
+        // The row local mappers of a synchronous request, in the order the data servlet adds them
+        mappers = apiRequest.getLogicalMetrics().stream()
+                .map(LogicalMetric::getCalculation)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+        mappers.add(new PartialDataResultSetMapper(
+                new SimplifiedIntervalList(
+                        Collections.singleton(new Interval(MISSING_INTERVAL, ISOChronology.getInstanceUTC()))
+                ),
+                SimplifiedIntervalList::new
+        ));
+
+        metricNames = apiRequest.getLogicalMetrics().stream()
+                .map(LogicalMetric::getName)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Drop the dimensions.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        resources.close();
+    }
+}
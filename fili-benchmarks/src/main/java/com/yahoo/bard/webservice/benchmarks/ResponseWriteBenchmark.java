@@ -0,0 +1,81 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite;
+import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+import com.yahoo.bard.webservice.web.Response;
+import com.yahoo.bard.webservice.web.ResponseFormatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a result set as the body of a response, in each of the formats a synchronous response can be
+ * written in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseWriteBenchmark {
+
+    @Param({"JSON", "CSV"})
+    public ResponseFormatType format;
+
+    private final ObjectMappersSuite objectMappers = new ObjectMappersSuite();
+
+    /**
+     * Write the parsed result set, with the fields of every dimension and every metric.
+     *
+     * @param state  The parsed result set and the request it answers
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException if the response can't be written
+     */
+    @Benchmark
+    public long writeResponse(ResponseState state) throws IOException {
+        CountingOutputStream outputStream = new CountingOutputStream();
+        new Response(
+                state.resultSet,
+                state.metricNames,
+                state.apiRequest.getDimensionFields(),
+                format,
+                new SimplifiedIntervalList(),
+                new SimplifiedIntervalList(),
+                Collections.emptyMap(),
+                null,
+                objectMappers
+        ).write(outputStream);
+        return outputStream.count;
+    }
+
+    /**
+     * An output stream that counts the bytes written to it and drops them, so that buffering the response plays no
+     * part in the measurement.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
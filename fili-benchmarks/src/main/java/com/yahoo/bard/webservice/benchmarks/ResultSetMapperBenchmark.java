@@ -0,0 +1,71 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks;
+
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper;
+import com.yahoo.bard.webservice.data.metric.mappers.RowMapperChain;
+import com.yahoo.bard.webservice.data.metric.mappers.TopNResultSetMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mapping a parsed result set through the metric and partial data mappers of a request, a result set at a
+ * time and a row at a time, and through a top N mapper, which has to see the whole result set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultSetMapperBenchmark {
+
+    // The number of rows kept by the top N mapper
+    private static final int TOP_N = 100;
+
+    /**
+     * Map the whole result set through each mapper in turn.
+     *
+     * @param state  The parsed result set and the mappers
+     *
+     * @return the mapped result set
+     */
+    @Benchmark
+    public ResultSet mapResultSets(ResponseState state) {
+        ResultSet resultSet = state.resultSet;
+        for (ResultSetMapper mapper : state.mappers) {
+            resultSet = mapper.map(resultSet);
+        }
+        return resultSet;
+    }
+
+    /**
+     * Map each row through all of the mappers, without building a result set between mappers.
+     *
+     * @param state  The parsed result set and the mappers
+     * @param blackhole  Consumes the mapped rows
+     */
+    @Benchmark
+    public void mapRows(ResponseState state, Blackhole blackhole) {
+        RowMapperChain mapperChain = new RowMapperChain(state.mappers, state.schema);
+        for (Result result : state.resultSet) {
+            blackhole.consume(mapperChain.map(result));
+        }
+    }
+
+    /**
+     * Keep the top rows of each time bucket of the result set.
+     *
+     * @param state  The parsed result set
+     *
+     * @return the top rows
+     */
+    @Benchmark
+    public ResultSet mapTopN(ResponseState state) {
+        return new TopNResultSetMapper(TOP_N).map(state.resultSet);
+    }
+}
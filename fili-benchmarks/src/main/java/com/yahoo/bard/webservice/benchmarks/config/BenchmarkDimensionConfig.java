@@ -0,0 +1,88 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionField;
+import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
+import com.yahoo.bard.webservice.data.dimension.SearchProvider;
+import com.yahoo.bard.webservice.util.Utils;
+
+import java.util.LinkedHashSet;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * The configuration of a synthetic dimension, whose api and physical names are the same.
+ */
+public class BenchmarkDimensionConfig implements DimensionConfig {
+
+    private final String name;
+    private final KeyValueStore keyValueStore;
+    private final SearchProvider searchProvider;
+    private final LinkedHashSet<DimensionField> fields;
+
+    /**
+     * Constructor.
+     *
+     * @param name  The api and physical name of the dimension
+     * @param keyValueStore  The store of the dimension rows
+     * @param searchProvider  The search provider over the dimension rows
+     */
+    public BenchmarkDimensionConfig(
+            @NotNull String name,
+            @NotNull KeyValueStore keyValueStore,
+            @NotNull SearchProvider searchProvider
+    ) {
+        this.name = name;
+        this.keyValueStore = keyValueStore;
+        this.searchProvider = searchProvider;
+        this.fields = Utils.<DimensionField>asLinkedHashSet(BenchmarkDimensionField.values());
+    }
+
+    @Override
+    public String getApiName() {
+        return name;
+    }
+
+    @Override
+    public String getLongName() {
+        return name;
+    }
+
+    @Override
+    public String getCategory() {
+        return Dimension.DEFAULT_CATEGORY;
+    }
+
+    @Override
+    public String getPhysicalName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return name;
+    }
+
+    @Override
+    public LinkedHashSet<DimensionField> getFields() {
+        return fields;
+    }
+
+    @Override
+    public LinkedHashSet<DimensionField> getDefaultDimensionFields() {
+        return fields;
+    }
+
+    @Override
+    public KeyValueStore getKeyValueStore() {
+        return keyValueStore;
+    }
+
+    @Override
+    public SearchProvider getSearchProvider() {
+        return searchProvider;
+    }
+}
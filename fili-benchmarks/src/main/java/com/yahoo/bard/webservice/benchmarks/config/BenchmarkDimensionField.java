@@ -0,0 +1,42 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionField;
+import com.yahoo.bard.webservice.util.EnumUtils;
+
+/**
+ * The fields of the synthetic dimensions.
+ */
+public enum BenchmarkDimensionField implements DimensionField {
+    ID("Dimension ID"),
+    DESC("Dimension Description");
+
+    private final String description;
+    private final String camelName;
+
+    /**
+     * Constructor.
+     *
+     * @param description  Description of the field
+     */
+    BenchmarkDimensionField(String description) {
+        this.description = description;
+        this.camelName = EnumUtils.camelCase(name());
+    }
+
+    @Override
+    public String getName() {
+        return camelName;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return camelName;
+    }
+}
@@ -0,0 +1,36 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import com.yahoo.bard.webservice.data.config.metric.MetricInstance;
+import com.yahoo.bard.webservice.data.config.metric.MetricLoader;
+import com.yahoo.bard.webservice.data.config.metric.makers.LongSumMaker;
+import com.yahoo.bard.webservice.data.metric.MetricDictionary;
+
+import java.util.Collection;
+
+/**
+ * Load the synthetic metrics, each of which is the long sum of the druid metric of the same name.
+ */
+public class BenchmarkMetricLoader implements MetricLoader {
+
+    private final Collection<BenchmarkMetricName> metricNames;
+
+    /**
+     * Constructor.
+     *
+     * @param metricNames  The names of the metrics to load
+     */
+    public BenchmarkMetricLoader(Collection<BenchmarkMetricName> metricNames) {
+        this.metricNames = metricNames;
+    }
+
+    @Override
+    public void loadMetricDictionary(MetricDictionary metricDictionary) {
+        LongSumMaker longSumMaker = new LongSumMaker(metricDictionary);
+        metricNames.stream()
+                .map(metricName -> new MetricInstance(metricName, longSumMaker, metricName))
+                .map(MetricInstance::make)
+                .forEach(metricDictionary::add);
+    }
+}
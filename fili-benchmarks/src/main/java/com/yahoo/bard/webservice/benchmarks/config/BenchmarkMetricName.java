@@ -0,0 +1,43 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import com.yahoo.bard.webservice.data.config.names.ApiMetricName;
+import com.yahoo.bard.webservice.data.time.TimeGrain;
+
+/**
+ * The name of a synthetic metric, which is both its api name and the name of the druid metric it aggregates.
+ */
+public class BenchmarkMetricName implements ApiMetricName {
+
+    private final String name;
+
+    /**
+     * Constructor.
+     *
+     * @param name  The api name of the metric, and the name of the druid metric it aggregates
+     */
+    public BenchmarkMetricName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public boolean isValidFor(TimeGrain grain) {
+        return true;
+    }
+
+    @Override
+    public String getApiName() {
+        return name;
+    }
+
+    @Override
+    public String asName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,51 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import com.yahoo.bard.webservice.data.dimension.SearchProvider;
+import com.yahoo.bard.webservice.data.dimension.impl.LuceneSearchProviderManager;
+import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager;
+
+/**
+ * The kinds of search provider the synthetic dimensions can be searched with.
+ */
+public enum BenchmarkSearchProvider {
+    SCAN {
+        @Override
+        public SearchProvider getInstance(String providerName) {
+            return ScanSearchProviderManager.getInstance(providerName);
+        }
+
+        @Override
+        public void removeInstance(String providerName) {
+            ScanSearchProviderManager.removeInstance(providerName);
+        }
+    },
+    LUCENE {
+        @Override
+        public SearchProvider getInstance(String providerName) {
+            return LuceneSearchProviderManager.getInstance(providerName);
+        }
+
+        @Override
+        public void removeInstance(String providerName) {
+            LuceneSearchProviderManager.removeInstance(providerName);
+        }
+    };
+
+    /**
+     * Get the search provider of this kind with the given name, creating it if needed.
+     *
+     * @param providerName  The name of the search provider
+     *
+     * @return the search provider
+     */
+    public abstract SearchProvider getInstance(String providerName);
+
+    /**
+     * Close the search provider of this kind with the given name, and drop any index it keeps.
+     *
+     * @param providerName  The name of the search provider
+     */
+    public abstract void removeInstance(String providerName);
+}
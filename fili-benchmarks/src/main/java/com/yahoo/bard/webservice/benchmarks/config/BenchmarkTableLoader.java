@@ -0,0 +1,74 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.benchmarks.config;
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY;
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.HOUR;
+
+import com.yahoo.bard.webservice.data.config.ResourceDictionaries;
+import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
+import com.yahoo.bard.webservice.data.config.names.ApiMetricName;
+import com.yahoo.bard.webservice.data.config.names.FieldName;
+import com.yahoo.bard.webservice.data.config.names.TableName;
+import com.yahoo.bard.webservice.data.config.table.BaseTableLoader;
+import com.yahoo.bard.webservice.data.config.table.PhysicalTableDefinition;
+import com.yahoo.bard.webservice.druid.model.query.AllGranularity;
+import com.yahoo.bard.webservice.table.TableGroup;
+import com.yahoo.bard.webservice.util.Utils;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Load a single logical table, backed by an hourly physical table of the same name, that has all of the synthetic
+ * dimensions and metrics.
+ */
+public class BenchmarkTableLoader extends BaseTableLoader {
+
+    private final String tableName;
+    private final LinkedHashSet<DimensionConfig> dimensions;
+    private final LinkedHashSet<BenchmarkMetricName> metricNames;
+
+    /**
+     * Constructor.
+     *
+     * @param tableName  The name of the logical and physical tables
+     * @param dimensions  The configurations of the dimensions of the tables
+     * @param metricNames  The names of the metrics of the tables
+     */
+    public BenchmarkTableLoader(
+            String tableName,
+            Collection<? extends DimensionConfig> dimensions,
+            Collection<BenchmarkMetricName> metricNames
+    ) {
+        this.tableName = tableName;
+        this.dimensions = new LinkedHashSet<>(dimensions);
+        this.metricNames = new LinkedHashSet<>(metricNames);
+    }
+
+    @Override
+    public void loadTableDictionary(ResourceDictionaries dictionaries) {
+        TableName physicalTableName = () -> tableName;
+        TableGroup tableGroup = buildTableGroup(
+                tableName,
+                new LinkedHashSet<ApiMetricName>(metricNames),
+                new LinkedHashSet<FieldName>(metricNames),
+                Utils.asLinkedHashSet(
+                        new PhysicalTableDefinition(
+                                physicalTableName,
+                                HOUR.buildZonedTimeGrain(DateTimeZone.UTC),
+                                dimensions
+                        )
+                ),
+                dictionaries
+        );
+        loadLogicalTableWithGranularities(
+                tableName,
+                tableGroup,
+                Utils.asLinkedHashSet(HOUR, DAY, AllGranularity.INSTANCE),
+                dictionaries
+        );
+    }
+}
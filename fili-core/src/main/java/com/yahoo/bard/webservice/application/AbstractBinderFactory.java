@@ -30,7 +30,11 @@ import com.yahoo.bard.webservice.data.cache.DataCache;
 import com.yahoo.bard.webservice.data.cache.HashDataCache;
 import com.yahoo.bard.webservice.data.cache.MemDataCache;
 import com.yahoo.bard.webservice.data.cache.MemTupleDataCache;
+import com.yahoo.bard.webservice.data.cache.OffHeapDataCache;
 import com.yahoo.bard.webservice.data.cache.StubDataCache;
+import com.yahoo.bard.webservice.data.cache.TieredDataCache;
+import com.yahoo.bard.webservice.data.cache.TieredTupleDataCache;
+import com.yahoo.bard.webservice.data.cache.TupleDataCache;
 import com.yahoo.bard.webservice.data.config.ConfigurationLoader;
 import com.yahoo.bard.webservice.data.config.ResourceDictionaries;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
@@ -51,6 +55,7 @@ import com.yahoo.bard.webservice.druid.client.DruidClientConfigHelper;
 import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.impl.AsyncDruidWebServiceImpl;
+import com.yahoo.bard.webservice.druid.client.impl.LoadBalancingDruidWebService;
 import com.yahoo.bard.webservice.druid.model.query.LookbackQuery;
 import com.yahoo.bard.webservice.druid.util.FieldConverterSupplier;
 import com.yahoo.bard.webservice.druid.util.FieldConverters;
@@ -111,6 +116,7 @@ import rx.subjects.PublishSubject;
 import java.io.IOException;
 import java.time.Clock;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -141,6 +147,8 @@ public abstract class AbstractBinderFactory implements BinderFactory {
     public static final String HEALTH_CHECK_NAME_DIMENSION = "dimension check";
 
     private static final String METER_CACHE_HIT_RATIO = "queries.meter.cache.hit_ratio";
+    private static final String METER_CACHE_LOCAL_HIT_RATIO = "queries.meter.cache.local.hit_ratio";
+    private static final String METER_CACHE_REMOTE_HIT_RATIO = "queries.meter.cache.remote.hit_ratio";
     private static final String METER_SPLITS_TOTAL_RATIO = "queries.meter.split_queries.total_ratio";
     private static final String METER_SPLITS_RATIO = "queries.meter.split_queries.ratio";
 
@@ -158,6 +166,14 @@ public abstract class AbstractBinderFactory implements BinderFactory {
             HC_LAST_RUN_PERIOD_MILLIS_DEFAULT
     );
 
+    /**
+     * Bytes of cached Druid responses to hold in process, in front of memcached, or 0 to only use memcached.
+     */
+    public static final long DRUID_CACHE_LOCAL_MAX_BYTES = SYSTEM_CONFIG.getLongProperty(
+            SYSTEM_CONFIG.getPackageVariableName("druid_cache_local_max_bytes"),
+            0
+    );
+
     public static final int LOADER_SCHEDULER_THREAD_POOL_SIZE = SYSTEM_CONFIG.getIntProperty(
             SYSTEM_CONFIG.getPackageVariableName("loader_scheduler_thread_pool_size"),
             LOADER_SCHEDULER_THREAD_POOL_SIZE_DEFAULT
@@ -503,6 +519,38 @@ public abstract class AbstractBinderFactory implements BinderFactory {
             );
         }
 
+        if (!metrics.containsKey(METER_CACHE_LOCAL_HIT_RATIO)) {
+            metricRegistry.register(
+                    METER_CACHE_LOCAL_HIT_RATIO,
+                    new RatioGauge() {
+                        @Override
+                        protected Ratio getRatio() {
+                            long requests = TieredDataCache.LOCAL_HITS.getCount()
+                                    + TieredDataCache.LOCAL_MISSES.getCount();
+                            return requests != 0
+                                    ? Ratio.of(TieredDataCache.LOCAL_HITS.getCount(), requests)
+                                    : Ratio.of(0, 1);
+                        }
+                    }
+            );
+        }
+
+        if (!metrics.containsKey(METER_CACHE_REMOTE_HIT_RATIO)) {
+            metricRegistry.register(
+                    METER_CACHE_REMOTE_HIT_RATIO,
+                    new RatioGauge() {
+                        @Override
+                        protected Ratio getRatio() {
+                            long requests = TieredDataCache.REMOTE_HITS.getCount()
+                                    + TieredDataCache.REMOTE_MISSES.getCount();
+                            return requests != 0
+                                    ? Ratio.of(TieredDataCache.REMOTE_HITS.getCount(), requests)
+                                    : Ratio.of(0, 1);
+                        }
+                    }
+            );
+        }
+
         if (!metrics.containsKey(METER_SPLITS_TOTAL_RATIO)) {
             metricRegistry.register(
                     METER_SPLITS_TOTAL_RATIO,
@@ -736,8 +784,11 @@ public abstract class AbstractBinderFactory implements BinderFactory {
     protected DataCache<?> buildCache() {
         if (BardFeatureFlag.DRUID_CACHE_V2.isOn()) {
             try {
-                MemTupleDataCache<String> cache = new MemTupleDataCache<>();
+                TupleDataCache<String, Long, String> cache = new MemTupleDataCache<>();
                 LOG.info("MemcachedClient Version 2 started {}", cache);
+                if (DRUID_CACHE_LOCAL_MAX_BYTES > 0) {
+                    cache = new TieredTupleDataCache<>(new OffHeapDataCache<>(DRUID_CACHE_LOCAL_MAX_BYTES), cache);
+                }
                 return cache;
             } catch (IOException e) {
                 LOG.error("MemcachedClient Version 2 failed to start {}", e);
@@ -747,6 +798,9 @@ public abstract class AbstractBinderFactory implements BinderFactory {
             try {
                 DataCache<String> cache = new HashDataCache<>(new MemDataCache<HashDataCache.Pair<String, String>>());
                 LOG.info("MemcachedClient started {}", cache);
+                if (DRUID_CACHE_LOCAL_MAX_BYTES > 0) {
+                    cache = new TieredDataCache<>(new OffHeapDataCache<>(DRUID_CACHE_LOCAL_MAX_BYTES), cache);
+                }
                 return cache;
             } catch (IOException e) {
                 LOG.error("MemcachedClient failed to start {}", e);
@@ -911,7 +965,9 @@ public abstract class AbstractBinderFactory implements BinderFactory {
     /**
      * Create a DruidWebService.
      * <p>
-     * Provided so subclasses can implement alternative druid web service implementations
+     * Provided so subclasses can implement alternative druid web service implementations. A service configured with a
+     * comma separated list of URLs spreads its requests over a pool of brokers, one for each URL. Each broker of the
+     * pool hedges its slow queries on the next broker in the list.
      *
      * @param druidServiceConfig  Configuration for the Druid Service
      * @param mapper shared instance of {@link com.fasterxml.jackson.databind.ObjectMapper}
@@ -919,7 +975,21 @@ public abstract class AbstractBinderFactory implements BinderFactory {
      * @return A DruidWebService
      */
     protected DruidWebService buildDruidWebService(DruidServiceConfig druidServiceConfig, ObjectMapper mapper) {
-        return new AsyncDruidWebServiceImpl(druidServiceConfig, mapper);
+        List<String> urls = druidServiceConfig.getUrls();
+        if (urls.size() <= 1) {
+            return new AsyncDruidWebServiceImpl(druidServiceConfig, mapper);
+        }
+        List<DruidWebService> brokers = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            // List the broker's own URL first, then the others to hedge on
+            List<String> brokerUrls = new ArrayList<>(urls.subList(i, urls.size()));
+            brokerUrls.addAll(urls.subList(0, i));
+            brokers.add(new AsyncDruidWebServiceImpl(
+                    druidServiceConfig.withUrl(String.join(",", brokerUrls)),
+                    mapper
+            ));
+        }
+        return new LoadBalancingDruidWebService(druidServiceConfig, brokers);
     }
 
     /**
@@ -9,7 +9,13 @@ public enum BardFeatureFlag implements FeatureFlag {
     PARTIAL_DATA("partial_data_enabled"),
     DRUID_CACHE("druid_cache_enabled"),
     DRUID_CACHE_V2("druid_cache_v2_enabled"),
+    DRUID_CACHE_BUCKETS("druid_cache_buckets_enabled"),
+    DRUID_RESPONSE_STREAMING("druid_response_streaming_enabled"),
+    STREAMING_RESPONSES("streaming_responses_enabled"),
+    COLUMNAR_RESULT_SET("columnar_result_set_enabled"),
+    COMPACT_DIMENSION_ROWS("compact_dimension_rows_enabled"),
     QUERY_SPLIT("query_split_enabled"),
+    WEIGHT_ESTIMATION("weight_estimation_enabled"),
     TOP_N("top_n_enabled"),
     DATA_FILTER_SUBSTRING_OPERATIONS("data_filter_substring_operations_enabled"),
     INTERSECTION_REPORTING("intersection_reporting_enabled"),
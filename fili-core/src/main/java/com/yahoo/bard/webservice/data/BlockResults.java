@@ -0,0 +1,220 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.table.Schema;
+import com.yahoo.bard.webservice.util.Pagination;
+import com.yahoo.bard.webservice.util.SinglePagePagination;
+import com.yahoo.bard.webservice.web.util.PaginationParameters;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * Results which are kept in fixed size blocks elsewhere, such as in a file, and only read a block at a time while they
+ * are used.
+ * <p>
+ * Every block but the last holds the same number of results, so the block holding a result is found from its
+ * position, and a range of the results can be read without reading the blocks before it. Iterating over the results
+ * holds one block at a time, as does getting results in order, since the last block read is kept.
+ * <p>
+ * Block results are a read only list rather than a {@link ResultSet}, which holds its results, so every list operation
+ * reads the results it needs. They are handed to a response as its rows, alongside their schema.
+ */
+public class BlockResults extends AbstractList<Result> implements RandomAccess {
+
+    private final Schema schema;
+    private final int rowsPerBlock;
+    private final int firstRow;
+    private final int size;
+    private final IntFunction<List<Result>> blockReader;
+
+    // The block read most recently by get, so that getting the results in order reads each block once
+    private volatile ReadBlock lastBlock;
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     * @param rowsPerBlock  The number of results in each block but the last
+     * @param size  The total number of results
+     * @param blockReader  Reads the results of the block with the given index
+     */
+    public BlockResults(Schema schema, int rowsPerBlock, int size, IntFunction<List<Result>> blockReader) {
+        this(schema, rowsPerBlock, 0, size, blockReader);
+    }
+
+    /**
+     * Constructor for a range of the results in the blocks.
+     *
+     * @param schema  The associated schema
+     * @param rowsPerBlock  The number of results in each block but the last
+     * @param firstRow  The position in the blocks of the first result of the range
+     * @param size  The number of results in the range
+     * @param blockReader  Reads the results of the block with the given index
+     */
+    private BlockResults(
+            Schema schema,
+            int rowsPerBlock,
+            int firstRow,
+            int size,
+            IntFunction<List<Result>> blockReader
+    ) {
+        this.schema = schema;
+        this.rowsPerBlock = rowsPerBlock;
+        this.firstRow = firstRow;
+        this.size = size;
+        this.blockReader = blockReader;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Get a range of the results, without reading any of them.
+     *
+     * @param offset  The position of the first result of the range
+     * @param count  The most results to include
+     *
+     * @return the results in the range
+     */
+    public BlockResults getRange(int offset, int count) {
+        int start = Math.min(Math.max(offset, 0), size);
+        return new BlockResults(
+                schema,
+                rowsPerBlock,
+                firstRow + start,
+                Math.min(Math.max(count, 0), size - start),
+                blockReader
+        );
+    }
+
+    /**
+     * Get a page of the results, only reading the blocks of the page when it is used.
+     *
+     * @param paginationParameters  The page to get
+     *
+     * @return the pagination of the results, whose page of data is a BlockResults
+     *
+     * @throws com.yahoo.bard.webservice.web.PageNotFoundException if the page is past the last page of results
+     */
+    public Pagination<Result> getPage(PaginationParameters paginationParameters) {
+        int perPage = paginationParameters.getPerPage();
+        long offset = (long) (paginationParameters.getPage() - 1) * perPage;
+        return new SinglePagePagination<>(
+                getRange((int) Math.min(offset, Integer.MAX_VALUE), perPage),
+                paginationParameters,
+                size
+        );
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Result get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int row = firstRow + index;
+        int blockIndex = row / rowsPerBlock;
+        ReadBlock block = lastBlock;
+        if (block == null || block.index != blockIndex) {
+            block = new ReadBlock(blockIndex, blockReader.apply(blockIndex));
+            lastBlock = block;
+        }
+        return block.results.get(row % rowsPerBlock);
+    }
+
+    /**
+     * Iterate over the results, reading each block as it is reached.
+     *
+     * @return an iterator over the results
+     */
+    @Override
+    public Iterator<Result> iterator() {
+        return new Iterator<Result>() {
+            private int row = firstRow;
+            private int blockIndex = -1;
+            private List<Result> block;
+
+            @Override
+            public boolean hasNext() {
+                return row < firstRow + size;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (row / rowsPerBlock != blockIndex) {
+                    blockIndex = row / rowsPerBlock;
+                    block = blockReader.apply(blockIndex);
+                }
+                return block.get(row++ % rowsPerBlock);
+            }
+        };
+    }
+
+    /**
+     * Get a range of the results, without reading any of them.
+     *
+     * @param fromIndex  The position of the first result of the range
+     * @param toIndex  The position after the last result of the range
+     *
+     * @return the results in the range
+     */
+    @Override
+    public List<Result> subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+        }
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("From: " + fromIndex + " is after To: " + toIndex);
+        }
+        return getRange(fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Block results are read only, so they can't be sorted in place.
+     *
+     * @param comparator  The order the results would be sorted in
+     */
+    @Override
+    public void sort(Comparator<? super Result> comparator) {
+        throw new UnsupportedOperationException("Block results are read only");
+    }
+
+    @Override
+    public String toString() {
+        return "BlockResults{schema=" + schema + ", size=" + size + "}";
+    }
+
+    /**
+     * A block of results, and its index.
+     */
+    private static final class ReadBlock {
+        private final int index;
+        private final List<Result> results;
+
+        /**
+         * Constructor.
+         *
+         * @param index  The index of the block
+         * @param results  The results of the block
+         */
+        ReadBlock(int index, List<Result> results) {
+            this.index = index;
+            this.results = results;
+        }
+    }
+}
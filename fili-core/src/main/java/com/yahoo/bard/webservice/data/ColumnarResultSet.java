@@ -0,0 +1,735 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
+import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.table.Schema;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A ResultSet which stores its results by column rather than as a list of Result objects.
+ * <p>
+ * Timestamps are stored as epoch millis, numeric metric columns as long[] or double[], and dimension columns as int[]
+ * codes into a dictionary of the distinct dimension rows of the column. A metric column only stays primitive while
+ * every value in it can be rebuilt exactly, so a column mixing integral and fractional values (or holding strings,
+ * booleans or JSON) falls back to storing the values as objects.
+ * <p>
+ * Results are built on demand as views of a row, so {@link #get(int)} and iteration allocate a new Result each time.
+ * Code reading every row, such as writing a response, should read the columns instead through
+ * {@link #getTimeStampMillis}, {@link #getDimensionRow} and {@link #getMetricValue}, which build no Result. Every
+ * result in the set must share the same chronology. Operations that insert or remove rows anywhere but at the
+ * end rebuild the columns and are O(n).
+ */
+public class ColumnarResultSet extends ResultSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Views over the rows of the result set, giving the collection operations their iteration behavior.
+     */
+    private final List<Result> rows = new AbstractList<Result>() {
+        @Override
+        public Result get(int index) {
+            return ColumnarResultSet.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+    private final Map<DimensionColumn, DimensionValues> dimensionValues = new LinkedHashMap<>();
+    private final Map<MetricColumn, MetricValues> metricValues = new LinkedHashMap<>();
+
+    private long[] timeStamps;
+    private Chronology chronology;
+    private int size;
+
+    /**
+     * Constructor for an empty result set.
+     *
+     * @param schema  The associated schema
+     */
+    public ColumnarResultSet(Schema schema) {
+        this(Collections.emptyList(), schema);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param results  The list of results
+     * @param schema  The associated schema
+     */
+    public ColumnarResultSet(List<Result> results, Schema schema) {
+        super(Collections.emptyList(), schema);
+        this.timeStamps = new long[Math.max(results.size(), DEFAULT_CAPACITY)];
+        for (DimensionColumn column : schema.getColumns(DimensionColumn.class)) {
+            dimensionValues.put(column, new DimensionValues(timeStamps.length, 0));
+        }
+        for (MetricColumn column : schema.getColumns(MetricColumn.class)) {
+            metricValues.put(column, new MetricValues(timeStamps.length, 0));
+        }
+        for (Result result : results) {
+            add(result);
+        }
+    }
+
+    @Override
+    public ResultSet withResults(List<Result> results, Schema schema) {
+        return new ColumnarResultSet(results, schema);
+    }
+
+    /**
+     * The timestamp of a row, as epoch millis.
+     *
+     * @param index  The index of the row
+     *
+     * @return the timestamp of the row
+     */
+    public long getTimeStampMillis(int index) {
+        checkIndex(index);
+        return timeStamps[index];
+    }
+
+    /**
+     * The chronology of the timestamps of every row.
+     *
+     * @return the chronology, or null if the result set holds no rows
+     */
+    public Chronology getChronology() {
+        return chronology;
+    }
+
+    /**
+     * The dimension columns any row has a value for, in the order a view of a row holds them.
+     *
+     * @return the dimension columns
+     */
+    public Set<DimensionColumn> getDimensionColumns() {
+        return Collections.unmodifiableSet(dimensionValues.keySet());
+    }
+
+    /**
+     * Check if a row has a value for a dimension column, as a view of the row would.
+     *
+     * @param index  The index of the row
+     * @param column  The dimension column
+     *
+     * @return true if the row has a value for the column, even a null one
+     */
+    public boolean hasDimensionRow(int index, DimensionColumn column) {
+        checkIndex(index);
+        DimensionValues values = dimensionValues.get(column);
+        return values != null && values.isPresent(index);
+    }
+
+    /**
+     * The dimension row of a row for a dimension column, without building a view of the whole row.
+     *
+     * @param index  The index of the row
+     * @param column  The dimension column
+     *
+     * @return the dimension row, or null if the row has no value for the column
+     */
+    public DimensionRow getDimensionRow(int index, DimensionColumn column) {
+        checkIndex(index);
+        DimensionValues values = dimensionValues.get(column);
+        return values == null ? null : values.get(index);
+    }
+
+    /**
+     * The metric value of a row for a metric column, without building a view of the whole row.
+     *
+     * @param index  The index of the row
+     * @param column  The metric column
+     *
+     * @return the metric value, or null if the row has no value for the column
+     */
+    public Object getMetricValue(int index, MetricColumn column) {
+        checkIndex(index);
+        MetricValues values = metricValues.get(column);
+        return values == null ? null : values.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Result get(int index) {
+        checkIndex(index);
+
+        LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
+        for (Map.Entry<DimensionColumn, DimensionValues> entry : dimensionValues.entrySet()) {
+            if (entry.getValue().isPresent(index)) {
+                dimensionRows.put(entry.getKey(), entry.getValue().get(index));
+            }
+        }
+
+        LinkedHashMap<MetricColumn, Object> metrics = new LinkedHashMap<>();
+        for (Map.Entry<MetricColumn, MetricValues> entry : metricValues.entrySet()) {
+            if (entry.getValue().isPresent(index)) {
+                metrics.put(entry.getKey(), entry.getValue().get(index));
+            }
+        }
+
+        return new Result(dimensionRows, metrics, new DateTime(timeStamps[index], chronology));
+    }
+
+    @Override
+    public boolean add(Result result) {
+        if (size == timeStamps.length) {
+            grow(timeStamps.length * 2);
+        }
+        write(size, result);
+        size++;
+        return true;
+    }
+
+    @Override
+    public Result set(int index, Result result) {
+        Result previous = get(index);
+        write(index, result);
+        return previous;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Result> results) {
+        if (size + results.size() > timeStamps.length) {
+            grow(Math.max(timeStamps.length * 2, size + results.size()));
+        }
+        for (Result result : results) {
+            add(result);
+        }
+        return !results.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        chronology = null;
+        dimensionValues.replaceAll((column, values) -> new DimensionValues(timeStamps.length, 0));
+        metricValues.replaceAll((column, values) -> new MetricValues(timeStamps.length, 0));
+    }
+
+    @Override
+    public void add(int index, Result result) {
+        List<Result> results = new ArrayList<>(rows);
+        results.add(index, result);
+        rebuild(results);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Result> results) {
+        List<Result> newResults = new ArrayList<>(rows);
+        boolean changed = newResults.addAll(index, results);
+        rebuild(newResults);
+        return changed;
+    }
+
+    @Override
+    public Result remove(int index) {
+        List<Result> results = new ArrayList<>(rows);
+        Result removed = results.remove(index);
+        rebuild(results);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        List<Result> results = new ArrayList<>(rows);
+        boolean changed = results.remove(o);
+        if (changed) {
+            rebuild(results);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return removeIf(result -> !c.contains(result));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Result> filter) {
+        List<Result> results = new ArrayList<>(rows);
+        boolean changed = results.removeIf(filter);
+        if (changed) {
+            rebuild(results);
+        }
+        return changed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        List<Result> results = new ArrayList<>(rows);
+        results.subList(fromIndex, toIndex).clear();
+        rebuild(results);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Result> operator) {
+        for (int i = 0; i < size; i++) {
+            write(i, operator.apply(get(i)));
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super Result> c) {
+        List<Result> results = new ArrayList<>(rows);
+        results.sort(c);
+        rebuild(results);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Result> action) {
+        rows.forEach(action);
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return rows.iterator();
+    }
+
+    @Override
+    public ListIterator<Result> listIterator() {
+        return rows.listIterator();
+    }
+
+    @Override
+    public ListIterator<Result> listIterator(int index) {
+        return rows.listIterator(index);
+    }
+
+    @Override
+    public List<Result> subList(int fromIndex, int toIndex) {
+        return rows.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Spliterator<Result> spliterator() {
+        return rows.spliterator();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return rows.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return rows.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return rows.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return rows.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return rows.toArray(a);
+    }
+
+    @Override
+    public Object clone() {
+        return new ColumnarResultSet(rows, getSchema());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return rows.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return rows.hashCode();
+    }
+
+    /**
+     * Make sure an index refers to an existing row.
+     *
+     * @param index  The index of the row
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Replace the contents of this result set with the given results.
+     *
+     * @param results  The results to store
+     */
+    private void rebuild(List<Result> results) {
+        clear();
+        addAll(results);
+    }
+
+    /**
+     * Grow the storage of every column.
+     *
+     * @param capacity  The new number of rows the columns can hold
+     */
+    private void grow(int capacity) {
+        timeStamps = Arrays.copyOf(timeStamps, capacity);
+        dimensionValues.values().forEach(values -> values.grow(capacity));
+        metricValues.values().forEach(values -> values.grow(capacity));
+    }
+
+    /**
+     * Store a result in a row, adding columns for any value the result set does not have a column for yet.
+     *
+     * @param index  The index of the row
+     * @param result  The result to store in the row
+     */
+    private void write(int index, Result result) {
+        DateTime timeStamp = result.getTimeStamp();
+        if (chronology == null) {
+            chronology = timeStamp.getChronology();
+        } else if (!chronology.equals(timeStamp.getChronology())) {
+            throw new IllegalArgumentException(
+                    String.format("Result chronology %s does not match %s", timeStamp.getChronology(), chronology)
+            );
+        }
+        timeStamps[index] = timeStamp.getMillis();
+
+        Map<DimensionColumn, DimensionRow> dimensionRows = result.getDimensionRows();
+        for (DimensionColumn column : dimensionRows.keySet()) {
+            dimensionValues.computeIfAbsent(column, ignored -> new DimensionValues(timeStamps.length, size));
+        }
+        for (Map.Entry<DimensionColumn, DimensionValues> entry : dimensionValues.entrySet()) {
+            DimensionColumn column = entry.getKey();
+            if (dimensionRows.containsKey(column)) {
+                entry.getValue().set(index, dimensionRows.get(column));
+            } else {
+                entry.getValue().setAbsent(index);
+            }
+        }
+
+        Map<MetricColumn, Object> metrics = result.getMetricValues();
+        for (MetricColumn column : metrics.keySet()) {
+            metricValues.computeIfAbsent(column, ignored -> new MetricValues(timeStamps.length, size));
+        }
+        for (Map.Entry<MetricColumn, MetricValues> entry : metricValues.entrySet()) {
+            MetricColumn column = entry.getKey();
+            if (metrics.containsKey(column)) {
+                entry.getValue().set(index, metrics.get(column), size);
+            } else {
+                entry.getValue().setAbsent(index);
+            }
+        }
+    }
+
+    /**
+     * Dictionary encoded values of a dimension column.
+     */
+    private static final class DimensionValues {
+        private static final int ABSENT = -1;
+        private static final int NULL = -2;
+
+        private final List<DimensionRow> dictionary = new ArrayList<>();
+        private final Map<DimensionRow, Integer> codesByRow = new HashMap<>();
+        private int[] codes;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The number of rows the column can hold
+         * @param absentRows  The number of leading rows which have no value for the column
+         */
+        DimensionValues(int capacity, int absentRows) {
+            codes = new int[capacity];
+            Arrays.fill(codes, 0, absentRows, ABSENT);
+        }
+
+        /**
+         * Grow the storage of the column.
+         *
+         * @param capacity  The new number of rows the column can hold
+         */
+        void grow(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        /**
+         * Store the dimension row of a row.
+         *
+         * @param index  The index of the row
+         * @param dimensionRow  The dimension row to store
+         */
+        void set(int index, DimensionRow dimensionRow) {
+            if (dimensionRow == null) {
+                codes[index] = NULL;
+                return;
+            }
+            Integer code = codesByRow.get(dimensionRow);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(dimensionRow);
+                codesByRow.put(dimensionRow, code);
+            }
+            codes[index] = code;
+        }
+
+        /**
+         * Mark a row as not having a value for the column.
+         *
+         * @param index  The index of the row
+         */
+        void setAbsent(int index) {
+            codes[index] = ABSENT;
+        }
+
+        /**
+         * Check if a row has a value for the column.
+         *
+         * @param index  The index of the row
+         *
+         * @return true if the row has a value, even a null one
+         */
+        boolean isPresent(int index) {
+            return codes[index] != ABSENT;
+        }
+
+        /**
+         * The dimension row of a row.
+         *
+         * @param index  The index of the row
+         *
+         * @return the dimension row, or null if there isn't one
+         */
+        DimensionRow get(int index) {
+            int code = codes[index];
+            return code < 0 ? null : dictionary.get(code);
+        }
+    }
+
+    /**
+     * Values of a metric column, stored as primitives while the values allow it.
+     */
+    private static final class MetricValues {
+
+        /**
+         * How the values of a metric column are stored.
+         */
+        private enum Storage { NONE, LONG, DOUBLE, OBJECT }
+
+        private final BitSet absent = new BitSet();
+        private final BitSet nulls = new BitSet();
+        private Storage storage = Storage.NONE;
+        private int capacity;
+        private long[] longs;
+        private double[] doubles;
+        private Object[] objects;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity  The number of rows the column can hold
+         * @param absentRows  The number of leading rows which have no value for the column
+         */
+        MetricValues(int capacity, int absentRows) {
+            this.capacity = capacity;
+            absent.set(0, absentRows);
+        }
+
+        /**
+         * Grow the storage of the column.
+         *
+         * @param newCapacity  The new number of rows the column can hold
+         */
+        void grow(int newCapacity) {
+            capacity = newCapacity;
+            switch (storage) {
+                case LONG:
+                    longs = Arrays.copyOf(longs, capacity);
+                    break;
+                case DOUBLE:
+                    doubles = Arrays.copyOf(doubles, capacity);
+                    break;
+                case OBJECT:
+                    objects = Arrays.copyOf(objects, capacity);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Store the value of a row, moving the column to object storage if the value can't be stored as a primitive.
+         *
+         * @param index  The index of the row
+         * @param value  The value to store
+         * @param rowCount  The number of rows in the result set
+         */
+        void set(int index, Object value, int rowCount) {
+            absent.clear(index);
+            nulls.set(index, value == null);
+            if (value == null) {
+                return;
+            }
+
+            if (storage == Storage.NONE) {
+                if (isExactLong(value)) {
+                    storage = Storage.LONG;
+                    longs = new long[capacity];
+                } else if (isExactDouble(value)) {
+                    storage = Storage.DOUBLE;
+                    doubles = new double[capacity];
+                } else {
+                    storage = Storage.OBJECT;
+                    objects = new Object[capacity];
+                }
+            } else if (storage == Storage.LONG && !isExactLong(value)
+                    || storage == Storage.DOUBLE && !isExactDouble(value)) {
+                toObjectStorage(rowCount);
+            }
+
+            switch (storage) {
+                case LONG:
+                    longs[index] = ((BigDecimal) value).longValue();
+                    break;
+                case DOUBLE:
+                    doubles[index] = ((BigDecimal) value).doubleValue();
+                    break;
+                default:
+                    objects[index] = value;
+                    break;
+            }
+        }
+
+        /**
+         * Mark a row as not having a value for the column.
+         *
+         * @param index  The index of the row
+         */
+        void setAbsent(int index) {
+            absent.set(index);
+            nulls.set(index);
+        }
+
+        /**
+         * Check if a row has a value for the column.
+         *
+         * @param index  The index of the row
+         *
+         * @return true if the row has a value, even a null one
+         */
+        boolean isPresent(int index) {
+            return !absent.get(index);
+        }
+
+        /**
+         * The value of a row.
+         *
+         * @param index  The index of the row
+         *
+         * @return the value, or null if there isn't one
+         */
+        Object get(int index) {
+            if (nulls.get(index)) {
+                return null;
+            }
+            switch (storage) {
+                case LONG:
+                    return BigDecimal.valueOf(longs[index]);
+                case DOUBLE:
+                    return BigDecimal.valueOf(doubles[index]);
+                case OBJECT:
+                    return objects[index];
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Move the values of the column from primitive storage to object storage.
+         *
+         * @param rowCount  The number of rows in the result set
+         */
+        private void toObjectStorage(int rowCount) {
+            Object[] values = new Object[capacity];
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = get(i);
+            }
+            objects = values;
+            longs = null;
+            doubles = null;
+            storage = Storage.OBJECT;
+        }
+
+        /**
+         * Check if a value is a number that is rebuilt exactly from a long.
+         *
+         * @param value  The value to check
+         *
+         * @return true if the value can be stored as a long
+         */
+        private static boolean isExactLong(Object value) {
+            if (!(value instanceof BigDecimal)) {
+                return false;
+            }
+            BigDecimal number = (BigDecimal) value;
+            return number.scale() == 0 && number.unscaledValue().bitLength() < Long.SIZE;
+        }
+
+        /**
+         * Check if a value is a number that is rebuilt exactly from a double.
+         *
+         * @param value  The value to check
+         *
+         * @return true if the value can be stored as a double
+         */
+        private static boolean isExactDouble(Object value) {
+            if (!(value instanceof BigDecimal)) {
+                return false;
+            }
+            BigDecimal number = (BigDecimal) value;
+            double asDouble = number.doubleValue();
+            return !Double.isInfinite(asDouble) && Objects.equals(BigDecimal.valueOf(asDouble), number);
+        }
+    }
+}
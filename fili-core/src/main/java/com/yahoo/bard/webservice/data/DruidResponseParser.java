@@ -4,12 +4,17 @@ package com.yahoo.bard.webservice.data;
 
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.RESULT_SET_ERROR;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
 import com.yahoo.bard.webservice.druid.model.QueryType;
+import com.yahoo.bard.webservice.table.Column;
 import com.yahoo.bard.webservice.table.ZonedSchema;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.joda.time.DateTime;
@@ -17,10 +22,18 @@ import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.inject.Singleton;
 
@@ -50,19 +63,44 @@ public class DruidResponseParser {
         Set<DimensionColumn> dimensionColumns = schema.getColumns(DimensionColumn.class);
         Set<MetricColumn> metricColumns = schema.getColumns(MetricColumn.class);
 
-        List<Result> results;
+        ResultSet results = buildResultSet(schema);
+        Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache;
         switch (queryType) {
             case GROUP_BY:
-                results = makeGroupByResults(jsonResult, dimensionColumns, metricColumns, schema.getDateTimeZone());
+                dimensionRowCache = loadDimensionRows(dimensionColumns, jsonResult, "event");
+                makeGroupByResults(
+                        jsonResult,
+                        dimensionColumns,
+                        metricColumns,
+                        schema.getDateTimeZone(),
+                        dimensionRowCache,
+                        results
+                );
                 break;
             case TOP_N:
-                results = makeTopNResults(jsonResult, dimensionColumns, metricColumns, schema.getDateTimeZone());
+                dimensionRowCache = loadDimensionRows(dimensionColumns, jsonResult, "result");
+                makeTopNResults(
+                        jsonResult,
+                        dimensionColumns,
+                        metricColumns,
+                        schema.getDateTimeZone(),
+                        dimensionRowCache,
+                        results
+                );
                 break;
             case TIMESERIES:
-                results = makeTimeSeriesResults(jsonResult, metricColumns, schema.getDateTimeZone());
+                makeTimeSeriesResults(jsonResult, metricColumns, schema.getDateTimeZone(), results);
                 break;
             case LOOKBACK:
-                results = makeLookbackResults(jsonResult, dimensionColumns, metricColumns, schema.getDateTimeZone());
+                dimensionRowCache = loadDimensionRows(dimensionColumns, jsonResult, "result");
+                makeLookbackResults(
+                        jsonResult,
+                        dimensionColumns,
+                        metricColumns,
+                        schema.getDateTimeZone(),
+                        dimensionRowCache,
+                        results
+                );
                 break;
             default:
                 String msg = RESULT_SET_ERROR.logFormat(queryType);
@@ -71,58 +109,306 @@ public class DruidResponseParser {
         }
 
         LOG.trace("Parsed druid query {} results: {}", queryType, results);
-        return new ResultSet(results, schema);
+        return results;
+    }
+
+    /**
+     * Parse a Druid response into a ResultSet directly from the token stream, without building a JsonNode tree.
+     * <p>
+     * The results are equivalent to those produced by {@link #parse(JsonNode, ZonedSchema, QueryType)}, but only a
+     * single row of the response is buffered at a time.
+     *
+     * @param jsonParser  Parser positioned at (or immediately before) the root array of the Druid response
+     * @param schema  Schema for results
+     * @param queryType  the type of query
+     *
+     * @return the set of results
+     * @throws IOException if the response could not be read or is not a well formed Druid response
+     */
+    public ResultSet parse(JsonParser jsonParser, ZonedSchema schema, QueryType queryType) throws IOException {
+        ResultSet resultSet = buildResultSet(schema);
+        parse(jsonParser, schema, queryType, resultSet::add);
+
+        LOG.trace("Streamed druid query {} results: {}", queryType, resultSet);
+        return resultSet;
+    }
+
+    /**
+     * Parse a Druid response directly from the token stream, handing each result to a consumer as soon as it is read.
+     * <p>
+     * The consumer sees the results of {@link #parse(JsonParser, ZonedSchema, QueryType)} in the same order, and no
+     * result set is built, so the results may be written out while the rest of the response is still being read.
+     *
+     * @param jsonParser  Parser positioned at (or immediately before) the root array of the Druid response
+     * @param schema  Schema for results
+     * @param queryType  the type of query
+     * @param consumer  Consumer of each result, in the order of the response
+     *
+     * @throws IOException if the response could not be read or is not a well formed Druid response
+     */
+    public void parse(
+            JsonParser jsonParser,
+            ZonedSchema schema,
+            QueryType queryType,
+            Consumer<Result> consumer
+    ) throws IOException {
+
+        LOG.trace("Streaming druid query {} results using schema: {}", queryType, schema);
+
+        /* Get dimension and metric columns */
+        Set<DimensionColumn> dimensionColumns = schema.getColumns(DimensionColumn.class);
+        Set<MetricColumn> metricColumns = schema.getColumns(MetricColumn.class);
+
+        String entryFieldName;
+        switch (queryType) {
+            case GROUP_BY:
+                entryFieldName = "event";
+                break;
+            case TOP_N:
+            case LOOKBACK:
+                entryFieldName = "result";
+                break;
+            case TIMESERIES:
+                entryFieldName = "result";
+                dimensionColumns = Collections.emptySet();
+                break;
+            default:
+                String msg = RESULT_SET_ERROR.logFormat(queryType);
+                LOG.error(msg);
+                throw new UnsupportedOperationException(msg);
+        }
+
+        Set<String> dimensionNames = dimensionColumns.stream().map(Column::getName).collect(Collectors.toSet());
+        Set<String> metricNames = metricColumns.stream().map(Column::getName).collect(Collectors.toSet());
+
+        Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache = new HashMap<>();
+
+        JsonToken token = jsonParser.getCurrentToken() == null ? jsonParser.nextToken() : jsonParser.getCurrentToken();
+        if (token != JsonToken.START_ARRAY) {
+            throw new IOException("Expected an array of records at the root of the druid response, found: " + token);
+        }
+
+        /* loop over all records */
+        while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+            String timeStampText = null;
+            List<Map<String, Object>> entries = new ArrayList<>(1);
+
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = jsonParser.getCurrentName();
+                JsonToken valueToken = jsonParser.nextToken();
+                if ("timestamp".equals(fieldName)) {
+                    timeStampText = jsonParser.getText();
+                } else if (entryFieldName.equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+                    entries.add(readEntry(jsonParser, dimensionNames, metricNames));
+                } else if (entryFieldName.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    /* loop over records per timebucket */
+                    while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+                        entries.add(readEntry(jsonParser, dimensionNames, metricNames));
+                    }
+                } else {
+                    jsonParser.skipChildren();
+                }
+            }
+
+            if (timeStampText == null) {
+                throw new IOException("Druid response record is missing a timestamp");
+            }
+            DateTime timeStamp = new DateTime(timeStampText, schema.getDateTimeZone());
+
+            /* Key values not seen in earlier records are resolved with one batched lookup per dimension */
+            loadDimensionRows(dimensionColumns, entries, dimensionRowCache);
+            for (Map<String, Object> entry : entries) {
+                consumer.accept(new Result(
+                        extractDimensionRows(dimensionColumns, entry, dimensionRowCache),
+                        extractMetricValues(metricColumns, entry),
+                        timeStamp
+                ));
+            }
+        }
+    }
+
+    /**
+     * Build an empty result set for the results of a response, using the columnar layout if it is enabled.
+     * <p>
+     * Results are parsed straight into the result set, so a columnar result set never holds its rows as Results.
+     *
+     * @param schema  The schema of the result set
+     *
+     * @return the result set
+     */
+    private ResultSet buildResultSet(ZonedSchema schema) {
+        return BardFeatureFlag.COLUMNAR_RESULT_SET.isOn() ?
+                new ColumnarResultSet(schema) :
+                new ResultSet(Collections.emptyList(), schema);
+    }
+
+    /**
+     * Read the fields of a single json object that are needed by the dimension and metric columns.
+     * <p>
+     * The parser is expected to be positioned on the START_OBJECT token of the entry, and is left on its END_OBJECT.
+     * Dimension values are read as text, and metric values are read as they would be by {@link #getNodeValue}.
+     *
+     * @param jsonParser  the parser positioned at the start of the json object
+     * @param dimensionNames  the names of the dimension columns
+     * @param metricNames  the names of the metric columns
+     *
+     * @return map of column names to the values read for them
+     * @throws IOException if the entry could not be read
+     */
+    private Map<String, Object> readEntry(
+            JsonParser jsonParser,
+            Set<String> dimensionNames,
+            Set<String> metricNames
+    ) throws IOException {
+        Map<String, Object> entry = new HashMap<>();
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = jsonParser.getCurrentName();
+            JsonToken valueToken = jsonParser.nextToken();
+            if (metricNames.contains(fieldName)) {
+                entry.put(fieldName, getTokenValue(jsonParser, valueToken));
+            } else if (dimensionNames.contains(fieldName)) {
+                entry.put(fieldName, valueToken.isScalarValue() ? jsonParser.getValueAsString("") : "");
+                jsonParser.skipChildren();
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Extract the dimension rows for a streamed entry given the set of all available dimension columns.
+     *
+     * @param dimensionColumns  the set of dimension columns
+     * @param entry  the column values read from the json object
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     *
+     * @return map of dimension columns to dimension rows
+     */
+    private LinkedHashMap<DimensionColumn, DimensionRow> extractDimensionRows(
+            Set<DimensionColumn> dimensionColumns,
+            Map<String, Object> entry,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache
+    ) {
+        LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
+
+        for (DimensionColumn dc : dimensionColumns) {
+            String fieldValue = (String) entry.getOrDefault(dc.getName(), "");
+            dimensionRows.put(dc, findDimensionRow(dc, fieldValue, dimensionRowCache));
+        }
+
+        return dimensionRows;
+    }
+
+    /**
+     * Extract the metric values for a streamed entry given the set of all available metric columns.
+     *
+     * @param metricColumns  the set of metric columns
+     * @param entry  the column values read from the json object
+     *
+     * @return map of metric columns to metric values
+     */
+    private LinkedHashMap<MetricColumn, Object> extractMetricValues(
+            Set<MetricColumn> metricColumns,
+            Map<String, Object> entry
+    ) {
+        LinkedHashMap<MetricColumn, Object> metricValues = new LinkedHashMap<>();
+
+        for (MetricColumn mc : metricColumns) {
+            if (!entry.containsKey(mc.getName())) {
+                LOG.warn("Found null node for metric column {}", mc.getName());
+            } else {
+                metricValues.put(mc, entry.get(mc.getName()));
+            }
+        }
+
+        return metricValues;
+    }
+
+    /**
+     * Extracts the value of the current token of a parser.
+     * <p>
+     * Mirrors {@link #getNodeValue(JsonNode)}: floating point numbers go through a double, the same way they do when
+     * they are read into a tree, so that both parsing modes produce identical values.
+     *
+     * @param jsonParser  The parser positioned on the value to extract
+     * @param token  The current token of the parser
+     *
+     * @return the value as a BigDecimal if the token is a number, the value as a String if the token is textual,
+     * the value as a boolean if the token is a boolean, null if the token is null, and a JsonNode otherwise.
+     * @throws IOException if the value could not be read
+     */
+    private Object getTokenValue(JsonParser jsonParser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                return jsonParser.getDecimalValue();
+            case VALUE_NUMBER_FLOAT:
+                return BigDecimal.valueOf(jsonParser.getDoubleValue());
+            case VALUE_STRING:
+                return jsonParser.getText();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return jsonParser.getBooleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                return jsonParser.readValueAsTree();
+        }
     }
 
     /**
-     * Create a list of results from a JsonNode of a groupBy response.
+     * Create the results of a JsonNode of a groupBy response, adding them to a result set.
      *
      * @param jsonResult  current results to parse in json
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     * @param results  the result set to add the results to
      */
-    private List<Result> makeGroupByResults(
+    private void makeGroupByResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache,
+            ResultSet results
     ) {
-        List<Result> results = new ArrayList<>();
-
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
 
             JsonNode event = record.get("event");
-            LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = extractDimensionRows(dimensionColumns, event);
+            LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = extractDimensionRows(
+                    dimensionColumns,
+                    event,
+                    dimensionRowCache
+            );
             LinkedHashMap<MetricColumn, Object> metricValues = extractMetricValues(metricColumns, event);
 
             results.add(new Result(dimensionRows, metricValues, timeStamp));
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a topN response.
+     * Create the results of a JsonNode of a topN response, adding them to a result set.
      *
      * @param jsonResult  current record to parse
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     * @param results  the result set to add the results to
      */
-    private List<Result> makeTopNResults(
+    private void makeTopNResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache,
+            ResultSet results
     ) {
-        List<Result> results = new ArrayList<>();
-
         /* loop over all records */
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
@@ -132,33 +418,30 @@ public class DruidResponseParser {
             for (final JsonNode entry : result) {
                 LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = extractDimensionRows(
                         dimensionColumns,
-                        entry
+                        entry,
+                        dimensionRowCache
                 );
                 LinkedHashMap<MetricColumn, Object> metricValues = extractMetricValues(metricColumns, entry);
 
                 results.add(new Result(dimensionRows, metricValues, timeStamp));
             }
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a timeseries response.
+     * Create the results of a JsonNode of a timeseries response, adding them to a result set.
      *
      * @param jsonResult  current record to parse
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param results  the result set to add the results to
      */
-    private List<Result> makeTimeSeriesResults(
+    private void makeTimeSeriesResults(
             JsonNode jsonResult,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            ResultSet results
     ) {
-        List<Result> results = new ArrayList<>();
-
         /* loop over all records */
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
@@ -168,28 +451,26 @@ public class DruidResponseParser {
 
             results.add(new Result(new LinkedHashMap<>(), metricValues, timeStamp));
         }
-
-        return results;
     }
 
     /**
-     * Create a list of results from a JsonNode of a lookback response.
+     * Create the results of a JsonNode of a lookback response, adding them to a result set.
      *
      * @param jsonResult  current results to parse in json
      * @param dimensionColumns  set of dimension columns
      * @param metricColumns  set of metric columns
      * @param dateTimeZone  The date time zone to apply to timestamps
-     *
-     * @return list of results
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     * @param results  the result set to add the results to
      */
-    private List<Result> makeLookbackResults(
+    private void makeLookbackResults(
             JsonNode jsonResult,
             Set<DimensionColumn> dimensionColumns,
             Set<MetricColumn> metricColumns,
-            DateTimeZone dateTimeZone
+            DateTimeZone dateTimeZone,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache,
+            ResultSet results
     ) {
-        List<Result> results = new ArrayList<>();
-
         for (JsonNode record : jsonResult) {
             DateTime timeStamp = new DateTime(record.get("timestamp").asText(), dateTimeZone);
 
@@ -201,12 +482,11 @@ public class DruidResponseParser {
 
             dimensionRows = dimensionColumns == null ?
                     new LinkedHashMap<>() :
-                    extractDimensionRows(dimensionColumns, result);
+                    extractDimensionRows(dimensionColumns, result, dimensionRowCache);
 
 
             results.add(new Result(dimensionRows, metricValues, timeStamp));
         }
-        return results;
     }
 
     /**
@@ -215,12 +495,14 @@ public class DruidResponseParser {
      *
      * @param dimensionColumns  the set of dimension columns
      * @param entry  the json object
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
      *
      * @return map of dimension columns to dimension rows
      */
     private LinkedHashMap<DimensionColumn, DimensionRow> extractDimensionRows(
             Set<DimensionColumn> dimensionColumns,
-            JsonNode entry
+            JsonNode entry,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache
     ) {
         LinkedHashMap<DimensionColumn, DimensionRow> dimensionRows = new LinkedHashMap<>();
 
@@ -231,16 +513,126 @@ public class DruidResponseParser {
                 fieldValue = fieldNode.asText("");
             }
 
-            DimensionRow drow = dc.getDimension().findDimensionRowByKeyValue(fieldValue);
-            if (drow == null) {
-                drow = dc.getDimension().createEmptyDimensionRow(fieldValue);
-            }
-            dimensionRows.put(dc, drow);
+            dimensionRows.put(dc, findDimensionRow(dc, fieldValue, dimensionRowCache));
         }
 
         return dimensionRows;
     }
 
+    /**
+     * Resolve the dimension rows for every distinct key value of a json response.
+     *
+     * @param dimensionColumns  the set of dimension columns
+     * @param jsonResult  the druid response
+     * @param entryFieldName  the name of the field holding the entry, or array of entries, of each record
+     *
+     * @return the resolved dimension rows, by column and key value
+     */
+    private Map<DimensionColumn, Map<String, DimensionRow>> loadDimensionRows(
+            Set<DimensionColumn> dimensionColumns,
+            JsonNode jsonResult,
+            String entryFieldName
+    ) {
+        Map<DimensionColumn, Set<String>> keyValues = new HashMap<>();
+        for (DimensionColumn dc : dimensionColumns) {
+            Set<String> values = new LinkedHashSet<>();
+            for (JsonNode record : jsonResult) {
+                JsonNode result = record.path(entryFieldName);
+                if (result.isArray()) {
+                    for (JsonNode entry : result) {
+                        values.add(entry.path(dc.getName()).asText(""));
+                    }
+                } else {
+                    values.add(result.path(dc.getName()).asText(""));
+                }
+            }
+            keyValues.put(dc, values);
+        }
+
+        Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache = new HashMap<>();
+        resolveDimensionRows(keyValues, dimensionRowCache);
+        return dimensionRowCache;
+    }
+
+    /**
+     * Resolve the dimension rows for the key values of streamed entries that have not been resolved yet.
+     *
+     * @param dimensionColumns  the set of dimension columns
+     * @param entries  the column values read from the json objects
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     */
+    private void loadDimensionRows(
+            Set<DimensionColumn> dimensionColumns,
+            List<Map<String, Object>> entries,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache
+    ) {
+        Map<DimensionColumn, Set<String>> keyValues = new HashMap<>();
+        for (DimensionColumn dc : dimensionColumns) {
+            Map<String, DimensionRow> resolved = dimensionRowCache.getOrDefault(dc, Collections.emptyMap());
+            Set<String> values = new LinkedHashSet<>();
+            for (Map<String, Object> entry : entries) {
+                String fieldValue = (String) entry.getOrDefault(dc.getName(), "");
+                if (!resolved.containsKey(fieldValue)) {
+                    values.add(fieldValue);
+                }
+            }
+            keyValues.put(dc, values);
+        }
+        resolveDimensionRows(keyValues, dimensionRowCache);
+    }
+
+    /**
+     * Look up the dimension rows for sets of key values with one batched request per dimension, creating empty rows
+     * for key values the dimension has no row for.
+     *
+     * @param keyValues  the key values to resolve, by column
+     * @param dimensionRowCache  the cache to add the resolved dimension rows to, by column and key value
+     */
+    private void resolveDimensionRows(
+            Map<DimensionColumn, Set<String>> keyValues,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache
+    ) {
+        for (Map.Entry<DimensionColumn, Set<String>> entry : keyValues.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            Dimension dimension = entry.getKey().getDimension();
+            Map<String, DimensionRow> found = dimension.findDimensionRowsByKeyValues(entry.getValue());
+            Map<String, DimensionRow> resolved = dimensionRowCache.computeIfAbsent(
+                    entry.getKey(),
+                    ignored -> new HashMap<>()
+            );
+            for (String value : entry.getValue()) {
+                DimensionRow drow = found.get(value);
+                resolved.put(value, drow == null ? dimension.createEmptyDimensionRow(value) : drow);
+            }
+        }
+    }
+
+    /**
+     * Find the dimension row for a key value, or create an empty one if the dimension has no such row.
+     * <p>
+     * Rows are memoized in the cache, so each distinct key value is looked up at most once per response.
+     *
+     * @param dimensionColumn  the column whose dimension holds the row
+     * @param fieldValue  the key value of the row
+     * @param dimensionRowCache  the dimension rows already resolved for this response, by column and key value
+     *
+     * @return the dimension row for the key value
+     */
+    private DimensionRow findDimensionRow(
+            DimensionColumn dimensionColumn,
+            String fieldValue,
+            Map<DimensionColumn, Map<String, DimensionRow>> dimensionRowCache
+    ) {
+        return dimensionRowCache
+                .computeIfAbsent(dimensionColumn, ignored -> new HashMap<>())
+                .computeIfAbsent(fieldValue, value -> {
+                    DimensionRow drow = dimensionColumn.getDimension().findDimensionRowByKeyValue(value);
+                    return drow == null ? dimensionColumn.getDimension().createEmptyDimensionRow(value) : drow;
+                });
+    }
+
     /**
      * Extract the metric values for a json object given the set of all available metric columns and the json object.
      *
@@ -15,6 +15,7 @@ import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
+import com.yahoo.bard.webservice.table.Schema;
 import com.yahoo.bard.webservice.util.Pagination;
 import com.yahoo.bard.webservice.web.PreResponse;
 import com.yahoo.bard.webservice.web.Response;
@@ -73,7 +74,8 @@ public class HttpResponseMaker {
             UriInfo uriInfo
     ) {
         ResponseBuilder rspBuilder = createResponseBuilder(
-                preResponse.getResultSet(),
+                preResponse.getRows(),
+                preResponse.getSchema(),
                 preResponse.getResponseContext(),
                 responseFormatType,
                 uriInfo
@@ -106,6 +108,27 @@ public class HttpResponseMaker {
             ResponseContext responseContext,
             ResponseFormatType responseFormatType,
             UriInfo uriInfo
+    ) {
+        return createResponseBuilder(resultSet, resultSet.getSchema(), responseContext, responseFormatType, uriInfo);
+    }
+
+    /**
+     * Create a response builder with all the associated meta data.
+     *
+     * @param rows  The rows of the result set being processed
+     * @param schema  The schema of the rows
+     * @param responseContext  A meta data container for the state gathered by the web container
+     * @param responseFormatType  The format in which the response should be returned to the user
+     * @param uriInfo  UriInfo of the request
+     *
+     * @return Build response with requested format and associated meta data info.
+     */
+    private ResponseBuilder createResponseBuilder(
+            Iterable<Result> rows,
+            Schema schema,
+            ResponseContext responseContext,
+            ResponseFormatType responseFormatType,
+            UriInfo uriInfo
     ) {
         @SuppressWarnings("unchecked")
         Map<String, URI> bodyLinks = (Map<String, URI>) responseContext.get(
@@ -137,7 +160,8 @@ public class HttpResponseMaker {
                 ));
 
         Response response = new Response(
-                resultSet,
+                rows,
+                schema,
                 (Set<String>) responseContext.get(API_METRIC_COLUMN_NAMES.getName()),
                 requestedApiDimensionFields,
                 responseFormatType,
@@ -43,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -182,6 +183,39 @@ public class PreResponseDeserializer {
         );
     }
 
+    /**
+     * Deserialize the custom serialized PreResponse, reading it from a stream.
+     *
+     * @param preResponse  Stream of the custom serialized PreResponse
+     *
+     * @return De-serialized PreResponse object
+     *
+     * @throws IOException in case the stream can't be read or deserialization of ResponseContext fails
+     */
+    public PreResponse deserialize(InputStream preResponse) throws IOException {
+        JsonNode serializedPreResponse = nonResponseContextMapper.readTree(preResponse);
+        return new PreResponse(
+                getResultSet(serializedPreResponse.get(RESULT_SET_KEY)),
+                getResponseContext(serializedPreResponse.get(RESPONSE_CONTEXT_KEY))
+        );
+    }
+
+    /**
+     * Deserialize a stream of a JSON array of custom serialized results.
+     *
+     * @param results  Stream of the serialized results
+     * @param zonedSchema  Schema of the results, as deserialized with them
+     *
+     * @return De-serialized results
+     *
+     * @throws IOException in case the stream can't be read
+     */
+    public List<Result> deserializeResults(InputStream results, ZonedSchema zonedSchema) throws IOException {
+        return StreamSupport.stream(nonResponseContextMapper.readTree(results).spliterator(), false)
+                .map(serializedResult -> getResult(serializedResult, zonedSchema))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Deserialize the serialized ResponseContext. Method throws an IOException when mapper fails to read the
      * serialized ResponseContext.
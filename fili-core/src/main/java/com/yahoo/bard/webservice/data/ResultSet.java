@@ -25,6 +25,20 @@ public class ResultSet extends ArrayList<Result> {
         this.schema = schema;
     }
 
+    /**
+     * Build a result set with the same storage layout as this one.
+     * <p>
+     * Result set mappers use this to keep the layout of the result set they are mapping.
+     *
+     * @param results  The list of results
+     * @param schema  The associated schema
+     *
+     * @return a new result set holding the results
+     */
+    public ResultSet withResults(List<Result> results, Schema schema) {
+        return new ResultSet(results, schema);
+    }
+
     /**
      * Getter for ResultSet schema.
      *
@@ -0,0 +1,199 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data;
+
+import com.yahoo.bard.webservice.table.Schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The rows of a response, handed over by one thread while another thread reads them.
+ * <p>
+ * The producer puts each result as it is built, and then completes or fails the results. The consumer iterates over
+ * the results once, waiting up to the timeout for each one to be put, and closes the results once it is done with
+ * them, so that the producer stops.
+ * <p>
+ * The producer never waits for the consumer, since it may be a thread shared with other requests, such as the thread
+ * reading druid responses. The results the consumer has not taken yet are held instead, so a consumer that falls
+ * behind has the rest of the results buffered, as a response built whole would.
+ * <p>
+ * Streamed results are not a {@link ResultSet}, since they can't be sized, indexed or read more than once, so they are
+ * handed to the response as its row source alongside their schema instead.
+ */
+public class StreamingResults implements Iterable<Result>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingResults.class);
+
+    // Marks the end of the results
+    private static final Object END = new Object();
+
+    private final Schema schema;
+    private final BlockingQueue<Object> results;
+    private final long timeoutMillis;
+    private final AtomicBoolean iterated = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param schema  The associated schema
+     * @param timeoutMillis  How long the consumer waits for the producer to put a result before giving up
+     */
+    public StreamingResults(Schema schema, long timeoutMillis) {
+        this.schema = schema;
+        this.results = new LinkedBlockingQueue<>();
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Hand a result to the consumer, without waiting for the consumer to take it.
+     *
+     * @param result  The next result
+     *
+     * @throws UncheckedIOException if the results were closed
+     */
+    public void put(Result result) {
+        if (!offer(result)) {
+            throw new UncheckedIOException(new IOException("Streaming results were closed"));
+        }
+    }
+
+    /**
+     * Mark the end of the results.
+     */
+    public void complete() {
+        if (!offer(END)) {
+            LOG.debug("Streaming results were abandoned before they were complete");
+        }
+    }
+
+    /**
+     * Fail the results, so that the consumer stops at the next result.
+     * <p>
+     * Results that have not been taken yet are dropped.
+     *
+     * @param cause  Why the results could not be produced
+     */
+    public void fail(Throwable cause) {
+        results.clear();
+        results.offer(new Failure(cause));
+    }
+
+    /**
+     * Stop streaming, dropping any results that have not been taken, so that the producer stops at its next result.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        results.clear();
+    }
+
+    /**
+     * Offer a result or marker to the consumer.
+     *
+     * @param result  The result or marker
+     *
+     * @return false if the results were closed
+     */
+    private boolean offer(Object result) {
+        if (closed) {
+            return false;
+        }
+        results.offer(result);
+        return !closed;
+    }
+
+    /**
+     * Take the next result or marker from the producer.
+     *
+     * @return the next result, the end marker, or a failure if the producer failed or did not put a result in time
+     */
+    private Object take() {
+        try {
+            Object result = results.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (result == null) {
+                close();
+                return new Failure(new IOException("Timed out waiting for a streamed result"));
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            return new Failure(e);
+        }
+    }
+
+    /**
+     * Iterate over the results as they are put. Streaming results can only be iterated once.
+     *
+     * @return an iterator which waits for each result
+     *
+     * @throws IllegalStateException if the results have already been iterated
+     */
+    @Override
+    public Iterator<Result> iterator() {
+        if (!iterated.compareAndSet(false, true)) {
+            throw new IllegalStateException("Streaming results can only be read once");
+        }
+        return new Iterator<Result>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = take();
+                }
+                if (next instanceof Failure) {
+                    throw new IllegalStateException("Streaming results failed", ((Failure) next).cause);
+                }
+                return next != END;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result result = (Result) next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingResults{schema=" + schema + "}";
+    }
+
+    /**
+     * Marks a failure of the producer, or of waiting for it.
+     */
+    private static final class Failure {
+        private final Throwable cause;
+
+        /**
+         * Constructor.
+         *
+         * @param cause  The cause of the failure
+         */
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
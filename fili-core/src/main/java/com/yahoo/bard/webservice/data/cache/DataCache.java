@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.data.cache;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A very thin wrapper around key value storage.
@@ -21,6 +22,26 @@ public interface DataCache<T extends Serializable> {
      */
     T get(String key);
 
+    /**
+     * Read data from cache without waiting for the cache to answer.
+     * <p>
+     * By default the value is read with {@link #get(String)}, so the returned future is already complete.
+     *
+     * @param key  the key whose associated value is to be returned
+     *
+     * @return a future of the value to which the specified key is mapped, completed with {@code null} if this map
+     * contains no mapping for the key
+     */
+    default CompletableFuture<T> getAsync(String key) {
+        CompletableFuture<T> value = new CompletableFuture<>();
+        try {
+            value.complete(get(key));
+        } catch (RuntimeException e) {
+            value.completeExceptionally(e);
+        }
+        return value;
+    }
+
     /**
      * Put a value on a key in a data cache.
      *
@@ -14,6 +14,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractMap;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * DataCache using hashed keys to reduce the key length for the provided underlying cache.
@@ -97,7 +98,25 @@ public class HashDataCache<T extends Serializable> implements DataCache<T> {
     @Override
     final public T get(String key) {
         String hashkey = hash(key);
-        Pair<String, T> pair = cache.get(hashkey);
+        return getValue(key, hashkey, cache.get(hashkey));
+    }
+
+    @Override
+    public CompletableFuture<T> getAsync(String key) {
+        String hashkey = hash(key);
+        return cache.getAsync(hashkey).thenApply(pair -> getValue(key, hashkey, pair));
+    }
+
+    /**
+     * Get the value of a pair found by hashkey, if the pair is for the original key.
+     *
+     * @param key  The key whose associated value is to be returned
+     * @param hashkey  The hash of the key
+     * @param pair  The pair found in the underlying cache for the hashkey, or null if there is none
+     *
+     * @return the value of the pair, or null if there is no pair or the pair is for a key that collides with the key
+     */
+    private T getValue(String key, String hashkey, Pair<String, T> pair) {
         if (pair == null) {
             return null;
         } else if (Objects.equals(key, pair.getKey())) {
@@ -2,10 +2,14 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.cache;
 
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
 import com.yahoo.bard.webservice.config.SystemConfig;
 import com.yahoo.bard.webservice.config.SystemConfigException;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +19,8 @@ import net.spy.memcached.MemcachedClient;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -22,6 +28,10 @@ import javax.validation.constraints.NotNull;
 
 /**
  * MemCached client implementation of DataCache.  Internally uses hashed key to keep under 250 character limit.
+ * <p>
+ * Writes either wait for memcached to acknowledge them, or, if {@code memcached_max_pending_writes} is positive, are
+ * sent without waiting. Writes sent without waiting are bounded: once that many are waiting on memcached, further
+ * writes are dropped rather than queued, and counted by the dropped writes meter.
  * @param <T> Type of data
  */
 @Singleton
@@ -44,8 +54,21 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
     private static final int EXPIRATION_DEFAULT_VALUE = 3600;
     private static final int EXPIRATION = SYSTEM_CONFIG.getIntProperty(EXPIRATION_KEY, EXPIRATION_DEFAULT_VALUE);
 
+    private static final @NotNull String MAX_PENDING_WRITES_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("memcached_max_pending_writes");
+    private static final int MAX_PENDING_WRITES = SYSTEM_CONFIG.getIntProperty(MAX_PENDING_WRITES_KEY, 0);
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter WRITES_DROPPED = REGISTRY.meter("memcached.meter.writes.dropped");
+    public static final Meter WRITES_FAILED = REGISTRY.meter("memcached.meter.writes.failed");
+
     final private MemcachedClient client;
 
+    /**
+     * Permits for the writes sent without waiting on memcached, or null if writes wait on memcached.
+     */
+    final private Semaphore pendingWrites;
+
     /**
      * Constructor using a default Memcached Client.
      *
@@ -62,11 +85,22 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
      * @param client  The Memcached client to support this cache
      */
     public MemDataCache(MemcachedClient client) {
+        this(client, MAX_PENDING_WRITES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param client  The Memcached client to support this cache
+     * @param maxPendingWrites  The maximum number of writes waiting on memcached, or 0 to wait for each write
+     */
+    public MemDataCache(MemcachedClient client, int maxPendingWrites) {
         // validate expiration value
         if (EXPIRATION > EXPIRATION_MAX_VALUE) {
             throw new SystemConfigException("memcached_expiration_seconds exceeds " + EXPIRATION_MAX_VALUE);
         }
         this.client = client;
+        this.pendingWrites = maxPendingWrites > 0 ? new Semaphore(maxPendingWrites) : null;
     }
 
     @Override
@@ -81,18 +115,88 @@ public class MemDataCache<T extends Serializable> implements DataCache<T> {
         }
     }
 
+    @Override
+    public CompletableFuture<T> getAsync(String key) {
+        CompletableFuture<T> value = new CompletableFuture<>();
+        try {
+            client.asyncGet(key).addListener(future -> {
+                try {
+                    @SuppressWarnings("unchecked")
+                    T result = (T) future.get();
+                    value.complete(result);
+                } catch (Exception warnThenIgnore) {
+                    LOG.warn(warnThenIgnore.getMessage(), warnThenIgnore);
+                    value.complete(null);
+                }
+            });
+        } catch (RuntimeException warnThenIgnore) {
+            LOG.warn(warnThenIgnore.getMessage(), warnThenIgnore);
+            value.complete(null);
+        }
+        return value;
+    }
+
+    /**
+     * Put a value on a key in the cache.
+     * <p>
+     * If writes are sent without waiting on memcached, the write is dropped if too many writes are already waiting on
+     * memcached, and writes that memcached fails are only logged.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return true if the value was stored, or, if writes are sent without waiting on memcached, if it was sent
+     *
+     * @throws IllegalStateException if writes wait on memcached and the write failed
+     */
     @Override
     public boolean set(String key, T value) throws IllegalStateException {
+        if (pendingWrites != null) {
+            return sendSet(key, value);
+        }
         try {
             // Omitting null checking for key since it should be rare.
             // An exception will be thrown by the memcached client.
             return client.set(key, EXPIRATION, value).get();
         } catch (Exception e) {
+            WRITES_FAILED.mark();
             LOG.warn("set failed {} {}", key, e.toString());
             throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * Send a write to memcached without waiting for it to be acknowledged.
+     *
+     * @param key  the key under which this object should be added.
+     * @param value  the object to store
+     *
+     * @return true if the write was sent, false if it was dropped
+     */
+    private boolean sendSet(String key, T value) {
+        if (!pendingWrites.tryAcquire()) {
+            WRITES_DROPPED.mark();
+            LOG.debug("set dropped {}, too many pending writes", key);
+            return false;
+        }
+        try {
+            client.set(key, EXPIRATION, value).addListener(future -> {
+                pendingWrites.release();
+                if (!future.getStatus().isSuccess()) {
+                    WRITES_FAILED.mark();
+                    LOG.warn("set failed {} {}", key, future.getStatus().getMessage());
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            // Thrown when the client's own queue is too full to accept any more requests
+            pendingWrites.release();
+            WRITES_DROPPED.mark();
+            LOG.warn("set dropped {} {}", key, e.toString());
+            return false;
+        }
+    }
+
     @Override
     public void clear() {
         client.flush();
@@ -12,6 +12,7 @@ import java.io.Serializable;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Singleton;
 
@@ -63,6 +64,16 @@ public class MemTupleDataCache<V extends Serializable>
         super(client);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param client  The memcached client to support this cache.
+     * @param maxPendingWrites  The maximum number of writes waiting on memcached, or 0 to wait for each write.
+     */
+    public MemTupleDataCache(MemcachedClient client, int maxPendingWrites) {
+        super(client, maxPendingWrites);
+    }
+
     /**
      * Get the hash encoding of a key string.
      *
@@ -110,6 +121,11 @@ public class MemTupleDataCache<V extends Serializable>
         return super.get(hash(key));
     }
 
+    @Override
+    public CompletableFuture<TupleDataCache.DataEntry<String, Long, V>> getAsync(String key) {
+        return super.getAsync(hash(key));
+    }
+
     @Override
     public boolean set(String key, Long meta, V value) {
         return set(hash(key), new DataEntry<>(key, meta, value));
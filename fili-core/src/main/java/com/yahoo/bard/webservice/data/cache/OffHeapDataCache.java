@@ -0,0 +1,129 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * In-process DataCache holding its values outside of the Java heap.
+ * <p>
+ * Values are serialized, compressed and copied into direct byte buffers, so a large cache adds little to the heap the
+ * garbage collector has to scan. The cache is bounded by the bytes held by keys and values, and evicts the least
+ * recently used values first. Each read decompresses and deserializes a new copy of the value.
+ * <p>
+ * The bound only counts the values still in the cache. The buffers of evicted values are freed when they are garbage
+ * collected, so the JVM's direct memory ({@code -XX:MaxDirectMemorySize}) must be sized well above the bound. If
+ * direct memory runs out anyway, the value is not cached, rather than the error reaching the caller.
+ *
+ * @param <T> The type of the cache values
+ */
+public class OffHeapDataCache<T extends Serializable> implements DataCache<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapDataCache.class);
+
+    private final Cache<String, ByteBuffer> cache;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes  Maximum number of bytes held by the keys and the compressed values of the cache
+     */
+    public OffHeapDataCache(long maxBytes) {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, ByteBuffer value) -> 2 * key.length() + value.capacity())
+                .build();
+    }
+
+    @Override
+    public T get(String key) {
+        ByteBuffer buffer = cache.getIfPresent(key);
+        if (buffer == null) {
+            return null;
+        }
+
+        // Read through a duplicate, so concurrent reads of the same value don't share a position
+        byte[] bytes = new byte[buffer.capacity()];
+        buffer.duplicate().get(bytes);
+        try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+            @SuppressWarnings("unchecked")
+            T value = (T) in.readObject();
+            return value;
+        } catch (IOException | ClassNotFoundException | RuntimeException warnThenIgnore) {
+            LOG.warn("Unable to read cached value for {}", key, warnThenIgnore);
+            cache.invalidate(key);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean set(String key, T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeObject(value);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to cache value for {}", key, e);
+            return false;
+        } finally {
+            // Release the native memory of the deflater now rather than when it is garbage collected
+            deflater.end();
+        }
+
+        byte[] compressed = bytes.toByteArray();
+        ByteBuffer buffer;
+        try {
+            buffer = allocate(compressed.length);
+        } catch (OutOfMemoryError e) {
+            // Direct memory is exhausted, which only costs this value its place in the cache. An older value of the
+            // key would now be stale, so it is dropped as well
+            LOG.warn("Unable to allocate {} bytes of direct memory to cache value for {}", compressed.length, key, e);
+            cache.invalidate(key);
+            return false;
+        }
+        buffer.put(compressed).flip();
+        cache.put(key, buffer);
+        return true;
+    }
+
+    /**
+     * Allocate the buffer a compressed value is copied into.
+     *
+     * @param capacity  The size of the compressed value in bytes
+     *
+     * @return a direct buffer of the given capacity
+     *
+     * @throws OutOfMemoryError if there isn't enough direct memory left for the buffer
+     */
+    protected ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the number of values held by the cache.
+     *
+     * @return the number of cached values
+     */
+    public long size() {
+        return cache.size();
+    }
+}
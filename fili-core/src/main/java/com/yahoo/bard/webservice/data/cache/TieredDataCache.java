@@ -0,0 +1,112 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * DataCache layering a small, fast local cache in front of a shared remote cache.
+ * <p>
+ * Reads go to the local cache first, and only go to the remote cache on a local miss, in which case the value found
+ * remotely is copied into the local cache. Writes go to both caches. Hits and misses are metered for each tier.
+ *
+ * @param <T> The type of the cache values
+ */
+public class TieredDataCache<T extends Serializable> implements DataCache<T> {
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter LOCAL_HITS = REGISTRY.meter("queries.meter.cache.local.hits");
+    public static final Meter LOCAL_MISSES = REGISTRY.meter("queries.meter.cache.local.misses");
+    public static final Meter REMOTE_HITS = REGISTRY.meter("queries.meter.cache.remote.hits");
+    public static final Meter REMOTE_MISSES = REGISTRY.meter("queries.meter.cache.remote.misses");
+
+    private final DataCache<T> localCache;
+    private final DataCache<T> remoteCache;
+
+    /**
+     * Constructor.
+     *
+     * @param localCache  The cache read first
+     * @param remoteCache  The cache read on a miss of the local cache
+     */
+    public TieredDataCache(DataCache<T> localCache, DataCache<T> remoteCache) {
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+    }
+
+    @Override
+    public T get(String key) {
+        T value = localCache.get(key);
+        if (value != null) {
+            LOCAL_HITS.mark();
+            return value;
+        }
+        LOCAL_MISSES.mark();
+        return cacheLocally(key, remoteCache.get(key));
+    }
+
+    @Override
+    public CompletableFuture<T> getAsync(String key) {
+        T value = localCache.get(key);
+        if (value != null) {
+            LOCAL_HITS.mark();
+            return CompletableFuture.completedFuture(value);
+        }
+        LOCAL_MISSES.mark();
+        return remoteCache.getAsync(key).thenApply(remoteValue -> cacheLocally(key, remoteValue));
+    }
+
+    @Override
+    public boolean set(String key, T value) throws IllegalStateException {
+        localCache.set(key, value);
+        return remoteCache.set(key, value);
+    }
+
+    @Override
+    public void clear() {
+        localCache.clear();
+        remoteCache.clear();
+    }
+
+    /**
+     * Get the local tier of the cache.
+     *
+     * @return the local cache
+     */
+    protected DataCache<T> getLocalCache() {
+        return localCache;
+    }
+
+    /**
+     * Get the remote tier of the cache.
+     *
+     * @return the remote cache
+     */
+    protected DataCache<T> getRemoteCache() {
+        return remoteCache;
+    }
+
+    /**
+     * Copy a value read from the remote cache into the local cache.
+     *
+     * @param key  The key the value was read for
+     * @param value  The value read from the remote cache, or null if the remote cache missed
+     *
+     * @return the value
+     */
+    private T cacheLocally(String key, T value) {
+        if (value == null) {
+            REMOTE_MISSES.mark();
+        } else {
+            REMOTE_HITS.mark();
+            localCache.set(key, value);
+        }
+        return value;
+    }
+}
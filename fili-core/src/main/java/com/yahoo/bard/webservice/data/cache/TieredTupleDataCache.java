@@ -0,0 +1,48 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * TupleDataCache layering a small, fast local cache in front of a shared remote tuple cache.
+ * <p>
+ * Whole entries, including their metadata, are held in the local cache, so an entry read locally is checked against
+ * the current segment metadata exactly like an entry read remotely. Entries rewritten because their metadata went
+ * stale are rewritten in both tiers.
+ *
+ * @param <V>  The raw data type of the cache.
+ */
+public class TieredTupleDataCache<V extends Serializable>
+        extends TieredDataCache<TupleDataCache.DataEntry<String, Long, V>>
+        implements TupleDataCache<String, Long, V> {
+
+    private final TupleDataCache<String, Long, V> remoteTupleCache;
+
+    /**
+     * Constructor.
+     *
+     * @param localCache  The cache read first, holding entries by their unhashed key
+     * @param remoteCache  The cache read on a miss of the local cache
+     */
+    public TieredTupleDataCache(
+            DataCache<TupleDataCache.DataEntry<String, Long, V>> localCache,
+            TupleDataCache<String, Long, V> remoteCache
+    ) {
+        super(localCache, remoteCache);
+        this.remoteTupleCache = remoteCache;
+    }
+
+    @Override
+    public V getDataValue(String key) {
+        TupleDataCache.DataEntry<String, Long, V> entry = get(key);
+        return entry != null && Objects.equals(entry.getKey(), key) ? entry.getValue() : null;
+    }
+
+    @Override
+    public boolean set(String key, Long meta, V value) {
+        getLocalCache().set(key, new MemTupleDataCache.DataEntry<>(key, meta, value));
+        return remoteTupleCache.set(key, meta, value);
+    }
+}
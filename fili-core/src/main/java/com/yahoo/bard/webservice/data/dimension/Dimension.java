@@ -8,6 +8,8 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import org.joda.time.DateTime;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -108,6 +110,27 @@ public interface Dimension {
      */
     DimensionRow findDimensionRowByKeyValue(String value);
 
+    /**
+     * Get the dimension rows for a collection of ids.
+     * <p>
+     * Implementations backed by a remote store should override this to fetch all of the rows in a single batch.
+     *
+     * @param values  key values to find rows for
+     *
+     * @return a map of key value to dimension row, in the order of the given values, with no entries for key values
+     * that have no matching row
+     */
+    default Map<String, DimensionRow> findDimensionRowsByKeyValues(Collection<String> values) {
+        Map<String, DimensionRow> dimensionRows = new LinkedHashMap<>(values.size());
+        for (String value : values) {
+            DimensionRow dimensionRow = findDimensionRowByKeyValue(value);
+            if (dimensionRow != null) {
+                dimensionRows.put(value, dimensionRow);
+            }
+        }
+        return dimensionRows;
+    }
+
     /**
      * Get primary key field for this dimension.
      *
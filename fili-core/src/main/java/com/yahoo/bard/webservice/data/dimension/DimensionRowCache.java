@@ -0,0 +1,346 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * An in-process cache of decoded dimension rows, keyed by dimension and key value.
+ * <p>
+ * Sits in front of a dimension's key value store so that repeated lookups of the same row skip both the store and
+ * the deserialization of the row. Key values that have no row are cached as well. The cache is bounded either by
+ * number of entries or by an estimate of the bytes held, and evicts the least recently used rows first.
+ * <p>
+ * Invalidation only reaches the cache of the node that changed the rows. When several nodes share a key value store,
+ * such as a {@code RedisStore}, the rows cached by the other nodes stay stale until they expire, so set a time to live
+ * that is as stale as those nodes may serve rows, or only enable the cache on dimensions with node local stores.
+ * <p>
+ * Rows handed out by the cache are shared, so callers must copy a row before changing it.
+ */
+public class DimensionRowCache {
+
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    // Property names
+    private static final @NotNull String MAX_ENTRIES_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("dimension_row_cache_max_entries");
+    private static final @NotNull String MAX_BYTES_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("dimension_row_cache_max_bytes");
+    private static final @NotNull String TTL_SECONDS_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("dimension_row_cache_ttl_seconds");
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter CACHE_HITS = REGISTRY.meter("dimension.meter.row_cache.hits");
+    public static final Meter CACHE_MISSES = REGISTRY.meter("dimension.meter.row_cache.misses");
+    public static final Meter CACHE_EVICTIONS = REGISTRY.meter("dimension.meter.row_cache.evictions");
+
+    // Rough per entry and per field costs of the objects making up a cached row, used to estimate its size
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int FIELD_OVERHEAD_BYTES = 64;
+
+    private static DimensionRowCache instance = null;
+
+    private final Cache<RowKey, Optional<DimensionRow>> cache;
+
+    // Bumped on every invalidation, so that rows loaded before an invalidation are not put in the cache after it
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructor.
+     * <p>
+     * The cache is disabled, and every lookup goes to the loader, if neither bound is positive. Rows are kept until
+     * they are evicted or invalidated.
+     *
+     * @param maxEntries  Maximum number of rows to hold, ignored if maxBytes is positive
+     * @param maxBytes  Maximum estimated size in bytes of the rows to hold
+     */
+    public DimensionRowCache(long maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, 0);
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * The cache is disabled, and every lookup goes to the loader, if neither bound is positive.
+     *
+     * @param maxEntries  Maximum number of rows to hold, ignored if maxBytes is positive
+     * @param maxBytes  Maximum estimated size in bytes of the rows to hold
+     * @param ttlSeconds  How long after it is cached a row is dropped, or 0 to keep rows until they are evicted
+     */
+    public DimensionRowCache(long maxEntries, long maxBytes, long ttlSeconds) {
+        this(maxEntries, maxBytes, ttlSeconds, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries  Maximum number of rows to hold, ignored if maxBytes is positive
+     * @param maxBytes  Maximum estimated size in bytes of the rows to hold
+     * @param ttlSeconds  How long after it is cached a row is dropped, or 0 to keep rows until they are evicted
+     * @param ticker  Source of the time the age of the cached rows is measured with
+     */
+    protected DimensionRowCache(long maxEntries, long maxBytes, long ttlSeconds, Ticker ticker) {
+        if (maxBytes <= 0 && maxEntries <= 0) {
+            cache = null;
+            return;
+        }
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (maxBytes > 0) {
+            builder.maximumWeight(maxBytes).weigher(DimensionRowCache::estimateBytes);
+        } else {
+            builder.maximumSize(maxEntries);
+        }
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).ticker(ticker);
+        }
+        cache = builder
+                .removalListener(notification -> countEviction(notification.getCause()))
+                .build();
+    }
+
+    /**
+     * Get the shared cache, sized from the system configuration.
+     *
+     * @return the shared dimension row cache
+     */
+    public static synchronized DimensionRowCache getInstance() {
+        if (instance == null) {
+            instance = new DimensionRowCache(
+                    SYSTEM_CONFIG.getLongProperty(MAX_ENTRIES_KEY, 0),
+                    SYSTEM_CONFIG.getLongProperty(MAX_BYTES_KEY, 0),
+                    SYSTEM_CONFIG.getLongProperty(TTL_SECONDS_KEY, 0)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Whether or not the cache holds any rows.
+     *
+     * @return true if the cache is bounded, false if every lookup goes to the loader
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Get the row for a key value, loading and caching it if it is not cached.
+     *
+     * @param dimension  Dimension the row belongs to
+     * @param keyValue  Key value of the row
+     * @param loader  Reads the row for a key value from the backing store, returning null if there is no such row
+     *
+     * @return the dimension row, or null if the dimension has no row for the key value
+     */
+    public DimensionRow get(Dimension dimension, String keyValue, Function<String, DimensionRow> loader) {
+        if (cache == null) {
+            return loader.apply(keyValue);
+        }
+
+        RowKey key = new RowKey(dimension, keyValue);
+        Optional<DimensionRow> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            CACHE_HITS.mark();
+            return cached.orElse(null);
+        }
+        CACHE_MISSES.mark();
+
+        long loadGeneration = generation.get();
+        DimensionRow dimensionRow = loader.apply(keyValue);
+        putIfCurrent(key, Optional.ofNullable(dimensionRow), loadGeneration);
+        return dimensionRow;
+    }
+
+    /**
+     * Get the rows for a collection of key values, loading the ones that are not cached in a single batch.
+     *
+     * @param dimension  Dimension the rows belong to
+     * @param keyValues  Key values of the rows
+     * @param loader  Reads the rows for a collection of key values from the backing store, leaving out the key values
+     * that have no row
+     *
+     * @return a map of key value to dimension row, in the order of the given values, with no entries for key values
+     * that have no matching row
+     */
+    public Map<String, DimensionRow> getAll(
+            Dimension dimension,
+            Collection<String> keyValues,
+            Function<Collection<String>, Map<String, DimensionRow>> loader
+    ) {
+        if (cache == null) {
+            return loader.apply(keyValues);
+        }
+
+        Map<String, Optional<DimensionRow>> rows = new LinkedHashMap<>(keyValues.size());
+        List<String> misses = new ArrayList<>();
+        for (String keyValue : keyValues) {
+            Optional<DimensionRow> cached = cache.getIfPresent(new RowKey(dimension, keyValue));
+            rows.put(keyValue, cached);
+            if (cached == null) {
+                misses.add(keyValue);
+            }
+        }
+        CACHE_HITS.mark(rows.size() - misses.size());
+        CACHE_MISSES.mark(misses.size());
+
+        if (!misses.isEmpty()) {
+            long loadGeneration = generation.get();
+            Map<String, DimensionRow> loaded = loader.apply(misses);
+            for (String keyValue : misses) {
+                Optional<DimensionRow> dimensionRow = Optional.ofNullable(loaded.get(keyValue));
+                rows.put(keyValue, dimensionRow);
+                putIfCurrent(new RowKey(dimension, keyValue), dimensionRow, loadGeneration);
+            }
+        }
+
+        Map<String, DimensionRow> dimensionRows = new LinkedHashMap<>(rows.size());
+        rows.forEach((keyValue, dimensionRow) -> dimensionRow.ifPresent(row -> dimensionRows.put(keyValue, row)));
+        return dimensionRows;
+    }
+
+    /**
+     * Drop the cached rows for some key values of a dimension.
+     *
+     * @param dimension  Dimension the rows belong to
+     * @param keyValues  Key values of the rows to drop
+     */
+    public void invalidate(Dimension dimension, Collection<String> keyValues) {
+        if (cache == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        for (String keyValue : keyValues) {
+            cache.invalidate(new RowKey(dimension, keyValue));
+        }
+    }
+
+    /**
+     * Drop all of the cached rows of a dimension.
+     *
+     * @param dimension  Dimension the rows belong to
+     */
+    public void invalidateAll(Dimension dimension) {
+        if (cache == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.dimension.equals(dimension));
+    }
+
+    /**
+     * Get the number of rows held by the cache.
+     *
+     * @return the number of cached rows, including key values cached as having no row
+     */
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * Cache a loaded row, unless the cache has been invalidated since the load started.
+     * <p>
+     * An invalidation can also land between checking the generation and putting the row, so the generation is checked
+     * again once the row is in the cache, and the row is taken back out if it has changed.
+     *
+     * @param key  Dimension and key value of the row
+     * @param dimensionRow  The loaded row, or empty if there is no such row
+     * @param loadGeneration  The generation of the cache when the load started
+     */
+    private void putIfCurrent(RowKey key, Optional<DimensionRow> dimensionRow, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        cache.put(key, dimensionRow);
+        if (generation.get() != loadGeneration) {
+            cache.asMap().remove(key, dimensionRow);
+        }
+    }
+
+    /**
+     * Count a row leaving the cache if it was pushed out by the size bound.
+     *
+     * @param cause  Why the row left the cache
+     */
+    private static void countEviction(RemovalCause cause) {
+        if (cause == RemovalCause.SIZE) {
+            CACHE_EVICTIONS.mark();
+        }
+    }
+
+    /**
+     * Estimate the heap used by a cached row.
+     *
+     * @param key  Dimension and key value of the row
+     * @param dimensionRow  The cached row, or empty if there is no such row
+     *
+     * @return the rough size of the entry in bytes
+     */
+    private static int estimateBytes(RowKey key, Optional<DimensionRow> dimensionRow) {
+        int bytes = ENTRY_OVERHEAD_BYTES + 2 * key.keyValue.length();
+        if (dimensionRow.isPresent()) {
+            for (String value : dimensionRow.get().values()) {
+                bytes += FIELD_OVERHEAD_BYTES + (value == null ? 0 : 2 * value.length());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The dimension and key value a row is cached under.
+     */
+    private static final class RowKey {
+        private final Dimension dimension;
+        private final String keyValue;
+
+        /**
+         * Constructor.
+         *
+         * @param dimension  Dimension the row belongs to
+         * @param keyValue  Key value of the row
+         */
+        RowKey(Dimension dimension, String keyValue) {
+            this.dimension = dimension;
+            this.keyValue = keyValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey that = (RowKey) o;
+            return Objects.equals(dimension, that.dimension) && Objects.equals(keyValue, that.keyValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimension, keyValue);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+/**
+ * Converts dimension rows to and from the values they are held as in a key value store.
+ */
+public interface DimensionRowCodec {
+
+    /**
+     * Encode a dimension row.
+     *
+     * @param dimension  Dimension the row belongs to
+     * @param dimensionRow  Row to encode
+     *
+     * @return the row as it is held in the store
+     */
+    String encode(Dimension dimension, DimensionRow dimensionRow);
+
+    /**
+     * Decode a dimension row.
+     * <p>
+     * Codecs should be able to read rows written by older codecs, so that the rows in a store do not need to be
+     * rewritten when the codec changes.
+     *
+     * @param dimension  Dimension the row belongs to
+     * @param encodedRow  The row as it is held in the store
+     *
+     * @return the dimension row
+     */
+    DimensionRow decode(Dimension dimension, String encodedRow);
+}
@@ -0,0 +1,54 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+/**
+ * Codec that holds dimension rows as a JSON object of field names to values.
+ */
+public class JsonDimensionRowCodec implements DimensionRowCodec {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonDimensionRowCodec.class);
+
+    private static final TypeReference<LinkedHashMap<String, String>> ROW_TYPE =
+            new TypeReference<LinkedHashMap<String, String>>() { };
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor.
+     */
+    public JsonDimensionRowCodec() {
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @Override
+    public String encode(Dimension dimension, DimensionRow dimensionRow) {
+        try {
+            return objectMapper.writeValueAsString(dimensionRow);
+        } catch (IOException e) {
+            LOG.error("Cannot map DimensionRow object to string. {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public DimensionRow decode(Dimension dimension, String encodedRow) {
+        if (PositionalDimensionRowCodec.isPositional(encodedRow)) {
+            return PositionalDimensionRowCodec.decodePositional(dimension, encodedRow);
+        }
+        try {
+            return dimension.parseDimensionRow(objectMapper.readValue(encodedRow, ROW_TYPE));
+        } catch (IOException e) {
+            LOG.error("Cannot map string to DimensionRow object. {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -3,6 +3,8 @@
 package com.yahoo.bard.webservice.data.dimension;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.validation.constraints.NotNull;
@@ -47,6 +49,26 @@ public interface KeyValueStore extends Closeable {
      */
     String get(@NotNull String key);
 
+    /**
+     * Get the values for multiple keys from store.
+     * <p>
+     * Stores that pay a round trip per request should override this to fetch all of the keys at once.
+     *
+     * @param keys  Keys to get the values for
+     *
+     * @return Map of key/value pairs, in the order of the given keys, with no entries for keys that are not set
+     */
+    default Map<String, String> getAll(@NotNull Collection<String> keys) {
+        Map<String, String> values = new LinkedHashMap<>(keys.size());
+        for (String key : keys) {
+            String value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
     /**
      * Get the health status of the store.
      *
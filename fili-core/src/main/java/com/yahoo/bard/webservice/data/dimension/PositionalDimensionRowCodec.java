@@ -0,0 +1,88 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Codec that holds dimension rows as their field values, in the order of the dimension's fields.
+ * <p>
+ * An encoded row starts with a version marker, followed by each value as its length, a ':' and the value itself, so
+ * field names are not repeated in every row and rows are read without a JSON parser. Since values are matched to
+ * fields by position, fields may only be added to the end of a dimension's fields once rows have been stored; values
+ * for fields missing from a stored row are read as the empty string.
+ * <p>
+ * Rows stored as JSON, by {@link JsonDimensionRowCodec}, are still read, and are rewritten in the positional format
+ * when they are next updated.
+ */
+public class PositionalDimensionRowCodec extends JsonDimensionRowCodec {
+
+    /**
+     * Marker starting every row written in version 1 of the format. JSON rows always start with '{'.
+     */
+    public static final char VERSION_1 = '\u0001';
+
+    private static final char LENGTH_SEPARATOR = ':';
+
+    private static final String MISSING_ROW_KEY_FORMAT = "Dimension row '%s' doesn't contain a value for key '%s'";
+    private static final String MALFORMED_ROW_FORMAT = "Malformed dimension row '%s' for dimension '%s'";
+
+    @Override
+    public String encode(Dimension dimension, DimensionRow dimensionRow) {
+        StringBuilder encoded = new StringBuilder().append(VERSION_1);
+        for (DimensionField field : dimension.getDimensionFields()) {
+            String value = dimensionRow.get(field);
+            if (value == null) {
+                value = "";
+            }
+            encoded.append(value.length()).append(LENGTH_SEPARATOR).append(value);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Check whether an encoded row is in the positional format.
+     *
+     * @param encodedRow  The row as it is held in the store
+     *
+     * @return true if the row was written by this codec
+     */
+    public static boolean isPositional(String encodedRow) {
+        return !encodedRow.isEmpty() && encodedRow.charAt(0) == VERSION_1;
+    }
+
+    /**
+     * Decode a row written in the positional format.
+     *
+     * @param dimension  Dimension the row belongs to
+     * @param encodedRow  The row as it is held in the store
+     *
+     * @return the dimension row
+     */
+    public static DimensionRow decodePositional(Dimension dimension, String encodedRow) {
+        LinkedHashSet<DimensionField> fields = dimension.getDimensionFields();
+        LinkedHashMap<DimensionField, String> values = new LinkedHashMap<>(fields.size());
+
+        int position = 1;
+        for (DimensionField field : fields) {
+            if (position >= encodedRow.length()) {
+                if (field == dimension.getKey()) {
+                    throw new IllegalArgumentException(String.format(MISSING_ROW_KEY_FORMAT, encodedRow, field));
+                }
+                values.put(field, "");
+                continue;
+            }
+            int separator = encodedRow.indexOf(LENGTH_SEPARATOR, position);
+            try {
+                int start = separator + 1;
+                int end = start + Integer.parseInt(encodedRow.substring(position, separator));
+                values.put(field, encodedRow.substring(start, end));
+                position = end;
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                throw new IllegalArgumentException(String.format(MALFORMED_ROW_FORMAT, encodedRow, dimension), e);
+            }
+        }
+        return new DimensionRow(dimension.getKey(), values);
+    }
+}
@@ -7,10 +7,16 @@ import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisException;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +28,9 @@ import javax.validation.constraints.NotNull;
 public class RedisStore implements KeyValueStore {
     private static final Logger LOG = LoggerFactory.getLogger(RedisStore.class);
 
+    // Number of keys read by each MGET of a bulk read, to keep the size of a single reply bounded
+    private static final int MGET_BATCH_SIZE = 1000;
+
     private boolean redisIsHealthy;
     private final JedisPool pool;
     private final String storeName;
@@ -105,6 +114,63 @@ public class RedisStore implements KeyValueStore {
         }
     }
 
+    /**
+     * Get the values for multiple keys from store.
+     * <p>
+     * The keys are read with MGET commands of at most {@value #MGET_BATCH_SIZE} keys each, pipelined over a single
+     * connection, so the whole read costs one round trip.
+     *
+     * @param keys  Keys to get the values for
+     *
+     * @return Map of key/value pairs, in the order of the given keys, with no entries for keys that are not set
+     */
+    @Override
+    public Map<String, String> getAll(@NotNull Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Cannot get null keys");
+        }
+
+        List<String> keyList = new ArrayList<>(keys.size());
+        List<Response<List<String>>> batches = new ArrayList<>(keys.size() / MGET_BATCH_SIZE + 1);
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<String> rKeys = new ArrayList<>(Math.min(keys.size(), MGET_BATCH_SIZE));
+            for (String key : keys) {
+                if (key == null) {
+                    throw new IllegalArgumentException("Cannot get null key");
+                }
+                keyList.add(key);
+                rKeys.add(redisKey(storeName, key));
+                if (rKeys.size() == MGET_BATCH_SIZE) {
+                    batches.add(pipeline.mget(rKeys.toArray(new String[rKeys.size()])));
+                    rKeys.clear();
+                }
+            }
+            // Jedis crashes when passed an empty array, so only send a partial batch if there is one
+            if (!rKeys.isEmpty()) {
+                batches.add(pipeline.mget(rKeys.toArray(new String[rKeys.size()])));
+            }
+            pipeline.sync();
+        } catch (JedisException e) {
+            redisIsHealthy = false;
+            String msg = String.format("Unable to get %d keys", keys.size());
+            LOG.error(msg);
+            throw new RuntimeException(msg, e);
+        }
+
+        Map<String, String> values = new LinkedHashMap<>(keyList.size());
+        int index = 0;
+        for (Response<List<String>> batch : batches) {
+            for (String value : batch.get()) {
+                String key = keyList.get(index++);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return values;
+    }
+
     @Override
     public boolean isHealthy() {
         // If we know we're not healthy, don't bother pinging.
@@ -0,0 +1,165 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension.impl;
+
+import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
+import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The list of the keys of all the rows of a dimension, held in a key value store.
+ * <p>
+ * The list is split into chunks of at most {@value #CHUNK_SIZE} row keys, each stored as a JSON list under
+ * {@link DimensionStoreKeyUtils#getAllValuesKey(int)}, so that adding rows only rewrites the last chunk. The first
+ * chunk is held under the key the whole list used to be held under, so a list written as a single value is read as
+ * a list with one chunk, and new rows are added to new chunks after it.
+ */
+public class AllValuesIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(AllValuesIndex.class);
+
+    /**
+     * Maximum number of row keys held by a chunk.
+     */
+    public static final int CHUNK_SIZE = 10000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final KeyValueStore keyValueStore;
+
+    /**
+     * Constructor.
+     *
+     * @param keyValueStore  Store holding the index
+     */
+    public AllValuesIndex(KeyValueStore keyValueStore) {
+        this.keyValueStore = keyValueStore;
+    }
+
+    /**
+     * Get the keys of all of the rows, in the order they were added.
+     *
+     * @return the row keys
+     */
+    public List<String> getRowKeys() {
+        int chunkCount = getChunkCount();
+        List<String> chunkKeys = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            chunkKeys.add(DimensionStoreKeyUtils.getAllValuesKey(chunk));
+        }
+
+        Map<String, String> chunks = keyValueStore.getAll(chunkKeys);
+        List<String> rowKeys = new ArrayList<>();
+        for (String chunkKey : chunkKeys) {
+            String chunk = chunks.get(chunkKey);
+            if (chunk != null) {
+                rowKeys.addAll(readChunk(chunk));
+            }
+        }
+        return rowKeys;
+    }
+
+    /**
+     * Add row keys to the end of the index.
+     * <p>
+     * Row keys already in the last chunk of the index are not added again. Callers are expected to only add the keys
+     * of rows that are new to the store, since the other chunks are not checked.
+     *
+     * @param rowKeys  The keys of the rows to add
+     */
+    public void addRowKeys(Collection<String> rowKeys) {
+        if (rowKeys.isEmpty()) {
+            return;
+        }
+
+        int lastChunk = getChunkCount() - 1;
+        Set<String> chunk = new LinkedHashSet<>(readChunk(keyValueStore.get(
+                DimensionStoreKeyUtils.getAllValuesKey(lastChunk)
+        )));
+
+        Map<String, String> writes = new HashMap<>();
+        for (String rowKey : rowKeys) {
+            if (chunk.size() >= CHUNK_SIZE && !chunk.contains(rowKey)) {
+                writes.put(DimensionStoreKeyUtils.getAllValuesKey(lastChunk), writeChunk(chunk));
+                chunk = new LinkedHashSet<>();
+                lastChunk++;
+            }
+            chunk.add(rowKey);
+        }
+        writes.put(DimensionStoreKeyUtils.getAllValuesKey(lastChunk), writeChunk(chunk));
+        writes.put(DimensionStoreKeyUtils.getAllValuesChunksKey(), Integer.toString(lastChunk + 1));
+        keyValueStore.putAll(writes);
+    }
+
+    /**
+     * Remove every row key from the index, leaving it with a single empty chunk.
+     */
+    public void clear() {
+        Map<String, String> writes = new HashMap<>();
+        int chunkCount = getChunkCount();
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            writes.put(DimensionStoreKeyUtils.getAllValuesKey(chunk), null);
+        }
+        writes.put(DimensionStoreKeyUtils.getAllValuesChunksKey(), null);
+        writes.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
+        keyValueStore.putAll(writes);
+    }
+
+    /**
+     * Get the number of chunks the index is stored in.
+     *
+     * @return the number of chunks, which is 1 for an index stored as a single value
+     */
+    private int getChunkCount() {
+        String chunkCount = keyValueStore.get(DimensionStoreKeyUtils.getAllValuesChunksKey());
+        return chunkCount == null ? 1 : Integer.parseInt(chunkCount);
+    }
+
+    /**
+     * Read the row keys of a chunk.
+     *
+     * @param chunk  The chunk as it is stored, or null if the chunk is not stored
+     *
+     * @return the row keys of the chunk
+     */
+    private static List<String> readChunk(String chunk) {
+        if (chunk == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return Arrays.asList(OBJECT_MAPPER.readValue(chunk, String[].class));
+        } catch (IOException e) {
+            LOG.error("Exception while reading dimension row keys {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the row keys of a chunk.
+     *
+     * @param rowKeys  The row keys of the chunk
+     *
+     * @return the chunk as it is stored
+     */
+    private static String writeChunk(Collection<String> rowKeys) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(rowKeys);
+        } catch (IOException e) {
+            LOG.error("Exception while writing dimension row keys {}", e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,29 +2,30 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
 import com.yahoo.bard.webservice.data.config.dimension.DimensionConfig;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCache;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCodec;
+import com.yahoo.bard.webservice.data.dimension.JsonDimensionRowCodec;
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
+import com.yahoo.bard.webservice.data.dimension.PositionalDimensionRowCodec;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -56,8 +57,9 @@ public class KeyValueStoreDimension implements Dimension {
     private final Map<String, DimensionField> nameToDimensionField;
 
     private final KeyValueStore keyValueStore;
-    private final ObjectMapper objectMapper;
+    private final DimensionRowCodec rowCodec;
     private final SearchProvider searchProvider;
+    private final DimensionRowCache dimensionRowCache;
 
     private final String lastUpdatedKey;
 
@@ -67,6 +69,9 @@ public class KeyValueStoreDimension implements Dimension {
 
     /**
      * Constructor.
+     * <p>
+     * Decoded rows are held in the shared {@link DimensionRowCache}, and rows are written to the store in the
+     * positional format if compact dimension rows are enabled, and as JSON otherwise.
      *
      * @param dimensionName  API Name of the dimension
      * @param longName  Long API Name of the dimension
@@ -88,6 +93,51 @@ public class KeyValueStoreDimension implements Dimension {
             SearchProvider searchProvider,
             @NotNull LinkedHashSet<DimensionField> defaultDimensionFields,
             boolean isAggregatable
+    ) {
+        this(
+                dimensionName,
+                longName,
+                category,
+                description,
+                dimensionFields,
+                keyValueStore,
+                searchProvider,
+                defaultDimensionFields,
+                isAggregatable,
+                DimensionRowCache.getInstance(),
+                BardFeatureFlag.COMPACT_DIMENSION_ROWS.isOn() ?
+                        new PositionalDimensionRowCodec() :
+                        new JsonDimensionRowCodec()
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dimensionName  API Name of the dimension
+     * @param longName  Long API Name of the dimension
+     * @param category  Category of the dimension
+     * @param description  Description of the dimension
+     * @param dimensionFields  Metadata fields of the dimension
+     * @param keyValueStore  Metadata store for the dimension
+     * @param searchProvider  Search provider over the metadata for the dimension
+     * @param defaultDimensionFields  Default fields for the dimension
+     * @param isAggregatable  Whether the dimension is aggregatable
+     * @param dimensionRowCache  Cache of the decoded rows of the dimension
+     * @param rowCodec  Codec for the rows held in the key value store
+     */
+    public KeyValueStoreDimension(
+            String dimensionName,
+            String longName,
+            String category,
+            String description,
+            @NotNull LinkedHashSet<DimensionField> dimensionFields,
+            @NotNull KeyValueStore keyValueStore,
+            SearchProvider searchProvider,
+            @NotNull LinkedHashSet<DimensionField> defaultDimensionFields,
+            boolean isAggregatable,
+            @NotNull DimensionRowCache dimensionRowCache,
+            @NotNull DimensionRowCodec rowCodec
     ) {
         this.apiName = dimensionName;
         this.longName = longName;
@@ -101,10 +151,10 @@ public class KeyValueStoreDimension implements Dimension {
         this.nameToDimensionField = buildNameToDimensionField(dimensionFields);
 
         this.keyValueStore = keyValueStore;
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        this.rowCodec = rowCodec;
         this.key = dimensionFields.isEmpty() ? null : dimensionFields.iterator().next();
         this.searchProvider = searchProvider;
+        this.dimensionRowCache = dimensionRowCache;
 
         this.searchProvider.setDimension(this);
         this.searchProvider.setKeyValueStore(keyValueStore);
@@ -381,47 +431,98 @@ public class KeyValueStoreDimension implements Dimension {
         Map<String, String> storeRows = new LinkedHashMap<>(dimensionRows.size());
         Map<String, Pair<DimensionRow, DimensionRow>> indexRows = new LinkedHashMap<>(dimensionRows.size());
 
+        // Read the current versions of all of the rows in a single batch
+        Map<String, String> existingRows = keyValueStore.getAll(
+                dimensionRows.stream()
+                        .filter(dimensionRow -> !dimensionRow.isEmpty() && dimensionRow.get(getKey()) != null)
+                        .map(dimensionRow -> DimensionStoreKeyUtils.getRowKey(
+                                getKey().getName(),
+                                dimensionRow.get(getKey())
+                        ))
+                        .collect(Collectors.toCollection(LinkedHashSet::new))
+        );
+
         for (DimensionRow dimensionRow : dimensionRows) {
-            try {
-                if (dimensionRow.isEmpty()) {
-                    LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
+            if (dimensionRow.isEmpty()) {
+                LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
+                continue;
+            } else if (dimensionRow.get(getKey()) == null) {
+                LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
+                throw new IllegalArgumentException("Cannot add dimension with null key.");
+            }
+
+            // rowId  - key to associate a dimension row to its id
+            String rowIdKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
+
+            // check if the dimension row already exists in store
+            DimensionRow dimensionRowOld = null;
+            String row = existingRows.get(rowIdKey);
+            if (row != null) {
+                dimensionRowOld = rowCodec.decode(this, row);
+                if (dimensionRow.equals(dimensionRowOld)) {
                     continue;
-                } else if (dimensionRow.get(getKey()) == null) {
-                    LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
-                    throw new IllegalArgumentException("Cannot add dimension with null key.");
                 }
+            }
 
-                // rowId  - key to associate a dimension row to its id
-                String rowIdKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
-
-                // check if the dimension row already exists in store
-                DimensionRow dimensionRowOld = null;
-                String row = keyValueStore.get(rowIdKey);
-                if (row != null) {
-                    LinkedHashMap<String, String> fieldNameValueMap = objectMapper.readValue(
-                            row,
-                            new TypeReference<LinkedHashMap<String, String>>() { }
-                    );
-                    dimensionRowOld = parseDimensionRow(fieldNameValueMap);
-                    if (dimensionRow.equals(dimensionRowOld)) {
-                        continue;
-                    }
-                }
+            storeRows.put(rowIdKey, rowCodec.encode(this, dimensionRow));
 
-                String dimRowSerialized = objectMapper.writeValueAsString(dimensionRow);
-                storeRows.put(rowIdKey, dimRowSerialized);
+            //update indexes
+            indexRows.put(rowIdKey, new Pair<>(dimensionRow, dimensionRowOld));
+        }
 
-                //update indexes
-                indexRows.put(rowIdKey, new Pair<>(dimensionRow, dimensionRowOld));
+        keyValueStore.putAll(storeRows);
+        dimensionRowCache.invalidate(
+                this,
+                indexRows.values().stream()
+                        .map(rows -> getRowCacheKey(rows.getKey().get(getKey())))
+                        .collect(Collectors.toList())
+        );
+        searchProvider.refreshIndex(indexRows);
+    }
 
-            } catch (IOException e) {
-                LOG.error("Exception while adding dimension row {}", e);
-                throw new RuntimeException(e);
+    /**
+     * Replace all of the rows of the dimension with the given rows, for loading a new copy of a dimension in bulk.
+     * <p>
+     * Rows that are not in the new copy are removed. Rows with the same key value are stored once, keeping the last of
+     * them. A dimension searched with Lucene has its index rebuilt in a single pass, while other search providers
+     * have their indexes cleared and the rows added to them again. The last updated date of the dimension is kept.
+     *
+     * @param dimensionRows  All of the rows of the dimension
+     */
+    public void replaceAllDimensionRows(Collection<DimensionRow> dimensionRows) {
+        Map<String, DimensionRow> rowsByRowKey = new LinkedHashMap<>(dimensionRows.size());
+        for (DimensionRow dimensionRow : dimensionRows) {
+            if (dimensionRow.isEmpty()) {
+                LOG.warn("Ignoring attempt to add a dimension row with no data {}", dimensionRow);
+                continue;
+            } else if (dimensionRow.get(getKey()) == null) {
+                LOG.warn("Attempting to add a dimension row with a null key {}", dimensionRow);
+                throw new IllegalArgumentException("Cannot add dimension with null key.");
             }
+            String rowKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey()));
+            rowsByRowKey.put(rowKey, dimensionRow);
         }
 
+        if (!(searchProvider instanceof LuceneSearchProvider)) {
+            DateTime lastUpdated = getLastUpdated();
+            searchProvider.clearDimension();
+            dimensionRowCache.invalidateAll(this);
+            addAllDimensionRows(new LinkedHashSet<>(rowsByRowKey.values()));
+            setLastUpdated(lastUpdated);
+            return;
+        }
+
+        // Drop the stored rows that are not in the new copy of the dimension
+        searchProvider.findAllDimensionRows().stream()
+                .map(dimensionRow -> DimensionStoreKeyUtils.getRowKey(getKey().getName(), dimensionRow.get(getKey())))
+                .filter(rowKey -> !rowsByRowKey.containsKey(rowKey))
+                .forEach(keyValueStore::remove);
+
+        Map<String, String> storeRows = new LinkedHashMap<>(rowsByRowKey.size());
+        rowsByRowKey.forEach((rowKey, dimensionRow) -> storeRows.put(rowKey, rowCodec.encode(this, dimensionRow)));
         keyValueStore.putAll(storeRows);
-        searchProvider.refreshIndex(indexRows);
+        dimensionRowCache.invalidateAll(this);
+        ((LuceneSearchProvider) searchProvider).replaceIndex(rowsByRowKey.values());
     }
 
     @Override
@@ -445,61 +546,144 @@ public class KeyValueStoreDimension implements Dimension {
 
     @Override
     public DimensionRow findDimensionRowByKeyValue(String value) {
+        return dimensionRowCache.get(this, getRowCacheKey(value), this::readDimensionRowByKeyValue);
+    }
+
+    @Override
+    public Map<String, DimensionRow> findDimensionRowsByKeyValues(Collection<String> values) {
+        Map<String, String> cacheKeys = new LinkedHashMap<>(values.size());
+        for (String value : values) {
+            cacheKeys.put(value, getRowCacheKey(value));
+        }
+
+        Map<String, DimensionRow> cachedRows = dimensionRowCache.getAll(
+                this,
+                new LinkedHashSet<>(cacheKeys.values()),
+                this::readDimensionRowsByKeyValues
+        );
+
+        Map<String, DimensionRow> dimensionRows = new LinkedHashMap<>(cacheKeys.size());
+        for (Map.Entry<String, String> cacheKey : cacheKeys.entrySet()) {
+            DimensionRow dimensionRow = cachedRows.get(cacheKey.getValue());
+            if (dimensionRow != null) {
+                dimensionRows.put(cacheKey.getKey(), dimensionRow);
+            }
+        }
+        return dimensionRows;
+    }
+
+    /**
+     * Get the key a row is cached under in the row cache.
+     * <p>
+     * Row keys in the key value store are case insensitive, so the key values that map to the same row share an
+     * entry, and are invalidated together.
+     *
+     * @param value  key value
+     *
+     * @return the row cache key for the key value
+     */
+    private static String getRowCacheKey(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Read a dimension row from the key value store, bypassing the row cache.
+     *
+     * @param value  key value
+     *
+     * @return the dimension row, or null if no matching row is found
+     */
+    private DimensionRow readDimensionRowByKeyValue(String value) {
         /*
          * Key to fetch row from keyValueStore
          * eg: if key column is ID and value is 12345
          * rowKey would be id_12345_row_key
          */
         String rowKey = DimensionStoreKeyUtils.getRowKey(getKey().getName(), value);
-        DimensionRow drByKey = null;
-        try {
-            String dimRowJson = keyValueStore.get(rowKey);
+        String dimRowJson = keyValueStore.get(rowKey);
+        return dimRowJson == null ? null : rowCodec.decode(this, dimRowJson);
+    }
+
+    /**
+     * Read the dimension rows for a collection of ids from the key value store with a single batched request,
+     * bypassing the row cache.
+     *
+     * @param values  key values to find rows for
+     *
+     * @return a map of key value to dimension row, with no entries for key values that have no matching row
+     */
+    private Map<String, DimensionRow> readDimensionRowsByKeyValues(Collection<String> values) {
+        Map<String, String> rowKeys = new LinkedHashMap<>(values.size());
+        for (String value : values) {
+            rowKeys.put(DimensionStoreKeyUtils.getRowKey(getKey().getName(), value), value);
+        }
+
+        Map<String, String> dimRowJsons = keyValueStore.getAll(rowKeys.keySet());
+
+        Map<String, DimensionRow> dimensionRows = new LinkedHashMap<>(dimRowJsons.size());
+        for (Map.Entry<String, String> rowKey : rowKeys.entrySet()) {
+            String dimRowJson = dimRowJsons.get(rowKey.getKey());
             if (dimRowJson != null) {
-                Map<String, String> dimensionRowMap = objectMapper.readValue(
-                        dimRowJson,
-                        new TypeReference<LinkedHashMap<String, String>>() { }
-                );
-                drByKey = parseDimensionRow(dimensionRowMap);
+                dimensionRows.put(rowKey.getValue(), rowCodec.decode(this, dimRowJson));
             }
-        } catch (IOException e) {
-            LOG.error("Cannot map string to DimensionRow object. {}", e);
-            throw new RuntimeException(e);
         }
-        return drByKey;
+        return dimensionRows;
     }
 
+    /**
+     * Get the codec for the rows held in the key value store.
+     *
+     * @return the row codec
+     */
+    public DimensionRowCodec getRowCodec() {
+        return rowCodec;
+    }
 
     /**
-     * Internal method for cleaning the dimension rows.
+     * Rewrite every row held in the key value store with the codec of this dimension.
+     * <p>
+     * Rows are read in any format the codec understands, so this moves a store written with an older codec over to
+     * the current one. The rows themselves do not change, so neither the search index nor the row cache is touched.
+     *
+     * @return the number of rows rewritten
      */
-    public void deleteAllDimensionRows() {
-        try {
-            String dimRowIndexes = keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey());
-            if (dimRowIndexes == null) {
-                LOG.debug("Null value for dimension {} while deleting: ", apiName);
-                return;
+    public int migrateDimensionRows() {
+        Map<String, String> storedRows = keyValueStore.getAll(new AllValuesIndex(keyValueStore).getRowKeys());
+
+        Map<String, String> migratedRows = new LinkedHashMap<>(storedRows.size());
+        for (Map.Entry<String, String> storedRow : storedRows.entrySet()) {
+            String migratedRow = rowCodec.encode(this, rowCodec.decode(this, storedRow.getValue()));
+            if (!migratedRow.equals(storedRow.getValue())) {
+                migratedRows.put(storedRow.getKey(), migratedRow);
             }
+        }
 
-            String[] keys = objectMapper.readValue(dimRowIndexes, String[].class);
-
-            LinkedHashSet<String> dimRowKeys = new LinkedHashSet<>(Arrays.asList(keys));
+        keyValueStore.putAll(migratedRows);
+        LOG.debug("Migrated {} dimension rows of dimension {}", migratedRows.size(), apiName);
+        return migratedRows.size();
+    }
 
-            for (String dimRowKey : dimRowKeys) {
-                keyValueStore.remove(dimRowKey);
-            }
-            searchProvider.setKeyValueStore(keyValueStore);
+    /**
+     * Internal method for cleaning the dimension rows.
+     */
+    public void deleteAllDimensionRows() {
+        if (keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey()) == null) {
+            LOG.debug("Null value for dimension {} while deleting: ", apiName);
+            return;
+        }
 
-            // Reset cardinality to 0
-            keyValueStore.put(DimensionStoreKeyUtils.getCardinalityKey(), "0");
+        AllValuesIndex allValuesIndex = new AllValuesIndex(keyValueStore);
+        for (String dimRowKey : new LinkedHashSet<>(allValuesIndex.getRowKeys())) {
+            keyValueStore.remove(dimRowKey);
+        }
+        searchProvider.setKeyValueStore(keyValueStore);
+        dimensionRowCache.invalidateAll(this);
 
-            // Reset list to empty
-            String allValuesKey = DimensionStoreKeyUtils.getAllValuesKey();
-            keyValueStore.put(allValuesKey, "[]");
+        // Reset cardinality to 0
+        keyValueStore.put(DimensionStoreKeyUtils.getCardinalityKey(), "0");
 
-        } catch (IOException e) {
-            LOG.error("Exception while reading dimension rows {}", e);
-            throw new RuntimeException(e);
-        }
+        // Reset list to empty
+        allValuesIndex.clear();
     }
 
     @Override
@@ -2,6 +2,8 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl;
 
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
@@ -17,14 +19,21 @@ import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.RowLimitReachedException;
 import com.yahoo.bard.webservice.web.util.PaginationParameters;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -33,39 +42,101 @@ import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.validation.constraints.NotNull;
+
 /**
  * LuceneSearchProvider.
  * Search provider which uses lucene
+ * <p>
+ * The provider keeps a single {@link IndexWriter} open for the life of the index, and serves searches from a
+ * {@link SearcherManager} over that writer. Searches never wait on writes: they run against the most recently
+ * refreshed point-in-time view of the index, which is reopened in near real time from the writer after every batch of
+ * changes. Writers are serialized with each other, and changes are committed to disk in the background, at most once
+ * every {@code lucene_commit_interval_millis}.
+ * <p>
+ * The total hits of recent queries, and cursors to the ends of the pages of their results, are kept for each view of
+ * the index. A page is searched for after the closest cursor before it, rather than by collecting every page before it
+ * again, and the rows of the hits are found by the key values kept as doc values.
  */
 public class LuceneSearchProvider implements SearchProvider {
     private static final Logger LOG = LoggerFactory.getLogger(LuceneSearchProvider.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
 
     private static final Analyzer LUCENE_ANALYZER = new StandardAnalyzer();
     private static final double BUFFER_SIZE = 48;
+    private static final double BULK_LOAD_BUFFER_SIZE = 256;
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Delay between a change to the index and the commit of that change to disk, or 0 to commit every change as it
+     * is made.
+     */
+    private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5000;
+    private static final @NotNull String COMMIT_INTERVAL_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("lucene_commit_interval_millis");
+
+    /**
+     * Maximum number of queries per index whose total hits and page cursors are kept.
+     */
+    private static final int DEFAULT_QUERY_CURSOR_CACHE_SIZE = 100;
+    private static final int QUERY_CURSOR_CACHE_SIZE = SYSTEM_CONFIG.getIntProperty(
+            SYSTEM_CONFIG.getPackageVariableName("lucene_query_cursor_cache_size"),
+            DEFAULT_QUERY_CURSOR_CACHE_SIZE
+    );
+
+    private static final ScheduledExecutorService COMMIT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "lucene-index-commit");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean commitPending = new AtomicBoolean();
     private final String luceneIndexPath;
+    private final long commitIntervalMillis;
+
+    /**
+     * The total hits and page cursors of recent queries, by query and the version of the view of the index they ran
+     * against.
+     */
+    private final Cache<Pair<Query, Long>, QueryCursors> queryCursorCache = CacheBuilder.newBuilder()
+            .maximumSize(QUERY_CURSOR_CACHE_SIZE)
+            .build();
 
     /**
      * The maximum number of results per page.
@@ -75,8 +146,9 @@ public class LuceneSearchProvider implements SearchProvider {
     private Directory luceneDirectory;
     private KeyValueStore keyValueStore;
     private Dimension dimension;
-    private boolean luceneIndexIsHealthy;
-    private IndexSearcher luceneIndexSearcher;
+    private volatile boolean luceneIndexIsHealthy;
+    private IndexWriter luceneIndexWriter;
+    private volatile SearcherManager searcherManager;
 
     /**
      * Constructor.
@@ -85,10 +157,27 @@ public class LuceneSearchProvider implements SearchProvider {
      * @param maxResults  Maximum number of allowed results in a page
      */
     public LuceneSearchProvider(String luceneIndexPath, int maxResults) {
+        this(
+                luceneIndexPath,
+                maxResults,
+                SYSTEM_CONFIG.getLongProperty(COMMIT_INTERVAL_KEY, DEFAULT_COMMIT_INTERVAL_MILLIS)
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param luceneIndexPath  Path to the lucene index files
+     * @param maxResults  Maximum number of allowed results in a page
+     * @param commitIntervalMillis  Delay between a change to the index and its commit to disk, 0 to commit every
+     * change as it is made
+     */
+    public LuceneSearchProvider(String luceneIndexPath, int maxResults, long commitIntervalMillis) {
         this.luceneIndexPath = luceneIndexPath;
         Utils.createParentDirectories(this.luceneIndexPath);
 
         this.maxResults = maxResults;
+        this.commitIntervalMillis = commitIntervalMillis;
 
         try {
             luceneDirectory = new MMapDirectory(Paths.get(this.luceneIndexPath));
@@ -101,58 +190,92 @@ public class LuceneSearchProvider implements SearchProvider {
     }
 
     /**
-     * Get the IndexSearcher.
+     * Get the SearcherManager, opening the index if it isn't open.
      *
-     * @return the IndexSearcher
+     * @return the SearcherManager handing out searchers over the current view of the index
      */
-    private IndexSearcher getIndexSearcher() {
-        // Open the searcher if we don't have one
-        if (luceneIndexSearcher == null) {
-            reopenIndexSearcher(true);
-        }
-        return luceneIndexSearcher;
+    private SearcherManager getSearcherManager() {
+        SearcherManager manager = searcherManager;
+        return manager == null ? openIndex() : manager;
+    }
+
+    /**
+     * Get the IndexWriter, opening the index if it isn't open.
+     * <p>
+     * Callers must hold the write lock.
+     *
+     * @return the IndexWriter of the index
+     */
+    private IndexWriter getIndexWriter() {
+        getSearcherManager();
+        return luceneIndexWriter;
     }
 
     /**
-     * Re-open the Index Searcher, opening it for the first time if it's never been opened.
+     * Open the writer and the searcher manager of the index, creating an empty index if there is none.
      *
-     * @param firstTimeThrough  If true, will write an empty index and will then re-open the searcher
+     * @return the SearcherManager of the index
      */
-    private synchronized void reopenIndexSearcher(boolean firstTimeThrough) {
+    private synchronized SearcherManager openIndex() {
+        if (searcherManager != null) {
+            return searcherManager;
+        }
+
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
         try {
-            // Close the current reader if open
-            if (luceneIndexSearcher != null) {
-                luceneIndexSearcher.getIndexReader().close();
-            }
+            luceneIndexWriter = new IndexWriter(luceneDirectory, indexWriterConfig);
+            // Make sure there is a commit point on disk, so that the index can be opened even if it is never changed
+            luceneIndexWriter.commit();
+            searcherManager = new SearcherManager(luceneIndexWriter, true, null);
+        } catch (IOException e) {
+            // We can't move past this, so puke
+            luceneIndexIsHealthy = false;
+            String message = String.format("Unable to open index at %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        }
+        return searcherManager;
+    }
 
-            // Open a new IndexSearcher on a new DirectoryReader
-            luceneIndexSearcher = new IndexSearcher(DirectoryReader.open(luceneDirectory));
-
-        } catch (IOException reopenException) {
-            // If there is no index file, this is expected. On the 1st time through, write an empty index and try again
-            if (firstTimeThrough) {
-                IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER);
-                lock.writeLock().lock();
-                try (IndexWriter ignored = new IndexWriter(luceneDirectory, indexWriterConfig)) {
-                    // Closed automatically by the try-resource block
-                } catch (IOException emptyIndexWriteException) {
-                    // We can't move past this, so puke
-                    luceneIndexIsHealthy = false;
-                    String message = String.format("Unable to write empty index to %s:", luceneIndexPath);
-                    LOG.error(message, emptyIndexWriteException);
-                    throw new RuntimeException(emptyIndexWriteException);
-                } finally {
-                    lock.writeLock().unlock();
-                }
+    /**
+     * Make the changes made by the writer visible to searches started from now on.
+     *
+     * @throws IOException if the searcher cannot be reopened
+     */
+    private void refreshSearcher() throws IOException {
+        getSearcherManager().maybeRefreshBlocking();
+        // The cursors of queries against older views of the index can't be used any more
+        queryCursorCache.invalidateAll();
+    }
 
-                reopenIndexSearcher(false);
-            } else {
-                // We've been here before, so puke
-                luceneIndexIsHealthy = false;
-                String message = String.format("Unable to open index searcher for %s:", luceneIndexPath);
-                LOG.error(message, reopenException);
-                throw new RuntimeException(reopenException);
-            }
+    /**
+     * Acquire a searcher over the current view of the index, which must be released when the search is done.
+     *
+     * @param manager  The SearcherManager to acquire the searcher from
+     *
+     * @return the IndexSearcher
+     */
+    private IndexSearcher acquireSearcher(SearcherManager manager) {
+        try {
+            return manager.acquire();
+        } catch (IOException e) {
+            String message = String.format("Unable to open index searcher for %s:", luceneIndexPath);
+            LOG.error(message, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Release a searcher acquired by {@link #acquireSearcher(SearcherManager)}.
+     *
+     * @param manager  The SearcherManager the searcher was acquired from
+     * @param indexSearcher  The searcher to release
+     */
+    private void releaseSearcher(SearcherManager manager, IndexSearcher indexSearcher) {
+        try {
+            manager.release(indexSearcher);
+        } catch (IOException e) {
+            LOG.warn("Unable to release index searcher for {}", luceneIndexPath, e);
         }
     }
 
@@ -216,85 +339,84 @@ public class LuceneSearchProvider implements SearchProvider {
         // Make a single Document instance to hold field data being updated to Lucene
         // Creating documents is costly and so Document will be reused for each record being processed due to
         // performance best practices.
-        Document doc = new Document();
-        Map<DimensionField, Field> dimFieldToLuceneField = new HashMap<>(dimension.getDimensionFields().size());
-
-        // Create the document fields for this dimension and add them to the document
-        for (DimensionField dimensionField : dimension.getDimensionFields()) {
-            Field luceneField = new StringField(
-                    DimensionStoreKeyUtils.getColumnKey(dimensionField.getName()),
-                    "",
-                    dimensionField.equals(dimension.getKey()) ? Field.Store.YES : Field.Store.NO
-            );
-
-            // Store the lucene field in the doc and in our lookup map
-            dimFieldToLuceneField.put(dimensionField, luceneField);
-            doc.add(luceneField);
-        }
+        DimensionRowDocument doc = new DimensionRowDocument(dimension);
 
         // Write the rows to the document
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
-        lock.writeLock().lock();
-        try (IndexWriter luceneIndexWriter = new IndexWriter(luceneDirectory, indexWriterConfig)) {
+        writeLock.lock();
+        try {
+            IndexWriter writer = getIndexWriter();
             // Update the document fields for each row and update the document
             for (String rowId : changedRows.keySet()) {
                 // Get the new row from the pair
                 DimensionRow newDimensionRow = changedRows.get(rowId).getKey();
 
-                // Update the index
-                updateDimensionRow(doc, dimFieldToLuceneField, luceneIndexWriter, newDimensionRow);
+                // Update the document by the key term, which deletes the old document for the row if there is one
+                writer.updateDocument(doc.getKeyTerm(newDimensionRow), doc.setRow(newDimensionRow));
             }
 
-            // Commit all the changes to the index (on .close, called by try-resources) and refresh the cardinality
+            // Make the changes visible to searches and refresh the cardinality, the commit happens in the background
+            refreshSearcher();
+            refreshCardinality();
         } catch (IOException e) {
             luceneIndexIsHealthy = false;
             LOG.error("Failed to refresh index for dimension rows", e);
             throw new RuntimeException(e);
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
-        reopenIndexSearcher(true);
-        refreshCardinality();
+        scheduleCommit();
     }
 
     /**
-     * Update the dimension row in the index.
+     * Replace the whole index with the given dimension rows, for loading a new copy of a dimension in bulk.
+     * <p>
+     * The new index is built with a larger RAM buffer, and with plain adds rather than updates by key, so only the
+     * last of the rows sharing a key is added. Searches keep seeing the old rows while the new index is built, and
+     * switch to the new rows once it has been committed. Only the search index is replaced: the rows are expected to
+     * already be in the key value store, and rows that are no longer in the dimension to have been removed from it,
+     * as {@link KeyValueStoreDimension#replaceAllDimensionRows} does.
      *
-     * @param luceneDimensionRowDoc  Document to use for doing the update
-     * @param fieldMap  Mapping of DimensionFields to the Document's fields
-     * @param writer  Lucene IndexWriter to update the indexes of
-     * @param newRow  Row to update
-     *
-     * @throws IOException if there is a problem updating the document
+     * @param dimensionRows  All of the rows of the dimension
      */
-    private void updateDimensionRow(
-            Document luceneDimensionRowDoc,
-            Map<DimensionField, Field> fieldMap,
-            IndexWriter writer,
-            DimensionRow newRow
-    ) throws IOException {
-        // Update the document fields with each field from the new dimension row
-        for (DimensionField field : dimension.getDimensionFields()) {
-            // Get the field to update from the lookup map
-            Field fieldToUpdate = fieldMap.get(field);
-
-            // Set field value to updated value
-            fieldToUpdate.setStringValue(newRow.get(field));
+    public void replaceIndex(Collection<DimensionRow> dimensionRows) {
+        // Plain adds don't replace a document with the same key, so drop all but the last row for each key
+        Map<String, DimensionRow> rowsByKey = new LinkedHashMap<>(dimensionRows.size());
+        for (DimensionRow dimensionRow : dimensionRows) {
+            rowsByKey.put(dimensionRow.get(dimension.getKey()), dimensionRow);
         }
 
-        // Build the term to delete the old document by the key value (which should be unique)
-        Term keyTerm = new Term(fieldMap.get(dimension.getKey()).name(), newRow.get(dimension.getKey()));
+        DimensionRowDocument doc = new DimensionRowDocument(dimension);
 
-        // Update the document by the key term
-        writer.updateDocument(keyTerm, luceneDimensionRowDoc);
+        writeLock.lock();
+        try {
+            IndexWriter writer = getIndexWriter();
+            writer.getConfig().setRAMBufferSizeMB(BULK_LOAD_BUFFER_SIZE);
+            try {
+                writer.deleteAll();
+                for (DimensionRow dimensionRow : rowsByKey.values()) {
+                    writer.addDocument(doc.setRow(dimensionRow));
+                }
+                writer.commit();
+            } finally {
+                writer.getConfig().setRAMBufferSizeMB(BUFFER_SIZE);
+            }
+
+            refreshSearcher();
+            refreshCardinality();
+        } catch (IOException e) {
+            luceneIndexIsHealthy = false;
+            LOG.error("Failed to replace index for dimension rows", e);
+            throw new RuntimeException(e);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     @Override
     public void clearDimension() {
         Set<DimensionRow> dimensionRows = findAllDimensionRows();
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(LUCENE_ANALYZER).setRAMBufferSizeMB(BUFFER_SIZE);
-        lock.writeLock().lock();
-        try (IndexWriter writer = new IndexWriter(luceneDirectory, indexWriterConfig)) {
+        writeLock.lock();
+        try {
             //Remove all dimension data from the store.
             String rowId = dimension.getKey().getName();
             dimensionRows.stream()
@@ -306,20 +428,21 @@ public class LuceneSearchProvider implements SearchProvider {
             //Since Lucene's indices are being dropped, the dimension field stored via the columnKey is becoming stale.
             keyValueStore.remove(DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()));
             //The allValues key mapping needs to reflect the fact that we are dropping all dimension data.
-            keyValueStore.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
+            new AllValuesIndex(keyValueStore).clear();
             //We're resetting the keyValueStore, so we don't want any stale last updated date floating around.
             keyValueStore.remove(DimensionStoreKeyUtils.getLastUpdatedKey());
 
             //In addition to clearing the keyValueStore, we also need to delete all of Lucene's segment files.
+            IndexWriter writer = getIndexWriter();
             writer.deleteAll();
             writer.commit();
-            reopenIndexSearcher(true);
+            refreshSearcher();
             refreshCardinality();
         } catch (IOException e) {
             LOG.error("Failed to wipe Lucene index at directory: {}", luceneDirectory);
             throw new RuntimeException(e);
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -327,10 +450,71 @@ public class LuceneSearchProvider implements SearchProvider {
      * Update the cardinality count.
      */
     private void refreshCardinality() {
-        keyValueStore.put(
-                DimensionStoreKeyUtils.getCardinalityKey(),
-                Integer.toString(getIndexSearcher().getIndexReader().numDocs())
-        );
+        SearcherManager manager = getSearcherManager();
+        IndexSearcher indexSearcher = acquireSearcher(manager);
+        try {
+            keyValueStore.put(
+                    DimensionStoreKeyUtils.getCardinalityKey(),
+                    Integer.toString(indexSearcher.getIndexReader().numDocs())
+            );
+        } finally {
+            releaseSearcher(manager, indexSearcher);
+        }
+    }
+
+    /**
+     * Commit the changes made to the index, now if there is no commit interval, or after the commit interval if no
+     * commit is already waiting.
+     */
+    private void scheduleCommit() {
+        if (commitIntervalMillis <= 0) {
+            commit();
+        } else if (commitPending.compareAndSet(false, true)) {
+            COMMIT_EXECUTOR.schedule(this::commit, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commit the changes made to the index to disk.
+     * <p>
+     * Changes are visible to searches as soon as they are made, but only survive a restart once they are committed.
+     */
+    public void commit() {
+        commitPending.set(false);
+        writeLock.lock();
+        try {
+            if (luceneIndexWriter != null) {
+                luceneIndexWriter.commit();
+            }
+        } catch (IOException | AlreadyClosedException e) {
+            luceneIndexIsHealthy = false;
+            LOG.error("Failed to commit index at {}", luceneIndexPath, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Commit any pending changes and close the index. The index is opened again if the provider is used afterwards.
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            synchronized (this) {
+                if (searcherManager != null) {
+                    searcherManager.close();
+                    // Closing the writer commits any pending changes
+                    luceneIndexWriter.close();
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to close index at {}", luceneIndexPath, e);
+        } finally {
+            searcherManager = null;
+            luceneIndexWriter = null;
+            queryCursorCache.invalidateAll();
+            writeLock.unlock();
+        }
     }
 
     @Override
@@ -510,12 +694,39 @@ public class LuceneSearchProvider implements SearchProvider {
      */
     private Pagination<DimensionRow> getResultsPage(Query query, PaginationParameters paginationParameters)
             throws PageNotFoundException {
+        // Search a single point-in-time view of the index, so that pages and counts agree with each other
+        SearcherManager manager = getSearcherManager();
+        IndexSearcher indexSearcher = acquireSearcher(manager);
+        try {
+            return getResultsPage(indexSearcher, query, paginationParameters);
+        } finally {
+            releaseSearcher(manager, indexSearcher);
+        }
+    }
+
+    /**
+     * Returns the desired page of dimension rows found by the specified query in a view of the index.
+     *
+     * @param indexSearcher  The searcher over the view of the index to search
+     * @param query  The Lucene query used to locate the desired DimensionRows
+     * @param paginationParameters  The parameters defining the pagination (i.e. the number of rows per page, and the
+     * desired page)
+     *
+     * @return The desired page of dimension rows that satisfy the given query
+     *
+     * @throws PageNotFoundException if the page requested is past the last page of results
+     */
+    private Pagination<DimensionRow> getResultsPage(
+            IndexSearcher indexSearcher,
+            Query query,
+            PaginationParameters paginationParameters
+    ) throws PageNotFoundException {
         int perPage = paginationParameters.getPerPage();
         int requestedPageNumber = paginationParameters.getPage();
 
-        // get the page we want
-        IndexSearcher indexSearcher = getIndexSearcher();
-        ScoreDoc[] hits = getPageOfData(indexSearcher, null, query, perPage, requestedPageNumber).scoreDocs;
+        // get the page we want, searching from the closest page of this query that has already been found
+        QueryCursors queryCursors = getQueryCursors(indexSearcher, query);
+        ScoreDoc[] hits = getPage(indexSearcher, queryCursors, query, perPage, requestedPageNumber);
         if (hits.length == 0) {
             if (requestedPageNumber == 1) {
                 return new SinglePagePagination<>(Collections.emptyList(), paginationParameters, 0);
@@ -523,41 +734,115 @@ public class LuceneSearchProvider implements SearchProvider {
                 throw new PageNotFoundException(requestedPageNumber, perPage, 0);
             }
         }
-        for (int currentPage = 1; currentPage < requestedPageNumber; currentPage++) {
-            ScoreDoc lastEntry = hits[hits.length - 1];
-            hits = getPageOfData(indexSearcher, lastEntry, query, perPage, requestedPageNumber).scoreDocs;
-            if (hits.length == 0) {
-                throw new PageNotFoundException(requestedPageNumber, perPage, 0);
+
+        // convert hits to dimension rows
+        TreeSet<DimensionRow> filteredDimRows = new TreeSet<>(
+                dimension.findDimensionRowsByKeyValues(getKeyValues(indexSearcher, hits)).values()
+        );
+        return new SinglePagePagination<>(
+                Collections.unmodifiableList(filteredDimRows.stream().collect(Collectors.toList())),
+                paginationParameters,
+                queryCursors.getTotalHits()
+        );
+    }
+
+    /**
+     * Get the cursors of a query against a view of the index, creating them if the query hasn't been run against it.
+     *
+     * @param indexSearcher  The searcher over the view of the index
+     * @param query  The Lucene query
+     *
+     * @return the cursors of the query
+     */
+    private QueryCursors getQueryCursors(IndexSearcher indexSearcher, Query query) {
+        long indexVersion = ((DirectoryReader) indexSearcher.getIndexReader()).getVersion();
+        return queryCursorCache.asMap().computeIfAbsent(new Pair<>(query, indexVersion), ignored -> new QueryCursors());
+    }
+
+    /**
+     * Returns the hits of a page of the results of a query.
+     * <p>
+     * The page is searched for after the cursor closest before it, so only the hits between that cursor and the end of
+     * the page are collected, and a cursor is left at the end of the page for the pages after it.
+     *
+     * @param indexSearcher  The service to find the desired dimension metadata in the Lucene index
+     * @param queryCursors  The cursors of the query against the view of the index being searched
+     * @param query  The Lucene query used to locate the desired dimension metadata
+     * @param perPage  The number of entries per page
+     * @param requestedPageNumber  The desired page number
+     *
+     * @return The hits of the page, which is empty if the page is past the last page of results
+     */
+    private ScoreDoc[] getPage(
+            IndexSearcher indexSearcher,
+            QueryCursors queryCursors,
+            Query query,
+            int perPage,
+            int requestedPageNumber
+    ) {
+        long offset = (long) (requestedPageNumber - 1) * perPage;
+        if (queryCursors.getTotalHits() < 0) {
+            // The first page is always found first, since it counts the hits of the query
+            ScoreDoc[] firstPage = getPageOfData(indexSearcher, queryCursors, 0, null, query, perPage, 1);
+            if (offset == 0) {
+                return firstPage;
             }
         }
+        if (offset >= queryCursors.getTotalHits()) {
+            return new ScoreDoc[0];
+        }
 
-        // convert hits to dimension rows
+        Map.Entry<Long, ScoreDoc> cursor = queryCursors.getCursorBefore(offset);
+        long cursorOffset = cursor == null ? 0 : cursor.getKey();
+        int skipped = (int) (offset - cursorOffset);
+        ScoreDoc[] hits = getPageOfData(
+                indexSearcher,
+                queryCursors,
+                cursorOffset,
+                cursor == null ? null : cursor.getValue(),
+                query,
+                (int) Math.min((long) skipped + perPage, Integer.MAX_VALUE),
+                requestedPageNumber
+        );
+        return skipped >= hits.length ? new ScoreDoc[0] : Arrays.copyOfRange(hits, skipped, hits.length);
+    }
+
+    /**
+     * Get the key values of the rows of some hits.
+     * <p>
+     * Key values are read from the doc values of the key field, falling back to its stored value for documents
+     * indexed before the key was kept as doc values.
+     *
+     * @param indexSearcher  The searcher that found the hits
+     * @param hits  The hits to get the key values of
+     *
+     * @return the key values, in the order of the hits
+     */
+    private List<String> getKeyValues(IndexSearcher indexSearcher, ScoreDoc[] hits) {
         String idKey = DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName());
-        TreeSet<DimensionRow> filteredDimRows = Arrays.stream(hits)
-                .map(
-                        hit -> {
-                            try {
-                                return indexSearcher.doc(hit.doc);
-                            } catch (IOException e) {
-                                LOG.error("Unable to convert hit " + hit);
-                                throw new RuntimeException(e);
-                            }
-                        }
-                )
-                .map(document -> document.get(idKey))
-                .map(dimension::findDimensionRowByKeyValue)
-                .collect(Collectors.toCollection(TreeSet::new));
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        List<String> keyValues = new ArrayList<>(hits.length);
         try {
-            return new SinglePagePagination<>(
-                    Collections.unmodifiableList(filteredDimRows.stream().collect(Collectors.toList())),
-                    paginationParameters,
-                    indexSearcher.count(query)
-            );
+            SortedDocValues[] leafKeyValues = new SortedDocValues[leaves.size()];
+            for (int leaf = 0; leaf < leaves.size(); leaf++) {
+                leafKeyValues[leaf] = leaves.get(leaf).reader().getSortedDocValues(idKey);
+            }
+
+            for (ScoreDoc hit : hits) {
+                int leaf = ReaderUtil.subIndex(hit.doc, leaves);
+                SortedDocValues docValues = leafKeyValues[leaf];
+                int leafDoc = hit.doc - leaves.get(leaf).docBase;
+                keyValues.add(
+                        docValues == null || docValues.getOrd(leafDoc) < 0 ?
+                                indexSearcher.doc(hit.doc).get(idKey) :
+                                docValues.get(leafDoc).utf8ToString()
+                );
+            }
         } catch (IOException e) {
-            LOG.error("Unable to get count of matched rows for the query " + query.toString() +
-                    " with " + paginationParameters.toString());
+            LOG.error("Unable to convert hits to dimension rows", e);
             throw new RuntimeException(e);
         }
+        return keyValues;
     }
 
     /**
@@ -576,32 +861,164 @@ public class LuceneSearchProvider implements SearchProvider {
     }
 
     /**
-     * Returns the requested page of dimension metadata from Lucene.
+     * Returns the requested hits of dimension metadata from Lucene, and records the total number of hits and the
+     * cursor at the end of the hits found.
      *
      * @param indexSearcher  The service to find the desired dimension metadata in the Lucene index
+     * @param queryCursors  The cursors of the query against the view of the index being searched
+     * @param lastEntryOffset  The number of hits up to and including lastEntry
      * @param lastEntry  The last entry from the previous page of dimension metadata, the indexSearcher will begin its
      * search after this entry (if lastEntry is null, the indexSearcher will begin its search from the beginning)
      * @param query  The Lucene query used to locate the desired dimension metadata
-     * @param perPage  The number of entries per page
+     * @param count  The number of entries to find
      * @param currentPage  The desired page number
      *
-     * @return The desired page of dimension metadata
+     * @return The desired hits of dimension metadata
      */
-    private TopDocs getPageOfData(
+    private ScoreDoc[] getPageOfData(
             IndexSearcher indexSearcher,
+            QueryCursors queryCursors,
+            long lastEntryOffset,
             ScoreDoc lastEntry,
             Query query,
-            int perPage,
+            int count,
             int currentPage
     ) {
+        TopDocs topDocs;
         try {
-            return lastEntry == null ?
-                    indexSearcher.search(query, perPage) :
-                    indexSearcher.searchAfter(lastEntry, query, perPage);
+            topDocs = lastEntry == null ?
+                    indexSearcher.search(query, count) :
+                    indexSearcher.searchAfter(lastEntry, query, count);
         } catch (IOException e) {
             String errorMessage = "Unable to find dimension rows for page " + currentPage;
             LOG.error(errorMessage);
             throw new RuntimeException(errorMessage);
         }
+
+        ScoreDoc[] hits = topDocs.scoreDocs;
+        queryCursors.setTotalHits(topDocs.totalHits);
+        if (hits.length > 0) {
+            queryCursors.addCursor(lastEntryOffset + hits.length, hits[hits.length - 1]);
+        }
+        return hits;
+    }
+
+    /**
+     * A reusable Lucene document for the rows of a dimension.
+     * <p>
+     * Creating documents is costly, so a single document is made per batch of rows, and its fields are set to the
+     * values of each row in turn.
+     */
+    private static final class DimensionRowDocument {
+        private final Dimension dimension;
+        private final Document document = new Document();
+        private final Map<DimensionField, Field> dimFieldToLuceneField;
+        private final Field keyDocValuesField;
+
+        /**
+         * Constructor.
+         *
+         * @param dimension  Dimension whose rows the document holds
+         */
+        private DimensionRowDocument(Dimension dimension) {
+            this.dimension = dimension;
+            dimFieldToLuceneField = new HashMap<>(dimension.getDimensionFields().size());
+
+            // Create the document fields for this dimension and add them to the document
+            for (DimensionField dimensionField : dimension.getDimensionFields()) {
+                Field luceneField = new StringField(
+                        DimensionStoreKeyUtils.getColumnKey(dimensionField.getName()),
+                        "",
+                        dimensionField.equals(dimension.getKey()) ? Field.Store.YES : Field.Store.NO
+                );
+
+                // Store the lucene field in the doc and in our lookup map
+                dimFieldToLuceneField.put(dimensionField, luceneField);
+                document.add(luceneField);
+            }
+
+            // The key is also kept as doc values, so the keys of hits can be read without loading their stored fields
+            keyDocValuesField = new SortedDocValuesField(
+                    DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()),
+                    new BytesRef()
+            );
+            document.add(keyDocValuesField);
+        }
+
+        /**
+         * Set the document fields to the values of a dimension row.
+         *
+         * @param row  Row to take the values from
+         *
+         * @return the document, holding the row
+         */
+        private Document setRow(DimensionRow row) {
+            // Update the document fields with each field from the new dimension row
+            for (DimensionField field : dimension.getDimensionFields()) {
+                dimFieldToLuceneField.get(field).setStringValue(row.get(field));
+            }
+            keyDocValuesField.setBytesValue(new BytesRef(row.get(dimension.getKey())));
+            return document;
+        }
+
+        /**
+         * Build the term that finds the document of a row by its key value (which should be unique).
+         *
+         * @param row  Row to find the document of
+         *
+         * @return the key term of the row
+         */
+        private Term getKeyTerm(DimensionRow row) {
+            return new Term(dimFieldToLuceneField.get(dimension.getKey()).name(), row.get(dimension.getKey()));
+        }
+    }
+
+    /**
+     * The total number of hits of a query against one view of the index, and cursors to the ends of the pages of its
+     * results that have been found, from which later pages are searched.
+     */
+    private static final class QueryCursors {
+        private final ConcurrentNavigableMap<Long, ScoreDoc> cursors = new ConcurrentSkipListMap<>();
+        private volatile int totalHits = -1;
+
+        /**
+         * Get the total number of hits of the query.
+         *
+         * @return the number of hits, or -1 if the query hasn't been run
+         */
+        private int getTotalHits() {
+            return totalHits;
+        }
+
+        /**
+         * Set the total number of hits of the query.
+         *
+         * @param totalHits  The number of hits
+         */
+        private void setTotalHits(int totalHits) {
+            this.totalHits = totalHits;
+        }
+
+        /**
+         * Get the cursor closest before a hit.
+         *
+         * @param offset  The number of hits before the hit
+         *
+         * @return the number of hits up to and including the cursor, and the cursor, or null if there is no cursor
+         * before the hit
+         */
+        private Map.Entry<Long, ScoreDoc> getCursorBefore(long offset) {
+            return cursors.floorEntry(offset);
+        }
+
+        /**
+         * Add a cursor.
+         *
+         * @param offset  The number of hits up to and including the cursor
+         * @param cursor  The last hit before the hits that follow the cursor
+         */
+        private void addCursor(long offset, ScoreDoc cursor) {
+            cursors.putIfAbsent(offset, cursor);
+        }
     }
 }
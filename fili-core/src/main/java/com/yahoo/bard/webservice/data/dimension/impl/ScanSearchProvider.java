@@ -6,7 +6,9 @@ import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCodec;
 import com.yahoo.bard.webservice.data.dimension.FilterDimensionRows;
+import com.yahoo.bard.webservice.data.dimension.JsonDimensionRowCodec;
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore;
 import com.yahoo.bard.webservice.data.dimension.SearchProvider;
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils;
@@ -15,7 +17,6 @@ import com.yahoo.bard.webservice.util.SinglePagePagination;
 import com.yahoo.bard.webservice.web.ApiFilter;
 import com.yahoo.bard.webservice.web.util.PaginationParameters;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.slf4j.Logger;
@@ -28,7 +29,6 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -38,10 +38,12 @@ import java.util.stream.Collectors;
  */
 public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
     private static final Logger LOG = LoggerFactory.getLogger(ScanSearchProvider.class);
+    private static final DimensionRowCodec JSON_ROW_CODEC = new JsonDimensionRowCodec();
 
     private final ObjectMapper objectMapper;
 
     private KeyValueStore keyValueStore;
+    private AllValuesIndex allValuesIndex;
     private Dimension dimension;
 
     /**
@@ -60,6 +62,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
     @Override
     public void setKeyValueStore(KeyValueStore keyValueStore) {
         this.keyValueStore = keyValueStore;
+        this.allValuesIndex = new AllValuesIndex(keyValueStore);
 
         // Check initialization for the cardinality in a keyValueStore
         if (keyValueStore.get(DimensionStoreKeyUtils.getCardinalityKey()) == null) {
@@ -110,7 +113,7 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
         //Since the indices are being dropped, the dimension field stored via the columnKey is becoming stale.
         keyValueStore.remove(DimensionStoreKeyUtils.getColumnKey(dimension.getKey().getName()));
         // The allValues key mapping needs to reflect the fact that we are dropping all dimension data.
-        keyValueStore.put(DimensionStoreKeyUtils.getAllValuesKey(), "[]");
+        allValuesIndex.clear();
         //We're resetting the keyValueStore, so we don't want any stale last updated date floating around.
         keyValueStore.remove(DimensionStoreKeyUtils.getLastUpdatedKey());
 
@@ -119,21 +122,25 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
 
     @Override
     public void refreshIndex(String rowId, DimensionRow dimensionRow, DimensionRow dimensionRowOld) {
-        refreshIndexForDimensionKey(rowId);
-        refreshIndexForDimensionFields(rowId, dimensionRow, dimensionRowOld);
-        refreshCardinality();
+        refreshIndex(Collections.singletonMap(rowId, new Pair<>(dimensionRow, dimensionRowOld)));
     }
 
     @Override
     public void refreshIndex(Map<String, Pair<DimensionRow, DimensionRow>> changedRows) {
+        List<String> newRowIds = new ArrayList<>();
         for (String rowId : changedRows.keySet()) {
             // Get old and new rows from the pair
             DimensionRow newRow = changedRows.get(rowId).getKey();
             DimensionRow oldRow = changedRows.get(rowId).getValue();
 
             // Refresh index for the row
-            refreshIndex(rowId, newRow, oldRow);
+            refreshIndexForDimensionFields(rowId, newRow, oldRow);
+            if (oldRow == null) {
+                newRowIds.add(rowId);
+            }
         }
+        refreshIndexForDimensionKey(newRowIds);
+        refreshCardinality();
     }
 
     /**
@@ -146,25 +153,14 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
      * After this refreshIndexForDimensionKey call, given a new row id: id_v4_row_key, it would look like
      * all_values_key -> [id_v1_row_key, id_v2_row_key, id_v3_row_key, id_v4_row_key]
      * <p>
+     * The list is stored in chunks by {@link AllValuesIndex}, so only its last chunk is rewritten.
+     * <p>
      * This is useful to list all values for &lt;blah&gt;/dim1/values endpoint
      *
-     * @param rowId  The row id to be added
+     * @param rowIds  The ids of the rows that are new to the dimension
      */
-    private void refreshIndexForDimensionKey(String rowId) {
-        try {
-            String allValuesKey = DimensionStoreKeyUtils.getAllValuesKey();
-            String dimensionRows = keyValueStore.get(allValuesKey);
-            Set<String> dimensionRowsSet = new LinkedHashSet<>();
-            if (dimensionRows != null) {
-                dimensionRowsSet.addAll(Arrays.asList(objectMapper.readValue(dimensionRows, String[].class)));
-            }
-            dimensionRowsSet.add(rowId);
-            String dimRows = objectMapper.writeValueAsString(dimensionRowsSet);
-            keyValueStore.put(allValuesKey, dimRows);
-        } catch (IOException e) {
-            LOG.error("Exception while adding dimension entry in KeyValueStore : {}", e);
-            throw new RuntimeException(e);
-        }
+    private void refreshIndexForDimensionKey(List<String> rowIds) {
+        allValuesIndex.addRowKeys(rowIds);
     }
 
     /**
@@ -362,11 +358,9 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
      * @return  All ordered dimension rows that belongs to a requested page
      */
     private TreeSet<DimensionRow> getAllOrderedDimensionRows() {
-        return getDimRowIndexes().stream()
-                .map(keyValueStore::get)
-                .filter(Objects::nonNull)
-                .map(dimRowJson -> readValue(new TypeReference<Map<String, String>>() { }, dimRowJson))
-                .map(dimension::parseDimensionRow)
+        DimensionRowCodec rowCodec = getRowCodec();
+        return keyValueStore.getAll(getDimRowIndexes()).values().stream()
+                .map(encodedRow -> rowCodec.decode(dimension, encodedRow))
                 .collect(Collectors.toCollection(TreeSet::new));
     }
 
@@ -392,27 +386,18 @@ public class ScanSearchProvider implements SearchProvider, FilterDimensionRows {
      * @return  The index of rows
      */
     private List<String> getDimRowIndexes() {
-        return readValue(new TypeReference<List>() { }, keyValueStore.get(DimensionStoreKeyUtils.getAllValuesKey()));
+        return allValuesIndex.getRowKeys();
     }
 
     /**
-     * Helper method for reading value from an objectMapper that occurs many times in code.
-     * Another advantage of it is to handle exception so that client code doesn't have to wrap themselves inside a
-     * try-catch block
+     * Get the codec the rows of the dimension are stored with.
      *
-     * @param typeReference  The type reference
-     * @param value  Value of the key
-     * @param <T>  Type of the TypeReference
-     *
-     * @return  T where T is the type of the TypeReference passed in
+     * @return the codec of the dimension, or a JSON codec if the dimension does not have one
      */
-    private <T> T readValue(TypeReference<T> typeReference, String value) {
-        try {
-            return objectMapper.readValue(value, typeReference);
-        } catch (IOException e) {
-            LOG.error("Exception while reading dimension rows {}", e);
-            throw new RuntimeException(e);
-        }
+    private DimensionRowCodec getRowCodec() {
+        return dimension instanceof KeyValueStoreDimension ?
+                ((KeyValueStoreDimension) dimension).getRowCodec() :
+                JSON_ROW_CODEC;
     }
 
     /**
@@ -15,6 +15,11 @@ public class NoOpResultSetMapper extends ResultSetMapper implements ColumnMapper
         return super.map(resultSet);
     }
 
+    @Override
+    public boolean isRowLocal() {
+        return true;
+    }
+
     @Override
     protected Result map(Result result, Schema schema) {
         return result;
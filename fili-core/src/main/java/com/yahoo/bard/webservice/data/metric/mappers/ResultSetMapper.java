@@ -9,8 +9,7 @@ import com.yahoo.bard.webservice.table.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 
 /**
  * ResultSetMapper is an abstract class for walking a result set.
@@ -21,6 +20,9 @@ abstract public class ResultSetMapper {
 
     /**
      * Take a complete result set and replace it with one altered according to the rules of the concrete mapper.
+     * <p>
+     * The schema is mapped first, so that each mapped result is added straight to a result set with the layout of the
+     * unmapped one, rather than to a list which is copied into it.
      *
      * @param resultSet  The unmapped result set
      *
@@ -28,23 +30,39 @@ abstract public class ResultSetMapper {
      */
     public ResultSet map(ResultSet resultSet) {
 
-        List<Result> newResults = new ArrayList<>();
+        Schema newSchema = map(resultSet.getSchema());
+        ResultSet newResultSet = resultSet.withResults(Collections.emptyList(), newSchema);
         Result newResult;
 
         for (Result r: resultSet) {
             newResult = map(r, resultSet.getSchema());
             if (newResult != null) {
-                newResults.add(newResult);
+                newResultSet.add(newResult);
             }
         }
 
-        Schema newSchema = map(resultSet.getSchema());
-        ResultSet newResultSet = new ResultSet(newResults, newSchema);
         LOG.trace("Mapped resultSet: {} to new resultSet {}", resultSet, newResultSet);
 
         return newResultSet;
     }
 
+    /**
+     * Whether this mapper maps each result on its own, in order, so that results may be mapped as they are read.
+     * <p>
+     * Mappers that only implement the row and schema mappings are row local. Mappers that override
+     * {@link #map(ResultSet)} may look at the whole result set (to sort, count or page it), so they are not, unless
+     * they say otherwise.
+     *
+     * @return true if the mapper only needs one result at a time
+     */
+    public boolean isRowLocal() {
+        try {
+            return getClass().getMethod("map", ResultSet.class).getDeclaringClass() == ResultSetMapper.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     /**
      * Returns a transformed result row, or null if the row is removed.
      *
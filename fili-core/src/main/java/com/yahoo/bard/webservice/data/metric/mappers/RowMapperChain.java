@@ -0,0 +1,67 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.metric.mappers;
+
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.table.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a list of row local result set mappers to one result at a time.
+ * <p>
+ * Mapping each result through the chain gives the same results, in the same order, as mapping the whole result set
+ * through each mapper in turn, without building a result set between mappers.
+ */
+public class RowMapperChain {
+
+    private final List<ResultSetMapper> mappers;
+    private final List<Schema> schemas;
+
+    /**
+     * Constructor.
+     *
+     * @param mappers  The mappers to apply, in order. Every mapper must be row local
+     * @param schema  The schema of the results before they are mapped
+     *
+     * @throws IllegalArgumentException if any of the mappers is not row local
+     */
+    public RowMapperChain(List<ResultSetMapper> mappers, Schema schema) {
+        this.mappers = new ArrayList<>(mappers);
+        this.schemas = new ArrayList<>(mappers.size() + 1);
+
+        // Each mapper maps results against the schema it was given, which is the schema mapped by the mappers before
+        schemas.add(schema);
+        for (ResultSetMapper mapper : this.mappers) {
+            if (!mapper.isRowLocal()) {
+                throw new IllegalArgumentException("Result set mapper is not row local: " + mapper);
+            }
+            schema = mapper.map(schema);
+            schemas.add(schema);
+        }
+    }
+
+    /**
+     * Get the schema of the mapped results.
+     *
+     * @return the schema after all of the mappers
+     */
+    public Schema getSchema() {
+        return schemas.get(schemas.size() - 1);
+    }
+
+    /**
+     * Map a result through each of the mappers.
+     *
+     * @param result  The result to map
+     *
+     * @return the mapped result, or null if one of the mappers removed it
+     */
+    public Result map(Result result) {
+        for (int i = 0; i < mappers.size() && result != null; i++) {
+            result = mappers.get(i).map(result, schemas.get(i));
+        }
+        return result;
+    }
+}
@@ -11,9 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -30,18 +29,17 @@ public class RowNumMapper extends ResultSetMapper {
         Schema modifiedSchema = map(resultSet.getSchema());
         MetricColumn metricColumn = modifiedSchema.getColumn(ROW_NUM_COLUMN_NAME, MetricColumn.class);
 
-        List<Result> newResults = new ArrayList<>();
+        ResultSet newResultSet = resultSet.withResults(Collections.emptyList(), modifiedSchema);
         Result newResult;
 
         int resultSetSize = resultSet.size();
         for (int i = 0; i < resultSetSize; i++) {
             newResult = rowNumMap(resultSet.get(i), metricColumn, i);
             if (newResult != null) {
-                newResults.add(newResult);
+                newResultSet.add(newResult);
             }
         }
 
-        ResultSet newResultSet = new ResultSet(newResults, modifiedSchema);
         LOG.trace("Mapped resultSet: {} to new resultSet {}", resultSet, newResultSet);
 
         return newResultSet;
@@ -2,6 +2,11 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.druid.client;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * This class represents the configurable parameters for a particular Druid service endpoint.
  */
@@ -36,6 +41,32 @@ public class DruidServiceConfig {
         return url;
     }
 
+    /**
+     * The URLs of the servlets of the druid service, for a service spread over several brokers.
+     *
+     * @return the comma separated URLs of the service, or an empty list if the service has no URL
+     */
+    public List<String> getUrls() {
+        if (url == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(url.split(","))
+                .map(String::trim)
+                .filter(brokerUrl -> !brokerUrl.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Build the configuration of the same service at another URL.
+     *
+     * @param url  The URL of the other servlet
+     *
+     * @return a copy of this configuration with the given URL
+     */
+    public DruidServiceConfig withUrl(String url) {
+        return new DruidServiceConfig(name, url, timeout, priority);
+    }
+
     /**
      * The timeout for requests to druid.
      *
@@ -0,0 +1,52 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Callback from the async HTTP client on success, which consumes the response as a stream of JSON tokens instead of
+ * as a fully built tree.
+ * <p>
+ * Web services that support streaming will invoke {@link #invoke(JsonParser)} while the response body is being read.
+ * Web services that don't will fall back to {@link #invoke(JsonNode)}, which streams over the already built tree.
+ */
+public interface StreamingSuccessCallback extends SuccessCallback {
+
+    /**
+     * The codec the fallback path reads the tree with, shared since a mapper is costly to build.
+     */
+    ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * Invoke the success callback code with a parser over the response body.
+     * <p>
+     * The parser is only valid for the duration of the call, and is closed by the caller once the callback returns.
+     *
+     * @param jsonParser  Parser over the response, positioned before the root-level value
+     *
+     * @throws IOException if the response could not be read
+     */
+    void invoke(JsonParser jsonParser) throws IOException;
+
+    /**
+     * Invoke the success callback code by streaming over an already built tree.
+     * <p>
+     * This is the fallback path for web services that can't stream, so it favors simplicity over performance.
+     *
+     * @param rootNode  Root-level JsonNode from the response
+     */
+    @Override
+    default void invoke(JsonNode rootNode) {
+        try (JsonParser jsonParser = rootNode.traverse(OBJECT_MAPPER)) {
+            invoke(jsonParser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -7,10 +7,13 @@ import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQU
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
 import com.yahoo.bard.webservice.druid.client.SuccessCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
 import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
@@ -20,6 +23,7 @@ import com.yahoo.bard.webservice.web.handlers.RequestContext;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -39,18 +43,33 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.core.Response.Status;
 
 /**
  * Represents the druid web service endpoint.
+ * <p>
+ * Queries go to the first URL of the service configuration. When {@code druid_hedge_percentile} is set and the
+ * configuration lists a second URL, a query that the first broker has not answered within that percentile of the
+ * latency of druid queries is also sent to the second broker, and the first successful answer is used.
  */
 public class AsyncDruidWebServiceImpl implements DruidWebService {
     private static final Logger LOG = LoggerFactory.getLogger(AsyncDruidWebServiceImpl.class);
 
     private final AsyncHttpClient webClient;
     private final ObjectWriter writer;
+    private final MappingJsonFactory jsonFactory;
     private final Meter httpErrorMeter;
     private final Meter exceptionMeter;
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
@@ -61,8 +80,26 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     public static final String DRUID_WEIGHTED_QUERY_TIMER = DRUID_TIMER + "_W_";
     public static final String DRUID_SEGMENT_METADATA_TIMER = DRUID_TIMER + "_S_0";
 
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final @NotNull String HEDGE_PERCENTILE_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_hedge_percentile");
+
+    public static final Meter HEDGES = REGISTRY.meter("druid.hedges");
+    public static final Meter HEDGE_WINS = REGISTRY.meter("druid.hedges.wins");
+
+    // Sends the hedges of slow queries, so it only ever does a little work at a time
+    private static final ScheduledExecutorService HEDGE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "druid-hedge-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
 
     private final DruidServiceConfig serviceConfig;
+    private final List<String> urls;
+    private final double hedgePercentile;
 
     /**
      * Friendly non-DI constructor useful for manual tests.
@@ -103,9 +140,32 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
      * @param mapper  A shared jackson object mapper resource
      */
     public AsyncDruidWebServiceImpl(DruidServiceConfig config, AsyncHttpClient asyncHttpClient, ObjectMapper mapper) {
+        this(config, asyncHttpClient, mapper, SYSTEM_CONFIG.getDoubleProperty(HEDGE_PERCENTILE_KEY, 0));
+    }
+
+    /**
+     * IOC constructor with a hedging percentile.
+     * <p>
+     * Queries are sent to the first URL of the configuration. If it has a second URL and the hedge percentile is
+     * positive, a query that has not been answered within that percentile of druid query latency is also sent to the
+     * second URL.
+     *
+     * @param config  the configuration for this druid service
+     * @param asyncHttpClient  the HTTP client
+     * @param mapper  A shared jackson object mapper resource
+     * @param hedgePercentile  Percentile of druid query latency after which to hedge a query, or 0 to never hedge
+     */
+    public AsyncDruidWebServiceImpl(
+            DruidServiceConfig config,
+            AsyncHttpClient asyncHttpClient,
+            ObjectMapper mapper,
+            double hedgePercentile
+    ) {
         this.serviceConfig = config;
+        this.urls = config.getUrls();
+        this.hedgePercentile = hedgePercentile;
 
-        if (serviceConfig.getUrl() == null) {
+        if (urls.isEmpty()) {
             String msg = DRUID_URL_INVALID.format(config.getNameAndUrl());
             LOG.error(msg);
             throw new IllegalStateException(msg);
@@ -114,17 +174,49 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         LOG.info("Configured with druid server config: {}", config.toString());
         this.webClient = asyncHttpClient;
         this.writer = mapper.writer();
+        this.jsonFactory = new MappingJsonFactory();
         this.httpErrorMeter = REGISTRY.meter("druid.errors.http");
         this.exceptionMeter = REGISTRY.meter("druid.errors.exceptions");
     }
 
     /**
      * Serializes the provided query and invokes a request on the druid broker.
+     * <p>
+     * If the success callback is a {@link StreamingSuccessCallback}, it is handed a parser over the response body
+     * instead of a fully built JSON tree.
+     *
+     * @param success  callback for handling successful requests.
+     * @param error  callback for handling http errors.
+     * @param failure  callback for handling exception failures.
+     * @param requestBuilder  The bound request builder for the request to be sent.
+     * @param timerName  The name that distinguishes this request as part of a druid query or segment metadata request
+     * @param outstanding  The counter that keeps track of the outstanding (in flight) requests for the top level query
+     */
+    protected void sendRequest(
+            final SuccessCallback success,
+            final HttpErrorCallback error,
+            final FailureCallback failure,
+            final BoundRequestBuilder requestBuilder,
+            final String timerName,
+            final AtomicLong outstanding
+    ) {
+        sendRequest(success, error, failure, requestBuilder, null, timerName, outstanding);
+    }
+
+    /**
+     * Serializes the provided query and invokes a request on the druid broker, hedging it on a second broker if the
+     * first is slow to answer.
+     * <p>
+     * If hedging is on and a hedge request builder is given, the request is sent again through the hedge builder when
+     * the first broker has not answered within the configured percentile of druid query latency. The first successful
+     * response is used and the other request is cancelled. Errors are only reported once neither request can succeed.
+     * Either way, the request log and the outstanding counter are updated once, as for a single request.
      *
      * @param success  callback for handling successful requests.
      * @param error  callback for handling http errors.
      * @param failure  callback for handling exception failures.
      * @param requestBuilder  The bound request builder for the request to be sent.
+     * @param hedgeRequestBuilder  The bound request builder for the same request to a second broker, or null
      * @param timerName  The name that distinguishes this request as part of a druid query or segment metadata request
      * @param outstanding  The counter that keeps track of the outstanding (in flight) requests for the top level query
      */
@@ -133,88 +225,36 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
             final HttpErrorCallback error,
             final FailureCallback failure,
             final BoundRequestBuilder requestBuilder,
+            final BoundRequestBuilder hedgeRequestBuilder,
             final String timerName,
             final AtomicLong outstanding
     ) {
         RequestLog.startTiming(timerName);
         final RequestLog logCtx = RequestLog.dump();
+        final Exchange exchange = new Exchange(success, error, failure, timerName, outstanding, logCtx);
 
-        try {
-            requestBuilder.execute(
-                new AsyncCompletionHandler<Response>() {
-                    @Override
-                    public Response onCompleted(Response response) {
-                        RequestLog.restore(logCtx);
-                        RequestLog.stopTiming(timerName);
-                        if (outstanding.decrementAndGet() == 0) {
-                            RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
-                        }
-                        String druidQueryId = response.getHeader("X-Druid-Query-Id");
-                        RequestLog.record(new DruidResponse(druidQueryId));
-                        Status status = Status.fromStatusCode(response.getStatusCode());
-                        LOG.debug(
-                                "druid {} response code: {} {} and druid query id: {}",
-                                serviceConfig.getNameAndUrl(),
-                                status.getStatusCode(),
-                                status,
-                                druidQueryId
-                        );
-
-                        if (status != Status.OK) {
-                            httpErrorMeter.mark();
-                            LOG.debug(
-                                    "druid {} error: {} {} {} and druid query id: {}",
-                                    serviceConfig.getNameAndUrl(),
-                                    status.getStatusCode(),
-                                    status.getReasonPhrase(),
-                                    response.getResponseBody(),
-                                    druidQueryId
-                            );
-
-                            error.invoke(
-                                    status.getStatusCode(),
-                                    status.getReasonPhrase(),
-                                    response.getResponseBody()
-                            );
-                        } else {
-                            MappingJsonFactory jsonFactory = new MappingJsonFactory();
-                            try {
-                                JsonNode rootNode;
-                                try (InputStream responseStream = response.getResponseBodyAsStream();
-                                    JsonParser jp = jsonFactory.createParser(responseStream)) {
-                                    rootNode = jp.readValueAsTree();
-                                }
-                                success.invoke(rootNode);
-                            } catch (RuntimeException | IOException e) {
-                                failure.invoke(e);
-                            }
-                        }
+        exchange.send(requestBuilder, false);
 
-                        // we consumed this response, so pass null to any chains
-                        return null;
-                    }
+        long hedgeDelay = hedgeRequestBuilder == null ? 0 : getHedgeDelayNanos();
+        if (hedgeDelay > 0) {
+            HEDGE_SCHEDULER.schedule(() -> exchange.hedge(hedgeRequestBuilder), hedgeDelay, TimeUnit.NANOSECONDS);
+        }
+    }
 
-                    @Override
-                    public void onThrowable(Throwable t) {
-                        RequestLog.restore(logCtx);
-                        RequestLog.stopTiming(timerName);
-                        if (outstanding.decrementAndGet() == 0) {
-                            RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
-                        }
-                        exceptionMeter.mark();
-                        LOG.error("druid {} request failed:", serviceConfig.getNameAndUrl(), t);
-                        failure.invoke(t);
-                    }
-                });
-        } catch (RuntimeException t) {
-            RequestLog.restore(logCtx);
-            RequestLog.stopTiming(timerName);
-            if (outstanding.decrementAndGet() == 0) {
-                RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
-            }
-            LOG.error("druid {} http request failed: ", serviceConfig.getNameAndUrl(), t);
-            failure.invoke(t);
+    /**
+     * Get how long to wait for a broker before hedging a query on another one.
+     *
+     * @return the configured percentile of the latency of druid queries in nanoseconds, or 0 to not hedge
+     */
+    protected long getHedgeDelayNanos() {
+        if (hedgePercentile <= 0) {
+            return 0;
+        }
+        Timer queryTimer = REGISTRY.timer(DRUID_QUERY_ALL_TIMER);
+        if (queryTimer.getCount() == 0) {
+            return 0;
         }
+        return (long) queryTimer.getSnapshot().getValue(hedgePercentile / 100);
     }
 
     @Override
@@ -224,7 +264,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
             FailureCallback failure,
             String resourcePath
     ) {
-        String url = String.format("%s%s", serviceConfig.getUrl(), resourcePath);
+        String url = String.format("%s%s", urls.get(0), resourcePath);
         sendRequest(
                 success,
                 error,
@@ -257,7 +297,7 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
         AtomicLong outstanding;
 
         if (!(druidQuery instanceof WeightEvaluationQuery)) {
-            if (context.getNumberOfOutgoing().decrementAndGet() == 0) {
+            if (!context.isRetry() && context.getNumberOfOutgoing().decrementAndGet() == 0) {
                 RequestLog.stopTiming(REQUEST_WORKFLOW_TIMER);
             }
             outstanding = context.getNumberOfIncoming();
@@ -267,14 +307,23 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
             timerName = DRUID_WEIGHTED_QUERY_TIMER + String.format(format, seqNum);
         }
 
+        // Only data queries are hedged, and only if there is a second broker to hedge on
+        BoundRequestBuilder hedgeRequestBuilder = null;
+        if (!(druidQuery instanceof WeightEvaluationQuery) && urls.size() > 1 && hedgePercentile > 0) {
+            hedgeRequestBuilder = webClient.preparePost(urls.get(1))
+                    .setBody(entityBody)
+                    .addHeader("Content-Type", "application/json");
+        }
+
         LOG.debug("druid json request: {}", entityBody);
         sendRequest(
                 success,
                 error,
                 failure,
-                webClient.preparePost(serviceConfig.getUrl())
+                webClient.preparePost(urls.get(0))
                         .setBody(entityBody)
                         .addHeader("Content-Type", "application/json"),
+                hedgeRequestBuilder,
                 timerName,
                 outstanding
         );
@@ -289,4 +338,203 @@ public class AsyncDruidWebServiceImpl implements DruidWebService {
     public DruidServiceConfig getServiceConfig() {
         return serviceConfig;
     }
+
+    /**
+     * The requests sent to druid for one query: the first request, and its hedge if one is sent.
+     * <p>
+     * The exchange is settled once, by the first successful response, or by the last request to fail. Only the
+     * request that settles it touches the request log and the outstanding counter, and calls back.
+     */
+    private class Exchange {
+        private final SuccessCallback success;
+        private final HttpErrorCallback error;
+        private final FailureCallback failure;
+        private final String timerName;
+        private final AtomicLong outstanding;
+        private final RequestLog logCtx;
+
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final List<Future<Response>> requests = new CopyOnWriteArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param success  callback for handling successful requests.
+         * @param error  callback for handling http errors.
+         * @param failure  callback for handling exception failures.
+         * @param timerName  The name of the timer of the query
+         * @param outstanding  The counter of the outstanding (in flight) requests for the top level query
+         * @param logCtx  The request log of the query
+         */
+        Exchange(
+                SuccessCallback success,
+                HttpErrorCallback error,
+                FailureCallback failure,
+                String timerName,
+                AtomicLong outstanding,
+                RequestLog logCtx
+        ) {
+            this.success = success;
+            this.error = error;
+            this.failure = failure;
+            this.timerName = timerName;
+            this.outstanding = outstanding;
+            this.logCtx = logCtx;
+        }
+
+        /**
+         * Send the query again, if it has not been settled yet.
+         *
+         * @param requestBuilder  The bound request builder for the query to a second broker
+         */
+        void hedge(BoundRequestBuilder requestBuilder) {
+            if (settled.get()) {
+                return;
+            }
+            HEDGES.mark();
+            LOG.debug("Hedging druid {} query after no answer", serviceConfig.getNameAndUrl());
+            send(requestBuilder, true);
+        }
+
+        /**
+         * Send a request for the query.
+         *
+         * @param requestBuilder  The bound request builder for the request to be sent
+         * @param isHedge  Whether or not the request is the hedge of another one
+         */
+        void send(BoundRequestBuilder requestBuilder, boolean isHedge) {
+            pending.incrementAndGet();
+            AsyncCompletionHandler<Response> handler = new AsyncCompletionHandler<Response>() {
+                @Override
+                public Response onCompleted(Response response) {
+                    Status status = Status.fromStatusCode(response.getStatusCode());
+                    if (status != Status.OK) {
+                        httpErrorMeter.mark();
+                    }
+                    boolean last = pending.decrementAndGet() == 0;
+                    if ((status == Status.OK || last) && settled.compareAndSet(false, true)) {
+                        if (isHedge) {
+                            HEDGE_WINS.mark();
+                        }
+                        cancelRequests();
+                        complete(response, status);
+                    }
+
+                    // we consumed this response, so pass null to any chains
+                    return null;
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    if (!(t instanceof CancellationException)) {
+                        exceptionMeter.mark();
+                    }
+                    if (pending.decrementAndGet() == 0 && settled.compareAndSet(false, true)) {
+                        fail(t);
+                    } else {
+                        LOG.debug("druid {} request given up for another:", serviceConfig.getNameAndUrl(), t);
+                    }
+                }
+            };
+
+            try {
+                requests.add(requestBuilder.execute(handler));
+            } catch (RuntimeException t) {
+                handler.onThrowable(t);
+            }
+
+            // A request sent just as the exchange was settled is not needed
+            if (settled.get()) {
+                cancelRequests();
+            }
+        }
+
+        /**
+         * Cancel the requests of the exchange that are still in flight.
+         */
+        private void cancelRequests() {
+            for (Future<Response> request : requests) {
+                if (!request.isDone()) {
+                    request.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Close the timers of the query.
+         */
+        private void stopTiming() {
+            RequestLog.restore(logCtx);
+            RequestLog.stopTiming(timerName);
+            if (outstanding.decrementAndGet() == 0) {
+                RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+            }
+        }
+
+        /**
+         * Call back with the response that settled the exchange.
+         *
+         * @param response  The response
+         * @param status  The status of the response
+         */
+        private void complete(Response response, Status status) {
+            stopTiming();
+            String druidQueryId = response.getHeader("X-Druid-Query-Id");
+            RequestLog.record(new DruidResponse(druidQueryId));
+            LOG.debug(
+                    "druid {} response code: {} {} and druid query id: {}",
+                    serviceConfig.getNameAndUrl(),
+                    status.getStatusCode(),
+                    status,
+                    druidQueryId
+            );
+
+            if (status != Status.OK) {
+                LOG.debug(
+                        "druid {} error: {} {} {} and druid query id: {}",
+                        serviceConfig.getNameAndUrl(),
+                        status.getStatusCode(),
+                        status.getReasonPhrase(),
+                        response.getResponseBody(),
+                        druidQueryId
+                );
+
+                error.invoke(
+                        status.getStatusCode(),
+                        status.getReasonPhrase(),
+                        response.getResponseBody()
+                );
+            } else if (success instanceof StreamingSuccessCallback) {
+                try (InputStream responseStream = response.getResponseBodyAsStream();
+                    JsonParser jp = jsonFactory.createParser(responseStream)) {
+                    ((StreamingSuccessCallback) success).invoke(jp);
+                } catch (RuntimeException | IOException e) {
+                    failure.invoke(e);
+                }
+            } else {
+                try {
+                    JsonNode rootNode;
+                    try (InputStream responseStream = response.getResponseBodyAsStream();
+                        JsonParser jp = jsonFactory.createParser(responseStream)) {
+                        rootNode = jp.readValueAsTree();
+                    }
+                    success.invoke(rootNode);
+                } catch (RuntimeException | IOException e) {
+                    failure.invoke(e);
+                }
+            }
+        }
+
+        /**
+         * Call back with the failure that settled the exchange.
+         *
+         * @param t  The failure
+         */
+        private void fail(Throwable t) {
+            stopTiming();
+            LOG.error("druid {} request failed:", serviceConfig.getNameAndUrl(), t);
+            failure.invoke(t);
+        }
+    }
 }
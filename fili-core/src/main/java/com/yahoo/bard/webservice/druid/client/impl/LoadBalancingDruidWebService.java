@@ -0,0 +1,500 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl;
+
+import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.RESPONSE_WORKFLOW_TIMER;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig;
+import com.yahoo.bard.webservice.druid.client.DruidWebService;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
+import com.yahoo.bard.webservice.druid.client.SuccessCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidQuery;
+import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.handlers.RequestContext;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A druid web service that spreads requests over a pool of brokers.
+ * <p>
+ * Each request goes to the broker with the fewest requests in flight, weighted by the recent latency of the broker.
+ * Brokers are tracked passively: a broker that fails a number of requests in a row, by throwing or by answering with
+ * a server error, is left out of the rotation for a while, and is then tried again. Druid queries only read data, so a
+ * request that fails on one broker is retried on a different one before the failure is reported.
+ */
+public class LoadBalancingDruidWebService implements DruidWebService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancingDruidWebService.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    // Property names
+    private static final @NotNull String FAILURE_THRESHOLD_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_broker_failure_threshold");
+    private static final @NotNull String CIRCUIT_OPEN_MILLIS_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_broker_circuit_open_millis");
+    private static final @NotNull String MAX_RETRIES_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("druid_broker_max_retries");
+
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+    public static final Meter RETRIES = REGISTRY.meter("druid.brokers.retries");
+    public static final Meter CIRCUITS_OPENED = REGISTRY.meter("druid.brokers.circuits_opened");
+
+    // Weight of the latest request in the moving average of the latency of a broker
+    private static final double LATENCY_DECAY = 0.2;
+
+    private final DruidServiceConfig serviceConfig;
+    private final List<Broker> brokers;
+    private final int failureThreshold;
+    private final long circuitOpenMillis;
+    private final int maxRetries;
+
+    /**
+     * Constructor, with the failure threshold, circuit open time and retries from the system configuration.
+     *
+     * @param serviceConfig  Configuration for the pool as a whole
+     * @param brokers  The web services of the brokers in the pool
+     */
+    public LoadBalancingDruidWebService(DruidServiceConfig serviceConfig, List<DruidWebService> brokers) {
+        this(
+                serviceConfig,
+                brokers,
+                SYSTEM_CONFIG.getIntProperty(FAILURE_THRESHOLD_KEY, 3),
+                SYSTEM_CONFIG.getLongProperty(CIRCUIT_OPEN_MILLIS_KEY, 30000),
+                SYSTEM_CONFIG.getIntProperty(MAX_RETRIES_KEY, 1)
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param serviceConfig  Configuration for the pool as a whole
+     * @param brokers  The web services of the brokers in the pool
+     * @param failureThreshold  Number of failures in a row after which a broker is left out of the rotation
+     * @param circuitOpenMillis  Time in milliseconds a broker is left out of the rotation for
+     * @param maxRetries  Maximum number of times a failed request is retried on another broker
+     */
+    public LoadBalancingDruidWebService(
+            DruidServiceConfig serviceConfig,
+            List<DruidWebService> brokers,
+            int failureThreshold,
+            long circuitOpenMillis,
+            int maxRetries
+    ) {
+        if (brokers.isEmpty()) {
+            String message = "A pool of druid brokers needs at least one broker: " + serviceConfig.getNameAndUrl();
+            LOG.error(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.serviceConfig = serviceConfig;
+        this.brokers = Collections.unmodifiableList(
+                brokers.stream().map(Broker::new).collect(Collectors.toList())
+        );
+        this.failureThreshold = failureThreshold;
+        this.circuitOpenMillis = circuitOpenMillis;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Get the web services of the brokers in the pool.
+     *
+     * @return the broker web services, in the order they were given
+     */
+    public List<DruidWebService> getBrokers() {
+        return brokers.stream().map(broker -> broker.webService).collect(Collectors.toList());
+    }
+
+    @Override
+    public void postDruidQuery(
+            RequestContext context,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            DruidQuery<?> druidQuery
+    ) {
+        // Weight evaluation queries keep counts of their own
+        if (druidQuery instanceof WeightEvaluationQuery) {
+            send(
+                    null,
+                    maxRetries,
+                    (webService, isRetry, brokerSuccess, brokerError, brokerFailure) ->
+                            webService.postDruidQuery(context, brokerSuccess, brokerError, brokerFailure, druidQuery),
+                    success,
+                    error,
+                    failure
+            );
+            return;
+        }
+
+        // Hold a count of the responses to come until the query is settled, so that an attempt that fails and is
+        // retried doesn't start timing the response workflow while the retry is still in flight
+        context.getNumberOfIncoming().incrementAndGet();
+        AtomicBoolean held = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (held.compareAndSet(true, false) && context.getNumberOfIncoming().decrementAndGet() == 0) {
+                RequestLog.startTiming(RESPONSE_WORKFLOW_TIMER);
+            }
+        };
+
+        SuccessCallback releasingSuccess;
+        if (success instanceof StreamingSuccessCallback) {
+            StreamingSuccessCallback streamingSuccess = (StreamingSuccessCallback) success;
+            releasingSuccess = new StreamingSuccessCallback() {
+                @Override
+                public void invoke(JsonParser jsonParser) throws IOException {
+                    release.run();
+                    streamingSuccess.invoke(jsonParser);
+                }
+
+                @Override
+                public void invoke(JsonNode rootNode) {
+                    release.run();
+                    streamingSuccess.invoke(rootNode);
+                }
+            };
+        } else {
+            releasingSuccess = rootNode -> {
+                release.run();
+                success.invoke(rootNode);
+            };
+        }
+
+        try {
+            send(
+                    null,
+                    maxRetries,
+                    (webService, isRetry, brokerSuccess, brokerError, brokerFailure) -> webService.postDruidQuery(
+                            isRetry ? buildRetryContext(context) : context,
+                            brokerSuccess,
+                            brokerError,
+                            brokerFailure,
+                            druidQuery
+                    ),
+                    releasingSuccess,
+                    (statusCode, reasonPhrase, responseBody) -> {
+                        release.run();
+                        error.invoke(statusCode, reasonPhrase, responseBody);
+                    },
+                    throwable -> {
+                        release.run();
+                        failure.invoke(throwable);
+                    }
+            );
+        } catch (RuntimeException e) {
+            // The query was not sent, so there is no response to count
+            if (held.compareAndSet(true, false)) {
+                context.getNumberOfIncoming().decrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void getJsonObject(
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure,
+            String resourcePath
+    ) {
+        send(
+                null,
+                maxRetries,
+                (webService, isRetry, brokerSuccess, brokerError, brokerFailure) ->
+                        webService.getJsonObject(brokerSuccess, brokerError, brokerFailure, resourcePath),
+                success,
+                error,
+                failure
+        );
+    }
+
+    @Override
+    public DruidServiceConfig getServiceConfig() {
+        return serviceConfig;
+    }
+
+    @Override
+    public Integer getTimeout() {
+        return serviceConfig.getTimeout();
+    }
+
+    /**
+     * Send a request to the best broker other than the one that last failed it, retrying it elsewhere if it fails.
+     *
+     * @param failed  The broker that last failed the request, or null if it has not been sent yet
+     * @param retriesLeft  Number of times the request may still be retried
+     * @param request  Sends the request to a broker
+     * @param success  Callback for handling successful requests
+     * @param error  Callback for handling http errors
+     * @param failure  Callback for handling exception failures
+     */
+    private void send(
+            Broker failed,
+            int retriesLeft,
+            BrokerRequest request,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure
+    ) {
+        Broker broker = selectBroker(failed);
+        boolean canRetry = retriesLeft > 0 && brokers.size() > 1;
+        long start = System.nanoTime();
+
+        // Each attempt completes once. A failure reported after the success callback ran is the caller's own, so it
+        // is passed on without counting against the broker.
+        AtomicBoolean completed = new AtomicBoolean(false);
+
+        HttpErrorCallback brokerError = (statusCode, reasonPhrase, responseBody) -> {
+            if (completed.compareAndSet(false, true)) {
+                if (statusCode < 500) {
+                    broker.succeeded(start);
+                } else {
+                    broker.failed();
+                    if (canRetry) {
+                        retry(broker, retriesLeft, request, success, error, failure);
+                        return;
+                    }
+                }
+            }
+            error.invoke(statusCode, reasonPhrase, responseBody);
+        };
+        FailureCallback brokerFailure = throwable -> {
+            if (completed.compareAndSet(false, true)) {
+                broker.failed();
+                if (canRetry) {
+                    retry(broker, retriesLeft, request, success, error, failure);
+                    return;
+                }
+            }
+            failure.invoke(throwable);
+        };
+        SuccessCallback brokerSuccess;
+        if (success instanceof StreamingSuccessCallback) {
+            StreamingSuccessCallback streamingSuccess = (StreamingSuccessCallback) success;
+            brokerSuccess = new StreamingSuccessCallback() {
+                @Override
+                public void invoke(JsonParser jsonParser) throws IOException {
+                    if (completed.compareAndSet(false, true)) {
+                        broker.succeeded(start);
+                    }
+                    streamingSuccess.invoke(jsonParser);
+                }
+
+                @Override
+                public void invoke(JsonNode rootNode) {
+                    if (completed.compareAndSet(false, true)) {
+                        broker.succeeded(start);
+                    }
+                    streamingSuccess.invoke(rootNode);
+                }
+            };
+        } else {
+            brokerSuccess = rootNode -> {
+                if (completed.compareAndSet(false, true)) {
+                    broker.succeeded(start);
+                }
+                success.invoke(rootNode);
+            };
+        }
+
+        broker.outstanding.incrementAndGet();
+        try {
+            request.send(broker.webService, failed != null, brokerSuccess, brokerError, brokerFailure);
+        } catch (RuntimeException e) {
+            if (completed.compareAndSet(false, true)) {
+                broker.outstanding.decrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send a failed request again, to a different broker.
+     *
+     * @param failed  The broker that failed the request
+     * @param retriesLeft  Number of times the request could still be retried before this retry
+     * @param request  Sends the request to a broker
+     * @param success  Callback for handling successful requests
+     * @param error  Callback for handling http errors
+     * @param failure  Callback for handling exception failures
+     */
+    private void retry(
+            Broker failed,
+            int retriesLeft,
+            BrokerRequest request,
+            SuccessCallback success,
+            HttpErrorCallback error,
+            FailureCallback failure
+    ) {
+        RETRIES.mark();
+        LOG.debug("Retrying druid request that failed on {}", failed.webService.getServiceConfig().getNameAndUrl());
+        try {
+            send(failed, retriesLeft - 1, request, success, error, failure);
+        } catch (RuntimeException e) {
+            failure.invoke(e);
+        }
+    }
+
+    /**
+     * Pick the broker to send a request to.
+     * <p>
+     * Brokers whose circuit is open are skipped, unless every broker but the excluded one is open, in which case the
+     * one that has been open the longest is tried.
+     *
+     * @param excluded  A broker to avoid if there is any other, or null
+     *
+     * @return the broker with the fewest requests in flight, weighted by its latency
+     */
+    private Broker selectBroker(Broker excluded) {
+        long now = System.currentTimeMillis();
+        Broker best = null;
+        double bestScore = Double.MAX_VALUE;
+        Broker leastRecentlyOpened = null;
+        for (Broker broker : brokers) {
+            if (broker == excluded) {
+                continue;
+            }
+            if (broker.isOpen(now)) {
+                if (leastRecentlyOpened == null || broker.openUntil < leastRecentlyOpened.openUntil) {
+                    leastRecentlyOpened = broker;
+                }
+                continue;
+            }
+            double score = (broker.outstanding.get() + 1) * Math.max(broker.latencyMillis, 1);
+            if (score < bestScore) {
+                best = broker;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        return leastRecentlyOpened != null ? leastRecentlyOpened : excluded;
+    }
+
+    /**
+     * Build the request context of a retried query.
+     * <p>
+     * The retry is sent on behalf of the same web request, so it keeps the container request context and headers of
+     * the query. Its response is counted as still to come, and it is marked as a retry, so that it is not counted as
+     * sent a second time.
+     *
+     * @param context  The request context of the query
+     *
+     * @return a request context for the retry
+     */
+    private static RequestContext buildRetryContext(RequestContext context) {
+        RequestContext retryContext = new RequestContext(context);
+        context.getNumberOfIncoming().incrementAndGet();
+        return retryContext;
+    }
+
+    /**
+     * Sends a request to a broker.
+     */
+    @FunctionalInterface
+    private interface BrokerRequest {
+
+        /**
+         * Send the request.
+         *
+         * @param webService  The web service of the broker to send the request to
+         * @param isRetry  Whether or not the request has already been sent to another broker
+         * @param success  Callback for handling successful requests
+         * @param error  Callback for handling http errors
+         * @param failure  Callback for handling exception failures
+         */
+        void send(
+                DruidWebService webService,
+                boolean isRetry,
+                SuccessCallback success,
+                HttpErrorCallback error,
+                FailureCallback failure
+        );
+    }
+
+    /**
+     * The state of a broker in the pool.
+     */
+    private final class Broker {
+        private final DruidWebService webService;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile double latencyMillis;
+        private volatile long openUntil;
+
+        /**
+         * Constructor.
+         *
+         * @param webService  The web service of the broker
+         */
+        private Broker(DruidWebService webService) {
+            this.webService = webService;
+        }
+
+        /**
+         * Whether or not the broker is out of the rotation.
+         *
+         * @param now  The current time in milliseconds
+         *
+         * @return true if the circuit of the broker is open
+         */
+        private boolean isOpen(long now) {
+            return openUntil > now;
+        }
+
+        /**
+         * Record a request that the broker answered.
+         *
+         * @param start  The time the request was sent at, in nanoseconds
+         */
+        private void succeeded(long start) {
+            outstanding.decrementAndGet();
+            consecutiveFailures.set(0);
+            double latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            latencyMillis = latencyMillis == 0
+                    ? latency
+                    : LATENCY_DECAY * latency + (1 - LATENCY_DECAY) * latencyMillis;
+        }
+
+        /**
+         * Record a request that the broker failed, opening its circuit if it failed too many in a row.
+         */
+        private void failed() {
+            outstanding.decrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                long now = System.currentTimeMillis();
+                if (!isOpen(now)) {
+                    CIRCUITS_OPENED.mark();
+                    LOG.warn(
+                            "Taking druid broker {} out of rotation for {}ms after {} failures in a row",
+                            webService.getServiceConfig().getNameAndUrl(),
+                            circuitOpenMillis,
+                            consecutiveFailures.get()
+                    );
+                }
+                openUntil = now + circuitOpenMillis;
+            }
+        }
+    }
+}
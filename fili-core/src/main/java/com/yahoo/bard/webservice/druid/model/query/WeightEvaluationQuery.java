@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 /**
  * Query to generate weight to evaluate the query.
@@ -138,6 +139,25 @@ public class WeightEvaluationQuery extends GroupByQuery {
      * @throws ArithmeticException if the estimate is larger than {@link Long#MAX_VALUE}
      */
     public static long getWorstCaseWeightEstimate(DruidAggregationQuery<?> query) {
+        return getWorstCaseWeightEstimate(query, Dimension::getCardinality);
+    }
+
+    /**
+     * Evaluate Druid query for worst possible case expensive aggregation, with the number of values of each dimension
+     * given by a function.
+     * <p>
+     * Number of Sketches * # of periods in iteration * number of values of each dimension
+     *
+     * @param query  The base query being estimated
+     * @param cardinality  The number of values of a dimension that the query may see
+     *
+     * @return worst case rows
+     * @throws ArithmeticException if the estimate is larger than {@link Long#MAX_VALUE}
+     */
+    public static long getWorstCaseWeightEstimate(
+            DruidAggregationQuery<?> query,
+            ToLongFunction<Dimension> cardinality
+    ) {
         DruidAggregationQuery<?> innerQuery = query.getInnermostQuery();
 
         int sketchWeight = Utils.getSubsetByType(innerQuery.getAggregations(), SketchAggregation.class).size();
@@ -152,14 +172,14 @@ public class WeightEvaluationQuery extends GroupByQuery {
             case TOP_N:
                 TopNQuery topNQuery = (TopNQuery) innerQuery;
                 cardinalityWeight = Math.min(
-                        topNQuery.getDimension().getCardinality(),
+                        cardinality.applyAsLong(topNQuery.getDimension()),
                         Math.max(topNQuery.getThreshold(), DEFAULT_DRUID_TOP_N_THRESHOLD)
                 );
                 break;
             case GROUP_BY:
             default:
                 cardinalityWeight = innerQuery.getDimensions().stream()
-                        .mapToLong(Dimension::getCardinality)
+                        .mapToLong(cardinality)
                         .map(it -> Math.max(1, it)) // 0-cardinality dimensions should multiply by identity (1)
                         .reduce(1, Math::multiplyExact);
         }
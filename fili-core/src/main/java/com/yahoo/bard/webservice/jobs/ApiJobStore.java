@@ -4,6 +4,8 @@ package com.yahoo.bard.webservice.jobs;
 
 import rx.Observable;
 
+import java.util.Set;
+
 /**
  * An ApiJobStore is responsible for storing the metadata about Bard jobs. Conceptually, the ApiJobStore is a table
  * where each row is the metadata of a particular job, and the columns are the metadata stored with each job
@@ -49,4 +51,20 @@ public interface ApiJobStore {
      * @return An Observable that emits a stream of all the JobRows in the store
      */
     Observable<JobRow> getAllRows();
+
+    /**
+     * A cold observable that emits a stream of the JobRows that satisfy all of the given filters, until all such
+     * JobRows have been retrieved from the store. If at any time an error is encountered, {@code onError} is invoked,
+     * and the stream halts.
+     * <p>
+     * By default the filters are applied to every row emitted by {@link #getAllRows}. Stores that can look rows up by
+     * the value of a field should override this, so that the rows that don't match aren't read at all.
+     *
+     * @param jobRowFilters  The filters the JobRows must satisfy. If empty, every JobRow is emitted
+     *
+     * @return An Observable that emits a stream of the JobRows in the store that satisfy every filter
+     */
+    default Observable<JobRow> getFilteredRows(Set<JobRowFilter> jobRowFilters) {
+        return getAllRows().filter(jobRow -> jobRowFilters.stream().allMatch(filter -> filter.test(jobRow)));
+    }
 }
@@ -0,0 +1,251 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.observers.SerializedSubscriber;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+import rx.subscriptions.Subscriptions;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A BroadcastChannel that batches the messages published to it over a short window, and sends each batch to the other
+ * Bard boxes as a single message over another BroadcastChannel, such as a {@link RedisBroadcastChannel}. A message
+ * published more than once in the same window is only sent once.
+ * <p>
+ * Received messages are routed through a registry of the subscribers waiting for each message, so a subscriber to
+ * {@link #getNotifications(Object)}, such as a long poll waiting for a ticket, is only signalled for the message it
+ * is waiting for, rather than being woken by every message and filtering them itself. {@link #getNotifications()}
+ * still emits every message.
+ * <p>
+ * The time each batch takes to arrive, and the number of subscribers signalled by each message, are exported as
+ * metrics.
+ *
+ * @param <T>  The type of message that the BatchingBroadcastChannel publishes
+ */
+public class BatchingBroadcastChannel<T> implements BroadcastChannel<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingBroadcastChannel.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    private static final @NotNull String BATCH_WINDOW_MILLIS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("broadcast_channel_batch_window_millis");
+
+    // The default time messages are collected before they are sent as a batch
+    private static final long BATCH_WINDOW_MILLIS_DEFAULT = 10;
+
+    private static final Timer DELIVERY_LAG = REGISTRY.timer("broadcast.notifications.delivery_lag");
+    private static final Histogram FAN_OUT = REGISTRY.histogram("broadcast.notifications.fan_out");
+    private static final Meter BATCHES = REGISTRY.meter("broadcast.notifications.batches");
+    private static final Meter MESSAGES = REGISTRY.meter("broadcast.notifications.messages");
+
+    private final BroadcastChannel<NotificationBatch<T>> transport;
+    private final long batchWindowMillis;
+    private final Clock clock;
+    private final ScheduledExecutorService batchScheduler;
+    private final Subscription transportSubscription;
+
+    private final Subject<T, T> notifications = PublishSubject.<T>create().toSerialized();
+
+    // Message to the subscribers waiting for it
+    private final Map<T, Set<Subscriber<T>>> waiters = new ConcurrentHashMap<>();
+
+    // Guarded by itself
+    private final Set<T> pending = new LinkedHashSet<>();
+
+    private final ReadWriteLock isClosedLock = new ReentrantReadWriteLock();
+    private volatile boolean isClosed = false;
+
+    /**
+     * Constructor for a channel local to this Bard box, which only passes messages between the publishers and
+     * subscribers of this channel, with the batch window read from configuration.
+     */
+    public BatchingBroadcastChannel() {
+        this(new SimpleBroadcastChannel<>(PublishSubject.create()));
+    }
+
+    /**
+     * Constructor, with the batch window read from configuration.
+     *
+     * @param transport  The channel to send the batches of messages to the other Bard boxes over
+     */
+    public BatchingBroadcastChannel(BroadcastChannel<NotificationBatch<T>> transport) {
+        this(
+                transport,
+                SYSTEM_CONFIG.getLongProperty(BATCH_WINDOW_MILLIS_KEY, BATCH_WINDOW_MILLIS_DEFAULT),
+                Clock.systemUTC()
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transport  The channel to send the batches of messages to the other Bard boxes over
+     * @param batchWindowMillis  How long messages are collected before they are sent as a batch. If not positive,
+     * each message is sent as soon as it is published
+     * @param clock  The clock to time the delivery of batches by
+     */
+    public BatchingBroadcastChannel(
+            BroadcastChannel<NotificationBatch<T>> transport,
+            long batchWindowMillis,
+            Clock clock
+    ) {
+        this.transport = transport;
+        this.batchWindowMillis = batchWindowMillis;
+        this.clock = clock;
+        this.batchScheduler = batchWindowMillis > 0 ?
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "broadcast-channel-batcher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                ) :
+                null;
+        this.transportSubscription = transport.getNotifications().subscribe(
+                this::deliver,
+                error -> LOG.warn("Notifications from the broadcast channel transport failed", error)
+        );
+    }
+
+    @Override
+    public void publish(T message) throws UnsupportedOperationException {
+        isClosedLock.readLock().lock();
+        try {
+            if (isClosed) {
+                throw new UnsupportedOperationException(PUBLISH_ON_CLOSED_ERROR_MESSAGE);
+            }
+            boolean startsBatch;
+            synchronized (pending) {
+                startsBatch = pending.isEmpty();
+                pending.add(message);
+            }
+            if (batchScheduler == null) {
+                sendBatch();
+            } else if (startsBatch) {
+                batchScheduler.schedule(this::sendBatch, batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            isClosedLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Observable<T> getNotifications() {
+        return notifications;
+    }
+
+    /**
+     * Returns a Hot Observable that emits the given message each time it is received, signalled through the registry
+     * of subscribers waiting for that message.
+     *
+     * @param message  The message to wait for
+     *
+     * @return An unbounded stream of the given message
+     */
+    @Override
+    public Observable<T> getNotifications(T message) {
+        return Observable.create(subscriber -> {
+            if (isClosed) {
+                subscriber.onCompleted();
+                return;
+            }
+            Subscriber<T> waiter = new SerializedSubscriber<>(subscriber);
+            waiters.computeIfAbsent(message, ignored -> ConcurrentHashMap.newKeySet()).add(waiter);
+            subscriber.add(Subscriptions.create(() -> waiters.computeIfPresent(message, (ignored, messageWaiters) -> {
+                messageWaiters.remove(waiter);
+                return messageWaiters.isEmpty() ? null : messageWaiters;
+            })));
+        });
+    }
+
+    @Override
+    public void close() {
+        isClosedLock.writeLock().lock();
+        try {
+            if (!isClosed) {
+                isClosed = true;
+                sendBatch();
+                if (batchScheduler != null) {
+                    batchScheduler.shutdownNow();
+                }
+                transportSubscription.unsubscribe();
+                transport.close();
+                notifications.onCompleted();
+                waiters.values().forEach(messageWaiters -> messageWaiters.forEach(Subscriber::onCompleted));
+                waiters.clear();
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to close the broadcast channel transport", e);
+        } finally {
+            isClosedLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Send the messages published since the last batch to the other Bard boxes as a single batch.
+     */
+    private void sendBatch() {
+        List<T> messages;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            messages = new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            transport.publish(new NotificationBatch<>(clock.millis(), messages));
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to send a batch of {} notifications", messages.size(), e);
+        }
+    }
+
+    /**
+     * Signal the subscribers to every message, and the subscribers waiting for each message in the batch.
+     *
+     * @param batch  The batch of messages received
+     */
+    private void deliver(NotificationBatch<T> batch) {
+        BATCHES.mark();
+        DELIVERY_LAG.update(Math.max(clock.millis() - batch.getPublishedMillis(), 0), TimeUnit.MILLISECONDS);
+        for (T message : batch.getMessages()) {
+            MESSAGES.mark();
+            notifications.onNext(message);
+            Set<Subscriber<T>> messageWaiters = waiters.getOrDefault(message, Collections.emptySet());
+            FAN_OUT.update(messageWaiters.size());
+            messageWaiters.forEach(waiter -> waiter.onNext(message));
+        }
+    }
+}
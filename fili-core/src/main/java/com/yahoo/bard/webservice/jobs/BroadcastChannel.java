@@ -36,4 +36,19 @@ public interface BroadcastChannel<T> extends Closeable {
      * @return An unbounded stream of notifications from Bard instances
      */
     Observable<T> getNotifications();
+
+    /**
+     * This method returns a Hot Observable that emits the given message each time it is passed to this channel by a
+     * Bard instance in the cluster.
+     * <p>
+     * By default this filters every notification. Channels that can route each message to just the subscribers
+     * waiting for it should override this, so that waiting subscribers aren't woken by every other message.
+     *
+     * @param message  The message to wait for
+     *
+     * @return An unbounded stream of the given message
+     */
+    default Observable<T> getNotifications(T message) {
+        return getNotifications().filter(message::equals);
+    }
 }
@@ -0,0 +1,301 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * An in-memory ApiJobStore that can be read and written concurrently, and that indexes the JobRows by the values of
+ * some of their fields, so that the rows satisfying a filter on those fields are looked up rather than found by
+ * reading every row in the store.
+ * <p>
+ * {@link #getFilteredRows} looks up the rows matching the {@code eq} or {@code in} filter on an indexed field that
+ * matches the fewest rows, and applies the rest of the filters to just those rows. Only when none of the filters can
+ * be looked up in an index is every row read.
+ * <p>
+ * Rows are also ordered by the date they were created, and a background task regularly drops the rows created longer
+ * ago than the retention period, so the store does not keep growing with the history of jobs. Rows whose date created
+ * is missing or can't be parsed are kept until they are overwritten.
+ * <p>
+ * Saves are serialized with each other and with eviction, while reads don't lock. Rows looked up in an index are
+ * always checked against the filters again, so a read racing a save never emits a row that doesn't satisfy them.
+ */
+public class IndexedJobStore implements ApiJobStore, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedJobStore.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final @NotNull String RETENTION_MILLIS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("job_store_retention_millis");
+
+    private static final @NotNull String EVICTION_INTERVAL_MILLIS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("job_store_eviction_interval_millis");
+
+    // The default time a job is kept after it is created, one week
+    private static final long RETENTION_MILLIS_DEFAULT = 7 * 24 * 60 * 60 * 1000L;
+
+    // The default time between evictions of old jobs, one hour
+    private static final long EVICTION_INTERVAL_MILLIS_DEFAULT = 60 * 60 * 1000L;
+
+    // The fields indexed by default
+    private static final List<JobField> INDEXED_FIELDS_DEFAULT = Arrays.asList(
+            DefaultJobField.USER_ID,
+            DefaultJobField.STATUS,
+            DefaultJobField.DATE_CREATED
+    );
+
+    private final long retentionMillis;
+    private final Clock clock;
+    private final ScheduledExecutorService evictionScheduler;
+
+    private final Map<String, JobRow> rows = new ConcurrentHashMap<>();
+
+    // Indexed field to the ids of the rows with each value of the field
+    private final Map<JobField, Map<String, Set<String>>> indexes;
+
+    // Millisecond the row was created to the ids of the rows created then
+    private final NavigableMap<Long, Set<String>> creationIndex = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructor, indexing the user id, status and date created of the jobs, with the retention period and the
+     * interval between evictions read from configuration.
+     */
+    public IndexedJobStore() {
+        this(
+                INDEXED_FIELDS_DEFAULT,
+                SYSTEM_CONFIG.getLongProperty(RETENTION_MILLIS_KEY, RETENTION_MILLIS_DEFAULT),
+                SYSTEM_CONFIG.getLongProperty(EVICTION_INTERVAL_MILLIS_KEY, EVICTION_INTERVAL_MILLIS_DEFAULT),
+                Clock.systemUTC()
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indexedFields  The fields to index the rows by
+     * @param retentionMillis  How long a row is kept after the date it was created. If not positive, rows are kept
+     * until they are overwritten
+     * @param evictionIntervalMillis  How often rows past the retention period are dropped. If not positive, they are
+     * only dropped by calls to {@link #evictExpiredRows}
+     * @param clock  The clock to age rows by
+     */
+    public IndexedJobStore(
+            Collection<? extends JobField> indexedFields,
+            long retentionMillis,
+            long evictionIntervalMillis,
+            Clock clock
+    ) {
+        Map<JobField, Map<String, Set<String>>> fieldIndexes = new HashMap<>();
+        indexedFields.forEach(field -> fieldIndexes.put(field, new ConcurrentHashMap<>()));
+        this.indexes = Collections.unmodifiableMap(fieldIndexes);
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+
+        if (retentionMillis > 0 && evictionIntervalMillis > 0) {
+            evictionScheduler = Executors.newSingleThreadScheduledExecutor(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "job-store-eviction");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+            );
+            evictionScheduler.scheduleWithFixedDelay(
+                    this::evictExpiredRows,
+                    evictionIntervalMillis,
+                    evictionIntervalMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        } else {
+            evictionScheduler = null;
+        }
+    }
+
+    @Override
+    public Observable<JobRow> get(String id) {
+        JobRow jobRow = rows.get(id);
+        return jobRow == null ? Observable.empty() : Observable.just(jobRow);
+    }
+
+    @Override
+    public synchronized Observable<JobRow> save(JobRow metadata) {
+        String id = metadata.getId();
+
+        // Index the new row before replacing the old one, so the row can be looked up throughout the save
+        indexes.forEach((field, index) -> addToIndex(index, metadata.get(field), id));
+        Long createdMillis = parseDateCreated(metadata);
+        addToIndex(creationIndex, createdMillis, id);
+
+        JobRow previous = rows.put(id, metadata);
+
+        if (previous != null) {
+            indexes.forEach((field, index) -> {
+                String previousValue = previous.get(field);
+                if (!Objects.equals(previousValue, metadata.get(field))) {
+                    removeFromIndex(index, previousValue, id);
+                }
+            });
+            Long previousCreatedMillis = parseDateCreated(previous);
+            if (!Objects.equals(previousCreatedMillis, createdMillis)) {
+                removeFromIndex(creationIndex, previousCreatedMillis, id);
+            }
+        }
+        return Observable.just(metadata);
+    }
+
+    @Override
+    public Observable<JobRow> getAllRows() {
+        return Observable.from(rows.values());
+    }
+
+    @Override
+    public Observable<JobRow> getFilteredRows(Set<JobRowFilter> jobRowFilters) {
+        Stream<JobRow> candidates = jobRowFilters.stream()
+                .filter(filter -> filter.isExactMatch() && indexes.containsKey(filter.getJobField()))
+                .map(this::lookUp)
+                .min(Comparator.comparingInt(Set::size))
+                .map(ids -> ids.stream().map(rows::get).filter(Objects::nonNull))
+                .orElseGet(() -> rows.values().stream());
+
+        return Observable.from(
+                candidates.filter(jobRow -> jobRowFilters.stream().allMatch(filter -> filter.test(jobRow)))
+                        .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Drop the rows created longer ago than the retention period.
+     *
+     * @return the number of rows dropped
+     */
+    public synchronized int evictExpiredRows() {
+        if (retentionMillis <= 0) {
+            return 0;
+        }
+        Map<Long, Set<String>> expired = creationIndex.headMap(clock.millis() - retentionMillis);
+        int evicted = 0;
+        for (Set<String> ids : expired.values()) {
+            for (String id : ids) {
+                JobRow jobRow = rows.remove(id);
+                if (jobRow != null) {
+                    indexes.forEach((field, index) -> removeFromIndex(index, jobRow.get(field), id));
+                    evicted++;
+                }
+            }
+        }
+        expired.clear();
+        if (evicted > 0) {
+            LOG.debug("Evicted {} jobs created more than {} ms ago", evicted, retentionMillis);
+        }
+        return evicted;
+    }
+
+    /**
+     * Stop evicting rows in the background.
+     */
+    @Override
+    public void close() {
+        if (evictionScheduler != null) {
+            evictionScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the ids of the rows that may satisfy an exact match filter on an indexed field.
+     *
+     * @param filter  The filter to look up
+     *
+     * @return the ids of the rows whose value of the field is one of the values of the filter
+     */
+    private Set<String> lookUp(JobRowFilter filter) {
+        Map<String, Set<String>> index = indexes.get(filter.getJobField());
+        if (filter.getValues().size() == 1) {
+            return index.getOrDefault(filter.getValues().iterator().next(), Collections.emptySet());
+        }
+        Set<String> ids = new HashSet<>();
+        for (String value : filter.getValues()) {
+            ids.addAll(index.getOrDefault(value, Collections.emptySet()));
+        }
+        return ids;
+    }
+
+    /**
+     * Get the millisecond the given row was created.
+     *
+     * @param jobRow  The row
+     *
+     * @return the millisecond of the date created of the row, or null if it is missing or can't be parsed
+     */
+    private static Long parseDateCreated(JobRow jobRow) {
+        String dateCreated = jobRow.get(DefaultJobField.DATE_CREATED);
+        if (dateCreated == null) {
+            return null;
+        }
+        try {
+            return DateTime.parse(dateCreated).getMillis();
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Job {} has an unparseable date created {}, and will not be evicted", jobRow.getId(), dateCreated);
+            return null;
+        }
+    }
+
+    /**
+     * Add a row to the ids indexed under a key.
+     *
+     * @param index  The index to add to
+     * @param key  The key to index the row under. Rows are not indexed under null
+     * @param id  The id of the row
+     * @param <K>  The type of the keys of the index
+     */
+    private static <K> void addToIndex(Map<K, Set<String>> index, K key, String id) {
+        if (key != null) {
+            index.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    /**
+     * Remove a row from the ids indexed under a key, removing the key once it has no rows.
+     *
+     * @param index  The index to remove from
+     * @param key  The key the row is indexed under
+     * @param id  The id of the row
+     * @param <K>  The type of the keys of the index
+     */
+    private static <K> void removeFromIndex(Map<K, Set<String>> index, K key, String id) {
+        if (key != null) {
+            index.computeIfPresent(key, (ignored, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+}
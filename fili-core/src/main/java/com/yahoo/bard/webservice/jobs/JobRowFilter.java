@@ -0,0 +1,197 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs;
+
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.FILTER_ERROR;
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.FILTER_INVALID;
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.FILTER_OPERATOR_INVALID;
+import static com.yahoo.bard.webservice.web.ErrorMessageFormat.JOBS_FILTER_FIELD_UNDEFINED;
+
+import com.yahoo.bard.webservice.util.FilterTokenizer;
+import com.yahoo.bard.webservice.web.BadFilterException;
+import com.yahoo.bard.webservice.web.FilterOperation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A filter on the value of one field of a JobRow, such as {@code userId-eq[greg]}, used to select the jobs returned
+ * by {@link ApiJobStore#getFilteredRows}.
+ */
+public class JobRowFilter implements Predicate<JobRow> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobRowFilter.class);
+
+    /*  url filter query pattern:  (field name)-(operation)[?(value or comma separated values)]?
+     *
+     *  e.g.    userId-eq[greg]
+     *          status-in[pending,success]
+     */
+    private static final Pattern QUERY_PATTERN = Pattern.compile("([^-]+)-([^\\[]+)\\[([^\\]]+)\\]?");
+
+    private final JobField jobField;
+    private final FilterOperation operation;
+    private final Set<String> values;
+
+    /**
+     * Constructor.
+     *
+     * @param jobField  The field of the JobRow to filter on
+     * @param operation  The operation comparing the value of the field to the values of the filter
+     * @param values  The values of the filter
+     */
+    public JobRowFilter(JobField jobField, FilterOperation operation, Set<String> values) {
+        this.jobField = jobField;
+        this.operation = operation;
+        this.values = Collections.unmodifiableSet(new LinkedHashSet<>(values));
+    }
+
+    /**
+     * Parses a filter on one of the {@link DefaultJobField}s from the URL filter query.
+     * <p>
+     * <code>(field name)-(operation)[?(value or comma separated values)]?</code>
+     *
+     * @param filterQuery  Single filter URL query
+     *
+     * @throws BadFilterException if the filter query does not match the pattern, or names an unknown field or
+     * operation
+     */
+    public JobRowFilter(@NotNull String filterQuery) throws BadFilterException {
+        this(filterQuery, Arrays.asList(DefaultJobField.values()));
+    }
+
+    /**
+     * Parses a filter on one of the given fields from the URL filter query.
+     * <p>
+     * <code>(field name)-(operation)[?(value or comma separated values)]?</code>
+     *
+     * @param filterQuery  Single filter URL query
+     * @param jobFields  The fields that may be filtered on
+     *
+     * @throws BadFilterException if the filter query does not match the pattern, or names an unknown field or
+     * operation
+     */
+    public JobRowFilter(@NotNull String filterQuery, Collection<? extends JobField> jobFields)
+            throws BadFilterException {
+        Matcher matcher = QUERY_PATTERN.matcher(filterQuery);
+        if (!matcher.matches()) {
+            LOG.debug(FILTER_INVALID.logFormat(filterQuery));
+            throw new BadFilterException(FILTER_INVALID.format(filterQuery));
+        }
+
+        String fieldName = matcher.group(1);
+        this.jobField = jobFields.stream()
+                .filter(field -> field.getName().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> {
+                    String fieldNames = jobFields.stream().map(JobField::getName).collect(Collectors.toList())
+                            .toString();
+                    LOG.debug(JOBS_FILTER_FIELD_UNDEFINED.logFormat(fieldName, fieldNames));
+                    return new BadFilterException(JOBS_FILTER_FIELD_UNDEFINED.format(fieldName, fieldNames));
+                });
+
+        String operationName = matcher.group(2);
+        try {
+            this.operation = FilterOperation.valueOf(operationName);
+        } catch (IllegalArgumentException ignored) {
+            LOG.debug(FILTER_OPERATOR_INVALID.logFormat(operationName));
+            throw new BadFilterException(FILTER_OPERATOR_INVALID.format(operationName));
+        }
+
+        try {
+            this.values = Collections.unmodifiableSet(new LinkedHashSet<>(
+                    FilterTokenizer.split(matcher.group(3).replaceAll("\\[", "").replaceAll("\\]", "").trim())
+            ));
+        } catch (IllegalArgumentException e) {
+            LOG.debug(FILTER_ERROR.logFormat(filterQuery, e.getMessage()), e);
+            throw new BadFilterException(FILTER_ERROR.format(filterQuery, e.getMessage()), e);
+        }
+    }
+
+    public JobField getJobField() {
+        return jobField;
+    }
+
+    public FilterOperation getOperation() {
+        return operation;
+    }
+
+    public Set<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Whether the filter only matches rows whose value is one of the values of the filter, so the matching rows can
+     * be looked up by value.
+     *
+     * @return true if the filter matches on equality with one of its values
+     */
+    public boolean isExactMatch() {
+        return operation == FilterOperation.eq || operation == FilterOperation.in;
+    }
+
+    /**
+     * Whether the value of the filtered field of the given row satisfies the filter. A row without a value for the
+     * field only satisfies {@code notin} filters.
+     *
+     * @param jobRow  The row to test
+     *
+     * @return true if the row satisfies the filter
+     */
+    @Override
+    public boolean test(JobRow jobRow) {
+        String value = jobRow.get(jobField);
+        if (value == null) {
+            return operation == FilterOperation.notin;
+        }
+        switch (operation) {
+            case eq:
+            case in:
+                return values.contains(value);
+            case notin:
+                return !values.contains(value);
+            case startswith:
+                return values.stream().anyMatch(value::startsWith);
+            case contains:
+                return values.stream().anyMatch(value::contains);
+            default:
+                throw new IllegalStateException(FILTER_OPERATOR_INVALID.format(operation));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof JobRowFilter)) { return false; }
+
+        JobRowFilter that = (JobRowFilter) o;
+
+        return
+                Objects.equals(jobField, that.jobField) &&
+                Objects.equals(operation, that.operation) &&
+                Objects.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jobField, operation, values);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s-%s%s", jobField.getName(), operation, values);
+    }
+}
@@ -0,0 +1,857 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs;
+
+import static com.yahoo.bard.webservice.data.PreResponseSerializationProxy.RESPONSE_CONTEXT_KEY;
+import static com.yahoo.bard.webservice.data.PreResponseSerializationProxy.RESULT_SET_KEY;
+import static com.yahoo.bard.webservice.data.ResultSetSerializationProxy.RESULTS_KEY;
+import static com.yahoo.bard.webservice.data.ResultSetSerializationProxy.SCHEMA_KEY;
+
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.BlockResults;
+import com.yahoo.bard.webservice.data.PreResponseDeserializer;
+import com.yahoo.bard.webservice.data.PreResponseSerializationProxy;
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultSerializationProxy;
+import com.yahoo.bard.webservice.data.ResultSetSerializationProxy;
+import com.yahoo.bard.webservice.table.ZonedSchema;
+import com.yahoo.bard.webservice.web.PreResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A PreResponseStore that keeps PreResponses on disk rather than on the heap.
+ * <p>
+ * Each PreResponse is serialized through a {@link PreResponseSerializationProxy}, and appended to the current segment
+ * file as a compressed header, holding the response context and the schema, followed by the results in compressed
+ * blocks of a fixed number of results. Segment files are memory mapped, so PreResponses are read straight from the
+ * page cache, and concurrent readers of the same ticket read views of the same mapping. Only the index from tickets
+ * to the positions of their PreResponses and blocks is held on the heap.
+ * <p>
+ * Getting a PreResponse only reads its header. Its results are {@link BlockResults}, which read each block of
+ * results as it is used, so a PreResponse can be written out, or a page of its results found, without reading all of
+ * its results at once.
+ * <p>
+ * PreResponses expire once they are older than the time to live, and the oldest segments are dropped whenever the
+ * segments take up more than the size limit. A segment is deleted once all of its PreResponses have expired, been
+ * overwritten or been dropped. The size limit counts the segments that have not been deleted, which also bounds the
+ * index. The disk space and address space of a deleted segment are only given back once it is unmapped, which the
+ * garbage collector does once nothing refers to the segment: neither a read of a header or block in progress, nor
+ * {@link BlockResults} over its results, or a range of them. {@link #getMappedBytes} counts the deleted segments
+ * that are still read.
+ * <p>
+ * Segments can instead be unmapped as soon as the last of their readers is done, with
+ * {@code pre_response_store_unmap_segments}. That gives the space back sooner, but relies on the readers being counted
+ * exactly, since reading a segment after it has been unmapped crashes the JVM.
+ * <p>
+ * The index is not written to disk, so PreResponses do not outlive the store, and segments left behind in the
+ * directory by an earlier store are deleted when the store is created.
+ */
+public class MappedFilePreResponseStore implements PreResponseStore, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFilePreResponseStore.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final @NotNull String TTL_MILLIS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("pre_response_store_ttl_millis");
+
+    private static final @NotNull String MAX_BYTES_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("pre_response_store_max_bytes");
+
+    private static final @NotNull String SEGMENT_BYTES_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("pre_response_store_segment_bytes");
+
+    private static final @NotNull String BLOCK_ROWS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("pre_response_store_block_rows");
+
+    private static final @NotNull String UNMAP_SEGMENTS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("pre_response_store_unmap_segments");
+
+    // The default time to live of a PreResponse, one day
+    private static final long TTL_MILLIS_DEFAULT = 24 * 60 * 60 * 1000L;
+
+    // The default limit on the total size of the segments, 10 GB
+    private static final long MAX_BYTES_DEFAULT = 10L * 1024 * 1024 * 1024;
+
+    // The default size of a segment, 64 MB
+    private static final int SEGMENT_BYTES_DEFAULT = 64 * 1024 * 1024;
+
+    // The default number of results in a block
+    private static final int BLOCK_ROWS_DEFAULT = 1000;
+
+    private static final String SEGMENT_PREFIX = "preResponses-";
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final PreResponseDeserializer preResponseDeserializer;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final int blockRows;
+    private final Clock clock;
+    private final boolean unmapSegments;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+    // The result sets handed out that may still read their segments, and the queue they are put on once collected
+    private final Set<ResultSetReference> resultSetReferences = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<IntFunction<List<Result>>> collectedResultSets = new ReferenceQueue<>();
+
+    // Guarded by this
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final List<Segment> droppedSegments = new ArrayList<>();
+    private Segment currentSegment;
+    private long totalBytes;
+    private long nextSegmentId;
+
+    /**
+     * Constructor, with the limits of the store read from configuration.
+     *
+     * @param directory  The directory to keep the segment files in
+     * @param preResponseDeserializer  Deserializes the stored PreResponses, and provides the mappers to serialize them
+     *
+     * @throws IOException if the directory can't be created or cleared of old segments
+     */
+    public MappedFilePreResponseStore(Path directory, PreResponseDeserializer preResponseDeserializer)
+            throws IOException {
+        this(
+                directory,
+                preResponseDeserializer,
+                SYSTEM_CONFIG.getLongProperty(TTL_MILLIS_KEY, TTL_MILLIS_DEFAULT),
+                SYSTEM_CONFIG.getLongProperty(MAX_BYTES_KEY, MAX_BYTES_DEFAULT),
+                SYSTEM_CONFIG.getIntProperty(SEGMENT_BYTES_KEY, SEGMENT_BYTES_DEFAULT),
+                SYSTEM_CONFIG.getIntProperty(BLOCK_ROWS_KEY, BLOCK_ROWS_DEFAULT),
+                Clock.systemUTC(),
+                SYSTEM_CONFIG.getBooleanProperty(UNMAP_SEGMENTS_KEY, false)
+        );
+    }
+
+    /**
+     * Constructor, leaving deleted segments to the garbage collector to unmap.
+     *
+     * @param directory  The directory to keep the segment files in
+     * @param preResponseDeserializer  Deserializes the stored PreResponses, and provides the mappers to serialize them
+     * @param ttlMillis  How long a PreResponse is kept after it is saved
+     * @param maxBytes  The most bytes the segment files may take up before the oldest are dropped
+     * @param segmentBytes  The size of a segment file. Larger PreResponses get a segment of their own
+     * @param blockRows  The number of results in each block of results
+     * @param clock  The clock to age PreResponses by
+     *
+     * @throws IOException if the directory can't be created or cleared of old segments
+     */
+    public MappedFilePreResponseStore(
+            Path directory,
+            PreResponseDeserializer preResponseDeserializer,
+            long ttlMillis,
+            long maxBytes,
+            int segmentBytes,
+            int blockRows,
+            Clock clock
+    ) throws IOException {
+        this(directory, preResponseDeserializer, ttlMillis, maxBytes, segmentBytes, blockRows, clock, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory  The directory to keep the segment files in
+     * @param preResponseDeserializer  Deserializes the stored PreResponses, and provides the mappers to serialize them
+     * @param ttlMillis  How long a PreResponse is kept after it is saved
+     * @param maxBytes  The most bytes the segment files may take up before the oldest are dropped
+     * @param segmentBytes  The size of a segment file. Larger PreResponses get a segment of their own
+     * @param blockRows  The number of results in each block of results
+     * @param clock  The clock to age PreResponses by
+     * @param unmapSegments  Whether to unmap a deleted segment as soon as nothing reads it, rather than leave it to the
+     * garbage collector
+     *
+     * @throws IOException if the directory can't be created or cleared of old segments
+     */
+    public MappedFilePreResponseStore(
+            Path directory,
+            PreResponseDeserializer preResponseDeserializer,
+            long ttlMillis,
+            long maxBytes,
+            int segmentBytes,
+            int blockRows,
+            Clock clock,
+            boolean unmapSegments
+    ) throws IOException {
+        this.directory = directory;
+        this.preResponseDeserializer = preResponseDeserializer;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.blockRows = blockRows;
+        this.clock = clock;
+        this.unmapSegments = unmapSegments;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> oldSegments = Files.newDirectoryStream(
+                directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX
+        )) {
+            for (Path oldSegment : oldSegments) {
+                Files.delete(oldSegment);
+            }
+        }
+    }
+
+    @Override
+    public Observable<PreResponse> get(String ticket) {
+        releaseCollectedResultSets();
+        Location location = index.get(ticket);
+        if (location == null) {
+            return Observable.empty();
+        }
+        if (isExpired(location.savedAt)) {
+            remove(ticket, location);
+            return Observable.empty();
+        }
+
+        // The results, and every range of them, read the segment through the same block reader until they are all
+        // collected. A segment unmapped since the ticket was looked up was dropped along with the ticket
+        if (!location.segment.retain()) {
+            return Observable.empty();
+        }
+        try (InputStream header = location.read(0, location.blockOffsets[0])) {
+            PreResponse preResponse = preResponseDeserializer.deserialize(header);
+            ZonedSchema schema = (ZonedSchema) preResponse.getResultSet().getSchema();
+            IntFunction<List<Result>> blockReader = block -> readBlock(location, block, schema);
+            BlockResults results = new BlockResults(schema, blockRows, location.rows, blockReader);
+            resultSetReferences.add(new ResultSetReference(blockReader, location.segment, collectedResultSets));
+            return Observable.just(new PreResponse(results, preResponse.getResponseContext()));
+        } catch (IOException | RuntimeException e) {
+            location.segment.releaseReader();
+            LOG.error("Unable to read the PreResponse of ticket {}", ticket, e);
+            return Observable.error(e);
+        }
+    }
+
+    @Override
+    public Observable<String> save(String ticket, PreResponse preResponse) {
+        Serialized serialized;
+        try {
+            serialized = serialize(preResponse);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to serialize the PreResponse of ticket {}", ticket, e);
+            return Observable.error(e);
+        }
+
+        try {
+            store(ticket, serialized);
+            return Observable.just(ticket);
+        } catch (IOException e) {
+            LOG.error("Unable to store the PreResponse of ticket {}", ticket, e);
+            return Observable.error(e);
+        }
+    }
+
+    /**
+     * Drop every PreResponse and delete the segment files.
+     * <p>
+     * Segments stay mapped until the result sets read from them have been collected.
+     */
+    @Override
+    public synchronized void close() {
+        index.clear();
+        while (!segments.isEmpty()) {
+            delete(segments.removeFirst());
+        }
+        currentSegment = null;
+    }
+
+    /**
+     * Get the total size of the segment files.
+     *
+     * @return the number of bytes held on disk
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Get the total size of the segments that are still held, including the deleted segments that are still read.
+     * <p>
+     * Deleted segments that are no longer read are not counted, although unless segments are unmapped explicitly, they
+     * stay mapped until they are garbage collected.
+     *
+     * @return the number of bytes of address space, and of disk space, held by the segments
+     */
+    public long getMappedBytes() {
+        releaseCollectedResultSets();
+        synchronized (this) {
+            return totalBytes + droppedMappedBytes();
+        }
+    }
+
+    /**
+     * Read a block of the results of a stored PreResponse.
+     *
+     * @param location  Where the PreResponse is stored
+     * @param block  The index of the block
+     * @param schema  The schema of the results
+     *
+     * @return the results of the block
+     *
+     * @throws UncheckedIOException if the block can't be read
+     */
+    private List<Result> readBlock(Location location, int block, ZonedSchema schema) {
+        try (InputStream results = location.read(location.blockOffsets[block], location.blockOffsets[block + 1])) {
+            return preResponseDeserializer.deserializeResults(results, schema);
+        } catch (IOException e) {
+            LOG.error("Unable to read block {} of the PreResponse of ticket {}", block, location.ticket, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serialize a PreResponse into a compressed header followed by compressed blocks of its results.
+     *
+     * @param preResponse  The PreResponse to serialize
+     *
+     * @return the serialized PreResponse
+     *
+     * @throws IOException if the PreResponse can't be serialized
+     */
+    private Serialized serialize(PreResponse preResponse) throws IOException {
+        PreResponseSerializationProxy proxy = new PreResponseSerializationProxy(
+                preResponse,
+                preResponseDeserializer.getResponseContextMapper()
+        );
+        ResultSetSerializationProxy resultSetProxy = proxy.getResultSetSerializationProxy();
+
+        // The header has the layout of a serialized PreResponse without any results
+        Map<String, Object> resultSetHeader = new LinkedHashMap<>();
+        resultSetHeader.put(RESULTS_KEY, Collections.emptyList());
+        resultSetHeader.put(SCHEMA_KEY, resultSetProxy.getSerializedSchema());
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put(RESULT_SET_KEY, resultSetHeader);
+        header.put(RESPONSE_CONTEXT_KEY, proxy.getResponseContext());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeCompressed(bytes, header);
+
+        List<ResultSerializationProxy> results = resultSetProxy.getResultSerializationProxies();
+        int blocks = (results.size() + blockRows - 1) / blockRows;
+        int[] blockOffsets = new int[blocks + 1];
+        for (int block = 0; block < blocks; block++) {
+            blockOffsets[block] = bytes.size();
+            int start = block * blockRows;
+            writeCompressed(bytes, results.subList(start, Math.min(start + blockRows, results.size())));
+        }
+        blockOffsets[blocks] = bytes.size();
+        return new Serialized(bytes.toByteArray(), blockOffsets, results.size());
+    }
+
+    /**
+     * Append the compressed JSON of a value to a stream.
+     *
+     * @param bytes  The stream to append to
+     * @param value  The value to serialize
+     *
+     * @throws IOException if the value can't be serialized
+     */
+    private void writeCompressed(OutputStream bytes, Object value) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream outputStream = new DeflaterOutputStream(bytes, deflater);
+            preResponseDeserializer.getNonResponseContextMapper().writer()
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .writeValue(outputStream, value);
+            outputStream.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Append the serialized PreResponse of a ticket to the current segment, starting a new segment if it doesn't fit,
+     * and then evict the PreResponses and segments that are past their time to live or over the size limit.
+     *
+     * @param ticket  The ticket of the PreResponse
+     * @param serialized  The serialized PreResponse
+     *
+     * @throws IOException if a new segment can't be created
+     */
+    private synchronized void store(String ticket, Serialized serialized) throws IOException {
+        releaseCollectedResultSets();
+        if (currentSegment == null || currentSegment.remaining() < serialized.bytes.length) {
+            currentSegment = createSegment(Math.max(segmentBytes, serialized.bytes.length));
+        }
+        Location replaced = index.put(ticket, currentSegment.write(ticket, serialized, clock.millis()));
+        if (replaced != null) {
+            release(replaced);
+        }
+        evict();
+    }
+
+    /**
+     * Create and map a new segment file.
+     *
+     * @param capacity  The size of the segment
+     *
+     * @return the new segment
+     *
+     * @throws IOException if the segment file can't be created or mapped
+     */
+    private Segment createSegment(int capacity) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            Segment segment = new Segment(
+                    path,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity),
+                    unmapSegments
+            );
+            segments.addLast(segment);
+            totalBytes += capacity;
+            return segment;
+        }
+    }
+
+    /**
+     * Delete the oldest segments while they have expired or the segments are over the size limit, as well as any
+     * other segments with nothing left in them.
+     * <p>
+     * The current segment is never deleted here, so the PreResponse that was just appended is always kept.
+     */
+    private synchronized void evict() {
+        while (segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            if (totalBytes <= maxBytes && !isExpired(oldest.lastSavedAt)) {
+                break;
+            }
+            segments.removeFirst();
+            for (Location location : oldest.locations) {
+                index.remove(location.ticket, location);
+            }
+            delete(oldest);
+        }
+
+        List<Segment> emptySegments = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment != currentSegment && segment.live == 0) {
+                emptySegments.add(segment);
+            }
+        }
+        for (Segment segment : emptySegments) {
+            segments.remove(segment);
+            delete(segment);
+        }
+    }
+
+    /**
+     * Remove a ticket from the index if it still refers to the given location.
+     *
+     * @param ticket  The ticket to remove
+     * @param location  The location the ticket was found at
+     */
+    private void remove(String ticket, Location location) {
+        if (index.remove(ticket, location)) {
+            release(location);
+        }
+    }
+
+    /**
+     * Note that a stored PreResponse is no longer referred to, deleting its segment once nothing else in it is.
+     *
+     * @param location  The location of the PreResponse
+     */
+    private synchronized void release(Location location) {
+        Segment segment = location.segment;
+        segment.live--;
+        if (segment.live == 0 && segment != currentSegment && segments.remove(segment)) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Delete the file of a segment that has been taken out of the list of segments.
+     *
+     * @param segment  The segment to delete
+     */
+    private synchronized void delete(Segment segment) {
+        totalBytes -= segment.buffer.capacity();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete PreResponse segment {}", segment.path, e);
+        }
+        segment.drop();
+        if (segment.isMapped()) {
+            droppedSegments.add(segment);
+        }
+    }
+
+    /**
+     * Get the size of the deleted segments that are still read, forgetting the ones that no longer are.
+     *
+     * @return the number of bytes still held by deleted segments
+     */
+    private synchronized long droppedMappedBytes() {
+        droppedSegments.removeIf(segment -> !segment.isMapped());
+        return droppedSegments.stream().mapToLong(segment -> segment.buffer.capacity()).sum();
+    }
+
+    /**
+     * Let go of the segments read by result sets that have been garbage collected.
+     */
+    private void releaseCollectedResultSets() {
+        Reference<? extends IntFunction<List<Result>>> collected;
+        while ((collected = collectedResultSets.poll()) != null) {
+            ResultSetReference reference = (ResultSetReference) collected;
+            if (resultSetReferences.remove(reference)) {
+                reference.segment.releaseReader();
+            }
+        }
+    }
+
+    /**
+     * Unmap a buffer right away, rather than when it is garbage collected.
+     * <p>
+     * There is no public way to unmap a buffer, so this uses the cleaner of the JDK's direct buffers, and leaves the
+     * buffer to the garbage collector on JVMs that don't have one.
+     *
+     * @param buffer  The buffer to unmap, which must never be read again
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to unmap a PreResponse segment, leaving it to the garbage collector", e);
+        }
+    }
+
+    /**
+     * Whether something saved at the given time is past its time to live.
+     *
+     * @param savedAt  When it was saved, in epoch millis
+     *
+     * @return true if it has expired
+     */
+    private boolean isExpired(long savedAt) {
+        return clock.millis() - savedAt > ttlMillis;
+    }
+
+    /**
+     * A mapped, append-only segment file. Only written while holding the lock of the store.
+     * <p>
+     * The segment counts its readers under its own lock, and lets go of its mapping once it has been dropped from the
+     * store and has no readers left, either unmapping it or leaving it to the garbage collector.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final boolean unmapWhenDone;
+        private final List<Location> locations = new ArrayList<>();
+        private int live;
+        private long lastSavedAt;
+
+        // Guarded by the segment
+        private int readers;
+        private boolean dropped;
+        private boolean mapped = true;
+
+        /**
+         * Constructor.
+         *
+         * @param path  The segment file
+         * @param buffer  The mapping of the whole file
+         * @param unmapWhenDone  Whether to unmap the file once it is dropped and no longer read
+         */
+        Segment(Path path, MappedByteBuffer buffer, boolean unmapWhenDone) {
+            this.path = path;
+            this.buffer = buffer;
+            this.unmapWhenDone = unmapWhenDone;
+        }
+
+        /**
+         * Get the number of bytes left in the segment.
+         *
+         * @return the free space
+         */
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        /**
+         * Start reading the segment, which keeps it mapped until {@link #releaseReader} is called.
+         *
+         * @return false if the segment has already been let go of, and can't be read
+         */
+        synchronized boolean retain() {
+            if (!mapped) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        /**
+         * Stop reading the segment, letting go of it if it has been dropped and this was its last reader.
+         */
+        synchronized void releaseReader() {
+            readers--;
+            if (dropped && readers == 0) {
+                unmapBuffer();
+            }
+        }
+
+        /**
+         * Note that the segment has been dropped from the store, letting go of it if nothing is reading it.
+         */
+        synchronized void drop() {
+            dropped = true;
+            if (readers == 0) {
+                unmapBuffer();
+            }
+        }
+
+        /**
+         * Whether the segment is still held for its readers.
+         *
+         * @return true until the segment has been dropped and its last reader is done
+         */
+        synchronized boolean isMapped() {
+            return mapped;
+        }
+
+        /**
+         * Let go of the mapping of the segment, once, unmapping it if the store unmaps segments.
+         */
+        private void unmapBuffer() {
+            if (mapped) {
+                mapped = false;
+                if (unmapWhenDone) {
+                    unmap(buffer);
+                }
+            }
+        }
+
+        /**
+         * Append a serialized PreResponse to the segment.
+         *
+         * @param ticket  The ticket the PreResponse is stored for
+         * @param serialized  The serialized PreResponse
+         * @param savedAt  The time the PreResponse was saved, in epoch millis
+         *
+         * @return where the PreResponse was written
+         */
+        Location write(String ticket, Serialized serialized, long savedAt) {
+            Location location = new Location(
+                    ticket,
+                    this,
+                    buffer.position(),
+                    serialized.blockOffsets,
+                    serialized.rows,
+                    savedAt
+            );
+            buffer.put(serialized.bytes);
+            locations.add(location);
+            live++;
+            lastSavedAt = savedAt;
+            return location;
+        }
+    }
+
+    /**
+     * Where a PreResponse is stored.
+     */
+    private static final class Location {
+        private final String ticket;
+        private final Segment segment;
+        private final int offset;
+        private final int[] blockOffsets;
+        private final int rows;
+        private final long savedAt;
+
+        /**
+         * Constructor.
+         *
+         * @param ticket  The ticket of the PreResponse
+         * @param segment  The segment holding the PreResponse
+         * @param offset  Where the PreResponse starts in the segment
+         * @param blockOffsets  Where each block of results starts in the PreResponse, followed by its length
+         * @param rows  The number of results of the PreResponse
+         * @param savedAt  When the PreResponse was saved, in epoch millis
+         */
+        Location(String ticket, Segment segment, int offset, int[] blockOffsets, int rows, long savedAt) {
+            this.ticket = ticket;
+            this.segment = segment;
+            this.offset = offset;
+            this.blockOffsets = blockOffsets;
+            this.rows = rows;
+            this.savedAt = savedAt;
+        }
+
+        /**
+         * Read a compressed part of the PreResponse, through a read only view sharing the mapping of the segment.
+         * <p>
+         * The segment stays mapped until the stream is closed.
+         *
+         * @param start  Where the part starts in the PreResponse
+         * @param end  Where the part ends in the PreResponse
+         *
+         * @return a stream of the inflated part
+         *
+         * @throws IOException if the segment has been dropped and unmapped
+         */
+        InputStream read(int start, int end) throws IOException {
+            if (!segment.retain()) {
+                throw new IOException("The PreResponse segment of ticket " + ticket + " has been dropped");
+            }
+            ByteBuffer view = segment.buffer.asReadOnlyBuffer();
+            view.limit(offset + end);
+            view.position(offset + start);
+            return new InflaterInputStream(new ByteBufferInputStream(view, segment::releaseReader));
+        }
+    }
+
+    /**
+     * A PreResponse serialized into a header followed by blocks of results.
+     */
+    private static final class Serialized {
+        private final byte[] bytes;
+        private final int[] blockOffsets;
+        private final int rows;
+
+        /**
+         * Constructor.
+         *
+         * @param bytes  The serialized PreResponse
+         * @param blockOffsets  Where each block of results starts, followed by the length of the PreResponse
+         * @param rows  The number of results
+         */
+        Serialized(byte[] bytes, int[] blockOffsets, int rows) {
+            this.bytes = bytes;
+            this.blockOffsets = blockOffsets;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * A result set handed out by the store, which keeps its segment mapped until it is garbage collected.
+     * <p>
+     * The reference is to the block reader of the result set, which its ranges share, so that the segment stays mapped
+     * while a page of the results is still being read.
+     */
+    private static final class ResultSetReference extends PhantomReference<IntFunction<List<Result>>> {
+        private final Segment segment;
+
+        /**
+         * Constructor.
+         *
+         * @param blockReader  The block reader of the result set, reading the segment
+         * @param segment  The segment, which has been retained for the result set
+         * @param queue  The queue to put the reference on once the block reader has been collected
+         */
+        ResultSetReference(
+                IntFunction<List<Result>> blockReader,
+                Segment segment,
+                ReferenceQueue<IntFunction<List<Result>>> queue
+        ) {
+            super(blockReader, queue);
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * Reads the bytes of a buffer as a stream.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private final Runnable onClose;
+        private boolean closed;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer  The buffer to read from its position to its limit
+         * @param onClose  Called the first time the stream is closed
+         */
+        ByteBufferInputStream(ByteBuffer buffer, Runnable onClose) {
+            this.buffer = buffer;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                onClose.run();
+            }
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
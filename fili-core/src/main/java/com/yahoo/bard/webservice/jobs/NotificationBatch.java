@@ -0,0 +1,68 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The messages published to a {@link BatchingBroadcastChannel} over a short window, sent to the other Bard boxes as a
+ * single message, along with the time the batch was published so that the receivers can tell how long it took to
+ * arrive.
+ *
+ * @param <T>  The type of the messages in the batch
+ */
+public class NotificationBatch<T> implements Serializable {
+
+    private final long publishedMillis;
+    private final ArrayList<T> messages;
+
+    /**
+     * Constructor.
+     *
+     * @param publishedMillis  The time the batch was published, in milliseconds since the epoch
+     * @param messages  The messages in the batch
+     */
+    @JsonCreator
+    public NotificationBatch(
+            @JsonProperty("publishedMillis") long publishedMillis,
+            @JsonProperty("messages") Collection<T> messages
+    ) {
+        this.publishedMillis = publishedMillis;
+        this.messages = new ArrayList<>(messages);
+    }
+
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    public List<T> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof NotificationBatch)) { return false; }
+
+        NotificationBatch<?> that = (NotificationBatch<?>) o;
+
+        return publishedMillis == that.publishedMillis && Objects.equals(messages, that.messages);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(publishedMillis, messages);
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationBatch{publishedMillis=" + publishedMillis + ", messages=" + messages + "}";
+    }
+}
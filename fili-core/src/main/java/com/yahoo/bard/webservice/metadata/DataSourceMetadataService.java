@@ -7,6 +7,7 @@ import com.yahoo.bard.webservice.table.PhysicalTable;
 import org.joda.time.DateTime;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -31,6 +32,11 @@ public class DataSourceMetadataService {
     private final Map<PhysicalTable, AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>>>
             allSegments;
 
+    /**
+     * The index of the segment hashes of every table, built from the table's current segment metadata.
+     */
+    private final Map<PhysicalTable, SegmentHashIndex> segmentHashIndexes;
+
     /**
      * The collector that accumulates partitions of a segment.
      */
@@ -41,6 +47,7 @@ public class DataSourceMetadataService {
      */
     public DataSourceMetadataService() {
         this.allSegments = new ConcurrentHashMap<>();
+        this.segmentHashIndexes = new ConcurrentHashMap<>();
     }
 
     /**
@@ -62,7 +69,10 @@ public class DataSourceMetadataService {
                         )
                 );
 
+        SegmentHashIndex segmentHashIndex = new SegmentHashIndex(current);
+
         allSegments.computeIfAbsent(table, ignored -> new AtomicReference<>()).set(current);
+        segmentHashIndexes.put(table, segmentHashIndex);
     }
 
     /**
@@ -98,4 +108,43 @@ public class DataSourceMetadataService {
                 .map(AtomicReference::get)
                 .collect(Collectors.toSet());
     }
+
+    /**
+     * Get the indexes of the segment hashes of the given Set of physical tables.
+     *
+     * @param physicalTables  A Set of physicalTables used by the DruidQuery
+     *
+     * @return The segment hash index of each of the given tables that has segments
+     */
+    public List<SegmentHashIndex> getSegmentHashIndexes(Set<PhysicalTable> physicalTables) {
+        return physicalTables.stream()
+                .map(this::getSegmentHashIndex)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the index of the segment hashes of a physical table, rebuilding it if the segments of the table were set
+     * without it.
+     *
+     * @param table  The physical table
+     *
+     * @return The segment hash index of the table's current segments, or null if there are no segments for the table
+     */
+    private SegmentHashIndex getSegmentHashIndex(PhysicalTable table) {
+        AtomicReference<ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>>> segmentsReference =
+                allSegments.get(table);
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segments =
+                segmentsReference == null ? null : segmentsReference.get();
+        if (segments == null) {
+            return null;
+        }
+
+        SegmentHashIndex segmentHashIndex = segmentHashIndexes.get(table);
+        if (segmentHashIndex == null || !segmentHashIndex.isIndexOf(segments)) {
+            segmentHashIndex = new SegmentHashIndex(segments);
+            segmentHashIndexes.put(table, segmentHashIndex);
+        }
+        return segmentHashIndex;
+    }
 }
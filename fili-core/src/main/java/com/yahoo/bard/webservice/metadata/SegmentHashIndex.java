@@ -0,0 +1,91 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata;
+
+import org.joda.time.DateTime;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An index of the hashes of the segments of a table, by the start of their interval.
+ * <p>
+ * The index holds the running sums of the hashes of the entries of the segment map, in start order, so the hash of the
+ * segments starting in any range of times is the difference of two running sums, found by binary search. The hash of
+ * a range equals the {@code hashCode} of the matching {@code subMap} of the segment map, without visiting its
+ * segments.
+ */
+public class SegmentHashIndex {
+
+    /**
+     * The segment map the index was built from.
+     */
+    private final SortedMap<DateTime, Map<String, SegmentInfo>> segments;
+
+    /**
+     * The start instants of the segment map, in ascending order.
+     */
+    private final long[] starts;
+
+    /**
+     * The sum of the hashes of the first i entries of the segment map, overflowing like {@code Map.hashCode} does.
+     */
+    private final int[] runningHashes;
+
+    /**
+     * Constructor.
+     *
+     * @param segments  The segments of a table, by the start of their interval
+     */
+    public SegmentHashIndex(SortedMap<DateTime, Map<String, SegmentInfo>> segments) {
+        this.segments = segments;
+        starts = new long[segments.size()];
+        runningHashes = new int[segments.size() + 1];
+
+        int i = 0;
+        for (Map.Entry<DateTime, Map<String, SegmentInfo>> entry : segments.entrySet()) {
+            starts[i] = entry.getKey().getMillis();
+            // The hash of a map entry, as defined by Map.Entry.hashCode
+            runningHashes[i + 1] = runningHashes[i] + (entry.getKey().hashCode() ^ entry.getValue().hashCode());
+            i++;
+        }
+    }
+
+    /**
+     * Get the hash of the segments starting at or after start, and before end.
+     *
+     * @param start  The inclusive start of the range
+     * @param end  The exclusive end of the range
+     *
+     * @return the hash of the segments starting in the range, which is 0 if there are none
+     */
+    public int getHash(DateTime start, DateTime end) {
+        int from = indexOf(start.getMillis());
+        int to = indexOf(end.getMillis());
+        return to > from ? runningHashes[to] - runningHashes[from] : 0;
+    }
+
+    /**
+     * Whether or not the index was built from the given segment map.
+     *
+     * @param segments  A segment map
+     *
+     * @return true if this is the index of that very map
+     */
+    boolean isIndexOf(SortedMap<DateTime, Map<String, SegmentInfo>> segments) {
+        return this.segments == segments;
+    }
+
+    /**
+     * Find the position of the first start at or after an instant.
+     *
+     * @param instant  The instant in milliseconds
+     *
+     * @return the number of starts before the instant
+     */
+    private int indexOf(long instant) {
+        int index = Arrays.binarySearch(starts, instant);
+        return index >= 0 ? index : -(index + 1);
+    }
+}
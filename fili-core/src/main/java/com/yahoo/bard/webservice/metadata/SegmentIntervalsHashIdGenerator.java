@@ -14,6 +14,7 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -23,6 +24,9 @@ import java.util.stream.Collectors;
 /**
  * An implementation of the QuerySigningService that generates segment id for requested interval.
  * It uses the sum of segment hashes to create a segment id.
+ * <p>
+ * The hashes of the segments in each requested interval are read from the {@link SegmentHashIndex} of each table, so
+ * signing a query takes time logarithmic in the number of segments of its tables.
  */
 public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long> {
 
@@ -90,12 +94,11 @@ public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long
                 .map(physicalTableDictionary::get)
                 .collect(Collectors.toSet());
 
-        //get all table segments
-        Set<SortedMap<DateTime, Map<String, SegmentInfo>>> tableSegments =
-                dataSourceMetadataService.getTableSegments(physicalTables);
+        //get the segment hash index of each table
+        List<SegmentHashIndex> tableSegmentHashes = dataSourceMetadataService.getSegmentHashIndexes(physicalTables);
 
         // Check if we have no tables with segments
-        if (tableSegments.isEmpty()) {
+        if (tableSegmentHashes.isEmpty()) {
             LOG.warn(DRUID_METADATA_SEGMENTS_MISSING.logFormat(tableNames));
             return Optional.empty();
         }
@@ -103,14 +106,15 @@ public class SegmentIntervalsHashIdGenerator implements QuerySigningService<Long
         //get requested intervals
         SimplifiedIntervalList requestedIntervals = signingFunctions.get(query.getClass()).apply(query);
 
-        //get requested segments
-        Set<SortedMap<DateTime, Map<String, SegmentInfo>>> requestedSegments = requestedIntervals.stream()
-                .flatMap(interval -> tableSegments.stream()
-                                .map(segments -> segments.subMap(interval.getStart(), interval.getEnd()))
-                )
-                .collect(Collectors.toSet());
-        //return segment hash
-        return Optional.of(getSegmentHash(requestedSegments));
+        //return the sum of the hashes of the requested segments of each table
+        return Optional.of(
+                requestedIntervals.stream()
+                        .flatMap(interval -> tableSegmentHashes.stream()
+                                .map(segmentHashes -> segmentHashes.getHash(interval.getStart(), interval.getEnd()))
+                        )
+                        .mapToLong(Integer::longValue)
+                        .sum()
+        );
     }
 
     /**
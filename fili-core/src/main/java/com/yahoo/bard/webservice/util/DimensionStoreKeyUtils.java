@@ -27,6 +27,30 @@ public class DimensionStoreKeyUtils {
         return "all_values_key";
     }
 
+    /**
+     * Returns a key for accessing one chunk of the list of all the dimension values in a
+     * {@link com.yahoo.bard.webservice.data.dimension.KeyValueStore}.
+     * <p>
+     * The first chunk is held under {@link #getAllValuesKey()}, so a list written as a single value is read as a list
+     * with a single chunk.
+     *
+     * @param chunk  The position of the chunk in the list, starting from 0
+     *
+     * @return A key for accessing a chunk of the list of all the values in a KeyValueStore as a String.
+     */
+    public static String getAllValuesKey(int chunk) {
+        return chunk == 0 ? getAllValuesKey() : getAllValuesKey() + "_" + chunk;
+    }
+
+    /**
+     * Returns a key for accessing the number of chunks the list of all the dimension values is stored in.
+     *
+     * @return A key that, when fed into a KeyValueStore, returns the number of chunks of the list of all the values.
+     */
+    public static String getAllValuesChunksKey() {
+        return "all_values_chunks_key";
+    }
+
     /**
      * Returns a key that allows access to the dimension rows of a given dimension.
      * <p>
@@ -142,6 +142,8 @@ public enum ErrorMessageFormat implements MessageFormatter {
     JOB_MAPPING_FAILED("Job with ticket %s cannot be retrieved due to internal error",
             "The JobRow %s could not be correctly mapped to a job payload by the JobPayloadBuilder because the fields %s are missing in the job row "),
 
+    JOBS_FILTER_FIELD_UNDEFINED("Job filter field '%s' does not exist. The fields that can be filtered on are %s."),
+
     JOBS_RETREIVAL_FAILED("Jobs cannot be retrieved successfully due to internal error", "Jobs cannot be retrieved successfully as the JobRow %s could not be correctly mapped to a job payload by the JobPayloadBuilder"),
 
     PHYSICAL_NAME_NOT_FOUND("Could not resolve physical name to serialize dimension.",
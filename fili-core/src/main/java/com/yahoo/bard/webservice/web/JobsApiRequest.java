@@ -6,6 +6,7 @@ import com.yahoo.bard.webservice.jobs.ApiJobStore;
 import com.yahoo.bard.webservice.jobs.BroadcastChannel;
 import com.yahoo.bard.webservice.jobs.JobPayloadBuilder;
 import com.yahoo.bard.webservice.jobs.JobRow;
+import com.yahoo.bard.webservice.jobs.JobRowFilter;
 import com.yahoo.bard.webservice.jobs.PreResponseStore;
 
 import org.slf4j.Logger;
@@ -14,7 +15,11 @@ import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.observables.ConnectableObservable;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.validation.constraints.NotNull;
@@ -32,6 +37,7 @@ public class JobsApiRequest extends ApiRequest {
     private final ApiJobStore apiJobStore;
     private final PreResponseStore preResponseStore;
     private final BroadcastChannel<String> broadcastChannel;
+    private final Set<JobRowFilter> jobRowFilters;
 
     /**
      * Parses the API request URL and generates the Api Request object.
@@ -60,11 +66,86 @@ public class JobsApiRequest extends ApiRequest {
             PreResponseStore preResponseStore,
             BroadcastChannel<String> broadcastChannel
     ) {
+        this(
+                format,
+                asyncAfter,
+                perPage,
+                page,
+                null,
+                uriInfo,
+                jobPayloadBuilder,
+                apiJobStore,
+                preResponseStore,
+                broadcastChannel
+        );
+    }
+
+    /**
+     * Parses the API request URL and generates the Api Request object.
+     *
+     * @param format  response data format JSON or CSV. Default is JSON.
+     * @param asyncAfter  How long the user is willing to wait for a synchronous request in milliseconds
+     * @param perPage  number of rows to display per page of results. If present in the original request,
+     * must be a positive integer. If not present, must be the empty string.
+     * @param page  desired page of results. If present in the original request, must be a positive
+     * integer. If not present, must be the empty string.
+     * @param filters  URL filter query on the fields of the jobs, such as {@code userId-eq[greg]}. If null or empty,
+     * every job is selected
+     * @param uriInfo  The URI of the request object.
+     * @param jobPayloadBuilder  The JobRowMapper to be used to map JobRow to the Job returned by the api
+     * @param apiJobStore  The ApiJobStore containing Job metadata
+     * @param preResponseStore  The data store responsible for storing PreResponses
+     * @param broadcastChannel  Channel to notify other Bard processes (i.e. long pollers)
+     * that a PreResponse is ready for retrieval
+     *
+     * @throws BadApiRequestException if the filter query is not valid
+     */
+    public JobsApiRequest(
+            String format,
+            String asyncAfter,
+            @NotNull String perPage,
+            @NotNull String page,
+            String filters,
+            UriInfo uriInfo,
+            JobPayloadBuilder jobPayloadBuilder,
+            ApiJobStore apiJobStore,
+            PreResponseStore preResponseStore,
+            BroadcastChannel<String> broadcastChannel
+    ) throws BadApiRequestException {
         super(format, asyncAfter, perPage, page, uriInfo);
         this.jobPayloadBuilder = jobPayloadBuilder;
         this.apiJobStore = apiJobStore;
         this.preResponseStore = preResponseStore;
         this.broadcastChannel = broadcastChannel;
+        this.jobRowFilters = generateJobRowFilters(filters);
+    }
+
+    /**
+     * Parses the filters on the fields of the jobs from the filter query.
+     *
+     * @param filterQuery  URL filter query, with the filters separated by commas
+     *
+     * @return the filters, or an empty set if there is no filter query
+     *
+     * @throws BadApiRequestException if any of the filters is not valid
+     */
+    protected Set<JobRowFilter> generateJobRowFilters(String filterQuery) throws BadApiRequestException {
+        if (filterQuery == null || "".equals(filterQuery)) {
+            return Collections.emptySet();
+        }
+        Set<JobRowFilter> filters = new LinkedHashSet<>();
+        for (String filter : Arrays.asList(filterQuery.split(COMMA_AFTER_BRACKET_PATTERN))) {
+            try {
+                filters.add(new JobRowFilter(filter));
+            } catch (BadFilterException filterException) {
+                throw new BadApiRequestException(filterException.getMessage(), filterException);
+            }
+        }
+        return filters;
+    }
+
+    public Set<JobRowFilter> getJobRowFilters() {
+        return jobRowFilters;
     }
 
     /**
@@ -98,8 +179,8 @@ public class JobsApiRequest extends ApiRequest {
      * @return An Observable wrapping a PreResponse or an empty Observable in case a timeout occurs.
      */
     public Observable<PreResponse> handleBroadcastChannelNotification(@NotNull String ticket) {
-        ConnectableObservable<PreResponse> broadCastChannelPreResponseObservable = broadcastChannel.getNotifications()
-                .filter(ticket::equals)
+        ConnectableObservable<PreResponse> broadCastChannelPreResponseObservable = broadcastChannel
+                .getNotifications(ticket)
                 .timeout(asyncAfter, TimeUnit.MILLISECONDS, Observable.empty())
                 .flatMap(preResponseStore::get)
                 .take(1)
@@ -112,15 +193,17 @@ public class JobsApiRequest extends ApiRequest {
     }
 
     /**
-     * Return an Observable containing a stream of job payloads for all the jobs in the ApiJobStore. If, for any JobRow,
-     * the mapping from JobRow to job view fails, an Observable over JobRequestFailedException is returned.
-     * If the ApiJobStore is empty, we return an empty Observable.
+     * Return an Observable containing a stream of job payloads for all the jobs in the ApiJobStore that satisfy the
+     * filters of the request. If, for any JobRow, the mapping from JobRow to job view fails, an Observable over
+     * JobRequestFailedException is returned. If no jobs satisfy the filters, we return an empty Observable.
      *
      * @return An Observable containing a stream of Maps representing the job to be returned to the user
      */
     public Observable<Map<String, String>> getJobViews() {
-        return apiJobStore.getAllRows()
-                .map(this::mapJobRowsToJobViews);
+        Observable<JobRow> jobRows = jobRowFilters.isEmpty() ?
+                apiJobStore.getAllRows() :
+                apiJobStore.getFilteredRows(jobRowFilters);
+        return jobRows.map(this::mapJobRowsToJobViews);
     }
 
     /**
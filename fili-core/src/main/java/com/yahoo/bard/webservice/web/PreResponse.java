@@ -2,7 +2,11 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web;
 
+import com.yahoo.bard.webservice.data.BlockResults;
+import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.StreamingResults;
+import com.yahoo.bard.webservice.table.Schema;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
 
 import java.util.Objects;
@@ -10,9 +14,14 @@ import java.util.Objects;
 /**
  * PreReponse is an encapsulation of ResultSet and ResponseContext. ResultSet and ResponseContext can be extracted from
  * it to build a Response
+ * <p>
+ * The rows of a streamed response, and the rows of a stored response read a block at a time, are not a result set.
+ * They are read from the rows of the pre response, and such a pre response has no result set.
  */
 public class PreResponse {
     private final ResultSet resultSet;
+    private final Iterable<Result> rows;
+    private final Schema schema;
     private final ResponseContext responseContext;
 
     /**
@@ -23,13 +32,68 @@ public class PreResponse {
      */
     public PreResponse(ResultSet resultSet, ResponseContext responseContext) {
         this.resultSet = resultSet;
+        this.rows = resultSet;
+        this.schema = resultSet == null ? null : resultSet.getSchema();
         this.responseContext = responseContext;
     }
 
+    /**
+     * Build PreResponse using the given streamed rows and ResponseContext.
+     *
+     * @param rows  Rows of a response, streamed as they are produced
+     * @param responseContext  ResponseContext associated with a response
+     */
+    public PreResponse(StreamingResults rows, ResponseContext responseContext) {
+        this.resultSet = null;
+        this.rows = rows;
+        this.schema = rows == null ? null : rows.getSchema();
+        this.responseContext = responseContext;
+    }
+
+    /**
+     * Build PreResponse using the given rows read a block at a time and ResponseContext.
+     *
+     * @param rows  Rows of a response, read a block at a time as they are used
+     * @param responseContext  ResponseContext associated with a response
+     */
+    public PreResponse(BlockResults rows, ResponseContext responseContext) {
+        this.resultSet = null;
+        this.rows = rows;
+        this.schema = rows == null ? null : rows.getSchema();
+        this.responseContext = responseContext;
+    }
+
+    /**
+     * Get the result set of the response.
+     *
+     * @return the result set, or null if the rows of the response are not a result set
+     */
     public ResultSet getResultSet() {
         return resultSet;
     }
 
+    /**
+     * Get the rows of the response, which are the result set if there is one.
+     *
+     * @return the rows of the response
+     */
+    public Iterable<Result> getRows() {
+        return rows;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Whether the rows of the response are streamed rather than held in a result set.
+     *
+     * @return true if the rows are streamed
+     */
+    public boolean isStreamed() {
+        return rows instanceof StreamingResults;
+    }
+
     public ResponseContext getResponseContext() {
         return responseContext;
     }
@@ -40,12 +104,12 @@ public class PreResponse {
         if (o == null || getClass() != o.getClass()) { return false; }
         PreResponse that = (PreResponse) o;
         return
-                Objects.equals(resultSet, that.resultSet) &&
+                Objects.equals(rows, that.rows) &&
                 Objects.equals(responseContext, that.responseContext);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(resultSet, responseContext);
+        return Objects.hash(rows, responseContext);
     }
 }
@@ -8,6 +8,7 @@ import com.yahoo.bard.webservice.config.SystemConfigException;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 
@@ -18,12 +19,22 @@ import java.io.Closeable;
 import java.security.Principal;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.validation.constraints.NotNull;
 
 /**
  * Handles Rate Limiting for web service.
+ * <p>
+ * Requests are admitted against limits on the number of outstanding requests, and optionally against budgets on the
+ * total weight of the outstanding requests, both globally and per user. A request heavier than a weight budget is
+ * only admitted when no other weight is outstanding against that budget. When a queue timeout is set, a request over
+ * a limit waits up to that long for outstanding requests to finish before it is rejected.
  */
 public class RateLimiter {
     private static final Logger LOG = LoggerFactory.getLogger(RateLimiter.class);
@@ -36,11 +47,23 @@ public class RateLimiter {
             SYSTEM_CONFIG.getPackageVariableName("request_limit_per_user");
     private static final @NotNull String REQUEST_LIMIT_UI_KEY =
             SYSTEM_CONFIG.getPackageVariableName("request_limit_ui");
+    private static final @NotNull String REQUEST_WEIGHT_LIMIT_GLOBAL_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_weight_limit_global");
+    private static final @NotNull String REQUEST_WEIGHT_LIMIT_PER_USER_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_weight_limit_per_user");
+    private static final @NotNull String REQUEST_QUEUE_TIMEOUT_MILLIS_KEY =
+            SYSTEM_CONFIG.getPackageVariableName("request_queue_timeout_millis");
 
     // Default values
     private static final int DEFAULT_REQUEST_LIMIT_GLOBAL = 70;
     private static final int DEFAULT_REQUEST_LIMIT_PER_USER = 2;
     private static final int DEFAULT_REQUEST_LIMIT_UI = 52;
+    private static final long DEFAULT_REQUEST_QUEUE_TIMEOUT_MILLIS = 0;
+
+    /**
+     * Weight of a request whose weight is not known.
+     */
+    public static final long DEFAULT_REQUEST_WEIGHT = 1;
 
     private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
 
@@ -50,10 +73,20 @@ public class RateLimiter {
     final int requestLimitGlobal;
     final int requestLimitPerUser;
     final int requestLimitUi;
+    final long requestWeightLimitGlobal;
+    final long requestWeightLimitPerUser;
+    final long requestQueueTimeoutMillis;
 
     // Live count holders
     private final AtomicInteger globalCount = new AtomicInteger();
     private final Map<String, AtomicInteger> userCounts = new ConcurrentHashMap<>();
+    private final AtomicLong globalWeight = new AtomicLong();
+    private final Map<String, AtomicLong> userWeights = new ConcurrentHashMap<>();
+
+    // Queue of requests waiting for outstanding requests to finish
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Lock queueLock = new ReentrantLock();
+    private final Condition released = queueLock.newCondition();
 
     private final Counter requestGlobalCounter;
     private final Counter usersCounter;
@@ -63,6 +96,8 @@ public class RateLimiter {
     private final Meter requestUserMeter;
     private final Meter rejectUiMeter;
     private final Meter rejectUserMeter;
+    private final Histogram queueDepthHistogram;
+    private final Histogram queueWaitHistogram;
 
     /**
      * Loads defaults and create RateLimiter.
@@ -74,6 +109,12 @@ public class RateLimiter {
         requestLimitGlobal = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_GLOBAL_KEY, DEFAULT_REQUEST_LIMIT_GLOBAL);
         requestLimitPerUser = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_PER_USER_KEY, DEFAULT_REQUEST_LIMIT_PER_USER);
         requestLimitUi = SYSTEM_CONFIG.getIntProperty(REQUEST_LIMIT_UI_KEY, DEFAULT_REQUEST_LIMIT_UI);
+        requestWeightLimitGlobal = SYSTEM_CONFIG.getLongProperty(REQUEST_WEIGHT_LIMIT_GLOBAL_KEY, DISABLED_RATE);
+        requestWeightLimitPerUser = SYSTEM_CONFIG.getLongProperty(REQUEST_WEIGHT_LIMIT_PER_USER_KEY, DISABLED_RATE);
+        requestQueueTimeoutMillis = SYSTEM_CONFIG.getLongProperty(
+                REQUEST_QUEUE_TIMEOUT_MILLIS_KEY,
+                DEFAULT_REQUEST_QUEUE_TIMEOUT_MILLIS
+        );
 
         // Register counters for currently active requests
         usersCounter = REGISTRY.counter("ratelimit.count.users");
@@ -85,6 +126,10 @@ public class RateLimiter {
         requestBypassMeter = REGISTRY.meter("ratelimit.meter.request.bypass");
         rejectUserMeter = REGISTRY.meter("ratelimit.meter.reject.user");
         rejectUiMeter = REGISTRY.meter("ratelimit.meter.reject.ui");
+
+        // Register histograms for the requests waiting to be admitted
+        queueDepthHistogram = REGISTRY.histogram("ratelimit.histogram.queue.depth");
+        queueWaitHistogram = REGISTRY.histogram("ratelimit.histogram.queue.wait_millis");
     }
 
     /**
@@ -121,6 +166,26 @@ public class RateLimiter {
         return count;
     }
 
+    /**
+     * Get the current outstanding weight for this username.
+     *
+     * @param userName  Username to get the weight for
+     *
+     * @return The atomic weight for the user
+     */
+    private AtomicLong getWeight(String userName) {
+        return userWeights.computeIfAbsent(userName, ignored -> new AtomicLong());
+    }
+
+    /**
+     * Check if requests are admitted against weight budgets, and so need their weight estimated.
+     *
+     * @return true if either the global or the per user weight budget is enabled
+     */
+    public boolean isWeightLimited() {
+        return requestWeightLimitGlobal != DISABLED_RATE || requestWeightLimitPerUser != DISABLED_RATE;
+    }
+
     /**
      * Increment user outstanding requests count.
      *
@@ -130,11 +195,30 @@ public class RateLimiter {
      * @return token holding this user's count
      */
     public RequestToken getToken(RequestType type, Principal user) {
+        return getToken(type, user, DEFAULT_REQUEST_WEIGHT);
+    }
+
+    /**
+     * Increment user outstanding requests count and weight.
+     *
+     * @param type  request type
+     * @param user  request user
+     * @param weight  estimated weight of the request
+     *
+     * @return token holding this user's count and weight
+     */
+    public RequestToken getToken(RequestType type, Principal user, long weight) {
         switch (type) {
             case UI:
-                return new OutstandingRequestToken(user, requestLimitUi, requestUiMeter, rejectUiMeter);
+                return new OutstandingRequestToken(user, requestLimitUi, weight, requestUiMeter, rejectUiMeter);
             case USER:
-                return new OutstandingRequestToken(user, requestLimitPerUser, requestUserMeter, rejectUserMeter);
+                return new OutstandingRequestToken(
+                        user,
+                        requestLimitPerUser,
+                        weight,
+                        requestUserMeter,
+                        rejectUserMeter
+                );
             case BYPASS:
                 return new BypassRequestToken();
             default:
@@ -161,6 +245,64 @@ public class RateLimiter {
         return true;
     }
 
+    /**
+     * Add a weight to an outstanding weight and check if it has gone over the weight limit.
+     * <p>
+     * The weight is only added if the limit is enabled, and is admitted if nothing else is outstanding even when it
+     * is over the limit on its own, so that no request is rejected forever.
+     *
+     * @param outstanding  Outstanding weight to add to and check against the limit
+     * @param weight  Weight to add
+     * @param weightLimit  Limit to check the outstanding weight against
+     *
+     * @return True if the weight was added, false if it would have gone over the limit
+     */
+    private boolean addAndCheckWeight(AtomicLong outstanding, long weight, long weightLimit) {
+        if (weightLimit == DISABLED_RATE) {
+            return true;
+        }
+        while (true) {
+            long current = outstanding.get();
+            if (current > 0 && weight > weightLimit - current) {
+                LOG.info("reject weight: {} + {} > {}", current, weight, weightLimit);
+                return false;
+            }
+            if (outstanding.compareAndSet(current, current + weight)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Remove a weight from an outstanding weight, if the limit it is checked against is enabled.
+     *
+     * @param outstanding  Outstanding weight to remove from
+     * @param weight  Weight to remove
+     * @param weightLimit  Limit the outstanding weight is checked against
+     * @param userName  User whose request the weight belongs to, for logging
+     */
+    private void removeWeight(AtomicLong outstanding, long weight, long weightLimit, String userName) {
+        if (weightLimit != DISABLED_RATE && outstanding.addAndGet(-weight) < 0) {
+            // Reset to 0 if it falls below 0
+            long old = outstanding.getAndSet(0);
+            LOG.error("Lost weight {} on user {}", old, userName);
+        }
+    }
+
+    /**
+     * Wake up the requests waiting to be admitted, if there are any.
+     */
+    private void signalReleased() {
+        if (queued.get() > 0) {
+            queueLock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
     /**
      * Resource representing an outstanding request.
      */
@@ -191,6 +333,8 @@ public class RateLimiter {
     public class OutstandingRequestToken extends RequestToken {
         final String userName;
         final AtomicInteger count;
+        final AtomicLong userWeight;
+        final long weight;
         boolean isBound;
 
         /**
@@ -202,29 +346,111 @@ public class RateLimiter {
          * @param rejectMeter  reject meter
          */
         public OutstandingRequestToken(Principal user, int requestLimit, Meter requestMeter, Meter rejectMeter) {
+            this(user, requestLimit, DEFAULT_REQUEST_WEIGHT, requestMeter, rejectMeter);
+        }
+
+        /**
+         * Bind outstanding request and its weight to token, waiting in the queue if needed, or fail and set to unbound.
+         *
+         * @param user  request user
+         * @param requestLimit  request limit
+         * @param weight  estimated weight of the request
+         * @param requestMeter  request meter
+         * @param rejectMeter  reject meter
+         */
+        public OutstandingRequestToken(
+                Principal user,
+                int requestLimit,
+                long weight,
+                Meter requestMeter,
+                Meter rejectMeter
+        ) {
             userName = String.valueOf(user == null ? null : user.getName());
             count = getCount(userName);
+            userWeight = getWeight(userName);
+            this.weight = weight;
+
+            RateLimitType limitType = tryBind(requestLimit);
+            if (limitType != null && requestQueueTimeoutMillis > 0) {
+                limitType = awaitBind(requestLimit);
+            }
+            if (limitType != null) {
+                rejectRequest(rejectMeter, limitType);
+                return;
+            }
+
+            // Measure the accepted request and current open connections
+            requestMeter.mark();
+            requestGlobalCounter.inc();
 
+            isBound = true;
+        }
+
+        /**
+         * Try to bind the counts and weights of the request, leaving them all unchanged if any limit is reached.
+         *
+         * @param requestLimit  request limit
+         *
+         * @return null if bound, or the type of the limit that was reached
+         */
+        private RateLimitType tryBind(int requestLimit) {
             // Bind globally
             if (!incrementAndCheckCount(globalCount, requestLimitGlobal)) {
-                rejectRequest(rejectMeter, RateLimitType.GLOBAL);
-                return;
+                return RateLimitType.GLOBAL;
             }
 
             // Bind to the user
             if (!incrementAndCheckCount(count, requestLimit)) {
                 // Decrement the global count that had already been incremented
                 globalCount.decrementAndGet();
+                return RateLimitType.USER;
+            }
 
-                rejectRequest(rejectMeter, RateLimitType.USER);
-                return;
+            // Bind the weight globally and to the user
+            if (!addAndCheckWeight(globalWeight, weight, requestWeightLimitGlobal)) {
+                globalCount.decrementAndGet();
+                count.decrementAndGet();
+                return RateLimitType.GLOBAL;
             }
+            if (!addAndCheckWeight(userWeight, weight, requestWeightLimitPerUser)) {
+                removeWeight(globalWeight, weight, requestWeightLimitGlobal, userName);
+                globalCount.decrementAndGet();
+                count.decrementAndGet();
+                return RateLimitType.USER;
+            }
+            return null;
+        }
 
-            // Measure the accepted request and current open connections
-            requestMeter.mark();
-            requestGlobalCounter.inc();
+        /**
+         * Wait in the queue for outstanding requests to finish until the request can be bound or the queue timeout
+         * runs out.
+         *
+         * @param requestLimit  request limit
+         *
+         * @return null if bound, or the type of the limit that was last reached
+         */
+        private RateLimitType awaitBind(int requestLimit) {
+            long start = System.nanoTime();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(requestQueueTimeoutMillis);
+            queueDepthHistogram.update(queued.incrementAndGet());
 
-            isBound = true;
+            RateLimitType limitType = RateLimitType.GLOBAL;
+            queueLock.lock();
+            try {
+                limitType = tryBind(requestLimit);
+                while (limitType != null && remaining > 0) {
+                    remaining = released.awaitNanos(remaining);
+                    limitType = tryBind(requestLimit);
+                }
+            } catch (InterruptedException e) {
+                LOG.debug("Interrupted waiting for outstanding requests of user {}", userName);
+                Thread.currentThread().interrupt();
+            } finally {
+                queueLock.unlock();
+                queued.decrementAndGet();
+                queueWaitHistogram.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            return limitType;
         }
 
         /**
@@ -245,16 +471,23 @@ public class RateLimiter {
                 isBound = false;
 
                 // Unbind
-                if (globalCount.decrementAndGet() < 0) {
-                    // Reset to 0 if it falls below 0
-                    int old = globalCount.getAndSet(0);
-                    LOG.error("Lost global count {} on user {}", old, userName);
-                }
-                if (count.decrementAndGet() < 0) {
-                    // Reset to 0 if it falls below 0
-                    int old = count.getAndSet(0);
-                    LOG.error("Lost user count {} on user {}", old, userName);
-                    throw new IllegalStateException("Lost user count");
+                try {
+                    removeWeight(globalWeight, weight, requestWeightLimitGlobal, userName);
+                    removeWeight(userWeight, weight, requestWeightLimitPerUser, userName);
+                    if (globalCount.decrementAndGet() < 0) {
+                        // Reset to 0 if it falls below 0
+                        int old = globalCount.getAndSet(0);
+                        LOG.error("Lost global count {} on user {}", old, userName);
+                    }
+                    if (count.decrementAndGet() < 0) {
+                        // Reset to 0 if it falls below 0
+                        int old = count.getAndSet(0);
+                        LOG.error("Lost user count {} on user {}", old, userName);
+                        throw new IllegalStateException("Lost user count");
+                    }
+                } finally {
+                    // Let the requests waiting in the queue try again
+                    signalReleased();
                 }
             }
         }
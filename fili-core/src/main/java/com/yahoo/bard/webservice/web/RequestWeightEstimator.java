@@ -0,0 +1,127 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web;
+
+import static com.yahoo.bard.webservice.util.DateTimeFormatterFactory.FULLY_OPTIONAL_DATETIME_FORMATTER;
+
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
+import com.yahoo.bard.webservice.data.time.GranularityParser;
+import com.yahoo.bard.webservice.druid.model.query.Granularity;
+import com.yahoo.bard.webservice.util.GranularityParseException;
+import com.yahoo.bard.webservice.util.IntervalUtils;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.PathSegment;
+
+/**
+ * Estimates the weight of a data request from its URI, before the request is matched to a resource.
+ * <p>
+ * The weight is the worst case number of rows of the response, as in
+ * {@link com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery#getWorstCaseWeightEstimate}: the number
+ * of time buckets of the requested intervals times the product of the cardinalities of the grouping dimensions. Parts
+ * of the request that can't be read count as a weight of 1, leaving it to the resource to reject them.
+ */
+public class RequestWeightEstimator {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestWeightEstimator.class);
+
+    private static final String DATA_PATH = "data";
+    private static final String DATE_TIME_PARAMETER = "dateTime";
+
+    private final DimensionDictionary dimensionDictionary;
+    private final GranularityParser granularityParser;
+
+    /**
+     * Constructor.
+     *
+     * @param dimensionDictionary  Dictionary to find the cardinalities of the grouping dimensions in
+     * @param granularityParser  Parser for the granularity of the request
+     */
+    public RequestWeightEstimator(DimensionDictionary dimensionDictionary, GranularityParser granularityParser) {
+        this.dimensionDictionary = dimensionDictionary;
+        this.granularityParser = granularityParser;
+    }
+
+    /**
+     * Estimate the weight of a data request.
+     *
+     * @param pathSegments  Segments of the path of the request, as in {@code data/table/grain/dimension/...}
+     * @param queryParameters  Query parameters of the request
+     *
+     * @return the estimated weight, which is at least 1
+     */
+    public long estimate(List<PathSegment> pathSegments, MultivaluedMap<String, String> queryParameters) {
+        int dataIndex = 0;
+        while (dataIndex < pathSegments.size() && !DATA_PATH.equals(pathSegments.get(dataIndex).getPath())) {
+            dataIndex++;
+        }
+        int grainIndex = dataIndex + 2;
+        if (grainIndex >= pathSegments.size()) {
+            return RateLimiter.DEFAULT_REQUEST_WEIGHT;
+        }
+
+        long periods = countPeriods(
+                pathSegments.get(grainIndex).getPath(),
+                queryParameters.getFirst(DATE_TIME_PARAMETER)
+        );
+        long cardinality = pathSegments.subList(grainIndex + 1, pathSegments.size()).stream()
+                .map(PathSegment::getPath)
+                .map(dimensionDictionary::findByApiName)
+                .filter(Objects::nonNull)
+                .mapToLong(Dimension::getCardinality)
+                .map(it -> Math.max(1, it)) // 0-cardinality dimensions should multiply by identity (1)
+                .reduce(1, RequestWeightEstimator::multiply);
+
+        long weight = multiply(periods, cardinality);
+        LOG.trace("estimated request weight = {}", weight);
+        return weight;
+    }
+
+    /**
+     * Count the time buckets of the requested intervals.
+     *
+     * @param grain  Name of the granularity of the request
+     * @param dateTime  Intervals of the request
+     *
+     * @return the number of time buckets, or 1 if they can't be read
+     */
+    private long countPeriods(String grain, String dateTime) {
+        try {
+            Granularity granularity = granularityParser.parseGranularity(grain, DateTimeZone.UTC);
+            Set<Interval> intervals = DataApiRequest.generateIntervals(
+                    dateTime,
+                    granularity,
+                    FULLY_OPTIONAL_DATETIME_FORMATTER
+            );
+            long periods = IntervalUtils.countSlicedIntervals(intervals, granularity);
+            return Math.max(RateLimiter.DEFAULT_REQUEST_WEIGHT, periods);
+        } catch (GranularityParseException | BadApiRequestException e) {
+            return RateLimiter.DEFAULT_REQUEST_WEIGHT;
+        }
+    }
+
+    /**
+     * Multiply two weights, saturating at the largest weight rather than overflowing.
+     *
+     * @param left  First weight
+     * @param right  Second weight
+     *
+     * @return the product of the weights
+     */
+    private static long multiply(long left, long right) {
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (ArithmeticException ignored) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -4,6 +4,7 @@ package com.yahoo.bard.webservice.web;
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
 import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.data.ColumnarResultSet;
 import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
@@ -16,21 +17,28 @@ import com.yahoo.bard.webservice.util.DateTimeFormatterFactory;
 import com.yahoo.bard.webservice.util.DateTimeUtils;
 import com.yahoo.bard.webservice.util.Pagination;
 import com.yahoo.bard.webservice.util.SimplifiedIntervalList;
+import com.yahoo.bard.webservice.table.Schema;
 import com.yahoo.bard.webservice.util.StreamUtils;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 
+import org.joda.time.Chronology;
 import org.joda.time.Interval;
+import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -53,9 +61,12 @@ import javax.ws.rs.core.StreamingOutput;
 public class Response {
 
     private static final Logger LOG = LoggerFactory.getLogger(Response.class);
-    private static final Map<Dimension, Map<DimensionField, String>> DIMENSION_FIELD_COLUMN_NAMES = new HashMap<>();
+    private static final Map<Dimension, Map<DimensionField, String>> DIMENSION_FIELD_COLUMN_NAMES =
+            new ConcurrentHashMap<>();
+    private static final SerializableString DATE_TIME_COLUMN_NAME = new SerializedString("dateTime");
 
-    private final ResultSet resultSet;
+    private final Iterable<Result> rows;
+    private final Schema schema;
     private final LinkedHashSet<MetricColumn> apiMetricColumns;
     private final LinkedHashMap<Dimension, Set<DimensionField>> requestedApiDimensionFields;
     private final ResponseFormatType responseFormatType;
@@ -90,7 +101,51 @@ public class Response {
             Pagination pagination,
             ObjectMappersSuite objectMappers
     ) {
-        this.resultSet = resultSet;
+        this(
+                resultSet,
+                resultSet.getSchema(),
+                apiMetricColumnNames,
+                requestedApiDimensionFields,
+                responseFormatType,
+                missingIntervals,
+                volatileIntervals,
+                paginationLinks,
+                pagination,
+                objectMappers
+        );
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * The rows are read once, as the response is written. A row source that is {@link Closeable}, such as streamed
+     * results, is closed once the response stream has been written.
+     *
+     * @param rows  The rows to turn into response
+     * @param schema  The schema of the rows
+     * @param apiMetricColumnNames  The names of the logical metrics requested
+     * @param requestedApiDimensionFields  The fields for each dimension that should be shown in the response
+     * @param responseFormatType  The format in which the response should be returned to the user
+     * @param missingIntervals  intervals over which partial data exists
+     * @param volatileIntervals  intervals over which data is understood as 'best-to-date'
+     * @param paginationLinks  A mapping from link names to links to be added to the end of the JSON response.
+     * @param pagination  The object containing the pagination information. Null if we are not paginating.
+     * @param objectMappers  Suite of Object Mappers to use when serializing
+     */
+    public Response(
+            Iterable<Result> rows,
+            Schema schema,
+            Set<String> apiMetricColumnNames,
+            LinkedHashMap<Dimension, Set<DimensionField>> requestedApiDimensionFields,
+            ResponseFormatType responseFormatType,
+            SimplifiedIntervalList missingIntervals,
+            SimplifiedIntervalList volatileIntervals,
+            Map<String, URI> paginationLinks,
+            Pagination pagination,
+            ObjectMappersSuite objectMappers
+    ) {
+        this.rows = rows;
+        this.schema = schema;
         this.apiMetricColumns = generateApiMetricColumns(apiMetricColumnNames);
         this.requestedApiDimensionFields = requestedApiDimensionFields;
         this.responseFormatType = responseFormatType;
@@ -98,10 +153,10 @@ public class Response {
         this.volatileIntervals = volatileIntervals;
         this.paginationLinks = paginationLinks;
         this.pagination = pagination;
-        this.jsonFactory = new JsonFactory(objectMappers.getMapper());
+        this.jsonFactory = objectMappers.getMapper().getFactory();
         this.csvMapper = objectMappers.getCsvMapper();
 
-        LOG.trace("Initialized with ResultSet: {}", this.resultSet);
+        LOG.trace("Initialized with rows: {}", this.rows);
     }
 
     /**
@@ -227,7 +282,7 @@ public class Response {
         try (JsonGenerator generator = jsonFactory.createGenerator(os)) {
             // Holder for the dimension rows in the result set
             Map<Dimension, Set<Map<DimensionField, String>>> sidecars = new HashMap<>();
-            for (DimensionColumn dimensionColumn : resultSet.getSchema().getColumns(DimensionColumn.class)) {
+            for (DimensionColumn dimensionColumn : schema.getColumns(DimensionColumn.class)) {
                 sidecars.put(dimensionColumn.getDimension(), new LinkedHashSet<>());
             }
 
@@ -235,9 +290,23 @@ public class Response {
             generator.writeStartObject();
 
             // Write the data rows and extract the dimension rows for the sidecars
+            RowWriter rowWriter = new RowWriter(true);
             generator.writeArrayFieldStart("rows");
-            for (Result result : resultSet) {
-                generator.writeObject(buildResultRowWithSidecars(result, sidecars));
+            if (rows instanceof ColumnarResultSet) {
+                ColumnarResultSet columns = (ColumnarResultSet) rows;
+                for (int i = 0; i < columns.size(); i++) {
+                    rowWriter.write(generator, columns, i);
+                    for (DimensionColumn dimensionColumn : columns.getDimensionColumns()) {
+                        if (columns.hasDimensionRow(i, dimensionColumn)) {
+                            addSidecarRow(dimensionColumn, columns.getDimensionRow(i, dimensionColumn), sidecars);
+                        }
+                    }
+                }
+            } else {
+                for (Result result : rows) {
+                    rowWriter.write(generator, result);
+                    addSidecarRows(result, sidecars);
+                }
             }
             generator.writeEndArray();
 
@@ -309,9 +378,17 @@ public class Response {
         try (JsonGenerator g = jsonFactory.createGenerator(os)) {
             g.writeStartObject();
 
+            RowWriter rowWriter = new RowWriter(false);
             g.writeArrayFieldStart("rows");
-            for (Result result : resultSet) {
-                g.writeObject(buildResultRow(result));
+            if (rows instanceof ColumnarResultSet) {
+                ColumnarResultSet columns = (ColumnarResultSet) rows;
+                for (int i = 0; i < columns.size(); i++) {
+                    rowWriter.write(g, columns, i);
+                }
+            } else {
+                for (Result result : rows) {
+                    rowWriter.write(g, result);
+                }
             }
             g.writeEndArray();
 
@@ -332,27 +409,39 @@ public class Response {
      * @throws IOException if a problem is encountered writing to the OutputStreamC
      */
     private void writeCsvResponse(OutputStream os) throws IOException {
-        CsvSchema schema = buildCsvHeaders();
+        CsvSchema csvSchema = buildCsvHeaders();
 
         // Just write the header first
-        csvMapper.writer().with(schema.withSkipFirstDataRow(true)).writeValue(os, Collections.emptyMap());
-
-        ObjectWriter writer = csvMapper.writer().with(schema.withoutHeader());
-
-        try {
-            resultSet.stream()
-                    .map(this::buildResultRow)
-                    .forEachOrdered(
-                            row -> {
-                                try {
-                                    writer.writeValue(os, row);
-                                } catch (IOException ioe) {
-                                    String msg = String.format("Unable to write CSV data row: %s", row);
-                                    LOG.error(msg, ioe);
-                                    throw new RuntimeException(msg, ioe);
-                                }
-                            }
-                    );
+        os.write(
+                csvMapper.writer().with(csvSchema.withSkipFirstDataRow(true)).writeValueAsBytes(Collections.emptyMap())
+        );
+
+        // Then write each row as an object whose fields the generator places in the columns of the schema
+        RowWriter rowWriter = new RowWriter(false);
+        try (JsonGenerator generator = csvMapper.getFactory().createGenerator(os)) {
+            generator.setSchema(csvSchema.withoutHeader());
+            if (rows instanceof ColumnarResultSet) {
+                ColumnarResultSet columns = (ColumnarResultSet) rows;
+                for (int i = 0; i < columns.size(); i++) {
+                    try {
+                        rowWriter.write(generator, columns, i);
+                    } catch (IOException ioe) {
+                        String msg = String.format("Unable to write CSV data row: %s", columns.get(i));
+                        LOG.error(msg, ioe);
+                        throw ioe;
+                    }
+                }
+            } else {
+                for (Result result : rows) {
+                    try {
+                        rowWriter.write(generator, result);
+                    } catch (IOException ioe) {
+                        String msg = String.format("Unable to write CSV data row: %s", result);
+                        LOG.error(msg, ioe);
+                        throw ioe;
+                    }
+                }
+            }
         } catch (RuntimeException re) {
             throw new IOException(re);
         }
@@ -367,10 +456,10 @@ public class Response {
      */
     private LinkedHashSet<MetricColumn> generateApiMetricColumns(Set<String> apiMetricColumnNames) {
         // Get the metric columns from the schema
-        Map<String, MetricColumn> metricColumnMap = resultSet.getSchema().getColumns(MetricColumn.class).stream()
+        Map<String, MetricColumn> metricColumnMap = schema.getColumns(MetricColumn.class).stream()
                 .collect(StreamUtils.toLinkedDictionary(MetricColumn::getName));
 
-        // Select only api metrics from resultSet
+        // Select only api metrics from the rows
         return apiMetricColumnNames.stream()
                 .map(metricColumnMap::get)
                 .collect(Collectors.toCollection(LinkedHashSet::new));
@@ -409,94 +498,43 @@ public class Response {
     }
 
     /**
-     * Builds map of result row from a result.
+     * Loads the requested fields of the dimension rows of a result into the sidecar map.
      *
      * @param result  the result to process
-     *
-     * @return map of result row
+     * @param sidecars  Map of sidecar data (dimension rows in the result)
      */
-    private Map<String, Object> buildResultRow(Result result) {
-        Map<String, Object> row = new LinkedHashMap<>();
-        row.put("dateTime", result.getTimeStamp().toString(DateTimeFormatterFactory.getOutputFormatter()));
-
-        // Loop through the Map<DimensionColumn, DimensionRow> and format it to dimensionColumnName : dimensionRowDesc
-        Map<DimensionColumn, DimensionRow> dr = result.getDimensionRows();
-        for (Entry<DimensionColumn, DimensionRow> dce : dr.entrySet()) {
-            DimensionRow drow = dce.getValue();
-            Dimension dimension = dce.getKey().getDimension();
-
-            Set<DimensionField> requestedDimensionFields;
-            if (requestedApiDimensionFields.get(dimension) != null) {
-                requestedDimensionFields = requestedApiDimensionFields.get(dimension);
-
-                // When no fields are requested, show the key field
-                if (requestedDimensionFields.isEmpty()) {
-                    // When no fields are requested, show the key field
-                    row.put(dimension.getApiName(), drow.get(dimension.getKey()));
-                } else {
-                    // Otherwise, show the fields requested, with the pipe-separated name
-                    for (DimensionField dimensionField : requestedDimensionFields) {
-                        row.put(getDimensionColumnName(dimension, dimensionField), drow.get(dimensionField));
-                    }
-                }
-            }
-        }
-
-        // Loop through the Map<MetricColumn, Object> and format it to a metricColumnName: metricValue map
-        for (MetricColumn apiMetricColumn : apiMetricColumns) {
-            row.put(apiMetricColumn.getName(), result.getMetricValue(apiMetricColumn));
+    private void addSidecarRows(Result result, Map<Dimension, Set<Map<DimensionField, String>>> sidecars) {
+        for (Entry<DimensionColumn, DimensionRow> dimensionColumnEntry : result.getDimensionRows().entrySet()) {
+            addSidecarRow(dimensionColumnEntry.getKey(), dimensionColumnEntry.getValue(), sidecars);
         }
-        return row;
     }
 
     /**
-     * Builds map of result row from a result and loads the dimension rows into the sidecar map.
+     * Loads the requested fields of a dimension row into the sidecar map.
      *
-     * @param result  the result to process
+     * @param dimensionColumn  the column of the dimension row
+     * @param dimensionRow  the dimension row to process
      * @param sidecars  Map of sidecar data (dimension rows in the result)
-     *
-     * @return map of result row
      */
-    private Map<String, Object> buildResultRowWithSidecars(
-            Result result,
+    private void addSidecarRow(
+            DimensionColumn dimensionColumn,
+            DimensionRow dimensionRow,
             Map<Dimension, Set<Map<DimensionField, String>>> sidecars
     ) {
+        Dimension dimension = dimensionColumn.getDimension();
 
-        Map<String, Object> row = new LinkedHashMap<>();
-        row.put("dateTime", result.getTimeStamp().toString(DateTimeFormatterFactory.getOutputFormatter()));
-
-        // Loop through the Map<DimensionColumn, DimensionRow> and format it to dimensionColumnName : dimensionRowKey
-        Map<DimensionColumn, DimensionRow> dr = result.getDimensionRows();
-        for (Entry<DimensionColumn, DimensionRow> dimensionColumnEntry : dr.entrySet()) {
-            // Get the pieces we need out of the map entry
-            Dimension dimension = dimensionColumnEntry.getKey().getDimension();
-            DimensionRow dimensionRow = dimensionColumnEntry.getValue();
-
-            if (requestedApiDimensionFields.get(dimension) != null) {
-                // add sidecar only if at-least one field needs to be shown
-                Set<DimensionField> requestedDimensionFields = requestedApiDimensionFields.get(dimension);
-                if (requestedDimensionFields.size() > 0) {
-                    // The key field is required
-                    requestedDimensionFields.add(dimension.getKey());
-
-                    //
-                    Map<DimensionField, String> dimensionFieldToValueMap = requestedDimensionFields.stream()
-                            .collect(StreamUtils.toLinkedMap(Function.identity(), dimensionRow::get));
-
-                    // Add the dimension row's requested fields to the sidecar map
-                    sidecars.get(dimension).add(dimensionFieldToValueMap);
-                }
-            }
+        // add sidecar only if at-least one field needs to be shown
+        Set<DimensionField> requestedDimensionFields = requestedApiDimensionFields.get(dimension);
+        if (requestedDimensionFields != null && requestedDimensionFields.size() > 0) {
+            // The key field is required
+            requestedDimensionFields.add(dimension.getKey());
 
-            // Put the dimension name and dimension row's key value into the row map
-            row.put(dimension.getApiName(), dimensionRow.get(dimension.getKey()));
-        }
+            Map<DimensionField, String> dimensionFieldToValueMap = requestedDimensionFields.stream()
+                    .collect(StreamUtils.toLinkedMap(Function.identity(), dimensionRow::get));
 
-        // Loop through the Map<MetricColumn, Object> and format it to a metricColumnName: metricValue map
-        for (MetricColumn apiMetricColumn : apiMetricColumns) {
-            row.put(apiMetricColumn.getName(), result.getMetricValue(apiMetricColumn));
+            // Add the dimension row's requested fields to the sidecar map
+            sidecars.get(dimension).add(dimensionFieldToValueMap);
         }
-        return row;
     }
 
     /**
@@ -524,7 +562,7 @@ public class Response {
         Map<DimensionField, String> columnNamesForDimensionFields;
         columnNamesForDimensionFields = DIMENSION_FIELD_COLUMN_NAMES.computeIfAbsent(
                 dimension,
-                (key) -> new ConcurrentHashMap()
+                (key) -> new ConcurrentHashMap<>()
         );
         return columnNamesForDimensionFields.computeIfAbsent(
                 dimensionField, (field) -> dimension.getApiName() + "|" + field.getName()
@@ -587,12 +625,210 @@ public class Response {
         generator.writeEndObject();
     }
 
+    /**
+     * Writes the fields of result rows straight to a generator, as the rows of a JSON response or the lines of a CSV
+     * response.
+     * <p>
+     * The columns of the rows are worked out once per response, and their names are kept as serialized strings so that
+     * they are only encoded once, so writing a row builds no intermediate map. Rows of a {@link ColumnarResultSet} are
+     * written from its columns, without building a Result for each row.
+     */
+    private final class RowWriter {
+        private final DateTimeFormatter dateTimeFormatter = DateTimeFormatterFactory.getOutputFormatter();
+        private DateTimeFormatter columnDateTimeFormatter;
+        private final boolean keysOnly;
+        private final Map<Dimension, List<DimensionFieldColumn>> dimensionColumns = new HashMap<>();
+        private final List<MetricColumn> metricColumns = new ArrayList<>(apiMetricColumns);
+        private final List<SerializableString> metricColumnNames = new ArrayList<>(apiMetricColumns.size());
+
+        /**
+         * Constructor.
+         *
+         * @param keysOnly  true to write the key of every dimension under its name, as in the JSON-API format, false to
+         * write only the requested fields of the requested dimensions
+         */
+        RowWriter(boolean keysOnly) {
+            this.keysOnly = keysOnly;
+            for (MetricColumn metricColumn : metricColumns) {
+                metricColumnNames.add(new SerializedString(metricColumn.getName()));
+            }
+            if (!keysOnly) {
+                for (Entry<Dimension, Set<DimensionField>> entry : requestedApiDimensionFields.entrySet()) {
+                    dimensionColumns.put(entry.getKey(), buildDimensionColumns(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        /**
+         * Build the columns written for a dimension.
+         *
+         * @param dimension  The dimension
+         * @param requestedDimensionFields  The fields of the dimension to show, showing the key field when empty
+         *
+         * @return the columns, in the order they are written
+         */
+        private List<DimensionFieldColumn> buildDimensionColumns(
+                Dimension dimension,
+                Set<DimensionField> requestedDimensionFields
+        ) {
+            if (requestedDimensionFields.isEmpty()) {
+                return Collections.singletonList(new DimensionFieldColumn(dimension.getKey(), dimension.getApiName()));
+            }
+            List<DimensionFieldColumn> columns = new ArrayList<>(requestedDimensionFields.size());
+            for (DimensionField field : requestedDimensionFields) {
+                columns.add(new DimensionFieldColumn(field, getDimensionColumnName(dimension, field)));
+            }
+            return columns;
+        }
+
+        /**
+         * Write a result as a row object.
+         *
+         * @param generator  The generator to write to
+         * @param result  The result to write
+         *
+         * @throws IOException if the generator fails to write
+         */
+        void write(JsonGenerator generator, Result result) throws IOException {
+            generator.writeStartObject();
+            generator.writeFieldName(DATE_TIME_COLUMN_NAME);
+            generator.writeString(result.getTimeStamp().toString(dateTimeFormatter));
+
+            for (Entry<DimensionColumn, DimensionRow> entry : result.getDimensionRows().entrySet()) {
+                writeDimensionRow(generator, entry.getKey(), entry.getValue());
+            }
+
+            for (int i = 0; i < metricColumns.size(); i++) {
+                generator.writeFieldName(metricColumnNames.get(i));
+                writeValue(generator, result.getMetricValue(metricColumns.get(i)));
+            }
+            generator.writeEndObject();
+        }
+
+        /**
+         * Write a row of a columnar result set as a row object, reading its values straight from the columns.
+         *
+         * @param generator  The generator to write to
+         * @param results  The result set holding the row
+         * @param index  The index of the row to write
+         *
+         * @throws IOException if the generator fails to write
+         */
+        void write(JsonGenerator generator, ColumnarResultSet results, int index) throws IOException {
+            if (columnDateTimeFormatter == null) {
+                // Every row of a columnar result set shares its chronology
+                Chronology chronology = results.getChronology();
+                columnDateTimeFormatter = dateTimeFormatter.getChronology() == null
+                        ? dateTimeFormatter.withChronology(chronology)
+                        : dateTimeFormatter;
+            }
+            generator.writeStartObject();
+            generator.writeFieldName(DATE_TIME_COLUMN_NAME);
+            generator.writeString(columnDateTimeFormatter.print(results.getTimeStampMillis(index)));
+
+            for (DimensionColumn dimensionColumn : results.getDimensionColumns()) {
+                if (results.hasDimensionRow(index, dimensionColumn)) {
+                    writeDimensionRow(generator, dimensionColumn, results.getDimensionRow(index, dimensionColumn));
+                }
+            }
+
+            for (int i = 0; i < metricColumns.size(); i++) {
+                generator.writeFieldName(metricColumnNames.get(i));
+                writeValue(generator, results.getMetricValue(index, metricColumns.get(i)));
+            }
+            generator.writeEndObject();
+        }
+
+        /**
+         * Write the fields of a dimension row that are shown for its dimension.
+         *
+         * @param generator  The generator to write to
+         * @param dimensionColumn  The column of the dimension row
+         * @param dimensionRow  The dimension row to write
+         *
+         * @throws IOException if the generator fails to write
+         */
+        private void writeDimensionRow(
+                JsonGenerator generator,
+                DimensionColumn dimensionColumn,
+                DimensionRow dimensionRow
+        ) throws IOException {
+            Dimension dimension = dimensionColumn.getDimension();
+            List<DimensionFieldColumn> columns = keysOnly
+                    ? dimensionColumns.computeIfAbsent(
+                            dimension,
+                            ignored -> buildDimensionColumns(dimension, Collections.emptySet())
+                    )
+                    : dimensionColumns.get(dimension);
+            if (columns == null) {
+                return;
+            }
+            for (DimensionFieldColumn column : columns) {
+                generator.writeFieldName(column.name);
+                generator.writeString(dimensionRow.get(column.field));
+            }
+        }
+
+        /**
+         * Write a metric value, writing the common types directly rather than through the object mapper.
+         *
+         * @param generator  The generator to write to
+         * @param value  The value to write
+         *
+         * @throws IOException if the generator fails to write
+         */
+        private void writeValue(JsonGenerator generator, Object value) throws IOException {
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof BigDecimal) {
+                generator.writeNumber((BigDecimal) value);
+            } else if (value instanceof String) {
+                generator.writeString((String) value);
+            } else if (value instanceof Boolean) {
+                generator.writeBoolean((Boolean) value);
+            } else {
+                generator.writeObject(value);
+            }
+        }
+    }
+
+    /**
+     * A dimension field written as a column of a response row.
+     */
+    private static final class DimensionFieldColumn {
+        private final DimensionField field;
+        private final SerializableString name;
+
+        /**
+         * Constructor.
+         *
+         * @param field  The dimension field to write
+         * @param name  The name of the column
+         */
+        DimensionFieldColumn(DimensionField field, String name) {
+            this.field = field;
+            this.name = new SerializedString(name);
+        }
+    }
+
     /**
      * Get a resource method that can be used to stream this response as an entity.
      *
      * @return The resource method
      */
     public StreamingOutput getResponseStream() {
-        return this::write;
+        if (!(rows instanceof Closeable)) {
+            return this::write;
+        }
+
+        // Release a row source holding resources, such as the producer of streamed rows, however the write ends
+        Closeable closeableRows = (Closeable) rows;
+        return os -> {
+            try {
+                write(os);
+            } finally {
+                closeableRows.close();
+            }
+        };
     }
 }
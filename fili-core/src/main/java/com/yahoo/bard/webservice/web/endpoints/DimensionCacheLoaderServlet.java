@@ -11,6 +11,7 @@ import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.DimensionRow;
 import com.yahoo.bard.webservice.data.dimension.DimensionUpdateDate;
+import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension;
 import com.yahoo.bard.webservice.web.PATCH;
 
 import com.codahale.metrics.annotation.Timed;
@@ -24,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -226,6 +228,63 @@ public class DimensionCacheLoaderServlet {
         return Response.status(Status.OK).build();
     }
 
+    /**
+     * Endpoint to replace all of the dimension rows of a dimension.
+     * <p>
+     * Rows that are not in the post data are removed from the dimension, and if several rows have the same ID, the
+     * last of them is kept. Only key value store dimensions can be replaced in bulk.
+     *
+     * @param dimensionName  name of the dimension whose dimension rows are to be replaced. (path parameter)
+     * @param json  post data json containing a list of json objects which describe all of the dimension rows
+     * <pre><code>
+     * {
+     *     "dimensionRows": [
+     *         { "id":"usa", "description":"United_States_of_America" },
+     *         { "id":"can", "description":"Canada" }
+     *     ]
+     * }
+     * </code></pre>
+     *
+     * @return OK(200) if successfully replaced else Bad Request(400)
+     */
+    @PUT
+    @Timed
+    @Path("/dimensions/{dimensionName}/dimensionRows")
+    @Consumes("application/json; charset=utf-8")
+    public Response replaceDimensionRows(@PathParam("dimensionName") String dimensionName, String json) {
+        LOG.debug("Replacing all {} dimension rows with a json payload of {} characters", dimensionName, json.length());
+        Map<String, LinkedHashSet<LinkedHashMap<String, String>>> dimensionRows;
+        try {
+            Dimension dimension = dimensionDictionary.findByApiName(dimensionName);
+            // only dimensions backed by a key value store can be replaced in bulk
+            if (!(dimension instanceof KeyValueStoreDimension)) {
+                LOG.error("Missing key value store dimension for dimension: {}", dimensionName);
+                return Response.status(BAD_REQUEST).build();
+            }
+
+            // extract dimension rows form the post data
+            dimensionRows = mapper.readValue(
+                    json, new TypeReference<Map<String, LinkedHashSet<LinkedHashMap<String, String>>>>() {
+                        // Empty class
+                    }
+            );
+
+            List<DimensionRow> drs = dimensionRows.get("dimensionRows").stream()
+                    .map(dimension::parseDimensionRow)
+                    .collect(Collectors.toList());
+
+            ((KeyValueStoreDimension) dimension).replaceAllDimensionRows(drs);
+
+        } catch (IOException e) {
+            LOG.error("Failed to replace dimension rows: {}", e);
+            return Response.status(BAD_REQUEST).build();
+        }
+
+        int dimensionRowsSize = dimensionRows.get("dimensionRows").size();
+        LOG.info("Successfully replaced dimension: {} with {} row(s)", dimensionName, dimensionRowsSize);
+        return Response.status(Status.OK).build();
+    }
+
     /**
      * Endpoint to add/update dimension rows, with update semantics.
      * <p>
@@ -305,6 +364,8 @@ public class DimensionCacheLoaderServlet {
                 if (oldRow == null) {
                     drs.add(newRow);
                 } else {
+                    // Rows may be shared through the dimension row cache, so update a copy
+                    oldRow = new DimensionRow(key, oldRow);
                     for (DimensionField field : dimension.getDimensionFields()) {
                         String fieldName = field.getName();
                         // only overwrite if the field was in the original JSON
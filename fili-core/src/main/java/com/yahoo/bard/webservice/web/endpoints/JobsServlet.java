@@ -10,8 +10,11 @@ import static javax.ws.rs.core.Response.Status.OK;
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
 import com.yahoo.bard.webservice.config.SystemConfig;
 import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.BlockResults;
 import com.yahoo.bard.webservice.data.HttpResponseChannel;
 import com.yahoo.bard.webservice.data.HttpResponseMaker;
+import com.yahoo.bard.webservice.data.Result;
+import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
 import com.yahoo.bard.webservice.jobs.ApiJobStore;
 import com.yahoo.bard.webservice.jobs.BroadcastChannel;
@@ -21,9 +24,12 @@ import com.yahoo.bard.webservice.jobs.ResponseException;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.logging.blocks.JobRequest;
 import com.yahoo.bard.webservice.util.AllPagesPagination;
+import com.yahoo.bard.webservice.util.Pagination;
 import com.yahoo.bard.webservice.web.ApiRequest;
+import com.yahoo.bard.webservice.web.BadApiRequestException;
 import com.yahoo.bard.webservice.web.JobNotFoundException;
 import com.yahoo.bard.webservice.web.JobsApiRequest;
+import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.PreResponse;
 import com.yahoo.bard.webservice.web.RequestMapper;
 import com.yahoo.bard.webservice.web.RequestValidationException;
@@ -31,6 +37,8 @@ import com.yahoo.bard.webservice.web.ResponseFormatType;
 import com.yahoo.bard.webservice.web.handlers.RequestHandlerUtils;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseContext;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKeys;
+import com.yahoo.bard.webservice.web.util.PaginationLink;
+import com.yahoo.bard.webservice.web.util.PaginationParameters;
 
 import com.codahale.metrics.annotation.Timed;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -43,8 +51,13 @@ import rx.Observable;
 import rx.exceptions.Exceptions;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 import javax.inject.Inject;
@@ -60,7 +73,12 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 /**
@@ -118,6 +136,7 @@ public class JobsServlet extends EndpointServlet {
      * @param perPage  Requested number of rows of data to be displayed on each page of results
      * @param page  Requested page of results desired
      * @param format  Requested format
+     * @param filters  Filters on the fields of the jobs, such as {@code userId-eq[greg]}, selecting the jobs returned
      * @param uriInfo  UriInfo of the request
      * @param containerRequestContext  The context of data provided by the Jersey container for this request
      * @param asyncResponse  An asyncAfter response that we can use to respond asynchronously
@@ -128,6 +147,7 @@ public class JobsServlet extends EndpointServlet {
             @DefaultValue("") @NotNull @QueryParam("perPage") String perPage,
             @DefaultValue("") @NotNull @QueryParam("page") String page,
             @QueryParam("format") String format,
+            @QueryParam("filters") String filters,
             @Context UriInfo uriInfo,
             @Context ContainerRequestContext containerRequestContext,
             @Suspended AsyncResponse asyncResponse
@@ -141,6 +161,7 @@ public class JobsServlet extends EndpointServlet {
                     null, //asynAfter is null so it behaves like a synchronous request
                     perPage,
                     page,
+                    filters,
                     uriInfo,
                     jobPayloadBuilder,
                     apiJobStore,
@@ -180,6 +201,10 @@ public class JobsServlet extends EndpointServlet {
             LOG.debug(e.getMessage(), e);
             RequestLog.stopTiming(this);
             asyncResponse.resume(RequestHandlerUtils.makeErrorResponse(e.getStatus(), e, writer));
+        } catch (BadApiRequestException e) {
+            LOG.debug(e.getMessage(), e);
+            RequestLog.stopTiming(this);
+            asyncResponse.resume(RequestHandlerUtils.makeErrorResponse(BAD_REQUEST, e, writer));
         } catch (Error | Exception e) {
             String msg = String.format("Exception processing request: %s", e.getMessage());
             LOG.info(msg, e);
@@ -400,6 +425,7 @@ public class JobsServlet extends EndpointServlet {
         HttpResponseMaker httpResponseMaker = new HttpResponseMaker(objectMappers, dimensionDictionary);
 
         preResponseObservable.flatMap(this::handlePreResponseWithError)
+                .flatMap(preResponse -> getPageOfResults(preResponse, apiRequest))
                 .subscribe(
                         new HttpResponseChannel(
                                 asyncResponse,
@@ -434,6 +460,75 @@ public class JobsServlet extends EndpointServlet {
         return Observable.just(preResponse);
     }
 
+    /**
+     * Cut the results of a PreResponse down to the page requested, if a page was requested, and add the pagination
+     * links to the response context.
+     * <p>
+     * The page of {@link BlockResults} is found without reading the results before it, and its results are only read
+     * as the response is written.
+     *
+     * @param preResponse  The PreResponse holding all of the results of the job
+     * @param apiRequest  The request for the results, with the pagination parameters, if any
+     *
+     * @return An Observable wrapping the PreResponse of the page, or a ResponseException if the page does not exist
+     */
+    protected Observable<PreResponse> getPageOfResults(PreResponse preResponse, ApiRequest apiRequest) {
+        Optional<PaginationParameters> paginationParameters = apiRequest.getPaginationParameters();
+        if (paginationParameters == null || !paginationParameters.isPresent()) {
+            return Observable.just(preResponse);
+        }
+
+        Iterable<Result> rows = preResponse.getRows();
+        ResultSet resultSet = preResponse.getResultSet();
+        Pagination<Result> pages;
+        try {
+            pages = rows instanceof BlockResults
+                    ? ((BlockResults) rows).getPage(paginationParameters.get())
+                    : new AllPagesPagination<>(resultSet, paginationParameters.get());
+        } catch (PageNotFoundException invalidPage) {
+            LOG.debug(invalidPage.getLogMessage());
+            return Observable.error(new ResponseException(
+                    invalidPage.getErrorStatus().getStatusCode(),
+                    invalidPage.getMessage(),
+                    invalidPage.getMessage(),
+                    null
+            ));
+        }
+        List<Result> pageOfData = pages.getPageOfData();
+
+        // Copy the response context, since the PreResponse may be shared with other requests
+        ResponseContext responseContext = preResponse.getResponseContext();
+        ResponseContext pageContext = new ResponseContext(responseContext.getDimensionToDimensionFieldMap());
+        pageContext.putAll(responseContext);
+
+        @SuppressWarnings("unchecked")
+        MultivaluedMap<String, Serializable> storedHeaders = (MultivaluedMap<String, Serializable>)
+                responseContext.get(ResponseContextKeys.HEADERS.getName());
+        MultivaluedHashMap<String, Serializable> headers = storedHeaders == null
+                ? new MultivaluedHashMap<>()
+                : new MultivaluedHashMap<String, Serializable>(storedHeaders);
+        LinkedHashMap<String, URI> bodyLinks = new LinkedHashMap<>();
+        UriBuilder uriBuilder = apiRequest.getUriInfo().getRequestUriBuilder();
+        for (PaginationLink link : PaginationLink.values()) {
+            link.getPage(pages).ifPresent(page -> {
+                URI pageLink = uriBuilder.replaceQueryParam("page", page).build();
+                bodyLinks.put(link.getBodyName(), pageLink);
+                headers.add(HttpHeaders.LINK, Link.fromUri(pageLink).rel(link.getHeaderName()).build().toString());
+            });
+        }
+        pageContext.put(ResponseContextKeys.HEADERS.getName(), headers);
+        pageContext.put(ResponseContextKeys.PAGINATION_LINKS_CONTEXT_KEY.getName(), bodyLinks);
+        pageContext.put(ResponseContextKeys.PAGINATION_CONTEXT_KEY.getName(), pages);
+
+        if (pageOfData instanceof BlockResults) {
+            return Observable.just(new PreResponse((BlockResults) pageOfData, pageContext));
+        }
+        ResultSet pageOfResults = pageOfData instanceof ResultSet
+                ? (ResultSet) pageOfData
+                : resultSet.withResults(pageOfData, resultSet.getSchema());
+        return Observable.just(new PreResponse(pageOfResults, pageContext));
+    }
+
     /**
      * Map the given jsonString to a Response object.
      *
@@ -5,12 +5,16 @@ package com.yahoo.bard.webservice.web.filters;
 import static com.yahoo.bard.webservice.web.ResponseCode.RATE_LIMIT;
 
 import com.yahoo.bard.webservice.config.SystemConfigException;
+import com.yahoo.bard.webservice.data.dimension.DimensionDictionary;
+import com.yahoo.bard.webservice.data.time.GranularityParser;
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.util.Utils;
 import com.yahoo.bard.webservice.web.DataApiRequestTypeIdentifier;
 import com.yahoo.bard.webservice.web.RateLimiter;
 import com.yahoo.bard.webservice.web.RateLimiter.RequestToken;
 import com.yahoo.bard.webservice.web.RateLimiter.RequestType;
+import com.yahoo.bard.webservice.web.RequestWeightEstimator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +24,7 @@ import java.net.URI;
 import java.security.Principal;
 
 import javax.annotation.Priority;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
@@ -29,9 +34,12 @@ import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.UriInfo;
 
 /**
  * Filter all requests to respond RATE_LIMIT if user/global limits are exceeded.
+ * <p>
+ * When the RateLimiter has weight budgets, data requests are admitted with the weight estimated from their URI.
  */
 @PreMatching
 @Singleton
@@ -42,14 +50,30 @@ public class RateLimitFilter implements ContainerRequestFilter, ContainerRespons
     private static final Logger LOG = LoggerFactory.getLogger(RateLimitFilter.class);
 
     protected final RateLimiter rateLimiter;
+    protected final RequestWeightEstimator weightEstimator;
 
     /**
-     * Load RateLimiter for this filter.
+     * Load RateLimiter for this filter, estimating request weights without dimension cardinalities.
      *
      * @throws SystemConfigException  If any critical configuration fails to load for the RateLimiter
      */
     public RateLimitFilter() throws SystemConfigException {
+        this(new DimensionDictionary(), new StandardGranularityParser());
+    }
+
+    /**
+     * Load RateLimiter for this filter.
+     *
+     * @param dimensionDictionary  Dictionary of the dimensions whose cardinalities weigh requests
+     * @param granularityParser  Parser for the granularities of requests
+     *
+     * @throws SystemConfigException  If any critical configuration fails to load for the RateLimiter
+     */
+    @Inject
+    public RateLimitFilter(DimensionDictionary dimensionDictionary, GranularityParser granularityParser)
+            throws SystemConfigException {
         rateLimiter = new RateLimiter();
+        weightEstimator = new RequestWeightEstimator(dimensionDictionary, granularityParser);
     }
 
     @Override
@@ -86,7 +110,12 @@ public class RateLimitFilter implements ContainerRequestFilter, ContainerRespons
             // Get the token
             SecurityContext securityContext = request.getSecurityContext();
             Principal user = securityContext == null ? null : securityContext.getUserPrincipal();
-            RequestToken token = rateLimiter.getToken(type, user);
+            long weight = RateLimiter.DEFAULT_REQUEST_WEIGHT;
+            if (type != RequestType.BYPASS && rateLimiter.isWeightLimited()) {
+                UriInfo uriInfo = request.getUriInfo();
+                weight = weightEstimator.estimate(uriInfo.getPathSegments(), uriInfo.getQueryParameters());
+            }
+            RequestToken token = rateLimiter.getToken(type, user, weight);
 
             // Add the token to the request if it was bound
             if (token.isBound()) {
@@ -19,8 +19,9 @@ public class RequestContext {
     protected final ContainerRequestContext containerRequestContext;
     protected final boolean readCache;
     protected final MultivaluedMap<String, String> searchableHeaders;
-    protected final AtomicLong numberOfIncoming = new AtomicLong(1);
-    protected final AtomicLong numberOfOutgoing = new AtomicLong(1);
+    protected final AtomicLong numberOfIncoming;
+    protected final AtomicLong numberOfOutgoing;
+    protected final boolean retry;
 
     /**
      * Build a context for a request.
@@ -34,6 +35,27 @@ public class RequestContext {
         this.searchableHeaders = containerRequestContext != null ?
                 Utils.headersToLowerCase(containerRequestContext.getHeaders()) :
                 new MultivaluedHashMap<>();
+        this.numberOfIncoming = new AtomicLong(1);
+        this.numberOfOutgoing = new AtomicLong(1);
+        this.retry = false;
+    }
+
+    /**
+     * Build a context for sending the request of another context again, such as to another server.
+     * <p>
+     * The context has the container request context, headers and cache setting of the original, and shares its counts
+     * of the requests still to send and the responses still to come. It is marked as a retry, since the original has
+     * already counted the request as sent.
+     *
+     * @param context  context the request was first sent with
+     */
+    public RequestContext(RequestContext context) {
+        this.containerRequestContext = context.containerRequestContext;
+        this.readCache = context.readCache;
+        this.searchableHeaders = context.searchableHeaders;
+        this.numberOfIncoming = context.numberOfIncoming;
+        this.numberOfOutgoing = context.numberOfOutgoing;
+        this.retry = true;
     }
 
     public MultivaluedMap<String, String> getHeaders() {
@@ -73,4 +95,15 @@ public class RequestContext {
     public AtomicLong getNumberOfOutgoing() {
         return numberOfOutgoing;
     }
+
+    /**
+     * Whether or not the request is being sent again, after it was first sent with another context.
+     * <p>
+     * A retried request was already counted as sent, so it must not count down the requests still to send.
+     *
+     * @return true if the request is a retry
+     */
+    public boolean isRetry() {
+        return retry;
+    }
 }
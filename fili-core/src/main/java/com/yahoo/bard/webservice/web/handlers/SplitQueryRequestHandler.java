@@ -5,6 +5,9 @@ package com.yahoo.bard.webservice.web.handlers;
 import static com.yahoo.bard.webservice.web.ErrorMessageFormat.EMPTY_INTERVAL_FORMAT;
 
 import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.time.TimeGrain;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.druid.model.query.Granularity;
 import com.yahoo.bard.webservice.logging.RequestLog;
@@ -16,14 +19,19 @@ import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProces
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 
+import org.joda.time.DateTime;
+import org.joda.time.DurationFieldType;
 import org.joda.time.Interval;
+import org.joda.time.ReadablePeriod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.validation.constraints.NotNull;
@@ -34,6 +42,10 @@ import javax.ws.rs.core.Response;
  * <p>
  * It creates a common response processor which serves as an accumulator to receive all replies before delegating to the
  * result set processing.
+ * <p>
+ * Adjacent time grain buckets may be packed into a single sub-query, up to a number of buckets per sub-query counted
+ * from fixed boundaries, and the number of sub-queries of a request in flight at once may be limited, in which case
+ * the next sub-query is sent as each response arrives.
  */
 public class SplitQueryRequestHandler implements DataRequestHandler {
 
@@ -42,7 +54,20 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
     public static final Meter SPLIT_QUERIES = REGISTRY.meter("queries.meter.split_queries.sub_queries");
     public static final Meter SPLITS = REGISTRY.meter("queries.meter.split_queries.splits");
 
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final String MAX_IN_FLIGHT_KEY = SYSTEM_CONFIG.getPackageVariableName("split_query_max_in_flight");
+    private static final String BUCKETS_PER_QUERY_KEY = SYSTEM_CONFIG.getPackageVariableName(
+            "split_query_buckets_per_query"
+    );
+
+    /**
+     * Limit of sub-queries in flight that doesn't limit them.
+     */
+    public static final int UNLIMITED_IN_FLIGHT = 0;
+
     protected final @NotNull DataRequestHandler next;
+    protected final int maxInFlight;
+    protected final int bucketsPerQuery;
 
     /**
      * Build a Split Query Request Handler.
@@ -50,7 +75,25 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
      * @param next  The next handler in the chain
      */
     public SplitQueryRequestHandler(DataRequestHandler next) {
+        this(
+                next,
+                SYSTEM_CONFIG.getIntProperty(MAX_IN_FLIGHT_KEY, UNLIMITED_IN_FLIGHT),
+                SYSTEM_CONFIG.getIntProperty(BUCKETS_PER_QUERY_KEY, 1)
+        );
+    }
+
+    /**
+     * Build a Split Query Request Handler.
+     *
+     * @param next  The next handler in the chain
+     * @param maxInFlight  The number of sub-queries of a request that may be in flight at once, or
+     * {@link #UNLIMITED_IN_FLIGHT}
+     * @param bucketsPerQuery  The number of adjacent time grain buckets to pack into each sub-query
+     */
+    public SplitQueryRequestHandler(DataRequestHandler next, int maxInFlight, int bucketsPerQuery) {
         this.next = next;
+        this.maxInFlight = maxInFlight <= UNLIMITED_IN_FLIGHT ? Integer.MAX_VALUE : maxInFlight;
+        this.bucketsPerQuery = Math.max(1, bucketsPerQuery);
     }
 
     @Override
@@ -64,7 +107,7 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         List<Interval> queryIntervals = druidQuery.getIntervals();
 
         Map<Interval, AtomicInteger> expectedIntervals = Collections.unmodifiableMap(
-                IntervalUtils.getSlicedIntervals(queryIntervals, granularity)
+                packBuckets(IntervalUtils.getSlicedIntervals(queryIntervals, granularity).keySet(), granularity)
         );
 
         int numberOfIntervals = expectedIntervals.size();
@@ -89,7 +132,7 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
             throw new IllegalStateException(msg);
         }
 
-        final List<DruidAggregationQuery<?>> queries = new ArrayList<>(numberOfIntervals);
+        final Queue<DruidAggregationQuery<?>> queries = new ConcurrentLinkedQueue<>();
 
         // First generate the query descriptors for each sub-query
         expectedIntervals.keySet()
@@ -101,21 +144,183 @@ public class SplitQueryRequestHandler implements DataRequestHandler {
         // Save RequestLog up to here
         final RequestLog logCtx = RequestLog.dump();
 
-        final SplitQueryResponseProcessor mergingResponse =
-                new SplitQueryResponseProcessor(response, request, druidQuery, expectedIntervals, logCtx);
+        final SubQueryWindow window = new SubQueryWindow(context, request, queries, logCtx);
+        final SplitQueryResponseProcessor mergingResponse = new SplitQueryResponseProcessor(
+                response,
+                request,
+                druidQuery,
+                expectedIntervals,
+                logCtx,
+                window::release
+        );
 
         if (numberOfIntervals > 1) {
             SPLITS.mark(1);
             SPLIT_QUERIES.mark(numberOfIntervals);
         }
 
-        queries.stream().forEach(
-                q -> {
-                    RequestLog.restore(logCtx);
-                    next.handleRequest(context, request, q, mergingResponse);
-                }
+        window.start(mergingResponse);
+        return true;
+    }
+
+    /**
+     * Pack runs of adjacent buckets into intervals of at most {@link #bucketsPerQuery} buckets.
+     * <p>
+     * Packs are aligned to fixed boundaries rather than to the first bucket of the request, so that requests over
+     * overlapping intervals, such as a rolling window, pack the buckets they share into the same intervals, and so into
+     * the same cache entries.
+     *
+     * @param buckets  The buckets to pack, in order
+     * @param granularity  The granularity the buckets were sliced by
+     *
+     * @return a map of the packed intervals, in order, to their ordinal
+     */
+    protected Map<Interval, AtomicInteger> packBuckets(Iterable<Interval> buckets, Granularity granularity) {
+        Map<Interval, AtomicInteger> packed = new LinkedHashMap<>();
+        Interval current = null;
+        Long currentPack = null;
+        for (Interval bucket : buckets) {
+            Long pack = packOf(bucket, granularity);
+            if (current != null && pack != null && pack.equals(currentPack) && current.abuts(bucket)) {
+                current = current.withEnd(bucket.getEnd());
+                continue;
+            }
+            if (current != null) {
+                packed.put(current, new AtomicInteger(packed.size()));
+            }
+            current = bucket;
+            currentPack = pack;
+        }
+        if (current != null) {
+            packed.put(current, new AtomicInteger(packed.size()));
+        }
+        return packed;
+    }
+
+    /**
+     * Find the pack a bucket belongs to.
+     * <p>
+     * Packs are runs of {@link #bucketsPerQuery} buckets counted from the bucket of the time grain holding the epoch,
+     * so a bucket is in the same pack whichever request it is part of.
+     *
+     * @param bucket  The bucket
+     * @param granularity  The granularity the bucket was sliced by
+     *
+     * @return the index of the pack of the bucket, or null if buckets of the granularity aren't packed
+     */
+    protected Long packOf(Interval bucket, Granularity granularity) {
+        if (bucketsPerQuery == 1 || !(granularity instanceof TimeGrain)) {
+            return null;
+        }
+        TimeGrain timeGrain = (TimeGrain) granularity;
+        ReadablePeriod period = timeGrain.getPeriod();
+
+        // Buckets can only be counted along a period of a single field, which all the default time grains are
+        DurationFieldType fieldType = null;
+        int fieldValue = 0;
+        for (int i = 0; i < period.size(); i++) {
+            if (period.getValue(i) == 0) {
+                continue;
+            }
+            if (fieldType != null) {
+                return null;
+            }
+            fieldType = period.getFieldType(i);
+            fieldValue = period.getValue(i);
+        }
+        if (fieldType == null || fieldValue < 0) {
+            return null;
+        }
+
+        DateTime start = bucket.getStart();
+        DateTime origin = timeGrain.roundFloor(new DateTime(0L, start.getZone()));
+        long bucketIndex = Math.floorDiv(
+                fieldType.getField(start.getChronology()).getDifferenceAsLong(start.getMillis(), origin.getMillis()),
+                (long) fieldValue
         );
+        return Math.floorDiv(bucketIndex, (long) bucketsPerQuery);
+    }
 
-        return true;
+    /**
+     * Sliding window over the sub-queries of a request, which sends sub-queries until {@link #maxInFlight} are in
+     * flight, and then one more as each response arrives.
+     * <p>
+     * Sub-queries answered while they are being sent, such as from a cache, are sent by a loop rather than a
+     * recursion, so a request with many of them doesn't run out of stack.
+     */
+    private class SubQueryWindow {
+        private final RequestContext context;
+        private final DataApiRequest request;
+        private final Queue<DruidAggregationQuery<?>> pending;
+        private final RequestLog logCtx;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger sendRequests = new AtomicInteger();
+        private ResponseProcessor response;
+
+        /**
+         * Constructor.
+         *
+         * @param context  The context of the request
+         * @param request  The request being split
+         * @param pending  The sub-queries to send, in order
+         * @param logCtx  The request log of the request, restored before sending each sub-query
+         */
+        SubQueryWindow(
+                RequestContext context,
+                DataApiRequest request,
+                Queue<DruidAggregationQuery<?>> pending,
+                RequestLog logCtx
+        ) {
+            this.context = context;
+            this.request = request;
+            this.pending = pending;
+            this.logCtx = logCtx;
+        }
+
+        /**
+         * Send the first sub-queries of the window.
+         *
+         * @param response  The response processor merging the responses to the sub-queries
+         */
+        void start(ResponseProcessor response) {
+            this.response = response;
+            send();
+        }
+
+        /**
+         * Free the place of a sub-query that has been answered, and send the next one if there is one.
+         * <p>
+         * Called by the threads processing responses, whose request log is kept aside while sub-queries are sent.
+         */
+        void release() {
+            inFlight.decrementAndGet();
+            if (pending.isEmpty()) {
+                return;
+            }
+            RequestLog responseLog = RequestLog.dump();
+            send();
+            RequestLog.restore(responseLog);
+        }
+
+        /**
+         * Send sub-queries until the window is full, with only one thread sending at a time.
+         */
+        private void send() {
+            if (sendRequests.getAndIncrement() != 0) {
+                // The thread already sending will loop again
+                return;
+            }
+            do {
+                while (inFlight.get() < maxInFlight) {
+                    DruidAggregationQuery<?> query = pending.poll();
+                    if (query == null) {
+                        break;
+                    }
+                    inFlight.incrementAndGet();
+                    RequestLog.restore(logCtx);
+                    next.handleRequest(context, request, query, response);
+                }
+            } while (sendRequests.decrementAndGet() != 0);
+        }
     }
 }
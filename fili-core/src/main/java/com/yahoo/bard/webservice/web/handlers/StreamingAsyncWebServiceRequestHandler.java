@@ -0,0 +1,62 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers;
+
+import com.yahoo.bard.webservice.druid.client.DruidWebService;
+import com.yahoo.bard.webservice.druid.client.FailureCallback;
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.logging.RequestLog;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+import com.yahoo.bard.webservice.web.responseprocessors.LoggingContext;
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Request handler to submit the response to the druid web service, streaming the druid response into the response
+ * processor instead of building a JSON tree first.
+ * <p>
+ * Streaming only happens when the response processor is a {@link StreamingResponseProcessor}. Response processors
+ * that need the JSON tree (such as the caching processors) get it as usual.
+ */
+public class StreamingAsyncWebServiceRequestHandler extends AsyncWebServiceRequestHandler {
+
+    /**
+     * Build the request handler.
+     *
+     * @param druidWebService  The target web service for the request
+     * @param mapper  The mapper for all JSON processing
+     */
+    public StreamingAsyncWebServiceRequestHandler(DruidWebService druidWebService, ObjectMapper mapper) {
+        super(druidWebService, mapper);
+    }
+
+    @Override
+    public boolean handleRequest(
+            final RequestContext context,
+            final DataApiRequest request,
+            final DruidAggregationQuery<?> druidQuery,
+            final ResponseProcessor response
+    ) {
+        if (!(response instanceof StreamingResponseProcessor)) {
+            return super.handleRequest(context, request, druidQuery, response);
+        }
+
+        StreamingResponseProcessor streamingResponse = (StreamingResponseProcessor) response;
+        StreamingSuccessCallback success = new StreamingSuccessCallback() {
+            @Override
+            public void invoke(JsonParser jsonParser) {
+                streamingResponse.processResponse(jsonParser, druidQuery, new LoggingContext(RequestLog.copy()));
+            }
+        };
+        HttpErrorCallback error = response.getErrorCallback(druidQuery);
+        FailureCallback failure = response.getFailureCallback(druidQuery);
+
+        druidWebService.postDruidQuery(context, success, error, failure, druidQuery);
+        return true;
+    }
+}
@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers;
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
 import com.yahoo.bard.webservice.druid.client.DruidWebService;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
@@ -12,6 +13,7 @@ import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.ErrorMessageFormat;
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor;
 import com.yahoo.bard.webservice.web.responseprocessors.WeightCheckResponseProcessor;
+import com.yahoo.bard.webservice.web.util.QueryWeightEstimator;
 import com.yahoo.bard.webservice.web.util.QueryWeightUtil;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -27,6 +29,8 @@ import javax.validation.constraints.NotNull;
  * Weight check request handler determines whether a request should be processed based on estimated query cost.
  * <ul>
  *     <li>If the dimensions of the query are sufficiently low cardinality, the request is allowed.
+ *     <li>If weight estimation is enabled and the estimated weight of the query is clearly under or over the limit,
+ * the request is allowed or refused without asking druid.
  *     <li>Otherwise, send a simplified version of the query to druid asynchronously to measure the cardinality of the
  * results.
  *     <li>If the cost is too high, return an error, otherwise subsequently submit the data request.
@@ -72,23 +76,44 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
         }
 
         final WeightCheckResponseProcessor weightCheckResponse = new WeightCheckResponseProcessor(response);
-        final DruidAggregationQuery<?> weightEvaluationQuery = queryWeightUtil.makeWeightEvaluationQuery(druidQuery);
         Granularity granularity = druidQuery.getInnermostQuery().getGranularity();
         final long queryRowLimit = queryWeightUtil.getQueryWeightThreshold(granularity);
 
+        QueryWeightEstimator estimator = null;
+        long upperBound = 0;
+        if (BardFeatureFlag.WEIGHT_ESTIMATION.isOn()) {
+            estimator = queryWeightUtil.getWeightEstimator();
+            upperBound = estimator.getUpperBound(request, druidQuery);
+            switch (estimator.decide(request, upperBound, queryRowLimit)) {
+                case ACCEPT:
+                    return next.handleRequest(context, request, druidQuery, response);
+                case REJECT:
+                    long estimate = (long) estimator.getEstimate(request, upperBound);
+                    rejectRequest(druidQuery, weightCheckResponse, estimate, queryRowLimit);
+                    return true;
+                default:
+                    // Too close to call, so measure the weight with druid
+            }
+        }
+
+        final DruidAggregationQuery<?> weightEvaluationQuery = queryWeightUtil.makeWeightEvaluationQuery(druidQuery);
+
         try {
             LOG.debug("Weight query {}", writer.writeValueAsString(weightEvaluationQuery));
         } catch (JsonProcessingException e) {
             LOG.warn("Weight Query json exception:", e);
         }
 
-        final SuccessCallback weightQuerySuccess = buildSuccessCallback(
+        SuccessCallback weightQuerySuccess = buildSuccessCallback(
                 context,
                 request,
                 druidQuery,
                 weightCheckResponse,
                 queryRowLimit
         );
+        if (estimator != null) {
+            weightQuerySuccess = buildCalibratingCallback(weightQuerySuccess, estimator, request, upperBound);
+        }
         HttpErrorCallback error = response.getErrorCallback(druidQuery);
         FailureCallback failure = response.getFailureCallback(druidQuery);
         webService.postDruidQuery(context, weightQuerySuccess, error, failure, weightEvaluationQuery);
@@ -118,31 +143,13 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
             @Override
             public void invoke(JsonNode jsonResult) {
                 try {
-                    // The result will contain either one result reflecting the row count or
-                    // none if the request matches no rows.
                     LOG.debug("{}", writer.writeValueAsString(jsonResult));
 
-                    JsonNode row = jsonResult.get(0);
                     // If the weight limit query is empty or reports acceptable rows, run the full query
-                    if (row != null) {
-                        int rowCount = row.get("event").get("count").asInt();
-
-                        if (rowCount > queryRowLimit) {
-                            String reason = String.format(
-                                    ErrorMessageFormat.WEIGHT_CHECK_FAILED.logFormat(rowCount, queryRowLimit),
-                                    rowCount,
-                                    queryRowLimit
-                            );
-                            String description = ErrorMessageFormat.WEIGHT_CHECK_FAILED.format();
-
-                            LOG.debug(reason);
-                            response.getErrorCallback(druidQuery).dispatch(
-                                507, //  Insufficient Storage
-                                reason,
-                                description
-                            );
-                            return;
-                        }
+                    long rowCount = getRowCount(jsonResult);
+                    if (rowCount > queryRowLimit) {
+                        rejectRequest(druidQuery, response, rowCount, queryRowLimit);
+                        return;
                     }
                     next.handleRequest(context, request, druidQuery, response);
                 } catch (Throwable e) {
@@ -152,4 +159,72 @@ public class WeightCheckRequestHandler extends BaseDataRequestHandler {
             }
         };
     }
+
+    /**
+     * Wrap the callback of a weight check query to record the weight it measured with the weight estimator.
+     *
+     * @param success  The callback handling the weight check response
+     * @param estimator  The weight estimator to calibrate
+     * @param request  The API request itself
+     * @param upperBound  The upper bound of the weight of the query, as found by the estimator
+     *
+     * @return The callback handler for the weight request
+     */
+    protected SuccessCallback buildCalibratingCallback(
+            final SuccessCallback success,
+            final QueryWeightEstimator estimator,
+            final DataApiRequest request,
+            final long upperBound
+    ) {
+        return jsonResult -> {
+            try {
+                estimator.recordWeight(request, upperBound, getRowCount(jsonResult));
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to record the weight of a weight check query", e);
+            }
+            success.invoke(jsonResult);
+        };
+    }
+
+    /**
+     * Read the weight measured by a weight check query.
+     *
+     * @param jsonResult  The response to the weight check query
+     *
+     * @return the weight, which is 0 if the query matched no rows
+     */
+    protected long getRowCount(JsonNode jsonResult) {
+        // The result will contain either one result reflecting the row count or none if the request matches no rows.
+        JsonNode row = jsonResult.get(0);
+        return row == null ? 0 : row.get("event").get("count").asLong();
+    }
+
+    /**
+     * Refuse a request with an HTTP INSUFFICIENT_STORAGE (507) status.
+     *
+     * @param druidQuery  The query being processed
+     * @param response  the response handler
+     * @param rowCount  The measured or estimated weight of the query
+     * @param queryRowLimit  The number of aggregating lines allowed
+     */
+    protected void rejectRequest(
+            DruidAggregationQuery<?> druidQuery,
+            ResponseProcessor response,
+            long rowCount,
+            long queryRowLimit
+    ) {
+        String reason = String.format(
+                ErrorMessageFormat.WEIGHT_CHECK_FAILED.logFormat(rowCount, queryRowLimit),
+                rowCount,
+                queryRowLimit
+        );
+        String description = ErrorMessageFormat.WEIGHT_CHECK_FAILED.format();
+
+        LOG.debug(reason);
+        response.getErrorCallback(druidQuery).dispatch(
+                507, //  Insufficient Storage
+                reason,
+                description
+        );
+    }
 }
@@ -17,6 +17,7 @@ import com.yahoo.bard.webservice.web.handlers.DebugRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.PaginationRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.PartialDataRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.SplitQueryRequestHandler;
+import com.yahoo.bard.webservice.web.handlers.StreamingAsyncWebServiceRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.TopNMapperRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.VolatileDataRequestHandler;
 import com.yahoo.bard.webservice.web.handlers.WebServiceSelectorRequestHandler;
@@ -35,9 +36,11 @@ import javax.validation.constraints.NotNull;
  * <ul>
  *     <li>Partial data filtering is attached to the response. (Feature flagged)
  *     <li>Requests are routed by selecting a druid web service.
- *     <li>The cache is checked for responses matching the query. (Feature flagged)
+ *     <li>Queries are split into one query per time bucket. (Feature flagged)
+ *     <li>The cache is checked for responses matching the query, or each bucket of it. (Feature flagged)
  *     <li>Non UI requests may pass through an asynchronous druid query to test the aggregation cost.
  *     <li>Requests are sent asynchronously to the druid web service
+ *     <li>Responses may be parsed directly from the druid response stream. (Feature flagged)
  * </ul>
  */
 @Singleton
@@ -95,8 +98,16 @@ public class DruidWorkflow implements RequestWorkflowProvider {
     @Override
     public DataRequestHandler buildWorkflow() {
         // The final stage of the workflow is to send a request to a druid web service
-        DataRequestHandler uiHandler = new AsyncWebServiceRequestHandler(uiWebService, mapper);
-        DataRequestHandler nonUiHandler = new AsyncWebServiceRequestHandler(nonUiWebService, mapper);
+        DataRequestHandler uiHandler;
+        DataRequestHandler nonUiHandler;
+        if (BardFeatureFlag.DRUID_RESPONSE_STREAMING.isOn()) {
+            // Responses are parsed straight from the token stream when no later stage needs the JSON tree
+            uiHandler = new StreamingAsyncWebServiceRequestHandler(uiWebService, mapper);
+            nonUiHandler = new StreamingAsyncWebServiceRequestHandler(nonUiWebService, mapper);
+        } else {
+            uiHandler = new AsyncWebServiceRequestHandler(uiWebService, mapper);
+            nonUiHandler = new AsyncWebServiceRequestHandler(nonUiWebService, mapper);
+        }
 
         // If query caching is enabled, the cache is checked before sending the request
         if (BardFeatureFlag.DRUID_CACHE.isOn()) {
@@ -109,7 +120,8 @@ public class DruidWorkflow implements RequestWorkflowProvider {
             }
         }
 
-        if (BardFeatureFlag.QUERY_SPLIT.isOn()) {
+        // Caching by time bucket relies on the queries being split by bucket before they reach the cache
+        if (BardFeatureFlag.QUERY_SPLIT.isOn() || isCachingBuckets()) {
             uiHandler = new SplitQueryRequestHandler(uiHandler);
             nonUiHandler = new SplitQueryRequestHandler(nonUiHandler);
         }
@@ -146,4 +158,15 @@ public class DruidWorkflow implements RequestWorkflowProvider {
 
         return handler;
     }
+
+    /**
+     * Whether or not Druid responses are cached by time bucket.
+     *
+     * @return true if the V2 cache is on and set to cache each bucket of a query separately
+     */
+    protected boolean isCachingBuckets() {
+        return BardFeatureFlag.DRUID_CACHE.isOn()
+                && BardFeatureFlag.DRUID_CACHE_V2.isOn()
+                && BardFeatureFlag.DRUID_CACHE_BUCKETS.isOn();
+    }
 }
@@ -75,7 +75,7 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
-        if (isCacheable()) {
+        if (isCacheable(druidQuery)) {
             String valueString = null;
             try {
                 valueString = writer.writeValueAsString(json);
@@ -97,14 +97,21 @@ public class CacheV2ResponseProcessor implements ResponseProcessor {
     }
 
     /**
-     * A request is cacheable if it does not refer to partial data.
+     * A query is cacheable if none of its intervals refer to partial data.
+     * <p>
+     * When a query has been split by time bucket, a bucket outside of the partial and volatile intervals of the request
+     * is cached even if other buckets of the same request are not.
      *
-     * @return whether request can be cached
+     * @param druidQuery  The query whose response is being processed
+     *
+     * @return whether the response to the query can be cached
      */
-    protected boolean isCacheable() {
+    protected boolean isCacheable(DruidAggregationQuery<?> druidQuery) {
+        SimplifiedIntervalList queryIntervals = new SimplifiedIntervalList(druidQuery.getIntervals());
         SimplifiedIntervalList missingIntervals = getPartialIntervalsWithDefault(getResponseContext());
         SimplifiedIntervalList volatileIntervals = getVolatileIntervalsWithDefault(getResponseContext());
 
-        return missingIntervals.isEmpty() && volatileIntervals.isEmpty();
+        return missingIntervals.intersect(queryIntervals).isEmpty()
+                && volatileIntervals.intersect(queryIntervals).isEmpty();
     }
 }
@@ -0,0 +1,63 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * A response processor which is able to parse the responses to the parts of a split query into result sets as they
+ * arrive, and then process the result set merged from them.
+ * <p>
+ * This lets the responses to the parts of a query be released as soon as they arrive, instead of being held until
+ * they can be merged into a single response.
+ */
+public interface IncrementalResponseProcessor extends ResponseProcessor {
+
+    /**
+     * Whether or not this processor is able to parse responses into result sets.
+     * <p>
+     * Processors that wrap another processor are only incremental if the processor they wrap is.
+     *
+     * @return true if the parse and process methods of this processor may be used
+     */
+    default boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * Parse the response to a part of a query into a result set.
+     *
+     * @param json  The json representing the druid response to the part of the query
+     * @param druidQuery  The part of the query that was answered
+     *
+     * @return the result set of the response
+     */
+    ResultSet parseResultSet(JsonNode json, DruidAggregationQuery<?> druidQuery);
+
+    /**
+     * Parse the response to a part of a query into a result set, reading it from a stream of tokens.
+     *
+     * @param jsonParser  The parser over the json representing the druid response to the part of the query
+     * @param druidQuery  The part of the query that was answered
+     *
+     * @return the result set of the response
+     * @throws IOException if the druid response could not be read
+     */
+    ResultSet parseResultSet(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery) throws IOException;
+
+    /**
+     * Process the result set merged from the responses to all of the parts of a query, and respond to the original
+     * web request.
+     *
+     * @param resultSet  The merged result set
+     * @param druidQuery  The query before it was split
+     * @param metadata  The LoggingContext to use
+     */
+    void processResultSet(ResultSet resultSet, DruidAggregationQuery<?> druidQuery, LoggingContext metadata);
+}
@@ -7,14 +7,21 @@ import static com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKe
 import static com.yahoo.bard.webservice.web.responseprocessors.ResponseContextKeys.REQUESTED_API_DIMENSION_FIELDS;
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite;
+import com.yahoo.bard.webservice.config.BardFeatureFlag;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
 import com.yahoo.bard.webservice.data.DruidResponseParser;
 import com.yahoo.bard.webservice.data.HttpResponseMaker;
+import com.yahoo.bard.webservice.data.Result;
 import com.yahoo.bard.webservice.data.ResultSet;
+import com.yahoo.bard.webservice.data.StreamingResults;
 import com.yahoo.bard.webservice.data.dimension.Dimension;
 import com.yahoo.bard.webservice.data.dimension.DimensionField;
 import com.yahoo.bard.webservice.data.dimension.LogicalDimensionColumn;
 import com.yahoo.bard.webservice.data.metric.LogicalMetric;
 import com.yahoo.bard.webservice.data.metric.MetricColumn;
+import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper;
+import com.yahoo.bard.webservice.data.metric.mappers.RowMapperChain;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
 import com.yahoo.bard.webservice.druid.model.aggregation.Aggregation;
@@ -28,7 +35,9 @@ import com.yahoo.bard.webservice.table.ZonedSchema;
 import com.yahoo.bard.webservice.web.DataApiRequest;
 import com.yahoo.bard.webservice.web.PageNotFoundException;
 import com.yahoo.bard.webservice.web.PreResponse;
+import com.yahoo.bard.webservice.web.ResponseFormatType;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.joda.time.DateTimeZone;
@@ -37,20 +46,62 @@ import org.slf4j.LoggerFactory;
 
 import rx.subjects.Subject;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.core.Response.Status;
 
 /**
  * Callback handler for JSON to be processed into result sets.
+ * <p>
+ * When {@link BardFeatureFlag#STREAMING_RESPONSES} is on, streamed druid responses to requests that can be streamed
+ * (see {@link #isStreamable()}) are not built into a result set. The response to the request is sent straight away,
+ * and each row is mapped and written to it as soon as it is parsed.
  */
-public class ResultSetResponseProcessor extends MappingResponseProcessor implements ResponseProcessor {
+public class ResultSetResponseProcessor extends MappingResponseProcessor
+        implements StreamingResponseProcessor, IncrementalResponseProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResultSetResponseProcessor.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+
+    private static final @NotNull String STREAMING_TIMEOUT_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("streaming_response_timeout_millis");
+
+    private static final @NotNull String STREAMING_SENDERS_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("streaming_response_senders");
+
+    private static final long STREAMING_TIMEOUT_DEFAULT = 60000;
+    private static final int STREAMING_SENDERS_DEFAULT = 64;
+
+    private static final int STREAMING_SENDERS = Math.max(
+            1,
+            SYSTEM_CONFIG.getIntProperty(STREAMING_SENDERS_KEY, STREAMING_SENDERS_DEFAULT)
+    );
+
+    // Sends streamed responses, since the response is written by the thread that sends it, and the thread reading the
+    // druid response has to keep parsing rows for it. Responses are not queued for a sender, since every row of a
+    // queued response would be buffered while it waited, so once every sender is busy responses are built whole instead
+    private static final ThreadPoolExecutor STREAMING_RESPONSE_SENDER = new ThreadPoolExecutor(
+            0,
+            STREAMING_SENDERS,
+            60,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "streaming-response-sender");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
 
     protected final Subject<PreResponse, PreResponse> responseEmitter;
     protected final Granularity granularity;
@@ -95,27 +146,7 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
         try {
             RequestLog.restore(metadata.getRequestLog());
             ResultSet resultSet = buildResultSet(json, druidQuery, apiRequest.getTimeZone());
-            resultSet = mapResultSet(resultSet);
-
-            HashSet<String> apiMetricColumnNames = apiRequest.getLogicalMetrics().stream()
-                    .map(LogicalMetric::getName)
-                    .collect(Collectors.toCollection(HashSet::new));
-
-            HashMap<String, Set<DimensionField>> requestedApiDimensionFields = apiRequest.getDimensionFields()
-                    .entrySet().stream()
-                    .collect(Collectors.toMap(
-                                    e -> e.getKey().getApiName(),
-                                    Map.Entry::getValue,
-                                    (fieldWithSameKey1, fieldWithSameKey2) -> fieldWithSameKey1,
-                                    HashMap::new
-                            ));
-
-            responseContext.put(API_METRIC_COLUMN_NAMES.getName(), apiMetricColumnNames);
-            responseContext.put(HEADERS.getName(), headers);
-            responseContext.put(REQUESTED_API_DIMENSION_FIELDS.getName(), requestedApiDimensionFields);
-
-            responseEmitter.onNext(new PreResponse(resultSet, responseContext));
-            responseEmitter.onCompleted();
+            emitResultSet(resultSet);
         } catch (PageNotFoundException invalidPage) {
             LOG.debug(invalidPage.getLogMessage());
             responseEmitter.onError(new ResponseException(invalidPage.getErrorStatus(), druidQuery, invalidPage));
@@ -125,6 +156,176 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
         }
     }
 
+    @Override
+    public void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        try {
+            RequestLog.restore(metadata.getRequestLog());
+            if (isStreamable()) {
+                streamResultSet(jsonParser, druidQuery);
+                return;
+            }
+            ResultSet resultSet = buildResultSet(jsonParser, druidQuery, apiRequest.getTimeZone());
+            emitResultSet(resultSet);
+        } catch (PageNotFoundException invalidPage) {
+            LOG.debug(invalidPage.getLogMessage());
+            responseEmitter.onError(new ResponseException(invalidPage.getErrorStatus(), druidQuery, invalidPage));
+        } catch (Exception exception) {
+            LOG.error("Exception processing streamed druid call in success", exception);
+            responseEmitter.onError(new ResponseException(Status.INTERNAL_SERVER_ERROR, druidQuery, exception));
+        }
+    }
+
+    @Override
+    public ResultSet parseResultSet(JsonNode json, DruidAggregationQuery<?> druidQuery) {
+        return buildResultSet(json, druidQuery, apiRequest.getTimeZone());
+    }
+
+    @Override
+    public ResultSet parseResultSet(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery) throws IOException {
+        return buildResultSet(jsonParser, druidQuery, apiRequest.getTimeZone());
+    }
+
+    @Override
+    public void processResultSet(ResultSet resultSet, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        try {
+            RequestLog.restore(metadata.getRequestLog());
+            emitResultSet(resultSet);
+        } catch (PageNotFoundException invalidPage) {
+            LOG.debug(invalidPage.getLogMessage());
+            responseEmitter.onError(new ResponseException(invalidPage.getErrorStatus(), druidQuery, invalidPage));
+        } catch (Exception exception) {
+            LOG.error("Exception processing merged druid calls in success", exception);
+            responseEmitter.onError(new ResponseException(Status.INTERNAL_SERVER_ERROR, druidQuery, exception));
+        }
+    }
+
+    /**
+     * Whether the rows of the response can be written as they are parsed from a streamed druid response.
+     * <p>
+     * Only synchronous JSON and CSV requests whose result set mappers are all row local can be streamed. Asynchronous
+     * requests store the whole result set, and the JSON API format needs every row before it writes the dimension
+     * sidecars. Responses are also not streamed while all of the {@code streaming_response_senders} threads are busy
+     * sending other streamed responses.
+     *
+     * @return true if the response can be streamed
+     */
+    protected boolean isStreamable() {
+        ResponseFormatType format = apiRequest.getFormat();
+        return BardFeatureFlag.STREAMING_RESPONSES.isOn()
+                && apiRequest.getAsyncAfter() == Long.MAX_VALUE
+                && (format == null || format == ResponseFormatType.JSON || format == ResponseFormatType.CSV)
+                && getMappers().stream().allMatch(ResultSetMapper::isRowLocal)
+                && STREAMING_RESPONSE_SENDER.getActiveCount() < STREAMING_SENDERS;
+    }
+
+    /**
+     * Send the response straight away, and write each row to it as it is parsed from the druid response and mapped.
+     * <p>
+     * Once the response has been sent it can no longer report an error, so a druid response that fails part way
+     * through truncates it. If every sender has become busy since the response was found to be streamable, the
+     * result set is built whole and emitted instead.
+     * <p>
+     * Parsing never waits for the client, since the druid response is parsed by the thread reading druid responses.
+     * Rows the client has not taken yet are buffered instead, so a slow client only delays its own response.
+     *
+     * @param jsonParser  The parser over the json representing the druid response
+     * @param druidQuery  The druid query being processed
+     *
+     * @throws IOException if the druid response can't be read when the result set is built whole
+     */
+    protected void streamResultSet(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery) throws IOException {
+        ZonedSchema resultSetSchema = buildResultSetSchema(druidQuery, apiRequest.getTimeZone());
+        RowMapperChain mapperChain = new RowMapperChain(getMappers(), resultSetSchema);
+        StreamingResults results = new StreamingResults(
+                mapperChain.getSchema(),
+                SYSTEM_CONFIG.getLongProperty(STREAMING_TIMEOUT_KEY, STREAMING_TIMEOUT_DEFAULT)
+        );
+
+        RequestLog logCtx = RequestLog.dump();
+        try {
+            STREAMING_RESPONSE_SENDER.execute(() -> {
+                RequestLog.restore(logCtx);
+                try {
+                    emitPreResponse(new PreResponse(results, buildResponseContext()));
+                } catch (RuntimeException e) {
+                    LOG.error("Exception sending streamed response", e);
+                    results.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("All {} streaming response senders are busy, building the response whole", STREAMING_SENDERS);
+            RequestLog.restore(logCtx);
+            emitResultSet(buildResultSet(jsonParser, druidQuery, apiRequest.getTimeZone()));
+            return;
+        }
+
+        try {
+            druidResponseParser.parse(jsonParser, resultSetSchema, druidQuery.getQueryType(), result -> {
+                Result mappedResult = mapperChain.map(result);
+                if (mappedResult != null) {
+                    results.put(mappedResult);
+                }
+            });
+            results.complete();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Exception streaming druid call in success", e);
+            results.fail(e);
+        }
+    }
+
+    /**
+     * Map the result set, attach the response metadata, and send it to the response emitter.
+     *
+     * @param resultSet  The result set parsed from the druid response
+     */
+    protected void emitResultSet(ResultSet resultSet) {
+        emitPreResponse(mapResultSet(resultSet));
+    }
+
+    /**
+     * Attach the response metadata to a mapped result set, and send it to the response emitter.
+     *
+     * @param mappedResultSet  The result set after all of the mappers
+     */
+    protected void emitPreResponse(ResultSet mappedResultSet) {
+        emitPreResponse(new PreResponse(mappedResultSet, buildResponseContext()));
+    }
+
+    /**
+     * Send a pre response to the response emitter.
+     *
+     * @param preResponse  The mapped rows of the response with its metadata
+     */
+    protected void emitPreResponse(PreResponse preResponse) {
+        responseEmitter.onNext(preResponse);
+        responseEmitter.onCompleted();
+    }
+
+    /**
+     * Attach the response metadata to the response context.
+     *
+     * @return the response context
+     */
+    protected ResponseContext buildResponseContext() {
+        HashSet<String> apiMetricColumnNames = apiRequest.getLogicalMetrics().stream()
+                .map(LogicalMetric::getName)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        HashMap<String, Set<DimensionField>> requestedApiDimensionFields = apiRequest.getDimensionFields()
+                .entrySet().stream()
+                .collect(Collectors.toMap(
+                                e -> e.getKey().getApiName(),
+                                Map.Entry::getValue,
+                                (fieldWithSameKey1, fieldWithSameKey2) -> fieldWithSameKey1,
+                                HashMap::new
+                        ));
+
+        responseContext.put(API_METRIC_COLUMN_NAMES.getName(), apiMetricColumnNames);
+        responseContext.put(HEADERS.getName(), headers);
+        responseContext.put(REQUESTED_API_DIMENSION_FIELDS.getName(), requestedApiDimensionFields);
+        return responseContext;
+    }
+
     /**
      * Build a result set using the api request time grain.
      *
@@ -135,6 +336,38 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
      * @return The initial result set from the json node.
      */
     public ResultSet buildResultSet(JsonNode json, DruidAggregationQuery<?> druidQuery, DateTimeZone dateTimeZone) {
+        ZonedSchema resultSetSchema = buildResultSetSchema(druidQuery, dateTimeZone);
+        return druidResponseParser.parse(json, resultSetSchema, druidQuery.getQueryType());
+    }
+
+    /**
+     * Build a result set using the api request time grain, reading the druid response from a stream of tokens.
+     *
+     * @param jsonParser  The parser over the json representing the druid response.
+     * @param druidQuery  The druid query being processed
+     * @param dateTimeZone  The date time zone for parsing result rows
+     *
+     * @return The initial result set from the json tokens.
+     * @throws IOException if the druid response could not be read
+     */
+    public ResultSet buildResultSet(
+            JsonParser jsonParser,
+            DruidAggregationQuery<?> druidQuery,
+            DateTimeZone dateTimeZone
+    ) throws IOException {
+        ZonedSchema resultSetSchema = buildResultSetSchema(druidQuery, dateTimeZone);
+        return druidResponseParser.parse(jsonParser, resultSetSchema, druidQuery.getQueryType());
+    }
+
+    /**
+     * Build the schema of the result set for a druid query, using the api request time grain.
+     *
+     * @param druidQuery  The druid query being processed
+     * @param dateTimeZone  The date time zone for parsing result rows
+     *
+     * @return The schema with a column for each aggregation, post aggregation and dimension of the query
+     */
+    protected ZonedSchema buildResultSetSchema(DruidAggregationQuery<?> druidQuery, DateTimeZone dateTimeZone) {
         ZonedSchema resultSetSchema = new ZonedSchema(granularity, dateTimeZone);
 
         // TODO: There are plans to clean this up rather than using iterator().next()
@@ -152,6 +385,6 @@ public class ResultSetResponseProcessor extends MappingResponseProcessor impleme
             resultSetSchema.addColumn(new LogicalDimensionColumn(dimension));
         }
 
-        return druidResponseParser.parse(json, resultSetSchema, druidQuery.getQueryType());
+        return resultSetSchema;
     }
 }
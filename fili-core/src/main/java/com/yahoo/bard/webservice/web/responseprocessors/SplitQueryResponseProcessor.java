@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.responseprocessors;
 
+import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
@@ -9,6 +10,7 @@ import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.logging.RequestLog;
 import com.yahoo.bard.webservice.web.DataApiRequest;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -17,6 +19,7 @@ import org.joda.time.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -27,8 +30,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * This response processor receives a list of expected intervals.  As responses arrives, it stores the responses until
  * all expected intervals have arrived, at which point it passes the concatenated Json content from each of the calls
  * to its next processor.
+ * <p>
+ * When the next processor is an {@link IncrementalResponseProcessor}, each response is parsed into a result set as it
+ * arrives, and its json is released. Once all expected intervals have arrived, the result sets are concatenated in
+ * order and passed to the next processor, without ever building the merged json.
  */
-public class SplitQueryResponseProcessor implements ResponseProcessor {
+public class SplitQueryResponseProcessor implements StreamingResponseProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplitQueryResponseProcessor.class);
     public static final String EXTRA_RETURN_FORMAT = "Split query received the same interval more than once: %s";
@@ -39,9 +46,12 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
     private final DruidAggregationQuery<?> queryBeforeSplit;
     private final Map<Interval, AtomicInteger> expectedIntervals;
     private final List<Pair<JsonNode, LoggingContext>> completedIntervals;
+    private final IncrementalResponseProcessor incrementalNext;
+    private final List<Pair<ResultSet, LoggingContext>> completedResultSets;
     private final AtomicInteger completed;
     private final AtomicBoolean failed = new AtomicBoolean(false);
     private final RequestLog logCtx;
+    private final Runnable subQueryListener;
 
     /**
      * Constructor.
@@ -52,20 +62,47 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
      * @param expectedIntervals A map of expected interval status flags
      * @param logCtx  The request log logging context
      */
-    @SuppressWarnings("unchecked")
     public SplitQueryResponseProcessor(
             ResponseProcessor next,
             DataApiRequest request,
             DruidAggregationQuery<?> druidQuery,
             Map<Interval, AtomicInteger> expectedIntervals,
             RequestLog logCtx
+    ) {
+        this(next, request, druidQuery, expectedIntervals, logCtx, () -> { });
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param next  The next delegate response processor
+     * @param request  The request for this response
+     * @param druidQuery  The unmodified druid query for this response
+     * @param expectedIntervals A map of expected interval status flags
+     * @param logCtx  The request log logging context
+     * @param subQueryListener  Called after each response but the last has been stored, to send further sub-queries
+     */
+    @SuppressWarnings("unchecked")
+    public SplitQueryResponseProcessor(
+            ResponseProcessor next,
+            DataApiRequest request,
+            DruidAggregationQuery<?> druidQuery,
+            Map<Interval, AtomicInteger> expectedIntervals,
+            RequestLog logCtx,
+            Runnable subQueryListener
     ) {
         this.next = next;
         this.queryBeforeSplit = druidQuery;
         this.expectedIntervals = expectedIntervals;
         this.completedIntervals = Arrays.asList(new Pair[expectedIntervals.size()]);
+        this.incrementalNext = next instanceof IncrementalResponseProcessor
+                && ((IncrementalResponseProcessor) next).isIncremental()
+                ? (IncrementalResponseProcessor) next
+                : null;
+        this.completedResultSets = Arrays.asList(new Pair[expectedIntervals.size()]);
         this.completed = new AtomicInteger(expectedIntervals.size());
         this.logCtx = logCtx;
+        this.subQueryListener = subQueryListener;
     }
 
     @Override
@@ -103,29 +140,111 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
 
     @Override
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
-        if (failed.get()) {
+        int index = claimIndex(druidQuery);
+        if (index < 0) {
+            return;
+        }
+
+        if (incrementalNext != null) {
+            ResultSet resultSet;
+            try {
+                resultSet = incrementalNext.parseResultSet(json, druidQuery);
+            } catch (RuntimeException e) {
+                LOG.error("Unable to parse split query response for {}", druidQuery.getIntervals(), e);
+                getFailureCallback(druidQuery).invoke(e);
+                return;
+            }
+            completeResultSet(index, resultSet, metadata);
+            return;
+        }
+
+        completedIntervals.set(index, new Pair<>(json, metadata));
+
+        if (completed.decrementAndGet() == 0) {
+            Pair<JsonNode, LoggingContext> mergedResponse = mergeResponses(completedIntervals);
+            RequestLog.restore(mergedResponse.getValue().getRequestLog());
+            next.processResponse(mergedResponse.getKey(), queryBeforeSplit, mergedResponse.getValue());
+        } else {
+            subQueryListener.run();
+        }
+    }
+
+    @Override
+    public void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        if (incrementalNext == null) {
+            JsonNode json;
+            try {
+                json = jsonParser.readValueAsTree();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Unable to read split query response for {}", druidQuery.getIntervals(), e);
+                getFailureCallback(druidQuery).invoke(e);
+                return;
+            }
+            processResponse(json, druidQuery, metadata);
+            return;
+        }
+
+        int index = claimIndex(druidQuery);
+        if (index < 0) {
+            return;
+        }
+
+        ResultSet resultSet;
+        try {
+            resultSet = incrementalNext.parseResultSet(jsonParser, druidQuery);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to parse streamed split query response for {}", druidQuery.getIntervals(), e);
+            getFailureCallback(druidQuery).invoke(e);
             return;
         }
+        completeResultSet(index, resultSet, metadata);
+    }
+
+    /**
+     * Claim the slot of the interval of a response, failing the request if the interval is unexpected or repeated.
+     *
+     * @param druidQuery  The part of the query that was answered
+     *
+     * @return the index of the slot of the response, or -1 if the response should be dropped
+     */
+    private int claimIndex(DruidAggregationQuery<?> druidQuery) {
+        if (failed.get()) {
+            return -1;
+        }
 
         AtomicInteger sharedIndex;
         Interval interval = druidQuery.getIntervals().get(0);
         if (interval == null || (sharedIndex = expectedIntervals.get(interval)) == null) {
             fail(UNEXPECTED_INTERVAL_FORMAT, druidQuery, interval);
-            return;
+            return -1;
         }
 
         int index;
-        if ((index = sharedIndex.getAndSet(-1)) < 0 || completedIntervals.get(index) != null) {
+        if ((index = sharedIndex.getAndSet(-1)) < 0
+                || completedIntervals.get(index) != null
+                || completedResultSets.get(index) != null) {
             fail(EXTRA_RETURN_FORMAT, druidQuery, interval);
-            return;
+            return -1;
         }
+        return index;
+    }
 
-        completedIntervals.set(index, new Pair<>(json, metadata));
+    /**
+     * Store the result set parsed from a response, and pass the merged result set on once all have arrived.
+     *
+     * @param index  The index of the slot of the response
+     * @param resultSet  The result set parsed from the response
+     * @param metadata  The LoggingContext of the response
+     */
+    private void completeResultSet(int index, ResultSet resultSet, LoggingContext metadata) {
+        completedResultSets.set(index, new Pair<>(resultSet, metadata));
 
         if (completed.decrementAndGet() == 0) {
-            Pair<JsonNode, LoggingContext> mergedResponse = mergeResponses(completedIntervals);
-            RequestLog.restore(mergedResponse.getValue().getRequestLog());
-            next.processResponse(mergedResponse.getKey(), queryBeforeSplit, mergedResponse.getValue());
+            Pair<ResultSet, LoggingContext> mergedResultSet = mergeResultSets(completedResultSets);
+            RequestLog.restore(mergedResultSet.getValue().getRequestLog());
+            incrementalNext.processResultSet(mergedResultSet.getKey(), queryBeforeSplit, mergedResultSet.getValue());
+        } else {
+            subQueryListener.run();
         }
     }
 
@@ -163,4 +282,30 @@ public class SplitQueryResponseProcessor implements ResponseProcessor {
         RequestLog updatedCtx = RequestLog.dump();
         return new Pair<>(result, new LoggingContext(updatedCtx));
     }
+
+    /**
+     * Concatenate a list of result sets, preserving order.
+     * <p>
+     * The results are appended to the first result set, so that the merged result set keeps its layout, and each
+     * slot is cleared as it is appended so that only the merged copy of each result is held.
+     *
+     * @param resultSets  A list of pairs that encompass result sets and response metadata
+     *
+     * @return A new pair holding the merged result set and the aggregate request log context
+     */
+    private Pair<ResultSet, LoggingContext> mergeResultSets(List<Pair<ResultSet, LoggingContext>> resultSets) {
+        RequestLog.restore(logCtx);
+        ResultSet result = null;
+        for (int i = 0; i < resultSets.size(); i++) {
+            Pair<ResultSet, LoggingContext> entry = resultSets.set(i, null);
+            if (result == null) {
+                result = entry.getKey();
+            } else {
+                result.addAll(entry.getKey());
+            }
+            RequestLog.accumulate(entry.getValue().getRequestLog());
+        }
+        RequestLog updatedCtx = RequestLog.dump();
+        return new Pair<>(result, new LoggingContext(updatedCtx));
+    }
 }
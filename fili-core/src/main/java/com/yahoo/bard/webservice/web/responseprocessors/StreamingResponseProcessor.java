@@ -0,0 +1,25 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.responseprocessors;
+
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A response processor which is also able to consume the druid response directly from the JSON token stream.
+ * <p>
+ * Processing a response from a parser must be equivalent to processing the tree that the parser would have produced,
+ * and must be completed before this method returns.
+ */
+public interface StreamingResponseProcessor extends ResponseProcessor {
+
+    /**
+     * Process the response json tokens and respond to the original web request.
+     *
+     * @param jsonParser  Parser over the json representing a druid data response
+     * @param query  The query with the schema for processing this response
+     * @param metadata  The LoggingContext to use
+     */
+    void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> query, LoggingContext metadata);
+}
@@ -4,18 +4,26 @@ package com.yahoo.bard.webservice.web.responseprocessors;
 
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER;
 
+import com.yahoo.bard.webservice.data.ResultSet;
 import com.yahoo.bard.webservice.druid.client.FailureCallback;
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback;
 import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
 import com.yahoo.bard.webservice.logging.RequestLog;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
+
 /**
  * A response processor which wraps a timer around the outer most response processor only in the event of an error
  * response.
+ * <p>
+ * The processor is incremental when the processor it wraps is, so that split queries can be merged as result sets.
+ * Streamed responses are passed on as they are when the processor it wraps is a streaming processor, and are read into
+ * json otherwise.
  */
-public class WeightCheckResponseProcessor implements ResponseProcessor {
+public class WeightCheckResponseProcessor implements IncrementalResponseProcessor, StreamingResponseProcessor {
 
     private final ResponseProcessor next;
 
@@ -63,4 +71,41 @@ public class WeightCheckResponseProcessor implements ResponseProcessor {
     public void processResponse(JsonNode json, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
         next.processResponse(json, druidQuery, metadata);
     }
+
+    @Override
+    public void processResponse(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        if (next instanceof StreamingResponseProcessor) {
+            ((StreamingResponseProcessor) next).processResponse(jsonParser, druidQuery, metadata);
+            return;
+        }
+
+        JsonNode json;
+        try {
+            json = jsonParser.readValueAsTree();
+        } catch (IOException | RuntimeException e) {
+            getFailureCallback(druidQuery).invoke(e);
+            return;
+        }
+        next.processResponse(json, druidQuery, metadata);
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return next instanceof IncrementalResponseProcessor && ((IncrementalResponseProcessor) next).isIncremental();
+    }
+
+    @Override
+    public ResultSet parseResultSet(JsonNode json, DruidAggregationQuery<?> druidQuery) {
+        return ((IncrementalResponseProcessor) next).parseResultSet(json, druidQuery);
+    }
+
+    @Override
+    public ResultSet parseResultSet(JsonParser jsonParser, DruidAggregationQuery<?> druidQuery) throws IOException {
+        return ((IncrementalResponseProcessor) next).parseResultSet(jsonParser, druidQuery);
+    }
+
+    @Override
+    public void processResultSet(ResultSet resultSet, DruidAggregationQuery<?> druidQuery, LoggingContext metadata) {
+        ((IncrementalResponseProcessor) next).processResultSet(resultSet, druidQuery, metadata);
+    }
 }
@@ -0,0 +1,298 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.util;
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory;
+import com.yahoo.bard.webservice.config.SystemConfig;
+import com.yahoo.bard.webservice.config.SystemConfigProvider;
+import com.yahoo.bard.webservice.data.dimension.Dimension;
+import com.yahoo.bard.webservice.druid.model.query.DruidAggregationQuery;
+import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery;
+import com.yahoo.bard.webservice.web.ApiFilter;
+import com.yahoo.bard.webservice.web.DataApiRequest;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Estimates the weight of queries locally, so that the weight check query only needs to be sent to Druid when the
+ * estimate can't tell whether a query is over its weight limit.
+ * <p>
+ * The upper bound of the weight of a query is its worst case weight, as in
+ * {@link WeightEvaluationQuery#getWorstCaseWeightEstimate}, with the cardinality of each grouping dimension that is
+ * filtered by the request replaced by the number of dimension rows matching the filters. Queries rarely see every
+ * combination of their dimension values, so the estimate scales the upper bound by the ratio of the actual weight to
+ * the upper bound, as measured by the weight check queries of earlier requests to the same logical table.
+ * <p>
+ * Once the estimate decides queries, only the queries it can't decide are checked, so a sample of the queries it does
+ * decide is checked anyway, to keep calibrating the estimate as the data of the table changes.
+ */
+public class QueryWeightEstimator {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryWeightEstimator.class);
+    private static final SystemConfig SYSTEM_CONFIG = SystemConfigProvider.getInstance();
+    private static final MetricRegistry REGISTRY = MetricRegistryFactory.getRegistry();
+
+    private static final @NotNull String AMBIGUITY_FACTOR_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("weight_estimate_ambiguity_factor");
+
+    private static final @NotNull String MIN_SAMPLES_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("weight_estimate_min_samples");
+
+    private static final @NotNull String CALIBRATION_RATE_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("weight_estimate_calibration_rate");
+
+    private static final @NotNull String AUDIT_RATE_KEY = SYSTEM_CONFIG
+            .getPackageVariableName("weight_estimate_audit_rate");
+
+    // The default factor the estimate must be under or over the weight limit by to be trusted
+    private static final double AMBIGUITY_FACTOR_DEFAULT = 4;
+
+    // The default number of measured weights needed before the estimate of a table is trusted
+    private static final int MIN_SAMPLES_DEFAULT = 20;
+
+    // The default weight given to each measured weight when calibrating the estimate
+    private static final double CALIBRATION_RATE_DEFAULT = 0.05;
+
+    // The default fraction of the queries decided from the estimate whose weight is checked anyway
+    private static final double AUDIT_RATE_DEFAULT = 0.05;
+
+    // Page holding only the first row, used to count the rows matching a filter
+    private static final PaginationParameters FIRST_ROW = new PaginationParameters(1, 1);
+
+    private static final Meter ACCEPTED = REGISTRY.meter("weight.estimate.accepted");
+    private static final Meter REJECTED = REGISTRY.meter("weight.estimate.rejected");
+    private static final Meter CHECKED = REGISTRY.meter("weight.estimate.checked");
+    private static final Meter AUDITED = REGISTRY.meter("weight.estimate.audited");
+    private static final Histogram ERROR_PERCENT = REGISTRY.histogram("weight.estimate.error_percent");
+
+    private final double ambiguityFactor = SYSTEM_CONFIG.getDoubleProperty(
+            AMBIGUITY_FACTOR_KEY,
+            AMBIGUITY_FACTOR_DEFAULT
+    );
+    private final int minSamples = SYSTEM_CONFIG.getIntProperty(MIN_SAMPLES_KEY, MIN_SAMPLES_DEFAULT);
+    private final double calibrationRate = SYSTEM_CONFIG.getDoubleProperty(
+            CALIBRATION_RATE_KEY,
+            CALIBRATION_RATE_DEFAULT
+    );
+
+    private final double auditRate;
+
+    private final Map<String, Calibration> calibrations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, checking the weight of the share of decided queries given by the system configuration.
+     */
+    public QueryWeightEstimator() {
+        this(SYSTEM_CONFIG.getDoubleProperty(AUDIT_RATE_KEY, AUDIT_RATE_DEFAULT));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param auditRate  Fraction of the queries decided from the estimate whose weight is checked anyway
+     */
+    public QueryWeightEstimator(double auditRate) {
+        this.auditRate = auditRate;
+    }
+
+    /**
+     * What to do with a query, based on its estimated weight.
+     */
+    public enum Decision {
+        /**
+         * The query is under its weight limit.
+         */
+        ACCEPT,
+        /**
+         * The query is over its weight limit.
+         */
+        REJECT,
+        /**
+         * The estimate is too close to the weight limit, so the weight of the query needs to be measured.
+         */
+        CHECK
+    }
+
+    /**
+     * Get the upper bound of the weight of a query.
+     *
+     * @param request  The request the query was built for
+     * @param query  The query to bound
+     *
+     * @return the upper bound, or {@link Long#MAX_VALUE} if it is larger than that
+     */
+    public long getUpperBound(DataApiRequest request, DruidAggregationQuery<?> query) {
+        Map<Dimension, Set<ApiFilter>> filters = request.getFilters() == null
+                ? Collections.emptyMap()
+                : request.getFilters();
+        try {
+            return WeightEvaluationQuery.getWorstCaseWeightEstimate(
+                    query,
+                    dimension -> getFilteredCardinality(dimension, filters.get(dimension))
+            );
+        } catch (ArithmeticException ignored) {
+            LOG.debug("weight upper bound larger than {}", Long.MAX_VALUE);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Get the estimated weight of a query to a logical table.
+     *
+     * @param request  The request the query was built for
+     * @param upperBound  The upper bound of the weight of the query
+     *
+     * @return the estimated weight
+     */
+    public double getEstimate(DataApiRequest request, long upperBound) {
+        return upperBound * getCalibration(request).getRatio();
+    }
+
+    /**
+     * Decide what to do with a query from its upper bound and estimated weight.
+     * <p>
+     * A query whose upper bound is under the limit is accepted. Otherwise, once enough weights have been measured for
+     * its table, a query whose estimate is under or over the limit by the ambiguity factor is accepted or rejected,
+     * and any other query needs its weight checked. A random sample of the queries decided from the estimate, of the
+     * size set by the audit rate, needs its weight checked as well, so that their weights keep calibrating the
+     * estimate.
+     *
+     * @param request  The request the query was built for
+     * @param upperBound  The upper bound of the weight of the query
+     * @param queryRowLimit  The weight limit of the query
+     *
+     * @return what to do with the query
+     */
+    public Decision decide(DataApiRequest request, long upperBound, long queryRowLimit) {
+        Decision decision = Decision.CHECK;
+        if (upperBound <= queryRowLimit) {
+            decision = Decision.ACCEPT;
+        } else if (getCalibration(request).getSamples() >= minSamples) {
+            double estimate = getEstimate(request, upperBound);
+            if (estimate * ambiguityFactor <= queryRowLimit) {
+                decision = Decision.ACCEPT;
+            } else if (estimate >= queryRowLimit * ambiguityFactor) {
+                decision = Decision.REJECT;
+            }
+            if (decision != Decision.CHECK && ThreadLocalRandom.current().nextDouble() < auditRate) {
+                AUDITED.mark();
+                decision = Decision.CHECK;
+            }
+        }
+
+        switch (decision) {
+            case ACCEPT:
+                ACCEPTED.mark();
+                break;
+            case REJECT:
+                REJECTED.mark();
+                break;
+            default:
+                CHECKED.mark();
+        }
+        return decision;
+    }
+
+    /**
+     * Record the measured weight of a query, to report the error of its estimate and calibrate later estimates.
+     *
+     * @param request  The request the query was built for
+     * @param upperBound  The upper bound of the weight of the query
+     * @param weight  The weight of the query, as measured by the weight check query
+     */
+    public void recordWeight(DataApiRequest request, long upperBound, long weight) {
+        // Treat empty results as weighing 1, so that they don't throw the ratio off to 0
+        long actual = Math.max(1, weight);
+        double estimate = getEstimate(request, upperBound);
+        ERROR_PERCENT.update(Math.round(Math.abs(estimate - actual) * 100 / actual));
+
+        if (upperBound > 0 && upperBound < Long.MAX_VALUE) {
+            getCalibration(request).update(Math.log((double) actual / upperBound), calibrationRate);
+        }
+    }
+
+    /**
+     * Get the number of values of a dimension that matches its filters.
+     *
+     * @param dimension  The dimension to count the values of
+     * @param filters  The filters of the request on the dimension, if any
+     *
+     * @return the number of matching values, or the cardinality of the dimension if it can't be counted
+     */
+    private static long getFilteredCardinality(Dimension dimension, Set<ApiFilter> filters) {
+        long cardinality = dimension.getCardinality();
+        if (filters == null || filters.isEmpty() || cardinality <= 0) {
+            return cardinality;
+        }
+        try {
+            long matching = dimension.getSearchProvider()
+                    .findFilteredDimensionRowsPaged(filters, FIRST_ROW)
+                    .getNumResults();
+            return Math.min(cardinality, matching);
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to count the rows of {} matching {}", dimension.getApiName(), filters, e);
+            return cardinality;
+        }
+    }
+
+    /**
+     * Get the calibration of the estimates for the logical table of a request.
+     *
+     * @param request  The request to get the calibration for
+     *
+     * @return the calibration
+     */
+    private Calibration getCalibration(DataApiRequest request) {
+        String tableName = request.getTable() == null ? "" : request.getTable().getName();
+        return calibrations.computeIfAbsent(tableName, ignored -> new Calibration());
+    }
+
+    /**
+     * Moving average of the log of the ratio of measured weights to their upper bounds.
+     */
+    private static final class Calibration {
+        private double logRatio;
+        private long samples;
+
+        /**
+         * Add a measured log ratio to the average.
+         *
+         * @param sample  The log of the ratio of a measured weight to its upper bound
+         * @param rate  The weight of the sample in the average, once the average has a sample
+         */
+        synchronized void update(double sample, double rate) {
+            logRatio = samples == 0 ? sample : logRatio + rate * (sample - logRatio);
+            samples++;
+        }
+
+        /**
+         * Get the average ratio of measured weights to their upper bounds.
+         *
+         * @return the ratio, which is 1 before any weight is measured
+         */
+        synchronized double getRatio() {
+            return Math.exp(logRatio);
+        }
+
+        /**
+         * Get the number of measured weights.
+         *
+         * @return the number of samples
+         */
+        synchronized long getSamples() {
+            return samples;
+        }
+    }
+}
@@ -86,6 +86,8 @@ public class QueryWeightUtil {
     private final Long defaultRowLimit;
     private final Long allTimeRowLimit;
 
+    private final QueryWeightEstimator weightEstimator = new QueryWeightEstimator();
+
     /**
      * Constructor.
      */
@@ -165,6 +167,15 @@ public class QueryWeightUtil {
         }
     }
 
+    /**
+     * Get the estimator of query weights, calibrated by the weights measured by the weight check queries.
+     *
+     * @return the weight estimator
+     */
+    public QueryWeightEstimator getWeightEstimator() {
+        return weightEstimator;
+    }
+
     /**
      * Get the weight check query for the given query.
      *
@@ -36,9 +36,12 @@ class FeatureFlagRegistrySpec extends Specification {
 
         then:
         values == ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
+                   "druid_cache_buckets_enabled", "weight_estimation_enabled",
                    "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                    "permissive_column_availability_enabled", "updated_metadata_collection_names_enabled",
-                   "druid_coordinator_metadata_enabled", "druid_dimensions_loader_enabled"] as Set
+                   "druid_coordinator_metadata_enabled", "druid_dimensions_loader_enabled",
+                   "druid_response_streaming_enabled", "columnar_result_set_enabled",
+                   "compact_dimension_rows_enabled", "streaming_responses_enabled"] as Set
     }
 
     @Unroll
@@ -48,8 +51,11 @@ class FeatureFlagRegistrySpec extends Specification {
 
         where:
         flagName << ["partial_data_enabled", "druid_cache_enabled", "druid_cache_v2_enabled", "query_split_enabled",
+                     "druid_cache_buckets_enabled", "weight_estimation_enabled",
                      "top_n_enabled", "data_filter_substring_operations_enabled", "intersection_reporting_enabled",
                      "permissive_column_availability_enabled", "updated_metadata_collection_names_enabled",
-                     "druid_coordinator_metadata_enabled", "druid_dimensions_loader_enabled"]
+                     "druid_coordinator_metadata_enabled", "druid_dimensions_loader_enabled",
+                     "druid_response_streaming_enabled", "columnar_result_set_enabled",
+                     "compact_dimension_rows_enabled", "streaming_responses_enabled"]
     }
 }
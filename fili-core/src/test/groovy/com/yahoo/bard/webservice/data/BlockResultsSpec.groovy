@@ -0,0 +1,163 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.table.Schema
+import com.yahoo.bard.webservice.util.Pagination
+import com.yahoo.bard.webservice.web.PageNotFoundException
+import com.yahoo.bard.webservice.web.util.PaginationParameters
+
+import org.joda.time.DateTime
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.function.IntFunction
+import java.util.stream.Collectors
+
+class BlockResultsSpec extends Specification {
+
+    static final int ROWS_PER_BLOCK = 3
+
+    Schema schema = new Schema(DAY)
+    List<Result> results = (0..<10).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+    List<Integer> blocksRead = []
+    BlockResults blockResults
+
+    def setup() {
+        IntFunction<List<Result>> blockReader = { int block ->
+            blocksRead << block
+            results.subList(block * ROWS_PER_BLOCK, Math.min((block + 1) * ROWS_PER_BLOCK, results.size()))
+        } as IntFunction
+        blockResults = new BlockResults(schema, ROWS_PER_BLOCK, results.size(), blockReader)
+    }
+
+    def "Iterating reads each block once, in order"() {
+        expect:
+        blockResults.stream().collect(Collectors.toList()) == results
+        blockResults.size() == 10
+        !blockResults.isEmpty()
+        blockResults.schema == schema
+        blocksRead == [0, 1, 2, 3]
+    }
+
+    def "Nothing is read until the results are used"() {
+        when:
+        blockResults.getRange(4, 3)
+
+        then:
+        blocksRead.isEmpty()
+    }
+
+    @Unroll
+    def "The range of #count results from #offset only reads blocks #expectedBlocks"() {
+        when:
+        BlockResults range = blockResults.getRange(offset, count)
+
+        then:
+        range.collect { it } == expectedResults.collect { results[it] }
+        range.size() == expectedResults.size()
+        blocksRead == expectedBlocks
+
+        where:
+        offset | count | expectedResults | expectedBlocks
+        0      | 2     | [0, 1]          | [0]
+        4      | 3     | [4, 5, 6]       | [1, 2]
+        9      | 5     | [9]             | [3]
+        12     | 5     | []              | []
+    }
+
+    def "Getting a result reads only its block"() {
+        expect:
+        blockResults.getRange(2, 5).get(4) == results[6]
+        blocksRead == [2]
+    }
+
+    def "Getting the results in order reads each block once"() {
+        expect:
+        (0..<10).collect { blockResults.get(it) } == results
+        blocksRead == [0, 1, 2, 3]
+    }
+
+    def "The list operations read the results"() {
+        expect:
+        new ArrayList<>(blockResults) == results
+        blockResults.toArray() == results.toArray()
+        blockResults.toArray(new Result[0]) == results.toArray(new Result[0])
+        blockResults.contains(results[4])
+        !blockResults.contains(new Result([:], [:], new DateTime(99000L)))
+        blockResults.indexOf(results[7]) == 7
+        blockResults.lastIndexOf(results[7]) == 7
+        blockResults.listIterator(8).collect { it } == results[8..9]
+        Objects.equals(blockResults, results)
+        Objects.equals(results, blockResults)
+        blockResults.hashCode() == results.hashCode()
+    }
+
+    def "A sub list is a range of the results, read when it is used"() {
+        when:
+        List<Result> subList = blockResults.subList(4, 7)
+
+        then:
+        subList instanceof BlockResults
+        blocksRead.isEmpty()
+        new ArrayList<>(subList) == results[4..6]
+        blocksRead == [1, 2]
+    }
+
+    @Unroll
+    def "A sub list from #from to #to is rejected"() {
+        when:
+        blockResults.subList(from, to)
+
+        then:
+        thrown(expected)
+
+        where:
+        from | to | expected
+        -1   | 2  | IndexOutOfBoundsException
+        0    | 11 | IndexOutOfBoundsException
+        5    | 4  | IllegalArgumentException
+    }
+
+    @Unroll
+    def "Block results can't be modified by #operation"() {
+        when:
+        modify(blockResults)
+
+        then:
+        thrown(UnsupportedOperationException)
+        blockResults.size() == 10
+
+        where:
+        operation   | modify
+        "add"       | { List<Result> list -> list.add(new Result([:], [:], new DateTime(0L))) }
+        "addAll"    | { List<Result> list -> list.addAll([new Result([:], [:], new DateTime(0L))]) }
+        "set"       | { List<Result> list -> list.set(0, new Result([:], [:], new DateTime(0L))) }
+        "remove"    | { List<Result> list -> list.remove(0) }
+        "removeIf"  | { List<Result> list -> list.removeIf { true } }
+        "sort"      | { List<Result> list -> list.sort(null) }
+        "clear"     | { List<Result> list -> list.clear() }
+    }
+
+    def "A page of the results reads only the blocks of the page"() {
+        when:
+        Pagination<Result> pages = blockResults.getPage(new PaginationParameters(4, 2))
+
+        then:
+        pages.getPageOfData().collect { it } == results[4..7]
+        pages.getNumResults() == 10
+        pages.getLastPage().asInt == 3
+        blocksRead == [1, 2]
+    }
+
+    def "A page past the last page is not found"() {
+        when:
+        blockResults.getPage(new PaginationParameters(4, 4))
+
+        then:
+        thrown(PageNotFoundException)
+    }
+}
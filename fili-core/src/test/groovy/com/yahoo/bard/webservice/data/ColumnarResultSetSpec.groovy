@@ -0,0 +1,180 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.DimensionColumn
+import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.LogicalDimensionColumn
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.data.metric.mappers.RowNumMapper
+import com.yahoo.bard.webservice.data.metric.mappers.SketchRoundUpMapper
+import com.yahoo.bard.webservice.table.ZonedSchema
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ColumnarResultSetSpec extends Specification {
+
+    ZonedSchema schema = new ZonedSchema(DAY, DateTimeZone.UTC)
+    Dimension dimension = Mock(Dimension)
+    DimensionColumn dimensionColumn
+    MetricColumn longColumn
+    MetricColumn doubleColumn
+    MetricColumn otherColumn
+    DimensionRow one
+    DimensionRow two
+    DateTime day = new DateTime("2016-01-01", DateTimeZone.UTC)
+
+    def setup() {
+        dimension.getApiName() >> "dim"
+        dimension.getKey() >> BardDimensionField.ID
+        dimension.getDimensionFields() >> ([BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet)
+        dimensionColumn = new LogicalDimensionColumn(dimension)
+        schema.addColumn(dimensionColumn)
+        longColumn = MetricColumn.addNewMetricColumn(schema, "longs")
+        doubleColumn = MetricColumn.addNewMetricColumn(schema, "doubles")
+        otherColumn = MetricColumn.addNewMetricColumn(schema, "others")
+        one = BardDimensionField.makeDimensionRow(dimension, "1", "one")
+        two = BardDimensionField.makeDimensionRow(dimension, "2", "two")
+    }
+
+    Result makeResult(DimensionRow row, Object longValue, Object doubleValue, Object otherValue, int dayOffset = 0) {
+        new Result(
+                [(dimensionColumn): row],
+                [(longColumn): longValue, (doubleColumn): doubleValue, (otherColumn): otherValue],
+                day.plusDays(dayOffset)
+        )
+    }
+
+    def "Results read back from a columnar result set equal the results stored in it"() {
+        given:
+        List<Result> results = [
+                makeResult(one, 1 as BigDecimal, 1.5 as BigDecimal, "text", 0),
+                makeResult(two, Long.MAX_VALUE as BigDecimal, 1.0E10 as BigDecimal, true, 1),
+                makeResult(one, null, null, null, 2),
+                makeResult(null, -7 as BigDecimal, 0.1 as BigDecimal, JsonNodeFactory.instance.objectNode(), 3)
+        ]
+
+        when:
+        ColumnarResultSet resultSet = new ColumnarResultSet(results, schema)
+
+        then:
+        resultSet.size() == 4
+        resultSet == new ResultSet(results, schema)
+        resultSet.collect() == results
+        resultSet.stream().count() == 4
+        resultSet.getSchema() == schema
+        resultSet.get(1).getTimeStamp() == day.plusDays(1)
+        resultSet.getTimeStampMillis(1) == day.plusDays(1).millis
+        resultSet.getDimensionRow(2, dimensionColumn).is(one)
+        resultSet.getMetricValue(0, longColumn) == 1 as BigDecimal
+        resultSet.getMetricValue(1, otherColumn) == true
+    }
+
+    @Unroll
+    def "A column holding #values keeps every value exactly"() {
+        given:
+        List<Result> results = values.collect { makeResult(one, it, null, null) }
+
+        when:
+        ColumnarResultSet resultSet = new ColumnarResultSet(results, schema)
+
+        then:
+        resultSet.collect { it.getMetricValue(longColumn) } == values
+        // BigDecimal equality includes the scale, so 5 and 5.0 are told apart
+        resultSet.collect { it.getMetricValue(longColumn)?.toString() } == values.collect { it?.toString() }
+
+        where:
+        values << [
+                [1 as BigDecimal, 2 as BigDecimal, 3 as BigDecimal],
+                [1.5 as BigDecimal, 2.25 as BigDecimal],
+                [5 as BigDecimal, 5.0 as BigDecimal],
+                [5.0 as BigDecimal, 5 as BigDecimal],
+                [1 as BigDecimal, new BigDecimal("123456789012345678901234567890")],
+                [1.5 as BigDecimal, "not a number", null]
+        ]
+    }
+
+    def "Results missing a column, or adding one, keep their own set of columns"() {
+        given:
+        MetricColumn extraColumn = new MetricColumn("extra")
+        Result narrow = new Result([:], [(longColumn): 1 as BigDecimal], day)
+        Result wide = new Result([(dimensionColumn): two], [(extraColumn): 2 as BigDecimal], day)
+
+        when:
+        ColumnarResultSet resultSet = new ColumnarResultSet([narrow, wide], schema)
+
+        then:
+        resultSet[0] == narrow
+        resultSet[1] == wide
+        resultSet[0].getMetricValues().keySet() == [longColumn] as Set
+    }
+
+    def "Mappers keep the columnar layout"() {
+        given:
+        ColumnarResultSet resultSet = new ColumnarResultSet(
+                [makeResult(one, 1 as BigDecimal, 1.5 as BigDecimal, "a"), makeResult(two, 2 as BigDecimal, 2.5, "b")],
+                schema
+        )
+
+        when:
+        ResultSet rounded = new SketchRoundUpMapper(doubleColumn.name).map(resultSet)
+        ResultSet numbered = new RowNumMapper().map(rounded)
+
+        then:
+        rounded instanceof ColumnarResultSet
+        rounded.collect { it.getMetricValueAsNumber(doubleColumn) } == [2 as BigDecimal, 3 as BigDecimal]
+        numbered instanceof ColumnarResultSet
+        numbered.collect { it.getMetricValue(numbered.getSchema().getColumn("rowNum", MetricColumn)) } == [0, 1]
+    }
+
+    def "List operations rebuild the columns"() {
+        given:
+        Result first = makeResult(one, 1 as BigDecimal, 1.5 as BigDecimal, "a", 0)
+        Result second = makeResult(two, 2 as BigDecimal, 2.5 as BigDecimal, "b", 1)
+        Result third = makeResult(one, 3 as BigDecimal, 3.5 as BigDecimal, "c", 2)
+        ColumnarResultSet resultSet = new ColumnarResultSet([third, first, second], schema)
+
+        when:
+        resultSet.sort { a, b -> a.getTimeStamp() <=> b.getTimeStamp() }
+
+        then:
+        resultSet.collect() == [first, second, third]
+
+        when:
+        resultSet.remove(1)
+        resultSet.set(0, second)
+        resultSet.add(0, first)
+
+        then:
+        resultSet.collect() == [first, second, third]
+        resultSet.subList(1, 3) == [second, third]
+        resultSet.indexOf(third) == 2
+
+        when:
+        resultSet.clear()
+
+        then:
+        resultSet.isEmpty()
+    }
+
+    def "Results with a different chronology are rejected"() {
+        given:
+        ColumnarResultSet resultSet = new ColumnarResultSet([makeResult(one, 1, 1.5, "a")], schema)
+
+        when:
+        resultSet.add(new Result([:], [:], new DateTime("2016-01-01", DateTimeZone.forID("America/Chicago"))))
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
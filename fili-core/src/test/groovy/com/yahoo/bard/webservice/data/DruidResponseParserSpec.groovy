@@ -5,11 +5,16 @@ package com.yahoo.bard.webservice.data
 import com.yahoo.bard.webservice.table.PhysicalTable
 
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+import static com.yahoo.bard.webservice.druid.model.QueryType.GROUP_BY
 
+import com.yahoo.bard.webservice.config.BardFeatureFlag
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary
 import com.yahoo.bard.webservice.data.dimension.DimensionField
+import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.LogicalDimensionColumn
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager
 import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension
 import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager
@@ -31,6 +36,8 @@ import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.function.Consumer
+
 class DruidResponseParserSpec extends Specification {
     private static final ObjectMapper MAPPER = new ObjectMapper()
             .registerModule(new Jdk8Module().configureAbsentsAsNulls(false))
@@ -385,6 +392,175 @@ class DruidResponseParserSpec extends Specification {
     }
 
 
+    @Unroll
+    def "Streaming a Druid #queryType response builds the same ResultSet as parsing the json tree"() {
+        given: "A response from Druid containing each kind of metric value"
+        String druidResponse = buildResponse(
+                queryType,
+                [
+                        '"pageViews"': 10,
+                        '"time_spent"': 2.5,
+                        '"luckyNumbers"': '"1, 3, 7"',
+                        '"true"': true,
+                        '"null"': null,
+                        '"sketch"': '{"values": "2", "length": 1}'
+                ]
+        )
+        ZonedSchema schema = buildSchema(["pageViews", "time_spent", "luckyNumbers", "true", "null", "sketch"])
+
+        when: "We build a result set from the token stream"
+        ResultSet streamed = new DruidResponseParser().parse(
+                MAPPER.getFactory().createParser(druidResponse),
+                schema,
+                queryType
+        )
+
+        then: "It matches the result set built from the json tree"
+        streamed == buildResultSet(druidResponse, schema, queryType)
+        streamed.size() == 1
+        streamed.getSchema() == schema
+
+        where:
+        queryType << [QueryType.GROUP_BY, QueryType.TOP_N, QueryType.TIMESERIES, QueryType.LOOKBACK]
+    }
+
+    @Unroll
+    def "With the columnar layout on, a Druid #queryType response is parsed straight into columns"() {
+        given:
+        boolean columnarResultSet = BardFeatureFlag.COLUMNAR_RESULT_SET.isOn()
+        String druidResponse = buildResponse(queryType, ['"pageViews"': 10, '"time_spent"': 2.5])
+        ZonedSchema schema = buildSchema(["pageViews", "time_spent"])
+        ResultSet rows = buildResultSet(druidResponse, schema, queryType)
+        BardFeatureFlag.COLUMNAR_RESULT_SET.setOn(true)
+
+        when:
+        ResultSet parsed = buildResultSet(druidResponse, schema, queryType)
+        ResultSet streamed = new DruidResponseParser().parse(
+                MAPPER.getFactory().createParser(druidResponse),
+                schema,
+                queryType
+        )
+
+        then:
+        parsed instanceof ColumnarResultSet
+        parsed == rows
+        streamed instanceof ColumnarResultSet
+        streamed == rows
+
+        cleanup:
+        BardFeatureFlag.COLUMNAR_RESULT_SET.setOn(columnarResultSet)
+
+        where:
+        queryType << [QueryType.GROUP_BY, QueryType.TOP_N, QueryType.TIMESERIES, QueryType.LOOKBACK]
+    }
+
+    @Unroll
+    def "Streaming a Druid #queryType response to a consumer hands it each result in order"() {
+        given:
+        String druidResponse = buildResponse(queryType, ['"pageViews"': 10, '"time_spent"': 2.5])
+        ZonedSchema schema = buildSchema(["pageViews", "time_spent"])
+        List<Result> consumed = []
+
+        when:
+        new DruidResponseParser().parse(
+                MAPPER.getFactory().createParser(druidResponse),
+                schema,
+                queryType,
+                { consumed.add(it) } as Consumer<Result>
+        )
+
+        then:
+        consumed == buildResultSet(druidResponse, schema, queryType)
+
+        where:
+        queryType << [QueryType.GROUP_BY, QueryType.TOP_N, QueryType.TIMESERIES, QueryType.LOOKBACK]
+    }
+
+    def "Streaming tolerates the timestamp following the event and skips unknown fields"() {
+        given:
+        String druidResponse = """
+            [ {
+                "event" : {
+                    "ageBracket" : "1",
+                    "notAColumn" : { "nested" : [ 1, 2, 3 ] },
+                    "pageViews" : 101
+                },
+                "version" : "v1",
+                "timestamp" : "2012-01-01T00:00:00.000Z"
+            } ]
+        """
+        ZonedSchema schema = buildSchema(["pageViews"])
+
+        when:
+        ResultSet streamed = new DruidResponseParser().parse(
+                MAPPER.getFactory().createParser(druidResponse),
+                schema,
+                QueryType.GROUP_BY
+        )
+
+        then:
+        streamed == buildResultSet(druidResponse, schema, QueryType.GROUP_BY)
+        streamed[0].getTimeStamp() == new DateTime("2012-01-01T00:00:00.000Z", DateTimeZone.UTC)
+        streamed[0].getDimensionRow(schema.columns.toArray()[0])?.get(BardDimensionField.DESC) == "1"
+        streamed[0].getMetricValueAsNumber(schema.getColumn("pageViews", MetricColumn.class)) == 101 as BigDecimal
+    }
+
+    def "Streaming a response that is not an array of records fails"() {
+        when:
+        new DruidResponseParser().parse(
+                MAPPER.getFactory().createParser('{"error": "not a result"}'),
+                buildSchema(["pageViews"]),
+                QueryType.GROUP_BY
+        )
+
+        then:
+        thrown(IOException)
+    }
+
+    @Unroll
+    def "Each distinct dimension key value is looked up once per response when #mode"() {
+        given: "A dimension that counts the key values it is asked for"
+        Dimension dimension = Mock(Dimension)
+        dimension.getApiName() >> "ageBracket"
+        dimension.getKey() >> BardDimensionField.ID
+        dimension.getDimensionFields() >> ([BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet)
+        DimensionRow one = BardDimensionField.makeDimensionRow(dimension, "1", "one")
+        List<String> requested = []
+
+        Schema schema = new ZonedSchema(DAY, DateTimeZone.UTC)
+        DimensionColumn dimensionColumn = new LogicalDimensionColumn(dimension)
+        schema.addColumn(dimensionColumn)
+        MetricColumn.addNewMetricColumn(schema, "pageViews")
+
+        String druidResponse = "[" + ["1", "4", "1", "1", "4"].collect {
+            """{"timestamp": "2012-01-01T00:00:00.000Z", "event": {"ageBracket": "$it", "pageViews": 1}}"""
+        }.join(",") + "]"
+
+        when:
+        ResultSet resultSet = streaming ?
+                new DruidResponseParser().parse(MAPPER.getFactory().createParser(druidResponse), schema, GROUP_BY) :
+                buildResultSet(druidResponse, schema, GROUP_BY)
+
+        then: "Each key value is requested once, and missing rows are only created once"
+        _ * dimension.findDimensionRowsByKeyValues(_) >> { arguments ->
+            Collection<String> values = arguments[0]
+            requested.addAll(values)
+            values.contains("1") ? ["1": one] : [:]
+        }
+        0 * dimension.findDimensionRowByKeyValue(_)
+        1 * dimension.createEmptyDimensionRow("4") >> BardDimensionField.makeDimensionRow(dimension, "4", "")
+        requested.sort() == ["1", "4"]
+
+        and: "Rows for the same key value are shared between results"
+        resultSet.collect { it.getDimensionRow(dimensionColumn).get(BardDimensionField.ID) } == ["1", "4", "1", "1", "4"]
+        resultSet[0].getDimensionRow(dimensionColumn).is(resultSet[2].getDimensionRow(dimensionColumn))
+        resultSet[1].getDimensionRow(dimensionColumn).is(resultSet[4].getDimensionRow(dimensionColumn))
+
+        where:
+        streaming << [false, true]
+        mode = streaming ? "streaming" : "parsing the json tree"
+    }
+
     String buildResponse(QueryType queryType, Map complexMetrics) {
         //Strip off the brackets from the String representation of the Map.
         String complexMetricsString = complexMetrics.toString()[1..-2]
@@ -0,0 +1,115 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.table.Schema
+
+import org.joda.time.DateTime
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CompletableFuture
+
+@Timeout(10)
+class StreamingResultsSpec extends Specification {
+
+    Schema schema = new Schema(DAY)
+    List<Result> results = (1..5).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+
+    def "Results put by one thread are read in order by another"() {
+        given:
+        StreamingResults streamed = new StreamingResults(schema, 5000)
+
+        when:
+        CompletableFuture<Void> producer = CompletableFuture.runAsync {
+            results.each { streamed.put(it) }
+            streamed.complete()
+        }
+        List<Result> read = streamed.collect()
+        producer.join()
+
+        then:
+        read == results
+        streamed.schema == schema
+    }
+
+    def "Failed results stop their reader with the cause"() {
+        given:
+        StreamingResults streamed = new StreamingResults(schema, 5000)
+        Exception cause = new IOException("druid went away")
+        streamed.put(results[0])
+        streamed.fail(cause)
+
+        when:
+        streamed.each { }
+
+        then:
+        IllegalStateException e = thrown()
+        e.cause == cause
+    }
+
+    def "Streamed results can only be read once"() {
+        given:
+        StreamingResults streamed = new StreamingResults(schema, 5000)
+        streamed.complete()
+        streamed.iterator()
+
+        when:
+        streamed.iterator()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "The producer never waits for the reader"() {
+        given: "a reader that hasn't taken anything"
+        StreamingResults streamed = new StreamingResults(schema, 5000)
+
+        when: "many more results are put than a reader would take at once"
+        (1..10000).each { streamed.put(results[it % results.size()]) }
+        streamed.complete()
+
+        then: "they are all held for the reader"
+        streamed.collect().size() == 10000
+    }
+
+    def "Closing the results stops the producer at its next result"() {
+        given:
+        StreamingResults streamed = new StreamingResults(schema, 5000)
+        streamed.put(results[0])
+
+        when:
+        streamed.close()
+        streamed.put(results[1])
+
+        then:
+        thrown(UncheckedIOException)
+    }
+
+    def "The reader gives up when the producer does not put a result in time"() {
+        when:
+        new StreamingResults(schema, 10).iterator().hasNext()
+
+        then:
+        IllegalStateException e = thrown()
+        e.cause instanceof IOException
+    }
+
+    def "Streamed results are a row source, not a list"() {
+        expect: "consumers that need a sized list can't be handed streamed results by mistake"
+        !(new StreamingResults(schema, 10) instanceof List)
+        !(new StreamingResults(schema, 10) instanceof ResultSet)
+    }
+
+    def "Describing the results does not read them"() {
+        given:
+        StreamingResults streamed = new StreamingResults(schema, 10)
+
+        expect:
+        streamed.toString().contains("StreamingResults")
+        streamed.iterator() != null
+    }
+}
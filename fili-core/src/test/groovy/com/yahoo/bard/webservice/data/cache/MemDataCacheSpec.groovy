@@ -0,0 +1,129 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import net.spy.memcached.MemcachedClient
+import net.spy.memcached.internal.GetCompletionListener
+import net.spy.memcached.internal.GetFuture
+import net.spy.memcached.internal.OperationCompletionListener
+import net.spy.memcached.internal.OperationFuture
+import net.spy.memcached.ops.OperationStatus
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class MemDataCacheSpec extends Specification {
+
+    MemcachedClient client = Mock(MemcachedClient)
+    List<OperationCompletionListener> setListeners = []
+
+    /**
+     * Make a write future that memcached answers with the given status once its listener is called.
+     *
+     * @param success  Whether or not memcached stored the value
+     *
+     * @return the write future
+     */
+    OperationFuture<Boolean> makeSetFuture(boolean success) {
+        OperationFuture<Boolean> future = Mock(OperationFuture)
+        future.addListener(_) >> { arguments -> setListeners.add(arguments[0]); future }
+        future.getStatus() >> new OperationStatus(success, success ? "OK" : "NOT_STORED")
+        return future
+    }
+
+    def "Writes that don't wait on memcached are dropped while too many are pending"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<String>(client, 2)
+        OperationFuture<Boolean> future = makeSetFuture(true)
+        long dropped = MemDataCache.WRITES_DROPPED.count
+
+        when:
+        List<Boolean> sent = ["key1", "key2", "key3"].collect { cache.set(it, "value") }
+
+        then: "Only the writes that fit under the bound are sent"
+        1 * client.set("key1", _, "value") >> future
+        1 * client.set("key2", _, "value") >> future
+        0 * client.set("key3", _, _)
+        sent == [true, true, false]
+        MemDataCache.WRITES_DROPPED.count == dropped + 1
+
+        when: "Memcached acknowledges a write"
+        setListeners[0].onComplete(future)
+        boolean sentAfterAcknowledgement = cache.set("key4", "value")
+
+        then: "The next write is sent"
+        1 * client.set("key4", _, "value") >> future
+        sentAfterAcknowledgement
+    }
+
+    def "Writes that memcached fails are counted, and don't hold up later writes"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<String>(client, 1)
+        OperationFuture<Boolean> future = makeSetFuture(false)
+        client.set(_, _, _) >> future
+        long failed = MemDataCache.WRITES_FAILED.count
+
+        when:
+        cache.set("key1", "value")
+        setListeners[0].onComplete(future)
+
+        then:
+        MemDataCache.WRITES_FAILED.count == failed + 1
+        cache.set("key2", "value")
+    }
+
+    def "Writes the client can't queue are dropped instead of failing the caller"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<String>(client, 1)
+        client.set(_, _, _) >> { throw new IllegalStateException("Queue full") } >> makeSetFuture(true)
+
+        expect:
+        !cache.set("key1", "value")
+        cache.set("key2", "value")
+    }
+
+    def "Asynchronous reads complete when memcached answers, and complete empty on errors"() {
+        given:
+        MemDataCache<String> cache = new MemDataCache<String>(client, 0)
+        GetCompletionListener listener = null
+        GetFuture<Object> future = Mock(GetFuture)
+        future.addListener(_) >> { arguments -> listener = arguments[0]; future }
+        client.asyncGet("key") >> future
+        future.get() >> "value" >> { throw new RuntimeException("Timed out") }
+
+        when:
+        CompletableFuture<String> value = cache.getAsync("key")
+
+        then:
+        !value.isDone()
+
+        when:
+        listener.onComplete(future)
+
+        then:
+        value.getNow("missing") == "value"
+
+        when:
+        value = cache.getAsync("key")
+        listener.onComplete(future)
+
+        then:
+        value.getNow("missing") == null
+    }
+
+    def "Asynchronous reads through a hashing cache return the value of the original key only"() {
+        given:
+        DataCache<HashDataCache.Pair<String, String>> pairCache = Mock(DataCache)
+        HashDataCache<String> cache = new HashDataCache<String>(pairCache)
+        pairCache.getAsync(cache.hash("key")) >> CompletableFuture.completedFuture(
+                new HashDataCache.Pair<String, String>("key", "value")
+        )
+        pairCache.getAsync(cache.hash("other")) >> CompletableFuture.completedFuture(
+                new HashDataCache.Pair<String, String>("collision", "value")
+        )
+
+        expect:
+        cache.getAsync("key").get() == "value"
+        cache.getAsync("other").get() == null
+    }
+}
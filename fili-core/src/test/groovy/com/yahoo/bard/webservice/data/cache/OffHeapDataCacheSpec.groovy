@@ -0,0 +1,97 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+class OffHeapDataCacheSpec extends Specification {
+
+    def "Values are read back as copies of the values written"() {
+        given:
+        OffHeapDataCache<TupleDataCache.DataEntry<String, Long, String>> cache = new OffHeapDataCache<>(1024 * 1024)
+        TupleDataCache.DataEntry<String, Long, String> entry = new MemTupleDataCache.DataEntry<String>(
+                "key",
+                1234L,
+                '[{"version":"v1","event":{"color":"Baz"}}]'
+        )
+
+        when:
+        boolean stored = cache.set("key", entry)
+        TupleDataCache.DataEntry<String, Long, String> cached = cache.get("key")
+
+        then:
+        stored
+        !cached.is(entry)
+        cached.key == "key"
+        cached.meta == 1234L
+        cached.value == entry.value
+        cache.get("missing") == null
+    }
+
+    def "Values are stored compressed"() {
+        given: "A cache too small for a single uncompressed value"
+        OffHeapDataCache<String> cache = new OffHeapDataCache<>(10 * 1024)
+        String value = '{"color":"Baz","width":9}' * 1000
+
+        when:
+        cache.set("key", value)
+
+        then:
+        cache.get("key") == value
+    }
+
+    def "The cache evicts values to stay within its bound"() {
+        given:
+        OffHeapDataCache<String> cache = new OffHeapDataCache<>(4 * 1024)
+
+        when:
+        (1..100).each { cache.set("key$it" as String, UUID.randomUUID().toString() * 4) }
+
+        then:
+        0 < cache.size()
+        cache.size() < 100
+    }
+
+    def "A value is not cached when direct memory runs out"() {
+        given: "A cache whose second allocation finds direct memory exhausted"
+        int allocations = 0
+        OffHeapDataCache<String> cache = new OffHeapDataCache<String>(1024 * 1024) {
+            @Override
+            protected ByteBuffer allocate(int capacity) {
+                if (++allocations == 2) {
+                    throw new OutOfMemoryError("Direct buffer memory")
+                }
+                return super.allocate(capacity)
+            }
+        }
+        cache.set("key", "old")
+
+        when:
+        boolean stored = cache.set("key", "new")
+
+        then: "The error doesn't escape, and the older value is not served"
+        !stored
+        cache.get("key") == null
+
+        when:
+        stored = cache.set("key", "newer")
+
+        then:
+        stored
+        cache.get("key") == "newer"
+    }
+
+    def "Clearing the cache drops every value"() {
+        given:
+        OffHeapDataCache<String> cache = new OffHeapDataCache<>(1024 * 1024)
+        cache.set("key", "value")
+
+        when:
+        cache.clear()
+
+        then:
+        cache.get("key") == null
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.cache
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class TieredDataCacheSpec extends Specification {
+
+    DataCache<String> localCache = new OffHeapDataCache<>(1024 * 1024)
+    DataCache<String> remoteCache = Mock(DataCache)
+    TieredDataCache<String> cache = new TieredDataCache<>(localCache, remoteCache)
+
+    def "Remote hits are copied to the local cache, which answers later reads"() {
+        given:
+        long localHits = TieredDataCache.LOCAL_HITS.count
+        long remoteHits = TieredDataCache.REMOTE_HITS.count
+
+        when:
+        List<String> values = (1..3).collect { cache.get("key") }
+
+        then:
+        1 * remoteCache.get("key") >> "value"
+        values == ["value"] * 3
+        localCache.get("key") == "value"
+        TieredDataCache.LOCAL_HITS.count == localHits + 2
+        TieredDataCache.REMOTE_HITS.count == remoteHits + 1
+    }
+
+    def "Remote misses are not cached locally"() {
+        given:
+        long remoteMisses = TieredDataCache.REMOTE_MISSES.count
+
+        when:
+        cache.get("key")
+        cache.get("key")
+
+        then:
+        2 * remoteCache.get("key") >> null
+        TieredDataCache.REMOTE_MISSES.count == remoteMisses + 2
+    }
+
+    def "Asynchronous reads only wait on the remote cache on a local miss"() {
+        when:
+        String value = cache.getAsync("key").get()
+        String cachedValue = cache.getAsync("key").get()
+
+        then:
+        1 * remoteCache.getAsync("key") >> CompletableFuture.completedFuture("value")
+        value == "value"
+        cachedValue == "value"
+    }
+
+    def "Writes go to both tiers"() {
+        when:
+        boolean stored = cache.set("key", "value")
+
+        then:
+        1 * remoteCache.set("key", "value") >> true
+        stored
+        localCache.get("key") == "value"
+    }
+
+    def "Tuple entries are cached locally with their metadata, and rewritten in both tiers"() {
+        given:
+        TupleDataCache<String, Long, String> remoteTupleCache = Mock(TupleDataCache)
+        TieredTupleDataCache<String> tupleCache = new TieredTupleDataCache<>(
+                new OffHeapDataCache<TupleDataCache.DataEntry<String, Long, String>>(1024 * 1024),
+                remoteTupleCache
+        )
+        TupleDataCache.DataEntry<String, Long, String> entry = new MemTupleDataCache.DataEntry<String>(
+                "key",
+                1234L,
+                "[]"
+        )
+
+        when:
+        tupleCache.get("key")
+        TupleDataCache.DataEntry<String, Long, String> cached = tupleCache.get("key")
+
+        then:
+        1 * remoteTupleCache.get("key") >> entry
+        cached.meta == 1234L
+        tupleCache.getDataValue("key") == "[]"
+
+        when: "The entry is rewritten for new segment metadata"
+        tupleCache.set("key", 5678L, "[{}]")
+
+        then:
+        1 * remoteTupleCache.set("key", 5678L, "[{}]") >> true
+        tupleCache.get("key").meta == 5678L
+        tupleCache.getDataValue("key") == "[{}]"
+    }
+}
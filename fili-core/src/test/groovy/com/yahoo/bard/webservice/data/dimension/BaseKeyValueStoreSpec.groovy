@@ -119,6 +119,25 @@ abstract class BaseKeyValueStoreSpec extends Specification {
         "value1" == store1.get("key1")
     }
 
+    def "getAll returns the values of the keys that are set"() {
+        given:
+        store1.putAll(["key1": "value1", "key3": "value3"])
+
+        expect: 'unset keys are left out, and the rest follow the order of the requested keys'
+        store1.getAll(["key3", "key2", "key1"]) == ["key3": "value3", "key1": "value1"]
+        store1.getAll(["key3", "key2", "key1"]).keySet() as List == ["key3", "key1"]
+        store1.getAll([]).isEmpty()
+    }
+
+    def "getAll reads more keys than fit in a single batch"() {
+        given:
+        Map<String, String> entries = (1..2500).collectEntries { ["key$it" as String, "value$it" as String] }
+        store1.putAll(entries)
+
+        expect:
+        store1.getAll(entries.keySet() + "missing") == entries
+    }
+
     def "putAll puts all keys"() {
         Map<String, String> entries = [
             "key1": "value1",
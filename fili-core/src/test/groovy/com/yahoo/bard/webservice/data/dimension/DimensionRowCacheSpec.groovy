@@ -0,0 +1,193 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import com.yahoo.bard.webservice.data.dimension.impl.KeyValueStoreDimension
+import com.yahoo.bard.webservice.data.dimension.impl.ScanSearchProviderManager
+
+import com.google.common.base.Ticker
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+import java.util.function.Function
+
+class DimensionRowCacheSpec extends Specification {
+
+    Dimension dimension
+    DimensionRow one
+    DimensionRow two
+
+    def setup() {
+        dimension = new KeyValueStoreDimension(
+                "rowCacheDimension",
+                "rowCacheDimension",
+                [BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet,
+                MapStoreManager.getInstance("rowCacheDimension"),
+                ScanSearchProviderManager.getInstance("rowCacheDimension")
+        )
+        one = BardDimensionField.makeDimensionRow(dimension, "1", "one")
+        two = BardDimensionField.makeDimensionRow(dimension, "2", "two")
+    }
+
+    def cleanup() {
+        MapStoreManager.removeInstance("rowCacheDimension")
+        ScanSearchProviderManager.removeInstance("rowCacheDimension")
+    }
+
+    def "Rows, and key values without a row, are only loaded once"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(10, 0)
+        Function<String, DimensionRow> loader = Mock(Function)
+
+        when:
+        List<DimensionRow> rows = (1..3).collect { [cache.get(dimension, "1", loader), cache.get(dimension, "3", loader)] }
+
+        then:
+        1 * loader.apply("1") >> one
+        1 * loader.apply("3") >> null
+        rows == [[one, null]] * 3
+        cache.size() == 2
+    }
+
+    def "Batched lookups only load the key values that are not cached"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(10, 0)
+        cache.get(dimension, "1", { one } as Function)
+        Function<Collection<String>, Map<String, DimensionRow>> loader = Mock(Function)
+
+        when:
+        Map<String, DimensionRow> rows = cache.getAll(dimension, ["2", "1", "3"], loader)
+
+        then:
+        1 * loader.apply(["2", "3"]) >> ["2": two]
+        rows == ["2": two, "1": one]
+        rows.keySet() as List == ["2", "1"]
+
+        when:
+        rows = cache.getAll(dimension, ["3", "2"], loader)
+
+        then:
+        0 * loader.apply(_)
+        rows == ["2": two]
+    }
+
+    def "Invalidated rows are loaded again"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(10, 0)
+        Function<String, DimensionRow> loader = Mock(Function)
+        cache.get(dimension, "1", { one } as Function)
+        cache.get(dimension, "2", { two } as Function)
+
+        when:
+        cache.invalidate(dimension, ["1"])
+        cache.get(dimension, "1", loader)
+        cache.get(dimension, "2", loader)
+
+        then:
+        1 * loader.apply("1") >> one
+        0 * loader.apply("2")
+
+        when:
+        cache.invalidateAll(dimension)
+
+        then:
+        cache.size() == 0
+    }
+
+    def "A row loaded while the cache is invalidated is not cached"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(10, 0)
+
+        when: "The row is invalidated after it was read from the store, but before it was cached"
+        cache.get(dimension, "1", { cache.invalidate(dimension, ["1"]); one } as Function)
+
+        then:
+        cache.size() == 0
+    }
+
+    def "A row invalidated while it is being put in the cache does not stay cached"() {
+        given: "A clock that invalidates the row when it is read, as it is when the row is put"
+        boolean invalidateOnTick = false
+        DimensionRowCache cache
+        Ticker ticker = {
+            if (invalidateOnTick) {
+                invalidateOnTick = false
+                cache.invalidate(dimension, ["1"])
+            }
+            0L
+        } as Ticker
+        cache = new DimensionRowCache(10, 0, 60, ticker)
+        Function<String, DimensionRow> loader = Mock(Function)
+
+        when: "The row is invalidated after the cache was checked for invalidations, but before the row was cached"
+        cache.get(dimension, "1", { invalidateOnTick = true; one } as Function)
+
+        then:
+        cache.size() == 0
+
+        when:
+        cache.get(dimension, "1", loader)
+
+        then:
+        1 * loader.apply("1") >> one
+    }
+
+    def "Rows are loaded again once they have been cached for longer than the time to live"() {
+        given: "A clock that is moved by hand"
+        long nanos = 0
+        Ticker ticker = { nanos } as Ticker
+        DimensionRowCache cache = new DimensionRowCache(10, 0, 60, ticker)
+        Function<String, DimensionRow> loader = Mock(Function)
+
+        when:
+        cache.get(dimension, "1", loader)
+        nanos += TimeUnit.SECONDS.toNanos(59)
+        cache.get(dimension, "1", loader)
+
+        then: "The row is still fresh"
+        1 * loader.apply("1") >> one
+
+        when:
+        nanos += TimeUnit.SECONDS.toNanos(2)
+        cache.get(dimension, "1", loader)
+
+        then: "The row has expired"
+        1 * loader.apply("1") >> one
+    }
+
+    @Unroll
+    def "A cache bounded to #maxEntries entries or #maxBytes bytes evicts rows"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(maxEntries, maxBytes)
+        long evictions = DimensionRowCache.CACHE_EVICTIONS.count
+
+        when:
+        (1..100).each { cache.get(dimension, it as String, { one } as Function) }
+
+        then:
+        cache.size() < 100
+        DimensionRowCache.CACHE_EVICTIONS.count - evictions == 100 - cache.size()
+
+        where:
+        maxEntries | maxBytes
+        10         | 0
+        0          | 2000
+    }
+
+    def "A cache without bounds is disabled"() {
+        given:
+        DimensionRowCache cache = new DimensionRowCache(0, 0)
+        Function<String, DimensionRow> loader = Mock(Function)
+
+        when:
+        cache.get(dimension, "1", loader)
+        cache.get(dimension, "1", loader)
+
+        then:
+        !cache.isEnabled()
+        2 * loader.apply("1") >> one
+        cache.size() == 0
+    }
+}
@@ -0,0 +1,66 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PositionalDimensionRowCodecSpec extends Specification {
+
+    DimensionRowCodec codec = new PositionalDimensionRowCodec()
+    Dimension dimension = Mock(Dimension)
+
+    def setup() {
+        dimension.getKey() >> BardDimensionField.ID
+        dimension.getDimensionFields() >> ([BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet)
+        dimension.parseDimensionRow(_) >> { Map<String, String> fieldNameValueMap ->
+            BardDimensionField.makeDimensionRow(dimension, fieldNameValueMap.id, fieldNameValueMap.desc ?: "")
+        }
+    }
+
+    @Unroll
+    def "The row #id, #desc is encoded as #encoded and read back"() {
+        given:
+        DimensionRow row = BardDimensionField.makeDimensionRow(dimension, id, desc)
+
+        expect:
+        codec.encode(dimension, row) == encoded
+        codec.decode(dimension, encoded) == row
+        new JsonDimensionRowCodec().decode(dimension, encoded) == row
+
+        where:
+        id      | desc                 | encoded
+        "1"     | "one"                | "\u00011:13:one"
+        ""      | ""                   | "\u00010:0:"
+        "12:3"  | "a 10:b \u00e9\u4e2d" | "\u00014:12:39:a 10:b \u00e9\u4e2d"
+        "{x}"   | "\u0001"             | "\u00013:{x}1:\u0001"
+    }
+
+    def "Rows written as JSON are read"() {
+        expect:
+        codec.decode(dimension, '{"id": "1", "desc": "one"}') == BardDimensionField.makeDimensionRow(dimension, "1", "one")
+    }
+
+    def "Fields added to the dimension after a row was written are read as empty"() {
+        given:
+        Dimension narrowDimension = Mock(Dimension)
+        narrowDimension.getKey() >> BardDimensionField.ID
+        narrowDimension.getDimensionFields() >> ([BardDimensionField.ID] as LinkedHashSet)
+
+        expect:
+        codec.decode(dimension, codec.encode(narrowDimension, BardDimensionField.makeDimensionRow(dimension, "1"))) ==
+                BardDimensionField.makeDimensionRow(dimension, "1", "")
+    }
+
+    @Unroll
+    def "The malformed row #encoded is rejected"() {
+        when:
+        codec.decode(dimension, encoded)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        encoded << ["\u0001", "\u00015:1", "\u0001x:1", "\u00011"]
+    }
+}
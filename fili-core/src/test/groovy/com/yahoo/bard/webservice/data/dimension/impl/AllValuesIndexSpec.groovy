@@ -0,0 +1,77 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.dimension.impl
+
+import com.yahoo.bard.webservice.data.dimension.KeyValueStore
+import com.yahoo.bard.webservice.data.dimension.MapStore
+import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
+
+import spock.lang.Specification
+
+class AllValuesIndexSpec extends Specification {
+
+    KeyValueStore store = new MapStore()
+    AllValuesIndex index = new AllValuesIndex(store)
+
+    List<String> rowKeys(IntRange range) {
+        range.collect { "id_${it}_row_key" as String }
+    }
+
+    def "Row keys are stored in chunks, and only the last chunk is rewritten"() {
+        given:
+        int size = AllValuesIndex.CHUNK_SIZE
+
+        when:
+        index.addRowKeys(rowKeys(1..size + 1))
+
+        then:
+        store.get(DimensionStoreKeyUtils.getAllValuesChunksKey()) == "2"
+        store.get(DimensionStoreKeyUtils.getAllValuesKey(1)) == '["id_' + (size + 1) + '_row_key"]'
+
+        when:
+        String firstChunk = store.get(DimensionStoreKeyUtils.getAllValuesKey())
+        index.addRowKeys(rowKeys(size + 2..size + 3))
+
+        then:
+        store.get(DimensionStoreKeyUtils.getAllValuesKey()).is(firstChunk)
+        index.getRowKeys() == rowKeys(1..size + 3)
+    }
+
+    def "Row keys already in the last chunk are not added again"() {
+        when:
+        index.addRowKeys(rowKeys(1..2))
+        index.addRowKeys(rowKeys(2..3))
+
+        then:
+        index.getRowKeys() == rowKeys(1..3)
+    }
+
+    def "A list stored as a single value is read, and added to"() {
+        given:
+        store.put(DimensionStoreKeyUtils.getAllValuesKey(), '["id_1_row_key", "id_2_row_key"]')
+
+        expect:
+        index.getRowKeys() == rowKeys(1..2)
+
+        when:
+        index.addRowKeys(rowKeys(3..3))
+
+        then:
+        index.getRowKeys() == rowKeys(1..3)
+    }
+
+    def "Clearing the index leaves a single empty chunk"() {
+        given:
+        index.addRowKeys(rowKeys(1..AllValuesIndex.CHUNK_SIZE * 2 + 1))
+
+        when:
+        index.clear()
+
+        then:
+        index.getRowKeys().isEmpty()
+        store.get(DimensionStoreKeyUtils.getAllValuesKey()) == "[]"
+        store.get(DimensionStoreKeyUtils.getAllValuesKey(1)) == null
+        store.get(DimensionStoreKeyUtils.getAllValuesKey(2)) == null
+        store.get(DimensionStoreKeyUtils.getAllValuesChunksKey()) == null
+    }
+}
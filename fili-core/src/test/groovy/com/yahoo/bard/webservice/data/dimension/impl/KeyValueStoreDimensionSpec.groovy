@@ -4,10 +4,16 @@ package com.yahoo.bard.webservice.data.dimension.impl
 
 import com.yahoo.bard.webservice.data.config.dimension.DimensionBackend
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
+import com.yahoo.bard.webservice.data.dimension.Dimension
 import com.yahoo.bard.webservice.data.dimension.DimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCache
+import com.yahoo.bard.webservice.data.dimension.DimensionRowCodec
+import com.yahoo.bard.webservice.data.dimension.JsonDimensionRowCodec
 import com.yahoo.bard.webservice.data.dimension.KeyValueStore
+import com.yahoo.bard.webservice.data.dimension.MapStore
 import com.yahoo.bard.webservice.data.dimension.MapStoreManager
+import com.yahoo.bard.webservice.data.dimension.PositionalDimensionRowCodec
 import com.yahoo.bard.webservice.data.dimension.RedisStoreManager
 import com.yahoo.bard.webservice.data.dimension.SearchProvider
 import com.yahoo.bard.webservice.web.ApiFilter
@@ -97,6 +103,93 @@ class KeyValueStoreDimensionSpec extends Specification {
         kvsDimension.parseDimensionRow(m) == dimensionRow1
     }
 
+    def "findDimensionRowsByKeyValues returns the rows that exist"() {
+        expect:
+        kvsDimension.findDimensionRowsByKeyValues(["row3", "missing", "row1"]) ==
+                ["row3": dimensionRow3, "row1": dimensionRow1]
+    }
+
+    def "The row cache decodes each row once, and drops rows when they are updated"() {
+        given:
+        KeyValueStore store = Spy(MapStore)
+        KeyValueStoreDimension cachedDimension = new KeyValueStoreDimension(
+                "cachedPlatform",
+                "cachedPlatform",
+                Dimension.DEFAULT_CATEGORY,
+                "cachedPlatform-description",
+                [BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet,
+                store,
+                ScanSearchProviderManager.getInstance("cachedPlatform"),
+                new LinkedHashSet<DimensionField>(),
+                true,
+                new DimensionRowCache(10, 0),
+                new JsonDimensionRowCodec()
+        )
+        DimensionRow row = BardDimensionField.makeDimensionRow(cachedDimension, "row1", "this is a row")
+        DimensionRow updatedRow = BardDimensionField.makeDimensionRow(cachedDimension, "row1", "updated row")
+        cachedDimension.addDimensionRow(row)
+
+        when:
+        List<DimensionRow> rows = (1..3).collect { cachedDimension.findDimensionRowByKeyValue("row1") }
+
+        then:
+        1 * store.get("id_row1_row_key")
+        rows == [row] * 3
+
+        when: "The row is also looked up under a key value that differs in case"
+        cachedDimension.findDimensionRowByKeyValue("ROW1")
+        cachedDimension.addDimensionRow(updatedRow)
+
+        then:
+        cachedDimension.findDimensionRowByKeyValue("row1") == updatedRow
+        cachedDimension.findDimensionRowsByKeyValues(["ROW1", "row2"]) == ["ROW1": updatedRow]
+
+        when:
+        cachedDimension.deleteAllDimensionRows()
+
+        then:
+        cachedDimension.findDimensionRowByKeyValue("row1") == null
+
+        cleanup:
+        ScanSearchProviderManager.removeInstance("cachedPlatform")
+    }
+
+    def "Rows stored as JSON are read, and migrated, by a dimension storing positional rows"() {
+        given: "A store holding rows written as JSON"
+        KeyValueStore store = MapStoreManager.getInstance("migratedPlatform")
+        LinkedHashSet<DimensionField> fields = [BardDimensionField.ID, BardDimensionField.DESC] as LinkedHashSet
+        KeyValueStoreDimension jsonDimension = buildDimension("migratedPlatform", fields, store, new JsonDimensionRowCodec())
+        DimensionRow row = BardDimensionField.makeDimensionRow(jsonDimension, "row1", "this is a row")
+        jsonDimension.addDimensionRow(row)
+
+        and: "A dimension over the same store that writes positional rows"
+        KeyValueStoreDimension positionalDimension = buildDimension(
+                "migratedPlatform",
+                fields,
+                store,
+                new PositionalDimensionRowCodec()
+        )
+
+        expect: "The JSON rows are read"
+        store.get("id_row1_row_key").startsWith("{")
+        positionalDimension.findDimensionRowByKeyValue("row1") == row
+        positionalDimension.searchProvider.findAllDimensionRows() == [row] as Set
+
+        when:
+        int migrated = positionalDimension.migrateDimensionRows()
+
+        then: "The rows are rewritten in the positional format, and are still read by both dimensions"
+        migrated == 1
+        PositionalDimensionRowCodec.isPositional(store.get("id_row1_row_key"))
+        positionalDimension.findDimensionRowByKeyValue("row1") == row
+        jsonDimension.findDimensionRowByKeyValue("row1") == row
+        positionalDimension.migrateDimensionRows() == 0
+
+        cleanup:
+        MapStoreManager.removeInstance("migratedPlatform")
+        ScanSearchProviderManager.removeInstance("migratedPlatform")
+    }
+
     def "findAllDimensionRows returns all rows"() {
         expect:
         searchProvider.findAllDimensionRows() == [dimensionRow1, dimensionRow2, dimensionRow3] as Set
@@ -187,4 +280,25 @@ class KeyValueStoreDimensionSpec extends Specification {
         threads.each { it.join(10000) }
         threads.each { if ( it.cause != null ) throw it.cause }
     }
+
+    KeyValueStoreDimension buildDimension(
+            String name,
+            LinkedHashSet<DimensionField> fields,
+            KeyValueStore store,
+            DimensionRowCodec codec
+    ) {
+        return new KeyValueStoreDimension(
+                name,
+                name,
+                Dimension.DEFAULT_CATEGORY,
+                name,
+                fields,
+                store,
+                ScanSearchProviderManager.getInstance(name),
+                new LinkedHashSet<DimensionField>(),
+                true,
+                new DimensionRowCache(0, 0),
+                codec
+        )
+    }
 }
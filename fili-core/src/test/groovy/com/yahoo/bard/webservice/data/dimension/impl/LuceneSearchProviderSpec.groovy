@@ -2,15 +2,26 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.data.dimension.impl
 
+import static com.yahoo.bard.webservice.data.dimension.BardDimensionField.DESC
+import static com.yahoo.bard.webservice.data.dimension.BardDimensionField.ID
+import static com.yahoo.bard.webservice.data.dimension.BardDimensionField.makeDimensionRow
+
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.DimensionRow
+import com.yahoo.bard.webservice.data.dimension.MapStoreManager
 import com.yahoo.bard.webservice.util.DimensionStoreKeyUtils
+import com.yahoo.bard.webservice.util.Utils
 import com.yahoo.bard.webservice.web.util.PaginationParameters
 import com.yahoo.bard.webservice.web.RowLimitReachedException
 import com.yahoo.bard.webservice.web.util.PaginationParameters
 
+import org.apache.lucene.index.DirectoryReader
+import org.apache.lucene.search.IndexSearcher
+import org.apache.lucene.search.SearcherManager
 import org.apache.lucene.store.FSDirectory
 
+import java.util.concurrent.TimeUnit
+
 /**
  * Specification for behavior specific to the LuceneSearchProvider
  */
@@ -76,6 +87,129 @@ class LuceneSearchProviderSpec extends SearchProviderSpec<LuceneSearchProvider>
         thrown RowLimitReachedException
     }
 
+    def "Changes are searchable as soon as they are made, and on disk once they are committed"() {
+        given: "A provider that doesn't commit in the background during the test"
+        String indexPath = "./target/tmp/dimensionCache/nrtAnimal/lucene_indexes/"
+        LuceneSearchProvider provider = new LuceneSearchProvider(indexPath, rowLimit, TimeUnit.HOURS.toMillis(1))
+        KeyValueStoreDimension dimension = new KeyValueStoreDimension(
+                "nrtAnimal",
+                "nrtAnimal",
+                [ID, DESC] as LinkedHashSet,
+                MapStoreManager.getInstance("nrtAnimal"),
+                provider
+        )
+        DimensionRow badger = makeDimensionRow(dimension, "badger", "mushroom")
+
+        when:
+        dimension.addDimensionRow(badger)
+
+        then:
+        provider.findAllDimensionRows() == [badger] as Set
+        committedRowCount(provider) == 0
+
+        when:
+        provider.commit()
+
+        then:
+        committedRowCount(provider) == 1
+
+        cleanup:
+        provider.close()
+        MapStoreManager.removeInstance("nrtAnimal")
+        Utils.deleteFiles(indexPath)
+    }
+
+    def "replaceIndex replaces all of the indexed rows"() {
+        given:
+        List<DimensionRow> newRows = [dimensionRow1, dimensionRow2]
+
+        when:
+        searchProvider.replaceIndex(newRows)
+
+        then:
+        searchProvider.findAllDimensionRows() == newRows as Set
+        searchProvider.dimensionCardinality == 2
+        committedRowCount(searchProvider) == 2
+    }
+
+    def "A search in progress keeps its view of the index while the index changes"() {
+        given:
+        SearcherManager manager = searchProvider.searcherManager
+        IndexSearcher indexSearcher = manager.acquire()
+
+        when:
+        searchProvider.replaceIndex([dimensionRow1])
+
+        then:
+        indexSearcher.indexReader.numDocs() == dimensionRows.size()
+        searchProvider.dimensionCardinality == 1
+
+        cleanup:
+        manager.release(indexSearcher)
+    }
+
+    def "A closed provider opens its index again when it is used"() {
+        when:
+        searchProvider.close()
+
+        then:
+        searchProvider.findAllDimensionRows() == dimensionRows as Set
+    }
+
+    def "Pages are searched from the cursors left by earlier pages of the same query, until the index changes"() {
+        given:
+        int perPage = 3
+        int pages = Math.ceil(dimensionRows.size() / perPage) as int
+
+        when: "The pages are requested in reverse, after the first one"
+        List<DimensionRow> rows = []
+        rows.addAll(searchProvider.findAllDimensionRowsPaged(new PaginationParameters(perPage, 1)).pageOfData)
+        (pages..2).each {
+            rows.addAll(searchProvider.findAllDimensionRowsPaged(new PaginationParameters(perPage, it)).pageOfData)
+        }
+
+        then: "Every row is found once, and all of the pages shared the cursors of a single query"
+        rows.size() == dimensionRows.size()
+        rows as Set == dimensionRows as Set
+        searchProvider.queryCursorCache.size() == 1
+        searchProvider.queryCursorCache.asMap().values().first().cursors.size() == pages
+
+        when:
+        keyValueStoreDimension.addDimensionRow(makeDimensionRow(keyValueStoreDimension, "badger", "mushroom"))
+
+        then:
+        searchProvider.queryCursorCache.size() == 0
+    }
+
+    def "The key values of rows are kept as doc values"() {
+        given:
+        String idKey = DimensionStoreKeyUtils.getColumnKey(ID.name)
+        SearcherManager manager = searchProvider.searcherManager
+        IndexSearcher indexSearcher = manager.acquire()
+
+        expect:
+        indexSearcher.indexReader.leaves().every { it.reader().getSortedDocValues(idKey) != null }
+
+        cleanup:
+        manager.release(indexSearcher)
+    }
+
+    /**
+     * Count the rows in the last commit of a provider's index.
+     *
+     * @param provider  The provider to count the committed rows of
+     *
+     * @return the number of committed rows
+     */
+    int committedRowCount(LuceneSearchProvider provider) {
+        DirectoryReader reader = DirectoryReader.open(provider.luceneDirectory)
+        try {
+            return reader.numDocs()
+        } finally {
+            reader.close()
+        }
+    }
+
     @Override
     boolean indicesHaveBeenCleared() {
         //A file is a Lucene index file iff it has one of the following extensions
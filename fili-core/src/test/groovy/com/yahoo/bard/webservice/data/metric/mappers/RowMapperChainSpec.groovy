@@ -0,0 +1,79 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.data.metric.mappers
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.Result
+import com.yahoo.bard.webservice.data.ResultSet
+import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.table.Schema
+
+import org.joda.time.DateTime
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class RowMapperChainSpec extends Specification {
+
+    Schema schema = new Schema(DAY)
+    MetricColumn count = MetricColumn.addNewMetricColumn(schema, "count")
+
+    List<Result> results = (1..6).collect {
+        new Result([:], [(count): new BigDecimal(it)], new DateTime(it * 1000L))
+    }
+
+    /**
+     * Removes the results with odd counts, and doubles the others.
+     */
+    class EvenDoublingMapper extends ResultSetMapper {
+        @Override
+        protected Result map(Result result, Schema schema) {
+            MetricColumn column = schema.getColumn("count", MetricColumn.class)
+            BigDecimal value = result.getMetricValueAsNumber(column)
+            return value.intValue() % 2 == 0 ? result.withMetricValue(column, value * 2) : null
+        }
+
+        @Override
+        protected Schema map(Schema schema) {
+            return schema
+        }
+    }
+
+    def "Mapping each row through the chain matches mapping the result set through each mapper"() {
+        given:
+        List<ResultSetMapper> mappers = [new NoOpResultSetMapper(), new EvenDoublingMapper()]
+        ResultSet expected = mappers.inject(new ResultSet(results, schema)) { rs, mapper -> mapper.map(rs) }
+
+        when:
+        RowMapperChain chain = new RowMapperChain(mappers, schema)
+        List<Result> mapped = results.collect { chain.map(it) }.findAll { it != null }
+
+        then:
+        mapped == expected
+        chain.getSchema() == expected.getSchema()
+    }
+
+    @Unroll
+    def "#mapper.class.simpleName is row local: #rowLocal"() {
+        expect:
+        mapper.isRowLocal() == rowLocal
+
+        where:
+        mapper                                          | rowLocal
+        new EvenDoublingMapper()                        | true
+        new NoOpResultSetMapper()                       | true
+        new PartialDataResultSetMapper(null, null)      | true
+        new RowNumMapper()                              | false
+        new TopNResultSetMapper(5)                      | false
+        new PaginationMapper(null, null, null)          | false
+    }
+
+    def "A chain can't hold a mapper that needs the whole result set"() {
+        when:
+        new RowMapperChain([new RowNumMapper()], schema)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
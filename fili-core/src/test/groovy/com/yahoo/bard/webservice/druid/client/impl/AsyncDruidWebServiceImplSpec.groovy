@@ -0,0 +1,191 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+import com.yahoo.bard.webservice.druid.model.query.DruidQuery
+import com.yahoo.bard.webservice.druid.model.query.QueryContext
+import com.yahoo.bard.webservice.web.handlers.RequestContext
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectWriter
+
+import org.asynchttpclient.AsyncCompletionHandler
+import org.asynchttpclient.AsyncHttpClient
+import org.asynchttpclient.BoundRequestBuilder
+import org.asynchttpclient.ListenableFuture
+import org.asynchttpclient.Response
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CancellationException
+
+class AsyncDruidWebServiceImplSpec extends Specification {
+
+    DruidServiceConfig serviceConfig = new DruidServiceConfig("Broker", "http://a,http://b", 1000, 1)
+    AsyncHttpClient client = Mock(AsyncHttpClient)
+    ObjectMapper mapper = Mock(ObjectMapper)
+
+    BoundRequestBuilder primaryRequest = Mock(BoundRequestBuilder)
+    BoundRequestBuilder hedgeRequest = Mock(BoundRequestBuilder)
+    ListenableFuture<Response> primaryFuture = Mock(ListenableFuture)
+    ListenableFuture<Response> hedgeFuture = Mock(ListenableFuture)
+    AsyncCompletionHandler<Response> primaryHandler
+    AsyncCompletionHandler<Response> hedgeHandler
+
+    RequestContext context = new RequestContext(null, false)
+    DruidQuery<?> query = Mock(DruidQuery)
+
+    SuccessCallback success = Mock(SuccessCallback)
+    HttpErrorCallback error = Mock(HttpErrorCallback)
+    FailureCallback failure = Mock(FailureCallback)
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def setup() {
+        ObjectWriter writer = Mock(ObjectWriter)
+        writer.writeValueAsString(_) >> "{}"
+        mapper.writer() >> writer
+
+        QueryContext queryContext = Mock(QueryContext)
+        queryContext.getSequenceNumber() >> 0
+        queryContext.getNumberOfQueries() >> 1
+        query.getContext() >> queryContext
+
+        client.preparePost("http://a") >> primaryRequest
+        client.preparePost("http://b") >> hedgeRequest
+        [primaryRequest, hedgeRequest].each {
+            it.setBody(_ as String) >> it
+            it.addHeader(_, _) >> it
+        }
+        primaryRequest.execute(_) >> { primaryHandler = it[0]; primaryFuture }
+        hedgeRequest.execute(_) >> { hedgeHandler = it[0]; hedgeFuture }
+    }
+
+    AsyncDruidWebServiceImpl buildWebService(long hedgeDelayMillis) {
+        return new AsyncDruidWebServiceImpl(serviceConfig, client, mapper, 50) {
+            @Override
+            protected long getHedgeDelayNanos() {
+                return hedgeDelayMillis * 1000000
+            }
+        }
+    }
+
+    Response response(int statusCode) {
+        Response response = Mock(Response)
+        response.getStatusCode() >> statusCode
+        response.getResponseBodyAsStream() >> { new ByteArrayInputStream("[]".bytes) }
+        response.getResponseBody() >> ""
+        return response
+    }
+
+    def "A query a broker is slow to answer is hedged on the next broker, and the first answer wins"() {
+        given:
+        AsyncDruidWebServiceImpl webService = buildWebService(1)
+        long hedges = AsyncDruidWebServiceImpl.HEDGES.count
+        long hedgeWins = AsyncDruidWebServiceImpl.HEDGE_WINS.count
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        conditions.eventually {
+            assert hedgeHandler != null
+        }
+        AsyncDruidWebServiceImpl.HEDGES.count == hedges + 1
+
+        when:
+        hedgeHandler.onCompleted(response(200))
+
+        then:
+        1 * success.invoke(_)
+        1 * primaryFuture.cancel(true)
+        AsyncDruidWebServiceImpl.HEDGE_WINS.count == hedgeWins + 1
+        context.getNumberOfIncoming().get() == 0
+
+        when: "The cancelled request finishes"
+        primaryHandler.onThrowable(new CancellationException())
+
+        then: "Nothing is reported twice"
+        0 * success.invoke(_)
+        0 * failure.invoke(_)
+        context.getNumberOfIncoming().get() == 0
+    }
+
+    def "A query answered before the hedge delay is not hedged"() {
+        given:
+        AsyncDruidWebServiceImpl webService = buildWebService(50)
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+        primaryHandler.onCompleted(response(200))
+        Thread.sleep(200)
+
+        then:
+        1 * success.invoke(_)
+        0 * hedgeRequest.execute(_)
+        context.getNumberOfIncoming().get() == 0
+    }
+
+    def "A retried query is only counted as sent by its first attempt"() {
+        given:
+        AsyncDruidWebServiceImpl webService = buildWebService(50)
+        webService.postDruidQuery(context, success, error, failure, query)
+        primaryHandler.onThrowable(new IOException("broker went away"))
+        RequestContext retryContext = new RequestContext(context)
+        context.getNumberOfIncoming().incrementAndGet()
+
+        when:
+        webService.postDruidQuery(retryContext, success, error, failure, query)
+        primaryHandler.onCompleted(response(200))
+
+        then:
+        1 * success.invoke(_)
+        context.getNumberOfOutgoing().get() == 0
+        context.getNumberOfIncoming().get() == 0
+    }
+
+    def "An error is only reported once neither broker can answer"() {
+        given:
+        AsyncDruidWebServiceImpl webService = buildWebService(1)
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+        conditions.eventually {
+            assert hedgeHandler != null
+        }
+        primaryHandler.onCompleted(response(500))
+
+        then:
+        0 * error.invoke(*_)
+        context.getNumberOfIncoming().get() == 1
+
+        when:
+        hedgeHandler.onThrowable(new IOException())
+
+        then:
+        1 * failure.invoke(_ as IOException)
+        0 * error.invoke(*_)
+        context.getNumberOfIncoming().get() == 0
+    }
+
+    def "A query is not hedged without a hedge percentile"() {
+        given:
+        AsyncDruidWebServiceImpl webService = new AsyncDruidWebServiceImpl(serviceConfig, client, mapper, 0)
+
+        expect:
+        webService.getHedgeDelayNanos() == 0
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+        primaryHandler.onCompleted(response(503))
+
+        then:
+        0 * client.preparePost("http://b")
+        1 * error.invoke(503, _, _)
+    }
+}
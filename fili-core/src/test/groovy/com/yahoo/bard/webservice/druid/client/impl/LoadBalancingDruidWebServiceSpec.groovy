@@ -0,0 +1,287 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.druid.client.impl
+
+import com.yahoo.bard.webservice.druid.client.DruidServiceConfig
+import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.FailureCallback
+import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+import com.yahoo.bard.webservice.druid.model.query.DruidQuery
+import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.web.handlers.RequestContext
+import com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+
+import spock.lang.Specification
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.MultivaluedHashMap
+import javax.ws.rs.core.MultivaluedMap
+
+class LoadBalancingDruidWebServiceSpec extends Specification {
+
+    DruidServiceConfig serviceConfig = new DruidServiceConfig("Broker", "http://a, http://b", 1000, 1)
+    DruidWebService brokerA = Mock(DruidWebService)
+    DruidWebService brokerB = Mock(DruidWebService)
+
+    RequestContext context = new RequestContext(null, false)
+    DruidQuery<?> query = Mock(DruidQuery)
+    JsonNode json = JsonNodeFactory.instance.arrayNode()
+
+    SuccessCallback success = Mock(SuccessCallback)
+    HttpErrorCallback error = Mock(HttpErrorCallback)
+    FailureCallback failure = Mock(FailureCallback)
+
+    def setup() {
+        brokerA.getServiceConfig() >> serviceConfig.withUrl("http://a")
+        brokerB.getServiceConfig() >> serviceConfig.withUrl("http://b")
+    }
+
+    def cleanup() {
+        // Drop the timers started by the requests
+        RequestLog.dump()
+    }
+
+    def "Broker URLs are read from a comma separated list"() {
+        expect:
+        serviceConfig.getUrls() == ["http://a", "http://b"]
+        serviceConfig.withUrl("http://a").getUrls() == ["http://a"]
+        new DruidServiceConfig("Broker", null, 1000, 1).getUrls() == []
+    }
+
+    def "Requests go to the broker with the fewest requests in flight"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                3,
+                30000,
+                1
+        )
+
+        when: "The request to A is left in flight"
+        webService.postDruidQuery(context, success, error, failure, query)
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(context, _, _, _, query)
+        1 * brokerB.postDruidQuery(context, _, _, _, query)
+
+        when: "A and B each have a request in flight, and B is given another"
+        webService.postDruidQuery(context, success, error, failure, query)
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(context, _, _, _, query)
+        1 * brokerB.postDruidQuery(context, _, _, _, query)
+    }
+
+    def "A request failed by a broker is retried once on another broker"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                3,
+                30000,
+                1
+        )
+        long retries = LoadBalancingDruidWebService.RETRIES.count
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then: "The request is counted as sent once, and the response of the retry is the one counted as received"
+        1 * brokerA.postDruidQuery(context, _, _, _, query) >> {
+            settle(it[0])
+            it[3].invoke(new IOException("GC pause"))
+        }
+        1 * brokerB.postDruidQuery({ !it.is(context) && it.isRetry() }, _, _, _, query) >> {
+            settle(it[0])
+            it[2].invoke(503, "Unavailable", "")
+        }
+        1 * error.invoke(503, "Unavailable", "")
+        0 * failure.invoke(_)
+        0 * success.invoke(_)
+        LoadBalancingDruidWebService.RETRIES.count == retries + 1
+        context.getNumberOfOutgoing().get() == 0
+        context.getNumberOfIncoming().get() == 0
+    }
+
+    def "The response workflow is timed once the retry of a failed request has been answered"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                3,
+                30000,
+                1
+        )
+        RequestLog.startTiming("test")
+        boolean timedBeforeRetry = true
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_) >> {
+            settle(it[0])
+            it[3].invoke(new IOException("GC pause"))
+        }
+        1 * brokerB.postDruidQuery(*_) >> {
+            timedBeforeRetry = RequestLog.isStarted(DruidWorkflow.RESPONSE_WORKFLOW_TIMER)
+            settle(it[0])
+            it[1].invoke(json)
+        }
+        1 * success.invoke(json)
+        !timedBeforeRetry
+        RequestLog.isStarted(DruidWorkflow.RESPONSE_WORKFLOW_TIMER)
+    }
+
+    def "A retried request keeps the headers of the web request"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                3,
+                30000,
+                1
+        )
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>()
+        headers.putSingle("X-Request-Id", "abc")
+        ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+        containerRequestContext.getHeaders() >> headers
+        RequestContext webRequestContext = new RequestContext(containerRequestContext, true)
+        RequestContext retryContext = null
+
+        when:
+        webService.postDruidQuery(webRequestContext, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_) >> { it[3].invoke(new IOException("GC pause")) }
+        1 * brokerB.postDruidQuery(*_) >> { retryContext = it[0] }
+        !retryContext.is(webRequestContext)
+        retryContext.getHeaders() == headers
+        retryContext.getHeadersLowerCase().getFirst("x-request-id") == "abc"
+        retryContext.isReadCache()
+    }
+
+    def "Client errors are passed on without a retry"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                1,
+                30000,
+                1
+        )
+
+        when:
+        webService.getJsonObject(success, error, failure, "/segments")
+
+        then:
+        1 * brokerA.getJsonObject(_, _, _, "/segments") >> { it[1].invoke(400, "Bad Request", "bad") }
+        0 * brokerB.getJsonObject(*_)
+        1 * error.invoke(400, "Bad Request", "bad")
+    }
+
+    def "A broker that fails too many requests in a row is left out of the rotation"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                1,
+                30000,
+                0
+        )
+        long circuitsOpened = LoadBalancingDruidWebService.CIRCUITS_OPENED.count
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_) >> { it[3].invoke(new IOException()) }
+        1 * failure.invoke(_ as IOException)
+        LoadBalancingDruidWebService.CIRCUITS_OPENED.count == circuitsOpened + 1
+
+        when: "B is busy, but A is out of the rotation"
+        3.times { webService.postDruidQuery(context, success, error, failure, query) }
+
+        then:
+        0 * brokerA.postDruidQuery(*_)
+        3 * brokerB.postDruidQuery(*_)
+    }
+
+    def "A broker is tried again once its circuit closes"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                1,
+                50,
+                0
+        )
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_) >> { it[3].invoke(new IOException()) }
+        1 * brokerB.postDruidQuery(*_) >> { it[1].invoke(json) }
+
+        when:
+        Thread.sleep(100)
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_)
+    }
+
+    def "A failure in the success callback is not retried or held against the broker"() {
+        given:
+        LoadBalancingDruidWebService webService = new LoadBalancingDruidWebService(
+                serviceConfig,
+                [brokerA, brokerB],
+                1,
+                30000,
+                1
+        )
+        RuntimeException processingError = new RuntimeException()
+
+        when:
+        webService.postDruidQuery(context, success, error, failure, query)
+
+        then:
+        1 * brokerA.postDruidQuery(*_) >> {
+            try {
+                it[1].invoke(json)
+            } catch (RuntimeException e) {
+                it[3].invoke(e)
+            }
+        }
+        1 * success.invoke(json) >> { throw processingError }
+        1 * failure.invoke(processingError)
+        0 * brokerB.postDruidQuery(*_)
+    }
+
+    def "A pool needs at least one broker"() {
+        when:
+        new LoadBalancingDruidWebService(serviceConfig, [], 1, 0, 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    /**
+     * Count a request as sent, unless it is a retry, and its response as received, as the web service of a broker does.
+     */
+    void settle(RequestContext requestContext) {
+        if (!requestContext.isRetry()) {
+            requestContext.getNumberOfOutgoing().decrementAndGet()
+        }
+        requestContext.getNumberOfIncoming().decrementAndGet()
+    }
+}
@@ -138,4 +138,27 @@ abstract class ApiJobStoreSpec extends Specification {
         ReactiveTestUtils.assertCompletedWithoutError(allRowsSubscriber)
         allRowsSubscriber.getOnNextEvents() as Set == getAllRowData()
     }
+
+    @Unroll
+    def "getFilteredRows with the filters #filters returns the rows #expectedIds"() {
+        given: "A subscriber to listen for the filtered rows"
+        TestSubscriber<JobRow> filteredRowsSubscriber = new TestSubscriber<>()
+
+        when: "We subscribe to the observer that gets the rows satisfying the filters"
+        store.getFilteredRows(filters.collect { new JobRowFilter(it) } as Set).subscribe(filteredRowsSubscriber)
+
+        then: "The subscriber gets just the rows satisfying every filter"
+        ReactiveTestUtils.assertCompletedWithoutError(filteredRowsSubscriber)
+        filteredRowsSubscriber.getOnNextEvents() as Set == expectedIds.collect { ROW_DATA[it] } as Set
+
+        where:
+        filters                                               | expectedIds
+        ["userId-eq[Number 1]"]                               | ["1"]
+        ["userId-in[Number 1,Number 3]"]                      | ["1", "3"]
+        ["userId-notin[Number 1]"]                            | ["2", "3"]
+        ["userId-in[Number 1,Number 3]", "jobTicket-eq[3]"]   | ["3"]
+        ["query-contains[metrics=2]"]                         | ["2"]
+        ["status-eq[pending]", "userId-startswith[Number 2]"] | ["2"]
+        ["status-eq[success]"]                                | []
+    }
 }
@@ -0,0 +1,119 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs
+
+import com.yahoo.bard.webservice.application.MetricRegistryFactory
+
+import com.codahale.metrics.Histogram
+
+import rx.Subscription
+import rx.observers.TestSubscriber
+import rx.subjects.PublishSubject
+
+import java.time.Clock
+
+class BatchingBroadcastChannelSpec extends BroadcastChannelSpec {
+
+    static final long BATCH_WINDOW_MILLIS = 10
+
+    PublishSubject<NotificationBatch<String>> crossBoxObservable = PublishSubject.create()
+
+    @Override
+    BroadcastChannel<String> getBroadcastChannel() {
+        new BatchingBroadcastChannel<String>(
+                new SimpleBroadcastChannel<NotificationBatch<String>>(crossBoxObservable),
+                BATCH_WINDOW_MILLIS,
+                Clock.systemUTC()
+        )
+    }
+
+    def "Messages published within the batch window are sent as one batch, without repeats"() {
+        given:
+        TestSubscriber<NotificationBatch<String>> batchListener = new TestSubscriber<>()
+        crossBoxObservable.subscribe(batchListener)
+
+        when:
+        ["ticket1", "ticket2", "ticket1"].each { broadcastChannelA.publish(it) }
+
+        then:
+        condition.eventually {
+            assert batchListener.getOnNextEvents()*.getMessages() == [["ticket1", "ticket2"]]
+        }
+    }
+
+    def "Messages are sent as soon as they are published when there is no batch window"() {
+        given:
+        TestSubscriber<NotificationBatch<String>> batchListener = new TestSubscriber<>()
+        crossBoxObservable.subscribe(batchListener)
+        BatchingBroadcastChannel<String> unbatchedChannel = new BatchingBroadcastChannel<>(
+                new SimpleBroadcastChannel<NotificationBatch<String>>(crossBoxObservable),
+                0,
+                Clock.systemUTC()
+        )
+
+        when:
+        unbatchedChannel.publish("ticket1")
+        unbatchedChannel.publish("ticket2")
+
+        then:
+        batchListener.getOnNextEvents()*.getMessages() == [["ticket1"], ["ticket2"]]
+    }
+
+    def "Waiters are signalled only by their message, and leave the registry when they unsubscribe"() {
+        given:
+        Histogram fanOut = MetricRegistryFactory.getRegistry().histogram("broadcast.notifications.fan_out")
+        long fanOutCount = fanOut.count
+        TestSubscriber<String> waiter = new TestSubscriber<>()
+        Subscription subscription = broadcastChannelB.getNotifications("ticket1").subscribe(waiter)
+
+        when:
+        broadcastChannelA.publish("ticket1")
+
+        then: "The waiter is signalled once, and the fan out of the message is recorded by both channels"
+        condition.eventually {
+            assert waiter.getOnNextEvents() == ["ticket1"]
+            assert fanOut.count == fanOutCount + 2
+        }
+        broadcastChannelB.waiters["ticket1"].size() == 1
+
+        when:
+        subscription.unsubscribe()
+
+        then:
+        broadcastChannelB.waiters.isEmpty()
+    }
+
+    def "Closing the channel sends the pending batch and completes the waiters"() {
+        given:
+        TestSubscriber<NotificationBatch<String>> batchListener = new TestSubscriber<>()
+        crossBoxObservable.subscribe(batchListener)
+        TestSubscriber<String> waiter = new TestSubscriber<>()
+        broadcastChannelA.getNotifications("ticket1").subscribe(waiter)
+        broadcastChannelA.publish("ticket1")
+
+        when:
+        broadcastChannelA.close()
+
+        then:
+        batchListener.getOnNextEvents()*.getMessages() == [["ticket1"]]
+        waiter.assertCompleted()
+    }
+
+    def "A local channel passes messages between its own publishers and subscribers"() {
+        given:
+        BatchingBroadcastChannel<String> localChannel = new BatchingBroadcastChannel<>()
+        TestSubscriber<String> waiter = new TestSubscriber<>()
+        localChannel.getNotifications("ticket1").subscribe(waiter)
+
+        when:
+        localChannel.publish("ticket1")
+
+        then:
+        condition.eventually {
+            assert waiter.getOnNextEvents() == ["ticket1"]
+        }
+
+        cleanup:
+        localChannel.close()
+    }
+}
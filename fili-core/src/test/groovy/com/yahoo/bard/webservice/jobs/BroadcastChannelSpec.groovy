@@ -104,6 +104,24 @@ abstract class BroadcastChannelSpec extends Specification {
         validateListener(broadcastListenerB, ["PreResponseA2", "PreResponseB"])
     }
 
+    def "Subscribers to a message only receive that message"() {
+        setup:
+        TestSubscriber<String> ticket1Listener = new TestSubscriber<>()
+        TestSubscriber<String> ticket2Listener = new TestSubscriber<>()
+        broadcastChannelB.getNotifications("ticket1").subscribe(ticket1Listener)
+        broadcastChannelB.getNotifications("ticket2").subscribe(ticket2Listener)
+
+        when: "broadcastChannelA publishes ticket1 and another ticket"
+        broadcastChannelA.publish("ticket1")
+        broadcastChannelA.publish("ticket3")
+
+        then: "Only the subscriber to ticket1 receives a message"
+        condition.eventually {
+            assert ticket1Listener.getOnNextEvents() == ["ticket1"]
+        }
+        ticket2Listener.getOnNextEvents().isEmpty()
+    }
+
     @Unroll
     def "Publishing to a channel that has been closed #numCloses times throws an UnsupportedOperationException"() {
         given: "A closed broadcast channel"
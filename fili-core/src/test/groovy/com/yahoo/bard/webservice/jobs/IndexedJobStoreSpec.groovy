@@ -0,0 +1,152 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs
+
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.DATE_CREATED
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.JOB_TICKET
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.STATUS
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.USER_ID
+
+import org.joda.time.DateTime
+import org.joda.time.DateTimeZone
+
+import spock.util.concurrent.PollingConditions
+
+import java.time.Clock
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Verifies that the IndexedJobStore satisfies the ApiJobStore interface, and keeps its indexes in step with its rows.
+ * The interface tests may be found in {@link ApiJobStoreSpec}.
+ */
+class IndexedJobStoreSpec extends ApiJobStoreSpec {
+
+    static final long RETENTION_MILLIS = 1000
+
+    long now = 0
+    Clock clock = Stub(Clock) {
+        millis() >> { now }
+    }
+
+    // The store under test. The store property of the parent spec can't be used, since getStore builds a new store
+    IndexedJobStore indexedStore
+
+    @Override
+    ApiJobStore getStore() {
+        indexedStore = new IndexedJobStore([USER_ID, STATUS, DATE_CREATED], RETENTION_MILLIS, 0, clock)
+    }
+
+    @Override
+    def childCleanup() {
+        indexedStore.close()
+    }
+
+    JobRow buildJobRow(String id, long createdMillis, String status = "pending") {
+        JobTestUtils.buildJobRow([
+                (JOB_TICKET): id,
+                (STATUS): status,
+                (DATE_CREATED): new DateTime(createdMillis, DateTimeZone.UTC).toString(),
+                (USER_ID): "user"
+        ])
+    }
+
+    Set<String> filteredIds(String filter) {
+        indexedStore.getFilteredRows([new JobRowFilter(filter)] as Set)
+                .map { it.getId() }
+                .toList()
+                .toBlocking()
+                .single() as Set
+    }
+
+    def "Saving a row again moves it from the index entries of its old values to those of its new values"() {
+        given:
+        indexedStore.save(buildJobRow("job", 0, "pending")).toBlocking().single()
+
+        when:
+        indexedStore.save(buildJobRow("job", 0, "success")).toBlocking().single()
+
+        then: "The row is only looked up under its new status"
+        filteredIds("status-eq[pending]") == ROW_DATA.keySet()
+        filteredIds("status-eq[success]") == ["job"] as Set
+        filteredIds("userId-eq[user]") == ["job"] as Set
+
+        and: "The old status is no longer in the index"
+        indexedStore.indexes[STATUS].keySet() == ["pending", "success"] as Set
+        indexedStore.indexes[STATUS]["success"] == ["job"] as Set
+        !indexedStore.indexes[STATUS]["pending"].contains("job")
+    }
+
+    def "Rows created before the retention period are evicted, and dropped from the indexes"() {
+        given: "Rows created at the start of the epoch and a little later"
+        indexedStore.save(buildJobRow("old", 0)).toBlocking().single()
+        indexedStore.save(buildJobRow("new", RETENTION_MILLIS)).toBlocking().single()
+
+        when: "Time passes beyond the retention period of the old row"
+        now = RETENTION_MILLIS + 1
+        int evicted = indexedStore.evictExpiredRows()
+
+        then: "Only the old row, and the rows from the spec data (created in the first millennia) are evicted"
+        evicted == ROW_DATA.size() + 1
+        indexedStore.getAllRows().toList().toBlocking().single()*.getId() == ["new"]
+        indexedStore.get("old").isEmpty().toBlocking().single()
+        filteredIds("userId-eq[user]") == ["new"] as Set
+        indexedStore.indexes[STATUS].values().flatten() == ["new"]
+        indexedStore.creationIndex.values().flatten() == ["new"]
+    }
+
+    def "Rows with a date created that can't be parsed are never evicted"() {
+        given:
+        JobRow undated = JobTestUtils.buildJobRow([(JOB_TICKET): "undated", (DATE_CREATED): "yesterday"])
+        indexedStore.save(undated).toBlocking().single()
+
+        when:
+        now = Long.MAX_VALUE
+        indexedStore.evictExpiredRows()
+
+        then:
+        indexedStore.getAllRows().toList().toBlocking().single()*.getId() == ["undated"]
+    }
+
+    def "Expired rows are evicted in the background"() {
+        given: "A store that evicts rows every 10 milliseconds"
+        IndexedJobStore evictingStore = new IndexedJobStore([USER_ID], RETENTION_MILLIS, 10, clock)
+        evictingStore.save(buildJobRow("old", 0)).toBlocking().single()
+
+        when:
+        now = RETENTION_MILLIS + 1
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert evictingStore.get("old").isEmpty().toBlocking().single()
+        }
+
+        cleanup:
+        evictingStore.close()
+    }
+
+    def "Concurrent saves leave every row indexed under its latest values only"() {
+        given:
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+        List<String> statuses = ["pending", "success", "failure"]
+
+        when: "Each of 10 rows is saved many times over with changing statuses"
+        List<Future<JobRow>> saves = (0..<300).collect { int save ->
+            JobRow jobRow = buildJobRow("job${save % 10}".toString(), 0, statuses[save % 3])
+            executor.submit({ indexedStore.save(jobRow).toBlocking().single() } as Callable<JobRow>)
+        }
+        saves*.get()
+
+        then: "Each row is indexed under the status it was last saved with"
+        (0..<10).every { int job ->
+            String id = "job$job".toString()
+            String status = indexedStore.get(id).toBlocking().single().get(STATUS)
+            indexedStore.indexes[STATUS].findAll { it.value.contains(id) }.keySet() == [status] as Set
+        }
+
+        cleanup:
+        executor.shutdown()
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs
+
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.JOB_TICKET
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.STATUS
+import static com.yahoo.bard.webservice.jobs.DefaultJobField.USER_ID
+
+import com.yahoo.bard.webservice.web.BadFilterException
+import com.yahoo.bard.webservice.web.FilterOperation
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class JobRowFilterSpec extends Specification {
+
+    @Unroll
+    def "The filter query #query filters on #field #operation #values"() {
+        when:
+        JobRowFilter filter = new JobRowFilter(query)
+
+        then:
+        filter == new JobRowFilter(field, operation, values as Set)
+        filter.toString() == query.replace(",", ", ")
+
+        where:
+        query                        | field   | operation             | values
+        "userId-eq[greg]"            | USER_ID | FilterOperation.eq    | ["greg"]
+        "status-in[pending,success]" | STATUS  | FilterOperation.in    | ["pending", "success"]
+        "status-notin[failure]"      | STATUS  | FilterOperation.notin | ["failure"]
+    }
+
+    @Unroll
+    def "The filter query #query is rejected because of a #reason"() {
+        when:
+        new JobRowFilter(query)
+
+        then:
+        BadFilterException exception = thrown()
+        exception.message == message
+
+        where:
+        query               | reason              | message
+        "unknown-eq[greg]"  | "missing field"     | "Job filter field 'unknown' does not exist. The fields that can be filtered on are [query, status, jobTicket, dateCreated, userId, dateUpdated]."
+        "userId-unknown[a]" | "missing operation" | "Filter operator 'unknown' is invalid."
+        "userIdeq[greg]"    | "missing dash"      | "Filter expression 'userIdeq[greg]' is invalid."
+    }
+
+    @Unroll
+    def "The filter #query is #satisfied by a job with the status #status"() {
+        given:
+        JobRow jobRow = new JobRow(JOB_TICKET, [(JOB_TICKET): "1", (STATUS): status])
+
+        expect:
+        new JobRowFilter(query).test(jobRow) == (satisfied == "satisfied")
+
+        where:
+        query                        | status    | satisfied
+        "status-eq[pending]"         | "pending" | "satisfied"
+        "status-eq[pending]"         | "success" | "not satisfied"
+        "status-in[pending,success]" | "success" | "satisfied"
+        "status-notin[pending]"      | "pending" | "not satisfied"
+        "status-notin[pending]"      | "success" | "satisfied"
+        "status-startswith[pend]"    | "pending" | "satisfied"
+        "status-contains[end]"       | "pending" | "satisfied"
+        "status-contains[end]"       | "success" | "not satisfied"
+        "status-eq[pending]"         | null      | "not satisfied"
+        "status-notin[pending]"      | null      | "satisfied"
+    }
+
+    def "Only equality filters can be looked up by value"() {
+        expect:
+        new JobRowFilter("status-eq[pending]").isExactMatch()
+        new JobRowFilter("status-in[pending]").isExactMatch()
+        !new JobRowFilter("status-notin[pending]").isExactMatch()
+        !new JobRowFilter("status-contains[pending]").isExactMatch()
+    }
+}
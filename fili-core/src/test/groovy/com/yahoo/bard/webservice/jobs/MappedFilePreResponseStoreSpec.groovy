@@ -0,0 +1,299 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.jobs
+
+import com.yahoo.bard.webservice.application.ObjectMappersSuite
+import com.yahoo.bard.webservice.data.BlockResults
+import com.yahoo.bard.webservice.data.PreResponseDeserializer
+import com.yahoo.bard.webservice.data.Result
+import com.yahoo.bard.webservice.data.ResultSet
+import com.yahoo.bard.webservice.data.SerializationResources
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser
+import com.yahoo.bard.webservice.util.GroovyTestUtils
+import com.yahoo.bard.webservice.web.PreResponse
+import com.yahoo.bard.webservice.web.util.PaginationParameters
+
+import com.fasterxml.jackson.databind.DeserializationFeature
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+
+class MappedFilePreResponseStoreSpec extends Specification {
+
+    static final long TTL_MILLIS = 1000
+
+    SerializationResources resources
+    PreResponseDeserializer preResponseDeserializer
+    Path directory
+    long now = 0
+    Clock clock = Stub(Clock) {
+        millis() >> { now }
+    }
+    MappedFilePreResponseStore store
+
+    def setup() {
+        resources = new SerializationResources().init()
+        ObjectMappersSuite objectMappers = new ObjectMappersSuite()
+        ObjectMapper typePreservingMapper = new ObjectMappersSuite().getMapper()
+        typePreservingMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL)
+        preResponseDeserializer = new PreResponseDeserializer(
+                resources.dimensionDictionary,
+                objectMappers.getMapper(),
+                typePreservingMapper,
+                new StandardGranularityParser()
+        )
+        directory = Files.createTempDirectory("preResponseStore")
+        store = buildStore(1024 * 1024, 4096)
+    }
+
+    def cleanup() {
+        store.close()
+        directory.toFile().deleteDir()
+    }
+
+    MappedFilePreResponseStore buildStore(long maxBytes, int segmentBytes) {
+        buildStore(maxBytes, segmentBytes, 1000)
+    }
+
+    MappedFilePreResponseStore buildStore(long maxBytes, int segmentBytes, int blockRows) {
+        buildStore(maxBytes, segmentBytes, blockRows, false)
+    }
+
+    MappedFilePreResponseStore buildStore(long maxBytes, int segmentBytes, int blockRows, boolean unmapSegments) {
+        new MappedFilePreResponseStore(
+                directory,
+                preResponseDeserializer,
+                TTL_MILLIS,
+                maxBytes,
+                segmentBytes,
+                blockRows,
+                clock,
+                unmapSegments
+        )
+    }
+
+    PreResponse get(String ticket) {
+        List<PreResponse> preResponses = store.get(ticket).toList().toBlocking().single()
+        preResponses.isEmpty() ? null : preResponses[0]
+    }
+
+    int countSegments() {
+        directory.toFile().listFiles().length
+    }
+
+    def "A saved PreResponse is read back from its segment"() {
+        when:
+        String ticket = store.save("ticket1", resources.preResponse).toBlocking().single()
+        PreResponse preResponse = get("ticket1")
+
+        then:
+        ticket == "ticket1"
+        GroovyTestUtils.compareObjects(resources.resultSet, preResponse.rows.collect { it })
+        preResponse.schema == resources.resultSet.schema
+        preResponse.responseContext == resources.preResponse.responseContext
+        countSegments() == 1
+    }
+
+    def "The results of a PreResponse are read a block at a time"() {
+        given: "A store with one result to a block"
+        store.close()
+        store = buildStore(1024 * 1024, 4096, 1)
+        store.save("ticket1", resources.preResponse).toBlocking().single()
+
+        when:
+        BlockResults blockResults = get("ticket1").rows
+
+        then: "The results are read from their blocks"
+        blockResults.size() == resources.resultSet.size()
+        blockResults.get(1) == resources.resultSet.get(1)
+        blockResults.getPage(new PaginationParameters(1, 2)).getPageOfData().collect { it } == [resources.resultSet[1]]
+    }
+
+    def "Getting a ticket that was never saved is empty"() {
+        expect:
+        get("missing") == null
+    }
+
+    def "Saving a ticket again replaces its PreResponse"() {
+        given:
+        store.save("ticket1", resources.preResponse).toBlocking().single()
+        PreResponse empty = new PreResponse(new ResultSet([], resources.resultSet.schema), resources.responseContext)
+
+        when:
+        store.save("ticket1", empty).toBlocking().single()
+
+        then:
+        get("ticket1").rows.isEmpty()
+    }
+
+    def "PreResponses expire after their time to live, and their segments are deleted"() {
+        given: "One PreResponse to a segment"
+        store.close()
+        store = buildStore(1024 * 1024, 1)
+        store.save("old", resources.preResponse).toBlocking().single()
+
+        when: "Time passes, and another PreResponse is saved"
+        now = TTL_MILLIS + 1
+        store.save("new", resources.preResponse).toBlocking().single()
+
+        then: "The old PreResponse has expired, and its segment is gone"
+        get("old") == null
+        get("new") != null
+        countSegments() == 1
+    }
+
+    def "The oldest segments are dropped when the store is over its size limit"() {
+        given: "The size of a segment holding a single PreResponse"
+        store.close()
+        store = buildStore(Long.MAX_VALUE, 1)
+        store.save("ticket", resources.preResponse).toBlocking().single()
+        long segmentSize = store.totalBytes
+        store.close()
+
+        and: "A store with one PreResponse to a segment, and room for two segments"
+        store = buildStore(2 * segmentSize, 1)
+
+        when:
+        (0..<4).each { store.save("ticket$it", resources.preResponse).toBlocking().single() }
+
+        then: "Only the newest two are kept"
+        store.totalBytes == 2 * segmentSize
+        get("ticket0") == null
+        get("ticket1") == null
+        get("ticket2") != null
+        get("ticket3") != null
+        countSegments() == 2
+    }
+
+    @Unroll
+    def "A dropped segment is held while it is read, and let go of once its result sets are collected, unmapping: #unmapSegments"() {
+        given: "A store with one PreResponse to a segment, and room for one segment"
+        store.close()
+        store = buildStore(1, 1, 1000, unmapSegments)
+        store.save("old", resources.preResponse).toBlocking().single()
+        long segmentSize = store.totalBytes
+        BlockResults oldResults = get("old").rows
+
+        when: "A new PreResponse pushes the old segment out, and the result set is read"
+        store.save("new", resources.preResponse).toBlocking().single()
+        List<Result> read = oldResults.collect { it }
+
+        then: "The old segment is deleted, but stays mapped for the result set"
+        get("old") == null
+        countSegments() == 1
+        store.totalBytes == segmentSize
+        store.mappedBytes == 2 * segmentSize
+        GroovyTestUtils.compareObjects(resources.resultSet, read)
+
+        when: "The result set is collected, while a page of it is still read"
+        BlockResults page = oldResults.getRange(0, 1)
+        oldResults = null
+        System.gc()
+        List<Result> pageRead = page.collect { it }
+
+        then: "The old segment stays mapped for the page"
+        store.mappedBytes == 2 * segmentSize
+        GroovyTestUtils.compareObjects(resources.resultSet.subList(0, 1), pageRead)
+
+        when: "The page is collected"
+        page = null
+
+        then: "The old segment is let go of"
+        new PollingConditions(timeout: 10).eventually {
+            System.gc()
+            assert store.mappedBytes == segmentSize
+        }
+
+        where:
+        unmapSegments << [false, true]
+    }
+
+    def "Readers racing the segments they read being dropped and unmapped read whole PreResponses, or none"() {
+        given: "A store unmapping segments, with one PreResponse to a segment, and room for one segment"
+        store.close()
+        store = buildStore(1, 1, 1, true)
+        store.save("ticket", resources.preResponse).toBlocking().single()
+        ExecutorService executor = Executors.newFixedThreadPool(9)
+        AtomicBoolean saving = new AtomicBoolean(true)
+
+        when: "The ticket is saved over and over, dropping the segment of the last save, while it is read"
+        Future<?> saver = executor.submit({
+            try {
+                200.times {
+                    store.save("ticket", resources.preResponse).toBlocking().single()
+                    if (it % 50 == 0) {
+                        System.gc()
+                    }
+                }
+            } finally {
+                saving.set(false)
+            }
+        } as Runnable)
+        List<Future<List<List<Result>>>> readers = (0..<8).collect {
+            executor.submit({
+                List<List<Result>> reads = []
+                while (saving.get()) {
+                    PreResponse preResponse = get("ticket")
+                    if (preResponse != null) {
+                        reads << preResponse.rows.collect { it }
+                    }
+                }
+                reads
+            } as Callable<List<List<Result>>>)
+        }
+        saver.get()
+        List<List<Result>> reads = readers.collectMany { it.get() }
+
+        then: "Every read got the whole PreResponse, and the dropped segments were unmapped"
+        !reads.isEmpty()
+        reads.every { GroovyTestUtils.compareObjects(resources.resultSet, it) }
+        new PollingConditions(timeout: 10).eventually {
+            System.gc()
+            assert store.mappedBytes == store.totalBytes
+        }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "Segments left in the directory by an earlier store are deleted"() {
+        given:
+        store.save("ticket1", resources.preResponse).toBlocking().single()
+
+        when:
+        MappedFilePreResponseStore newStore = buildStore(1024 * 1024, 4096)
+
+        then:
+        countSegments() == 0
+        newStore.get("ticket1").isEmpty().toBlocking().single()
+    }
+
+    def "Concurrent readers of a ticket each read the whole PreResponse"() {
+        given:
+        store.save("ticket1", resources.preResponse).toBlocking().single()
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+
+        when:
+        List<Future<PreResponse>> reads = (0..<32).collect {
+            executor.submit({ get("ticket1") } as Callable<PreResponse>)
+        }
+
+        then:
+        reads.every { GroovyTestUtils.compareObjects(resources.resultSet, it.get().rows.collect { it }) }
+
+        cleanup:
+        executor.shutdown()
+    }
+}
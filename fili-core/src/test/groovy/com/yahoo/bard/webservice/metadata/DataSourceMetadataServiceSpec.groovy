@@ -38,4 +38,30 @@ class DataSourceMetadataServiceSpec extends BaseDataSourceMetadataSpec {
         cleanup:
         jtb.tearDown()
     }
+
+    def "test metadata service indexes the segment hashes of the current segments"() {
+        setup:
+        JerseyTestBinder jtb = new JerseyTestBinder()
+        PhysicalTableDictionary tableDict = jtb.configurationLoader.getPhysicalTableDictionary()
+        DataSourceMetadataService metadataService = new DataSourceMetadataService()
+
+        DataSourceMetadata metadata = new DataSourceMetadata(tableName, [:], segments)
+
+        expect: "No index for a table without segments"
+        metadataService.getSegmentHashIndexes([tableDict.get(tableName)] as Set).isEmpty()
+
+        when:
+        metadataService.update(tableDict.get(tableName), metadata)
+        List<SegmentHashIndex> indexes = metadataService.getSegmentHashIndexes([tableDict.get(tableName)] as Set)
+        ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> current =
+                metadataService.allSegments.get(tableDict.get(tableName)).get()
+
+        then:
+        indexes.size() == 1
+        indexes[0].isIndexOf(current)
+        indexes[0].getHash(interval12.getStart(), interval12.getEnd()) == current.hashCode()
+
+        cleanup:
+        jtb.tearDown()
+    }
 }
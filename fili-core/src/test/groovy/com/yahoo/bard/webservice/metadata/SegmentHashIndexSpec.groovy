@@ -0,0 +1,66 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.metadata
+
+import org.joda.time.DateTime
+
+import spock.lang.Shared
+import spock.lang.Unroll
+
+import java.util.concurrent.ConcurrentSkipListMap
+
+class SegmentHashIndexSpec extends BaseDataSourceMetadataSpec {
+    @Shared
+    ConcurrentSkipListMap<DateTime, Map<String, SegmentInfo>> segmentMap
+    @Shared
+    SegmentHashIndex segmentHashIndex
+    @Shared
+    DateTime day1
+    @Shared
+    DateTime day2
+    @Shared
+    DateTime day3
+
+    def setupSpec() {
+        day1 = interval1.getStart()
+        day2 = interval2.getStart()
+        day3 = interval2.getEnd()
+
+        segmentMap = new ConcurrentSkipListMap<>()
+        segmentMap.put(day1, [(segment1.getIdentifier()): new SegmentInfo(segment1), (segment2.getIdentifier()): new SegmentInfo(segment2)])
+        segmentMap.put(day2, [(segment3.getIdentifier()): new SegmentInfo(segment3)])
+        segmentMap.put(day3, [(segment4.getIdentifier()): new SegmentInfo(segment4)])
+
+        segmentHashIndex = new SegmentHashIndex(segmentMap)
+    }
+
+    @Unroll
+    def "The hash of #start to #end is the hash of the segments starting in that range"() {
+        expect:
+        segmentHashIndex.getHash(start, end) == segmentMap.subMap(start, end).hashCode()
+
+        where:
+        [start, end] << [
+                [day1, day2],
+                [day1, day3],
+                [day1, day3.plusDays(1)],
+                [day1.minusDays(1), day3.plusDays(1)],
+                [day1.plusHours(1), day3],
+                [day2, day2],
+                [day3.plusDays(1), day3.plusDays(2)],
+                [day1.minusDays(2), day1.minusDays(1)]
+        ]
+    }
+
+    def "The hash of a range without segments is 0"() {
+        expect:
+        segmentHashIndex.getHash(day1.plusHours(1), day2) == 0
+        new SegmentHashIndex(new ConcurrentSkipListMap<>()).getHash(day1, day3) == 0
+    }
+
+    def "An index is only the index of the map it was built from"() {
+        expect:
+        segmentHashIndex.isIndexOf(segmentMap)
+        !segmentHashIndex.isIndexOf(new ConcurrentSkipListMap<>(segmentMap))
+    }
+}
@@ -2,6 +2,8 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web
 
+import com.yahoo.bard.webservice.config.SystemConfig
+import com.yahoo.bard.webservice.config.SystemConfigProvider
 import com.yahoo.bard.webservice.web.RateLimiter.RequestToken
 import com.yahoo.bard.webservice.web.RateLimiter.RequestType
 import com.yahoo.bard.webservice.web.filters.RateLimitFilterSpec
@@ -9,6 +11,8 @@ import com.yahoo.bard.webservice.web.filters.RateLimitFilterSpec
 import spock.lang.Specification
 
 import java.security.Principal
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class RateLimiterSpec extends Specification {
 
@@ -186,4 +190,130 @@ class RateLimiterSpec extends Specification {
         rateLimiter.rejectUiMeter.count == 0
         rateLimiter.rejectUserMeter.count == 0
     }
+
+    /**
+     * Build a rate limiter with weight budgets and a queue timeout.
+     *
+     * @param globalWeight  Global weight budget
+     * @param userWeight  Per user weight budget
+     * @param timeoutMillis  Queue timeout
+     *
+     * @return the rate limiter
+     */
+    RateLimiter buildWeightedRateLimiter(long globalWeight, long userWeight, long timeoutMillis) {
+        SystemConfig systemConfig = SystemConfigProvider.getInstance()
+        Map<String, String> originals = [
+                (RateLimiter.REQUEST_WEIGHT_LIMIT_GLOBAL_KEY): globalWeight as String,
+                (RateLimiter.REQUEST_WEIGHT_LIMIT_PER_USER_KEY): userWeight as String,
+                (RateLimiter.REQUEST_QUEUE_TIMEOUT_MILLIS_KEY): timeoutMillis as String
+        ].collectEntries { key, value -> [(key): systemConfig.setProperty(key, value)] }
+        try {
+            return new RateLimiter()
+        } finally {
+            originals.each { key, value -> systemConfig.resetProperty(key, value) }
+        }
+    }
+
+    def "Weight budgets are disabled by default"() {
+        expect:
+        !rateLimiter.isWeightLimited()
+        rateLimiter.getToken(RequestType.USER, user, Long.MAX_VALUE).isBound()
+        rateLimiter.globalWeight.get() == 0
+    }
+
+    def "Requests over the global weight budget are rejected"() {
+        setup:
+        RateLimiter weighted = buildWeightedRateLimiter(100, -1, 0)
+        Principal other = Mock(Principal)
+        other.getName() >> "other"
+
+        when: "A user has most of the budget outstanding"
+        RequestToken first = weighted.getToken(RequestType.USER, user, 80)
+
+        then:
+        weighted.isWeightLimited()
+        first.isBound()
+        weighted.globalWeight.get() == 80
+
+        when: "Another user sends a request over the rest of the budget, and one within it"
+        RequestToken over = weighted.getToken(RequestType.USER, other, 30)
+        RequestToken within = weighted.getToken(RequestType.USER, other, 20)
+
+        then: "The first is rejected and the second admitted"
+        !over.isBound()
+        within.isBound()
+
+        and: "The rejected request released its count"
+        weighted.globalCount.get() == 2
+        weighted.globalWeight.get() == 100
+    }
+
+    def "A request heavier than the budget is admitted only when nothing else is outstanding"() {
+        setup:
+        RateLimiter weighted = buildWeightedRateLimiter(-1, 100, 0)
+
+        when:
+        RequestToken heavy = weighted.getToken(RequestType.USER, user, 1000)
+
+        then:
+        heavy.isBound()
+        !weighted.getToken(RequestType.USER, user, 1).isBound()
+
+        when:
+        heavy.close()
+
+        then:
+        weighted.userWeights.get("user").get() == 0
+        weighted.getToken(RequestType.USER, user, 1).isBound()
+    }
+
+    def "A queued request is admitted when an outstanding request finishes"() {
+        setup:
+        RateLimiter weighted = buildWeightedRateLimiter(10, -1, TimeUnit.SECONDS.toMillis(20))
+        RequestToken outstanding = weighted.getToken(RequestType.USER, user, 8)
+        RequestToken queued = null
+        CountDownLatch admitted = new CountDownLatch(1)
+        long queueWaits = weighted.queueWaitHistogram.count
+
+        when: "A request over the budget waits in the queue"
+        Thread.start {
+            queued = weighted.getToken(RequestType.UI, user, 5)
+            admitted.countDown()
+        }
+        while (weighted.queued.get() == 0) {
+            Thread.sleep(5)
+        }
+
+        then:
+        admitted.count == 1
+
+        when: "The outstanding request finishes"
+        outstanding.close()
+
+        then: "The queued request is admitted"
+        admitted.await(10, TimeUnit.SECONDS)
+        queued.isBound()
+        weighted.globalWeight.get() == 5
+        weighted.queued.get() == 0
+        weighted.queueWaitHistogram.count == queueWaits + 1
+    }
+
+    def "A queued request is rejected when the queue timeout runs out"() {
+        setup:
+        RateLimiter weighted = buildWeightedRateLimiter(10, -1, 20)
+        RequestToken outstanding = weighted.getToken(RequestType.USER, user, 8)
+        long rejected = weighted.rejectUiMeter.count
+
+        when:
+        RequestToken queued = weighted.getToken(RequestType.UI, user, 5)
+
+        then:
+        !queued.isBound()
+        weighted.rejectUiMeter.count == rejected + 1
+        weighted.globalCount.get() == 1
+        weighted.globalWeight.get() == 8
+
+        cleanup:
+        outstanding.close()
+    }
 }
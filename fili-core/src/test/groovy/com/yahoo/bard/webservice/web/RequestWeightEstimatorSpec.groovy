@@ -0,0 +1,72 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web
+
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.DimensionDictionary
+import com.yahoo.bard.webservice.data.time.StandardGranularityParser
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.ws.rs.core.MultivaluedHashMap
+import javax.ws.rs.core.MultivaluedMap
+import javax.ws.rs.core.PathSegment
+
+class RequestWeightEstimatorSpec extends Specification {
+
+    RequestWeightEstimator estimator
+
+    def setup() {
+        Dimension color = Mock(Dimension)
+        color.getApiName() >> "color"
+        color.getCardinality() >> 20
+        Dimension shape = Mock(Dimension)
+        shape.getApiName() >> "shape"
+        shape.getCardinality() >> 0
+
+        estimator = new RequestWeightEstimator(
+                new DimensionDictionary([color, shape] as Set),
+                new StandardGranularityParser()
+        )
+    }
+
+    /**
+     * Build the path segments of a request path.
+     *
+     * @param path  Path of the request
+     *
+     * @return the path segments
+     */
+    List<PathSegment> segments(String path) {
+        path.split("/").collect { String name ->
+            PathSegment segment = Mock(PathSegment)
+            segment.getPath() >> name
+            segment
+        }
+    }
+
+    @Unroll
+    def "The weight of #path over #dateTime is #weight"() {
+        setup:
+        MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<String, String>()
+        if (dateTime != null) {
+            queryParameters.putSingle("dateTime", dateTime)
+        }
+
+        expect:
+        estimator.estimate(segments(path), queryParameters) == weight
+
+        where:
+        path                              | dateTime                                        | weight
+        "v1/data/table/day"               | "2016-01-01/2016-01-08"                         | 7
+        "v1/data/table/day/color"         | "2016-01-01/2016-01-08"                         | 140
+        "v1/data/table/day/color/shape"   | "2016-01-01/2016-01-08,2016-02-01/2016-02-02"   | 160
+        "v1/data/table/month/color/other" | "2016-01-01/2016-03-01"                         | 40
+        "v1/data/table/all/color"         | "2016-01-01/2016-03-01"                         | 20
+        "v1/data/table/day/color"         | null                                            | 20
+        "v1/data/table/unknown/color"     | "2016-01-01/2016-01-08"                         | 20
+        "v1/data/table"                   | "2016-01-01/2016-01-08"                         | 1
+        "test/data"                       | null                                            | 1
+    }
+}
@@ -11,6 +11,7 @@ import static com.yahoo.bard.webservice.util.SimplifiedIntervalList.NO_INTERVALS
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
 import com.yahoo.bard.webservice.config.SystemConfig
 import com.yahoo.bard.webservice.config.SystemConfigProvider
+import com.yahoo.bard.webservice.data.ColumnarResultSet
 import com.yahoo.bard.webservice.data.Result
 import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
@@ -534,6 +535,47 @@ class ResponseSpec extends Specification {
         csvResponse == expectedCSV
     }
 
+    def "CSV response writes null and string metrics in their columns"() {
+        setup:
+        formattedDateTime = dateTime.toString(getDefaultFormat())
+        metricColumnsMap = [
+                (new MetricColumn("pageViews")): null,
+                (new MetricColumn("timeSpent")): "1, 3"
+        ] as LinkedHashMap
+        buildTestResultSet(metricColumnsMap, defaultRequestedMetrics)
+
+        when:
+        response.writeCsvResponse(os)
+
+        then:
+        os.toString() ==
+                """dateTime,product|id,product|desc,platform|id,platform|desc,property|desc,pageViews,timeSpent
+                |\"$formattedDateTime\",ymail,"yahoo, mail",mob,"mobile "" desc..","United States",,"1, 3"
+                |\"$formattedDateTime\",ysports,"yahoo sports",desk,"desktop ,"" desc..",India,,"1, 3"
+                |""".stripMargin()
+    }
+
+    @Unroll
+    def "A columnar result set is written in #format from its columns, the same as its results"() {
+        setup:
+        apiRequest.getFormat() >> format
+        ColumnarResultSet columnarResultSet = Spy(ColumnarResultSet, constructorArgs: [resultSet, resultSet.schema])
+        ByteArrayOutputStream columnarOs = new ByteArrayOutputStream()
+        new Response(resultSet, apiRequest, NO_INTERVALS, volatileIntervals, [:], (Pagination) null, MAPPERS).write(os)
+
+        when:
+        new Response(columnarResultSet, apiRequest, NO_INTERVALS, volatileIntervals, [:], (Pagination) null, MAPPERS)
+                .write(columnarOs)
+
+        then: "No result is built from the columns"
+        0 * columnarResultSet.get(_)
+        0 * columnarResultSet.iterator()
+        columnarOs.toString() == os.toString()
+
+        where:
+        format << [ResponseFormatType.JSON, ResponseFormatType.JSONAPI, ResponseFormatType.CSV]
+    }
+
     @Unroll
     def "test for existence of missing intervals in response when #arePaginating"() {
         setup:
@@ -678,6 +720,28 @@ class ResponseSpec extends Specification {
         Response.getDimensionColumnName(dimension, dimensionField) == "Foo|Bar"
     }
 
+    def "getDimensionColumnName caches every name when called concurrently"() {
+        setup: "Build a fake dimension with many fields"
+        Dimension dimension = Mock(Dimension)
+        dimension.getApiName() >> "Foo"
+        List<DimensionField> fields = (0..<100).collect { index ->
+            DimensionField field = Mock(DimensionField)
+            field.getName() >> "field$index"
+            field
+        }
+        Response.DIMENSION_FIELD_COLUMN_NAMES.remove(dimension)
+
+        when: "Many threads build the names of all of the fields at once"
+        List<Thread> threads = (0..<8).collect {
+            Thread.start { fields.each { Response.getDimensionColumnName(dimension, it) } }
+        }
+        threads*.join()
+
+        then: "Every name is cached"
+        Response.DIMENSION_FIELD_COLUMN_NAMES.get(dimension).size() == 100
+        fields.every { Response.getDimensionColumnName(dimension, it) == "Foo|${it.getName()}" }
+    }
+
     /**
      * Given a JSON string, and a JSON meta object as a  string, combines the two into a new JSON string.
      * <p>
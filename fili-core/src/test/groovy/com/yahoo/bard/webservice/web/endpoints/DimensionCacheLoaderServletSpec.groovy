@@ -19,6 +19,7 @@ import org.joda.time.DateTime
 import org.joda.time.DateTimeZone
 
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import javax.ws.rs.client.Entity
 import javax.ws.rs.core.Response
@@ -255,6 +256,47 @@ class DimensionCacheLoaderServletSpec extends Specification {
                 containsAll(dimensionUserCountry.searchProvider.findAllDimensionRows())
     }
 
+    @Unroll
+    def "Check replaceDimensionRows replaces all rows of a dimension searched by #searchProvider"() {
+        setup:
+        String post = """{
+                           "dimensionRows": [
+                             { "id": "usa", "description": "USA", "field1": "usa1" },
+                             { "id": "can", "description": "Canada" },
+                             { "id": "usa", "description": "United_States_of_America", "field1": "foo" }
+                           ]
+                         }"""
+        Dimension dimension = dimensionCacheLoaderServlet.dimensionDictionary.findByApiName(dimensionName)
+        Set<DimensionRow> expectedRows = [
+                rowOf(dimension, "usa", "United_States_of_America", "foo"),
+                rowOf(dimension, "can", "Canada", "")
+        ] as Set
+
+        when:
+        Response r = dimensionCacheLoaderServlet.replaceDimensionRows(dimensionName, post)
+
+        then: "The last row for a key is kept, and the rows not posted are removed"
+        r.getStatusInfo() == Status.OK
+        dimension.searchProvider.findAllDimensionRows() == expectedRows
+        dimension.searchProvider.dimensionCardinality == 2
+        dimension.findDimensionRowByKeyValue("usa") == rowOf(dimension, "usa", "United_States_of_America", "foo")
+        dimension.findDimensionRowByKeyValue(removedKey) == null
+        dimension.lastUpdated == lastUpdated
+
+        where:
+        dimensionName  | removedKey | searchProvider
+        "user_country" | "ind"      | "Lucene"
+        "gender"       | "m"        | "scanning"
+    }
+
+    def "Check replaceDimensionRows for missing dimension fails"() {
+        when:
+        Response r = dimensionCacheLoaderServlet.replaceDimensionRows("unknown", """{"dimensionRows": []}""")
+
+        then: "Bad Request"
+        r.getStatusInfo() == Status.BAD_REQUEST
+    }
+
     def "Check servet getDimensionLastUpdated"() {
         setup:
         String expected = """{"name":"gender","lastUpdated":"$lastUpdated"}"""
@@ -371,4 +413,15 @@ class DimensionCacheLoaderServletSpec extends Specification {
         cleanup:
         jtb.tearDown()
     }
+
+    /**
+     * Make a row of a dimension from the values of its id, desc and, if the dimension has it, field1 fields.
+     */
+    DimensionRow rowOf(Dimension dimension, String id, String desc, String field1) {
+        Map<String, String> fieldValues = [id: id, desc: desc]
+        if (dimension.dimensionFields.contains(BardDimensionField.FIELD1)) {
+            fieldValues.field1 = field1
+        }
+        return dimension.parseDimensionRow(fieldValues)
+    }
 }
@@ -106,6 +106,33 @@ class JobsServletSpec extends Specification {
         GroovyTestUtils.compareJson(result, expectedResponse, JsonSortStrategy.SORT_BOTH)
     }
 
+    def "jobs/result endpoint returns the requested page of the results"() {
+        setup:
+        String expectedResponse = """{
+            "rows":[{"dateTime":"2016-01-12 00:00:00.000","pageViews":111}],
+            "meta": {"pagination": {"currentPage": 1, "rowsPerPage": 1, "numberOfResults": 1}}
+        }"""
+
+        when: "We send a request for the first page of the jobs/ticket1/results endpoint"
+        String result = makeRequest("/jobs/ticket1/results", [asyncAfter : ["5"], perPage: ["1"], page: ["1"]])
+
+        then:
+        GroovyTestUtils.compareJson(result, expectedResponse, JsonSortStrategy.SORT_BOTH)
+    }
+
+    def "jobs/result endpoint returns a 404 if the requested page is past the last page of the results"() {
+        when: "We send a request for the second page of the jobs/ticket1/results endpoint"
+        Response r = jtb.getHarness().target("/jobs/ticket1/results")
+                .queryParam("asyncAfter", 5)
+                .queryParam("perPage", 1)
+                .queryParam("page", 2)
+                .request()
+                .get()
+
+        then:
+        r.getStatus() == 404
+    }
+
     def "jobs/result endpoint returns an error if the PreResponse contains an error"() {
         setup:
         String expectedResponse = """{
@@ -155,6 +182,36 @@ class JobsServletSpec extends Specification {
         GroovyTestUtils.compareJson(result, expectedResponse, JsonSortStrategy.SORT_BOTH)
     }
 
+    def "/jobs endpoint returns the payload for just the jobs satisfying the filters"() {
+        setup:
+        String expectedResponse = """{"jobs":[
+                                        {
+                                            "dateCreated":"2016-01-01",
+                                            "jobTicket":"ticket2",
+                                            "query":"https://localhost:9998/v1/data/QUERY",
+                                            "results":"http://localhost:9998/jobs/ticket2/results",
+                                            "self":"http://localhost:9998/jobs/ticket2",
+                                            "status":"pending",
+                                            "syncResults":"http://localhost:9998/jobs/ticket2/results?asyncAfter=never"
+                                        }
+                                  ]}"""
+
+        when: "We send a request to the jobs endpoint filtering on the status of the jobs"
+        String result = makeRequest("/jobs", [filters: ["status-eq[pending]"]])
+
+        then: "Only the pending job is returned"
+        GroovyTestUtils.compareJson(result, expectedResponse, JsonSortStrategy.SORT_BOTH)
+    }
+
+    def "/jobs endpoint returns a 400 if a filter names a field jobs don't have"() {
+        when:
+        Response r = jtb.getHarness().target("/jobs").queryParam("filters", "color-eq[red]").request().get()
+
+        then:
+        r.getStatus() == Response.Status.BAD_REQUEST.getStatusCode()
+        r.readEntity(String.class).contains("Job filter field 'color' does not exist.")
+    }
+
     String makeRequest(String target) {
         makeRequest(target, [:])
     }
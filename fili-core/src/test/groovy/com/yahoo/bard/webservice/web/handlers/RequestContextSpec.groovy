@@ -41,4 +41,23 @@ class RequestContextSpec extends Specification {
         "bard-testing" | "###BYPASS###"
         "clientid"     | "UI"
     }
+
+    def "A context for a retry keeps the request and its counts, and is marked as a retry"() {
+        setup:
+        ContainerRequestContext containerRequestContext = Mock(ContainerRequestContext)
+        containerRequestContext.getHeaders() >> (["ClientId": "UI"] as MultivaluedHashMap<String, String>)
+        RequestContext context = new RequestContext(containerRequestContext, true)
+
+        when:
+        RequestContext retryContext = new RequestContext(context)
+
+        then:
+        !context.isRetry()
+        retryContext.isRetry()
+        retryContext.containerRequestContext == containerRequestContext
+        retryContext.getHeadersLowerCase().getFirst("clientid") == "UI"
+        retryContext.readCache
+        retryContext.getNumberOfIncoming().is(context.getNumberOfIncoming())
+        retryContext.getNumberOfOutgoing().is(context.getNumberOfOutgoing())
+    }
 }
@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers
 
+import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE_BUCKETS
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.MONTH
 
@@ -12,6 +13,7 @@ import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
 import com.yahoo.bard.webservice.web.responseprocessors.SplitQueryResponseProcessor
 
 import org.joda.time.DateTime
+import org.joda.time.Days
 import org.joda.time.Duration
 import org.joda.time.Interval
 
@@ -84,4 +86,108 @@ class SplitQueryRequestHandlerSpec extends Specification {
         1 * hec.dispatch(400, _ as String, _ as String)
         0 * _._
     }
+
+    def "Handler packs adjacent buckets into sub-queries of at most the target number of buckets"() {
+        setup:
+        SplitQueryRequestHandler packingHandler = new SplitQueryRequestHandler(next, 0, 7)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [month, new Interval(month.end.plusDays(1), month.end.plusDays(3))]
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        List<Interval> packed = []
+
+        when:
+        packingHandler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then: "31 days are packed by 7, and the 2 days after the gap are packed on their own"
+        6 * groupByQuery.withAllIntervals(_) >> { packed.addAll(it[0]); groupByQuerySplit }
+        6 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _ as SplitQueryResponseProcessor)
+        packed*.toDuration()*.standardDays == [7, 7, 7, 7, 3, 2]
+        packed[0].start == startInstant
+        packed[4].end == month.end
+        rc.numberOfIncoming.get() == 6
+    }
+
+    def "Packed sub-queries of rolling windows line up, so bucket caching hits the packs they share"() {
+        setup:
+        boolean cachingBuckets = DRUID_CACHE_BUCKETS.isOn()
+        DRUID_CACHE_BUCKETS.setOn(true)
+        SplitQueryRequestHandler packingHandler = new SplitQueryRequestHandler(next, 0, 7)
+        groupByQuery.granularity >> DAY
+        Interval today = new Interval(startInstant.plusDays(3), Duration.standardDays(30))
+        Interval tomorrow = new Interval(startInstant.plusDays(4), Duration.standardDays(30))
+        Map<Interval, List<Interval>> packed = [(today): [], (tomorrow): []]
+
+        when:
+        [today, tomorrow].each { Interval window ->
+            GroupByQuery windowQuery = Mock(GroupByQuery)
+            windowQuery.getInnermostQuery() >> windowQuery
+            windowQuery.granularity >> DAY
+            windowQuery.intervals >> [window]
+            windowQuery.withAllIntervals(_) >> { packed[window].addAll(it[0]); groupByQuerySplit }
+            RequestContext context = Mock(RequestContext)
+            context.numberOfIncoming >> new AtomicLong(1)
+            context.numberOfOutgoing >> new AtomicLong(1)
+            packingHandler.handleRequest(context, apiRequest, windowQuery, response)
+        }
+
+        then: "Packs start on fixed 7 day boundaries counted from the epoch, not on the first day of the window"
+        packed[today].tail().every { Days.daysBetween(new DateTime(0L), it.start).days % 7 == 0 }
+        packed[today]*.toDuration()*.standardDays == [4, 7, 7, 7, 5]
+        packed[tomorrow]*.toDuration()*.standardDays == [3, 7, 7, 7, 6]
+
+        and: "The packs inside both windows cover the same intervals, so they share cache entries"
+        packed[today][1..3] == packed[tomorrow][1..3]
+
+        cleanup:
+        DRUID_CACHE_BUCKETS.setOn(cachingBuckets)
+    }
+
+    def "Handler sends at most the in flight limit of sub-queries, and another as each response arrives"() {
+        setup:
+        SplitQueryRequestHandler windowedHandler = new SplitQueryRequestHandler(next, 2, 1)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [week]
+        groupByQuery.withAllIntervals(_) >> groupByQuerySplit
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+        SplitQueryResponseProcessor mergingResponse = null
+
+        when:
+        windowedHandler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then:
+        2 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _) >> { mergingResponse = it[3]; true }
+
+        when: "Two responses arrive"
+        2.times { mergingResponse.subQueryListener.run() }
+
+        then:
+        2 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _)
+
+        when: "The other responses arrive"
+        5.times { mergingResponse.subQueryListener.run() }
+
+        then: "Only the 3 sub-queries left are sent"
+        3 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _)
+    }
+
+    def "Sub-queries answered while they are sent don't recurse"() {
+        setup:
+        SplitQueryRequestHandler windowedHandler = new SplitQueryRequestHandler(next, 1, 1)
+        groupByQuery.granularity >> DAY
+        groupByQuery.intervals >> [year]
+        groupByQuery.withAllIntervals(_) >> groupByQuerySplit
+        rc.numberOfIncoming >> new AtomicLong(1)
+        rc.numberOfOutgoing >> new AtomicLong(1)
+
+        when:
+        windowedHandler.handleRequest(rc, apiRequest, groupByQuery, response)
+
+        then: "Each sub-query is answered before it returns, such as from a cache"
+        365 * next.handleRequest(rc, apiRequest, groupByQuerySplit, _) >> {
+            it[3].subQueryListener.run()
+            true
+        }
+    }
 }
@@ -0,0 +1,77 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.handlers
+
+import com.yahoo.bard.webservice.druid.client.DruidWebService
+import com.yahoo.bard.webservice.druid.client.StreamingSuccessCallback
+import com.yahoo.bard.webservice.druid.client.SuccessCallback
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
+import com.yahoo.bard.webservice.web.responseprocessors.StreamingResponseProcessor
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectWriter
+
+import spock.lang.Specification
+
+class StreamingAsyncWebServiceRequestHandlerSpec extends Specification {
+
+    DruidWebService dws = Mock(DruidWebService)
+    RequestContext rc = Mock(RequestContext)
+    DataApiRequest request = Mock(DataApiRequest)
+    GroupByQuery groupByQuery = Mock(GroupByQuery)
+    StreamingAsyncWebServiceRequestHandler handler
+
+    def setup() {
+        ObjectMapper mapper = Mock(ObjectMapper)
+        mapper.writer() >> Mock(ObjectWriter)
+        handler = new StreamingAsyncWebServiceRequestHandler(dws, mapper)
+    }
+
+    def "A streaming response processor is handed the parser over the druid response"() {
+        setup:
+        StreamingResponseProcessor response = Mock(StreamingResponseProcessor)
+        JsonParser parser = Mock(JsonParser)
+        SuccessCallback sc = null
+
+        when:
+        boolean success = handler.handleRequest(rc, request, groupByQuery, response)
+
+        then:
+        success
+        1 * response.getErrorCallback(groupByQuery)
+        1 * response.getFailureCallback(groupByQuery)
+        1 * dws.postDruidQuery(rc, _, null, null, groupByQuery) >> { a0, a1, a2, a3, a4 -> sc = a1 }
+        sc instanceof StreamingSuccessCallback
+
+        when:
+        ((StreamingSuccessCallback) sc).invoke(parser)
+
+        then:
+        1 * response.processResponse(parser, groupByQuery, _)
+    }
+
+    def "A response processor that needs the json tree gets the json tree"() {
+        setup:
+        ResponseProcessor response = Mock(ResponseProcessor)
+        JsonNode rootNode = Mock(JsonNode)
+        SuccessCallback sc = null
+
+        when:
+        boolean success = handler.handleRequest(rc, request, groupByQuery, response)
+
+        then:
+        success
+        1 * dws.postDruidQuery(rc, _, _, _, groupByQuery) >> { a0, a1, a2, a3, a4 -> sc = a1 }
+        !(sc instanceof StreamingSuccessCallback)
+
+        when:
+        sc.invoke(rootNode)
+
+        then:
+        1 * response.processResponse(rootNode, groupByQuery, _)
+    }
+}
@@ -2,6 +2,7 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.handlers
 
+import static com.yahoo.bard.webservice.config.BardFeatureFlag.WEIGHT_ESTIMATION
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 
 import com.yahoo.bard.webservice.druid.client.DruidWebService
@@ -14,6 +15,8 @@ import com.yahoo.bard.webservice.druid.model.query.WeightEvaluationQuery
 import com.yahoo.bard.webservice.web.DataApiRequest
 import com.yahoo.bard.webservice.web.responseprocessors.ResponseProcessor
 import com.yahoo.bard.webservice.web.responseprocessors.WeightCheckResponseProcessor
+import com.yahoo.bard.webservice.web.util.QueryWeightEstimator
+import com.yahoo.bard.webservice.web.util.QueryWeightEstimator.Decision
 import com.yahoo.bard.webservice.web.util.QueryWeightUtil
 
 import com.fasterxml.jackson.core.JsonFactory
@@ -25,6 +28,7 @@ import com.fasterxml.jackson.databind.ObjectWriter
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
 
 import spock.lang.Specification
+import spock.lang.Unroll
 
 class WeightCheckRequestHandlerSpec extends Specification {
     private static final ObjectMapper MAPPER = new ObjectMapper()
@@ -262,4 +266,66 @@ class WeightCheckRequestHandlerSpec extends Specification {
         then:
         1 == 1
     }
+
+    @Unroll
+    def "Weight estimation decides #decision without a weight check query"() {
+        setup:
+        WEIGHT_ESTIMATION.setOn(true)
+        QueryWeightEstimator estimator = Mock(QueryWeightEstimator)
+        queryWeightUtil.skipWeightCheckQuery(groupByQuery) >> false
+        queryWeightUtil.getQueryWeightThreshold(DAY) >> 100
+        queryWeightUtil.getWeightEstimator() >> estimator
+        groupByQuery.getGranularity() >> DAY
+        estimator.getUpperBound(request, groupByQuery) >> 1000
+        estimator.decide(request, 1000, 100) >> decision
+        estimator.getEstimate(request, 1000) >> 500
+        HttpErrorCallback ec = Mock(HttpErrorCallback)
+        WeightCheckRequestHandler handler = new WeightCheckRequestHandler(next, webService, queryWeightUtil, MAPPER)
+
+        when:
+        handler.handleRequest(context, request, groupByQuery, response)
+
+        then:
+        0 * webService.postDruidQuery(*_)
+        (decision == Decision.ACCEPT ? 1 : 0) * next.handleRequest(context, request, groupByQuery, response)
+        (decision == Decision.REJECT ? 1 : 0) * response.getErrorCallback(groupByQuery) >> ec
+        (decision == Decision.REJECT ? 1 : 0) * ec.invoke(507, _, _)
+
+        cleanup:
+        WEIGHT_ESTIMATION.setOn(false)
+
+        where:
+        decision << [Decision.ACCEPT, Decision.REJECT]
+    }
+
+    def "Ambiguous weight estimates are checked with druid and calibrated by the result"() {
+        setup:
+        WEIGHT_ESTIMATION.setOn(true)
+        QueryWeightEstimator estimator = Mock(QueryWeightEstimator)
+        queryWeightUtil.skipWeightCheckQuery(groupByQuery) >> false
+        queryWeightUtil.getQueryWeightThreshold(DAY) >> 100
+        queryWeightUtil.getWeightEstimator() >> estimator
+        queryWeightUtil.makeWeightEvaluationQuery(groupByQuery) >> Mock(WeightEvaluationQuery)
+        groupByQuery.getGranularity() >> DAY
+        estimator.getUpperBound(request, groupByQuery) >> 1000
+        estimator.decide(request, 1000, 100) >> Decision.CHECK
+        SuccessCallback success = null
+        WeightCheckRequestHandler handler = new WeightCheckRequestHandler(next, webService, queryWeightUtil, MAPPER)
+
+        when:
+        handler.handleRequest(context, request, groupByQuery, response)
+
+        then:
+        1 * webService.postDruidQuery(context, _, _, _, _) >> { success = it[1] }
+
+        when:
+        success.invoke(MAPPER.readTree('[ { "event" : { "count" : 60 } } ]'))
+
+        then:
+        1 * estimator.recordWeight(request, 1000, 60)
+        1 * next.handleRequest(context, request, groupByQuery, _)
+
+        cleanup:
+        WEIGHT_ESTIMATION.setOn(false)
+    }
 }
@@ -3,6 +3,7 @@
 package com.yahoo.bard.webservice.web.handlers.workflow
 
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE
+import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE_BUCKETS
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.DRUID_CACHE_V2
 import static com.yahoo.bard.webservice.config.BardFeatureFlag.QUERY_SPLIT
 
@@ -37,6 +38,7 @@ class DruidWorkflowSpec extends Specification {
     boolean cacheStatus
     boolean cacheV2Status
     boolean splittingStatus
+    boolean cacheBucketsStatus
 
     DruidWorkflow dw
     DataCache dataCache = Mock(DataCache)
@@ -52,12 +54,14 @@ class DruidWorkflowSpec extends Specification {
         cacheStatus = DRUID_CACHE.isOn()
         cacheV2Status = DRUID_CACHE_V2.isOn()
         splittingStatus = QUERY_SPLIT.isOn()
+        cacheBucketsStatus = DRUID_CACHE_BUCKETS.isOn()
     }
 
     def cleanup() {
         DRUID_CACHE.setOn(cacheStatus)
         DRUID_CACHE_V2.setOn(cacheV2Status)
         QUERY_SPLIT.setOn(splittingStatus)
+        DRUID_CACHE_BUCKETS.setOn(cacheBucketsStatus)
     }
 
     def "Test workflow config controls workflow stages"() {
@@ -179,6 +183,39 @@ class DruidWorkflowSpec extends Specification {
         QUERY_SPLIT.setOn(splittingStatus)
     }
 
+    def "Test workflow splits queries ahead of the cache when caching by bucket"() {
+        setup:
+        QUERY_SPLIT.setOn(false)
+        DRUID_CACHE.setOn(true)
+        DRUID_CACHE_V2.setOn(true)
+        DRUID_CACHE_BUCKETS.setOn(true)
+
+        dw = new DruidWorkflow(
+                Mock(TupleDataCache),
+                uiWebService,
+                nonUiWebService,
+                weightUtil,
+                physicalTableDictionary,
+                partialDataHandler,
+                querySigningService,
+                volatileIntervalsService,
+                MAPPER
+        )
+        DataRequestHandler workflow = dw.buildWorkflow()
+        List<DataRequestHandler> handlers = getHandlerChain(workflow)
+        WebServiceSelectorRequestHandler select = handlers.find(byClass(WebServiceSelectorRequestHandler))
+        def defaultHandler = select.handlerSelector as DefaultWebServiceHandlerSelector
+
+        when:
+        def handlers1 = getHandlerChain(defaultHandler.uiWebServiceHandler.next)
+        def handlers2 = getHandlerChain(defaultHandler.nonUiWebServiceHandler.next)
+
+        then:
+        [handlers1, handlers2].every {
+            it.findIndexOf(byClass(SplitQueryRequestHandler)) >= 0 &&
+            it.findIndexOf(byClass(SplitQueryRequestHandler)) < it.findIndexOf(byClass(CacheV2RequestHandler))
+        }
+    }
 
     List<DataRequestHandler> getHandlerChain(DataRequestHandler fromHandler) {
         def handler = fromHandler
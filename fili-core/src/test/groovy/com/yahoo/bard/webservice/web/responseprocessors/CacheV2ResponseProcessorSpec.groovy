@@ -55,6 +55,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
 
     def setup() {
         querySigningService.getSegmentSetId(_) >> Optional.of(1234)
+        groupByQuery.getIntervals() >> [new Interval(0, 2)]
         segmentId = querySigningService.getSegmentSetId(groupByQuery).get()
         crp = new CacheV2ResponseProcessor(next, cacheKey, dataCache, querySigningService, MAPPER)
     }
@@ -76,7 +77,7 @@ class CacheV2ResponseProcessorSpec extends Specification {
         2 * next.getResponseContext() >> context
 
         expect:
-        crp.cacheable == expected
+        crp.isCacheable(groupByQuery) == expected
 
         where:
         expected | context
@@ -155,6 +156,30 @@ class CacheV2ResponseProcessorSpec extends Specification {
         0 * dataCache.set(cacheKey, '[]')
     }
 
+    @Unroll
+    def "A query over #queryIntervals with volatile intervals #volatileIntervals is cached: #cached"() {
+        setup:
+        GroupByQuery bucketQuery = Mock(GroupByQuery)
+        bucketQuery.getIntervals() >> queryIntervals
+        next.getResponseContext() >> createResponseContext(
+                [(VOLATILE_INTERVALS_CONTEXT_KEY.name): new SimplifiedIntervalList(volatileIntervals)]
+        )
+
+        when:
+        crp.processResponse(json, bucketQuery, null)
+
+        then:
+        (cached ? 1 : 0) * dataCache.set(cacheKey, segmentId, '[]')
+        1 * next.processResponse(json, bucketQuery, null)
+
+        where:
+        queryIntervals                            | volatileIntervals      | cached
+        [new Interval(0, 10)]                     | [new Interval(9, 20)]  | false
+        [new Interval(0, 10)]                     | [new Interval(10, 20)] | true
+        [new Interval(10, 20)]                    | [new Interval(10, 20)] | false
+        [new Interval(0, 5), new Interval(6, 10)] | [new Interval(5, 6)]   | true
+    }
+
     def "Test proxy calls"() {
         setup:
         HttpErrorCallback hec = Mock(HttpErrorCallback)
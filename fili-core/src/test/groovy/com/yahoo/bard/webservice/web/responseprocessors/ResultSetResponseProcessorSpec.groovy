@@ -2,20 +2,25 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.responseprocessors
 
+import static com.yahoo.bard.webservice.config.BardFeatureFlag.STREAMING_RESPONSES
 import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
 
 import com.yahoo.bard.webservice.application.ObjectMappersSuite
 import com.yahoo.bard.webservice.data.DruidResponseParser
 import com.yahoo.bard.webservice.data.HttpResponseChannel
 import com.yahoo.bard.webservice.data.HttpResponseMaker
+import com.yahoo.bard.webservice.data.Result
 import com.yahoo.bard.webservice.data.ResultSet
+import com.yahoo.bard.webservice.data.StreamingResults
 import com.yahoo.bard.webservice.data.dimension.BardDimensionField
 import com.yahoo.bard.webservice.data.dimension.Dimension
 import com.yahoo.bard.webservice.data.dimension.DimensionColumn
 import com.yahoo.bard.webservice.data.dimension.DimensionDictionary
 import com.yahoo.bard.webservice.data.metric.LogicalMetric
 import com.yahoo.bard.webservice.data.metric.MetricColumn
+import com.yahoo.bard.webservice.data.metric.mappers.NoOpResultSetMapper
 import com.yahoo.bard.webservice.data.metric.mappers.ResultSetMapper
+import com.yahoo.bard.webservice.data.metric.mappers.RowNumMapper
 import com.yahoo.bard.webservice.druid.client.FailureCallback
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
 import com.yahoo.bard.webservice.druid.model.QueryType
@@ -28,15 +33,26 @@ import com.yahoo.bard.webservice.logging.RequestLog
 import com.yahoo.bard.webservice.table.PhysicalTable
 import com.yahoo.bard.webservice.table.Schema
 import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.PreResponse
 import com.yahoo.bard.webservice.web.ResponseFormatType
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
 
+import org.joda.time.DateTime
 import org.joda.time.DateTimeZone
 
 import rx.subjects.PublishSubject
 import rx.subjects.Subject
 import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 
 import javax.ws.rs.container.AsyncResponse
 import javax.ws.rs.core.MultivaluedMap
@@ -220,6 +236,289 @@ class ResultSetResponseProcessorSpec extends Specification {
         1 == 1
     }
 
+    def "Test streaming buildResultSet"() {
+        setup:
+        def resultSetResponseProcessor = new ResultSetResponseProcessor(
+                apiRequest,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        )
+        JsonParser parserMock = Mock(JsonParser)
+        Schema captureSchema = null
+        ResultSet rs = Mock(ResultSet)
+
+        1 * druidResponseParser.parse(parserMock, _, QueryType.GROUP_BY) >> {
+            JsonParser parser, Schema schema, QueryType type -> captureSchema = schema; rs
+        }
+        ResultSet actual
+
+        when:
+        actual = resultSetResponseProcessor.buildResultSet(parserMock, groupByQuery, DateTimeZone.UTC)
+
+        then:
+        captureSchema.granularity == DAY
+        captureSchema.getColumn("dimension1").dimension == d1
+        captureSchema.getColumn("agg1") != null
+        captureSchema.getColumn("postAgg1") != null
+        actual == rs
+    }
+
+    def "Test streaming processResponse"() {
+        setup:
+        JsonParser parserMock = Mock(JsonParser)
+        ResultSet resultSetMock = Mock(ResultSet)
+
+        ResultSetResponseProcessor resultSetResponseProcessor = new ResultSetResponseProcessor(
+                apiRequest,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        ) {
+            @Override
+            public ResultSet buildResultSet(
+                    JsonParser jsonParser,
+                    DruidAggregationQuery<?> groupByQuery,
+                    DateTimeZone dateTimeZone
+            ) {
+                jsonParser.close();
+                return resultSetMock
+            }
+
+            @Override
+            protected ResultSet mapResultSet(ResultSet resultSet) { resultSet.getSchema(); return resultSet }
+        }
+
+        when:
+        resultSetResponseProcessor.processResponse(
+                parserMock,
+                groupByQuery,
+                new LoggingContext(RequestLog.dump())
+        )
+
+        then:
+        1 * parserMock.close()
+        2 * resultSetMock.getSchema()
+    }
+
+    def "Test processResultSet emits the result set without parsing"() {
+        setup:
+        ResultSet resultSetMock = Mock(ResultSet)
+
+        ResultSetResponseProcessor resultSetResponseProcessor = new ResultSetResponseProcessor(
+                apiRequest,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        ) {
+            @Override
+            protected ResultSet mapResultSet(ResultSet resultSet) { resultSet.getSchema(); return resultSet }
+        }
+
+        when:
+        resultSetResponseProcessor.processResultSet(
+                resultSetMock,
+                groupByQuery,
+                new LoggingContext(RequestLog.dump())
+        )
+
+        then:
+        0 * druidResponseParser.parse(_, _, _)
+        2 * resultSetMock.getSchema()
+    }
+
+    @Unroll
+    def "A #format request with asyncAfter #asyncAfter and a #mapper.class.simpleName is streamable: #streamable"() {
+        setup:
+        boolean streamingResponses = STREAMING_RESPONSES.isOn()
+        STREAMING_RESPONSES.setOn(true)
+        DataApiRequest request = Mock(DataApiRequest)
+        request.getFormat() >> format
+        request.getAsyncAfter() >> asyncAfter
+        request.getLogicalMetrics() >> ([lm1] as Set)
+        request.getDimensionFields() >> [:]
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                request,
+                responseEmitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        )
+        processor.getMappers().clear()
+        processor.getMappers().add(mapper)
+
+        expect:
+        processor.isStreamable() == streamable
+
+        cleanup:
+        STREAMING_RESPONSES.setOn(streamingResponses)
+
+        where:
+        format                     | asyncAfter     | mapper                    | streamable
+        ResponseFormatType.JSON    | Long.MAX_VALUE | new NoOpResultSetMapper() | true
+        ResponseFormatType.CSV     | Long.MAX_VALUE | new NoOpResultSetMapper() | true
+        null                       | Long.MAX_VALUE | new NoOpResultSetMapper() | true
+        ResponseFormatType.JSONAPI | Long.MAX_VALUE | new NoOpResultSetMapper() | false
+        ResponseFormatType.JSON    | 1000           | new NoOpResultSetMapper() | false
+        ResponseFormatType.JSON    | Long.MAX_VALUE | new RowNumMapper()        | false
+    }
+
+    def "Streamed responses are sent before the rows are read, and each row is mapped as it is parsed"() {
+        setup:
+        boolean streamingResponses = STREAMING_RESPONSES.isOn()
+        STREAMING_RESPONSES.setOn(true)
+        apiRequest.getAsyncAfter() >> Long.MAX_VALUE
+        apiRequest.getTimeZone() >> DateTimeZone.UTC
+
+        LinkedBlockingQueue<PreResponse> sent = new LinkedBlockingQueue<>()
+        Subject emitter = PublishSubject.create()
+        emitter.subscribe({ sent.add(it) })
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                apiRequest,
+                emitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        )
+        processor.getMappers().clear()
+        processor.getMappers().add(new NoOpResultSetMapper())
+
+        JsonParser parser = Mock(JsonParser)
+        List<Result> results = (1..3).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+
+        when:
+        processor.processResponse(parser, groupByQuery, new LoggingContext(RequestLog.dump()))
+        PreResponse preResponse = sent.poll(5, TimeUnit.SECONDS)
+
+        then:
+        1 * druidResponseParser.parse(parser, _, QueryType.GROUP_BY, _) >> { results.each(it[3].&accept) }
+        0 * druidResponseParser.parse(_, _, _)
+        preResponse.streamed
+        preResponse.resultSet == null
+        preResponse.rows instanceof StreamingResults
+        preResponse.rows.iterator().collect() == results
+
+        cleanup:
+        STREAMING_RESPONSES.setOn(streamingResponses)
+    }
+
+    @Timeout(20)
+    def "A slow client doesn't hold up the thread parsing druid responses for other queries"() {
+        setup:
+        boolean streamingResponses = STREAMING_RESPONSES.isOn()
+        STREAMING_RESPONSES.setOn(true)
+        apiRequest.getAsyncAfter() >> Long.MAX_VALUE
+        apiRequest.getTimeZone() >> DateTimeZone.UTC
+
+        LinkedBlockingQueue<PreResponse> slowSent = new LinkedBlockingQueue<>()
+        LinkedBlockingQueue<PreResponse> otherSent = new LinkedBlockingQueue<>()
+        ResultSetResponseProcessor slowProcessor = buildStreamingProcessor(slowSent)
+        ResultSetResponseProcessor otherProcessor = buildStreamingProcessor(otherSent)
+
+        JsonParser slowParser = Mock(JsonParser)
+        JsonParser otherParser = Mock(JsonParser)
+        List<Result> manyResults = (1..5000).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+        List<Result> results = (1..3).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+        druidResponseParser.parse(slowParser, _, QueryType.GROUP_BY, _) >> { manyResults.each(it[3].&accept) }
+        druidResponseParser.parse(otherParser, _, QueryType.GROUP_BY, _) >> { results.each(it[3].&accept) }
+
+        when: "a druid response is parsed while its client reads nothing"
+        slowProcessor.processResponse(slowParser, groupByQuery, new LoggingContext(RequestLog.dump()))
+
+        and: "the druid response to another query is then parsed by the same thread"
+        otherProcessor.processResponse(otherParser, groupByQuery, new LoggingContext(RequestLog.dump()))
+        List<Result> otherRead = otherSent.poll(5, TimeUnit.SECONDS).rows.collect()
+
+        then: "the other response is complete before the slow client has read a row"
+        otherRead == results
+
+        when: "the slow client reads its response"
+        List<Result> slowRead = slowSent.poll(5, TimeUnit.SECONDS).rows.collect()
+
+        then: "it has every row"
+        slowRead == manyResults
+
+        cleanup:
+        STREAMING_RESPONSES.setOn(streamingResponses)
+    }
+
+    def "Responses are built whole while every streaming response sender is busy"() {
+        setup:
+        boolean streamingResponses = STREAMING_RESPONSES.isOn()
+        STREAMING_RESPONSES.setOn(true)
+        apiRequest.getAsyncAfter() >> Long.MAX_VALUE
+        apiRequest.getTimeZone() >> DateTimeZone.UTC
+
+        LinkedBlockingQueue<PreResponse> sent = new LinkedBlockingQueue<>()
+        Subject emitter = PublishSubject.create()
+        emitter.subscribe({ sent.add(it) })
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                apiRequest,
+                emitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        )
+        processor.getMappers().clear()
+        processor.getMappers().add(new NoOpResultSetMapper())
+        JsonParser parser = Mock(JsonParser)
+        List<Result> results = (1..3).collect { new Result([:], [:], new DateTime(it * 1000L)) }
+
+        and: "Every sender is kept busy"
+        ThreadPoolExecutor senders = ResultSetResponseProcessor.STREAMING_RESPONSE_SENDER
+        CountDownLatch release = new CountDownLatch(1)
+        while (senders.activeCount < ResultSetResponseProcessor.STREAMING_SENDERS) {
+            try {
+                senders.execute({ release.await() })
+            } catch (RejectedExecutionException ignored) {
+                // Sent while the senders already started were still picking up their tasks
+            }
+        }
+
+        expect:
+        !processor.isStreamable()
+
+        when: "A response found streamable just before the senders became busy is streamed"
+        processor.streamResultSet(parser, groupByQuery)
+        PreResponse preResponse = sent.poll(5, TimeUnit.SECONDS)
+
+        then: "The result set is built whole instead"
+        1 * druidResponseParser.parse(parser, _, QueryType.GROUP_BY) >> { new ResultSet(results, it[1]) }
+        0 * druidResponseParser.parse(_, _, _, _)
+        !preResponse.streamed
+        preResponse.resultSet == results
+        preResponse.rows.is(preResponse.resultSet)
+
+        cleanup:
+        release.countDown()
+        STREAMING_RESPONSES.setOn(streamingResponses)
+    }
+
+    /**
+     * Build a processor which streams the rows of each druid response to the queue of responses sent.
+     *
+     * @param sent  The queue of responses sent
+     *
+     * @return the processor
+     */
+    ResultSetResponseProcessor buildStreamingProcessor(Queue<PreResponse> sent) {
+        Subject emitter = PublishSubject.create()
+        emitter.subscribe({ sent.add(it) })
+        ResultSetResponseProcessor processor = new ResultSetResponseProcessor(
+                apiRequest,
+                emitter,
+                druidResponseParser,
+                MAPPERS,
+                httpResponseMaker
+        )
+        processor.getMappers().clear()
+        processor.getMappers().add(new NoOpResultSetMapper())
+        return processor
+    }
+
     def "Test failure callback"() {
         setup:
         def resultSetResponseProcessor = new ResultSetResponseProcessor(
@@ -2,13 +2,17 @@
 // Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
 package com.yahoo.bard.webservice.web.responseprocessors
 
+import com.yahoo.bard.webservice.data.Result
+import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.data.cache.HashDataCache.Pair
 import com.yahoo.bard.webservice.druid.client.FailureCallback
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.logging.RequestLog
+import com.yahoo.bard.webservice.table.Schema
 import com.yahoo.bard.webservice.web.DataApiRequest
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
@@ -189,4 +193,108 @@ public class SplitQueryResponseProcessorSpec extends Specification {
         1 * nextFail.invoke() { it -> captureT = it }
         captureT.getMessage() == expectedError
     }
+
+    def "Incremental next processor gets the result sets of each response concatenated in order"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor)
+        incrementalNext.isIncremental() >> true
+        sqrp = new SplitQueryResponseProcessor(
+                incrementalNext,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump()
+        )
+        Schema schema = Mock(Schema)
+        List<Result> results = (1..4).collect { Mock(Result) }
+        ResultSet resultSet1 = new ResultSet(results[0..1], schema)
+        ResultSet resultSet2 = new ResultSet(results[2..3], schema)
+        groupByQuery2.getIntervals() >> [interval2] >> [interval1]
+        ResultSet merged = null
+
+        when: "the later interval arrives first"
+        sqrp.processResponse(node2, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then: "it is parsed straight away and its json is not kept"
+        1 * incrementalNext.parseResultSet(node2, groupByQuery2) >> resultSet2
+        sqrp.completedIntervals.every { it == null }
+        sqrp.completedResultSets[1].key == resultSet2
+        0 * incrementalNext.processResultSet(_, _, _)
+        0 * incrementalNext.processResponse(_, _, _)
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * incrementalNext.parseResultSet(node1, groupByQuery2) >> resultSet1
+        1 * incrementalNext.processResultSet(_, groupByQuery1, _) >> { merged = it[0] }
+        0 * incrementalNext.processResponse(_, _, _)
+        merged == results
+        merged.schema == schema
+        sqrp.completedResultSets.every { it == null }
+        !sqrp.failed.get()
+    }
+
+    def "Streamed responses are parsed from tokens by an incremental next processor"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor)
+        incrementalNext.isIncremental() >> true
+        sqrp = new SplitQueryResponseProcessor(
+                incrementalNext,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump()
+        )
+        JsonParser parser = MAPPER.getFactory().createParser(json1)
+        groupByQuery2.getIntervals() >> [interval1]
+
+        when:
+        sqrp.processResponse(parser, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * incrementalNext.parseResultSet(parser, groupByQuery2) >> new ResultSet([], Mock(Schema))
+        sqrp.completed.get() == 1
+        0 * incrementalNext.processResultSet(_, _, _)
+    }
+
+    def "Streamed responses are read into json for a next processor that is not incremental"() {
+        setup:
+        groupByQuery2.getIntervals() >> [interval1] >> [interval2]
+
+        JsonParser parser1 = MAPPER.getFactory().createParser(json1)
+        JsonParser parser2 = MAPPER.getFactory().createParser(json2)
+
+        when:
+        sqrp.processResponse(parser1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+        sqrp.processResponse(parser2, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * next.processResponse(nodeExpected, groupByQuery1, _)
+    }
+
+    def "A response that can't be parsed fails the request"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor)
+        incrementalNext.isIncremental() >> true
+        sqrp = new SplitQueryResponseProcessor(
+                incrementalNext,
+                apiRequest,
+                groupByQuery1,
+                expectedIntervals,
+                RequestLog.dump()
+        )
+        RuntimeException error = new IllegalStateException("bad response")
+        groupByQuery2.getIntervals() >> [interval1]
+
+        when:
+        sqrp.processResponse(node1, groupByQuery2, new LoggingContext(RequestLog.dump()))
+
+        then:
+        1 * incrementalNext.parseResultSet(node1, groupByQuery2) >> { throw error }
+        1 * incrementalNext.getFailureCallback(groupByQuery2) >> nextFail
+        1 * nextFail.invoke(error)
+        sqrp.failed.get()
+        0 * incrementalNext.processResultSet(_, _, _)
+    }
 }
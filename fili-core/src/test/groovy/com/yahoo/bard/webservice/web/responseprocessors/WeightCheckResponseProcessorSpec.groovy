@@ -4,12 +4,15 @@ package com.yahoo.bard.webservice.web.responseprocessors
 
 import static com.yahoo.bard.webservice.web.handlers.workflow.DruidWorkflow.REQUEST_WORKFLOW_TIMER
 
+import com.yahoo.bard.webservice.data.ResultSet
 import com.yahoo.bard.webservice.druid.client.FailureCallback
 import com.yahoo.bard.webservice.druid.client.HttpErrorCallback
 import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
 import com.yahoo.bard.webservice.logging.RequestLog
 
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 
 import spock.lang.Specification
@@ -37,6 +40,48 @@ class WeightCheckResponseProcessorSpec extends Specification{
         wcrp.next == next
     }
 
+    def "Incremental only when the next processor is incremental"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor)
+        incrementalNext.isIncremental() >> true
+
+        expect:
+        !wcrp.isIncremental()
+        new WeightCheckResponseProcessor(incrementalNext).isIncremental()
+    }
+
+    def "Result sets are parsed and processed by the next processor"() {
+        setup:
+        IncrementalResponseProcessor incrementalNext = Mock(IncrementalResponseProcessor)
+        WeightCheckResponseProcessor incrementalWcrp = new WeightCheckResponseProcessor(incrementalNext)
+        ResultSet resultSet = Mock(ResultSet)
+
+        when:
+        ResultSet parsed = incrementalWcrp.parseResultSet(json, groupByQuery)
+        incrementalWcrp.processResultSet(resultSet, groupByQuery, null)
+
+        then:
+        1 * incrementalNext.parseResultSet(json, groupByQuery) >> resultSet
+        1 * incrementalNext.processResultSet(resultSet, groupByQuery, null)
+        parsed == resultSet
+        RequestLog.isStarted(REQUEST_WORKFLOW_TIMER)
+    }
+
+    def "Streamed responses are passed on to a streaming processor, and read into json for any other"() {
+        setup:
+        StreamingResponseProcessor streamingNext = Mock(StreamingResponseProcessor)
+        JsonParser parser = new ObjectMapper().getFactory().createParser("[]")
+        JsonParser otherParser = new ObjectMapper().getFactory().createParser("[]")
+
+        when:
+        new WeightCheckResponseProcessor(streamingNext).processResponse(parser, groupByQuery, null)
+        wcrp.processResponse(otherParser, groupByQuery, null)
+
+        then:
+        1 * streamingNext.processResponse(parser, groupByQuery, null)
+        1 * next.processResponse(json, groupByQuery, null)
+    }
+
     def "Test that REQUEST_WORKFLOW_TIMER is not stopped by processResponse"() {
         when: "no errors have occurred"
         wcrp.processResponse(json, groupByQuery, null)
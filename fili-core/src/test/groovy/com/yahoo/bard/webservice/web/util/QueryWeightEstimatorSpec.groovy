@@ -0,0 +1,131 @@
+// Copyright 2016 Yahoo Inc.
+// Licensed under the terms of the Apache license. Please see LICENSE file distributed with this work for terms.
+package com.yahoo.bard.webservice.web.util
+
+import static com.yahoo.bard.webservice.data.time.DefaultTimeGrain.DAY
+
+import com.yahoo.bard.webservice.data.dimension.Dimension
+import com.yahoo.bard.webservice.data.dimension.SearchProvider
+import com.yahoo.bard.webservice.druid.model.QueryType
+import com.yahoo.bard.webservice.druid.model.aggregation.SketchCountAggregation
+import com.yahoo.bard.webservice.druid.model.query.GroupByQuery
+import com.yahoo.bard.webservice.table.LogicalTable
+import com.yahoo.bard.webservice.util.Pagination
+import com.yahoo.bard.webservice.web.ApiFilter
+import com.yahoo.bard.webservice.web.DataApiRequest
+import com.yahoo.bard.webservice.web.util.QueryWeightEstimator.Decision
+
+import org.joda.time.Interval
+
+import spock.lang.Specification
+
+class QueryWeightEstimatorSpec extends Specification {
+
+    QueryWeightEstimator estimator = new QueryWeightEstimator(0)
+
+    Dimension color = Mock(Dimension)
+    Dimension shape = Mock(Dimension)
+    SearchProvider colorSearchProvider = Mock(SearchProvider)
+    GroupByQuery query = Mock(GroupByQuery)
+    DataApiRequest request = Mock(DataApiRequest)
+
+    def setup() {
+        color.getApiName() >> "color"
+        color.getCardinality() >> 20
+        color.getSearchProvider() >> colorSearchProvider
+        shape.getApiName() >> "shape"
+        shape.getCardinality() >> 5
+
+        query.getInnermostQuery() >> query
+        query.getQueryType() >> QueryType.GROUP_BY
+        query.getAggregations() >> [new SketchCountAggregation("users", "users", 16384)]
+        query.getIntervals() >> [new Interval("2016-01-01/2016-01-08")]
+        query.getGranularity() >> DAY
+        query.getDimensions() >> [color, shape]
+
+        LogicalTable table = Mock(LogicalTable)
+        table.getName() >> "shapes"
+        request.getTable() >> table
+    }
+
+    def "The upper bound is the worst case weight without filters"() {
+        setup:
+        request.getFilters() >> [:]
+
+        expect: "# of sketches * # of days * cardinalities"
+        estimator.getUpperBound(request, query) == 1 * 7 * 20 * 5
+    }
+
+    def "The upper bound counts the values of filtered dimensions matching their filters"() {
+        setup:
+        Set<ApiFilter> filters = [Mock(ApiFilter)] as Set
+        request.getFilters() >> [(color): filters]
+        Pagination<?> matching = Mock(Pagination)
+        matching.getNumResults() >> 3
+
+        when:
+        long upperBound = estimator.getUpperBound(request, query)
+
+        then:
+        1 * colorSearchProvider.findFilteredDimensionRowsPaged(filters, _) >> matching
+        upperBound == 1 * 7 * 3 * 5
+    }
+
+    def "Queries whose upper bound is under the limit are accepted"() {
+        expect:
+        estimator.decide(request, 100, 100) == Decision.ACCEPT
+        estimator.decide(request, 101, 100) == Decision.CHECK
+    }
+
+    def "Once calibrated, clearly light or heavy queries are decided from the estimate"() {
+        setup: "Weight check queries measure a hundredth of the upper bound"
+        (1..20).each { estimator.recordWeight(request, 10000, 100) }
+
+        expect:
+        Math.abs(estimator.getEstimate(request, 10000) - 100) < 0.001
+        estimator.decide(request, 10000, 500) == Decision.ACCEPT
+        estimator.decide(request, 10000, 200) == Decision.CHECK
+        estimator.decide(request, 10000, 20) == Decision.REJECT
+    }
+
+    def "A sample of the queries decided from the estimate have their weight checked, and calibrate it"() {
+        setup: "Every decided query is sampled"
+        QueryWeightEstimator auditingEstimator = new QueryWeightEstimator(1)
+        (1..20).each { auditingEstimator.recordWeight(request, 10000, 100) }
+        long audited = QueryWeightEstimator.AUDITED.count
+
+        expect:
+        auditingEstimator.decide(request, 10000, 500) == Decision.CHECK
+        auditingEstimator.decide(request, 10000, 20) == Decision.CHECK
+        QueryWeightEstimator.AUDITED.count == audited + 2
+
+        and: "Queries whose upper bound is under the limit need no check"
+        auditingEstimator.decide(request, 100, 100) == Decision.ACCEPT
+
+        when: "The checked queries measure a tenth of the upper bound"
+        (1..200).each { auditingEstimator.recordWeight(request, 10000, 1000) }
+
+        then: "The estimate moves to the new weights"
+        Math.abs(auditingEstimator.getEstimate(request, 10000) - 1000) < 10
+    }
+
+    def "Queries are not decided from the estimate before enough weights are measured"() {
+        setup:
+        (1..19).each { estimator.recordWeight(request, 10000, 100) }
+
+        expect:
+        estimator.decide(request, 10000, 20) == Decision.CHECK
+    }
+
+    def "Measured weights report the estimate error"() {
+        setup:
+        long errors = estimator.ERROR_PERCENT.count
+
+        when:
+        estimator.recordWeight(request, 1000, 250)
+
+        then: "The uncalibrated estimate is the upper bound, which is 300% off"
+        estimator.ERROR_PERCENT.count == errors + 1
+        estimator.ERROR_PERCENT.snapshot.values.contains(300L)
+    }
+}